@@ -0,0 +1,92 @@
+package ee.alex.bank.benchmark;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ee.alex.bank.model.AccountIdGenerator;
+import ee.alex.bank.service.BankService;
+
+/**
+ * Accounts opened per second by every thread together, with each {@link AccountIdGenerator}; run
+ * it with {@code -t 1}, {@code -t 4}, ... to see how opening accounts scales with threads.
+ * <p>
+ * {@code nextId} draws account numbers only, {@code createAccount} opens accounts in a bank that
+ * is replaced every iteration, so the index does not grow without bound. Every account has an owner
+ * of its own, as the accounts of one owner are kept in one array that is copied on every change.
+ *
+ * @author Aleksei Kulitškov
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class AccountCreationBenchmark {
+
+  @Param({"secure", "random", "time-ordered"})
+  public String generator;
+
+  private AccountIdGenerator accountIds;
+  private BankService bank;
+
+  @Setup(Level.Trial)
+  public void chooseGenerator() {
+    switch (generator) {
+      case "secure":
+        accountIds = AccountIdGenerator.SECURE_RANDOM;
+        break;
+      case "random":
+        accountIds = AccountIdGenerator.RANDOM;
+        break;
+      case "time-ordered":
+        accountIds = AccountIdGenerator.TIME_ORDERED;
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown generator " + generator);
+    }
+  }
+
+  @Setup(Level.Iteration)
+  public void createBank() {
+    bank = new BankService();
+    bank.setAccountIdGenerator(accountIds);
+  }
+
+  @Benchmark
+  public UUID nextId() {
+    return accountIds.next();
+  }
+
+  @Benchmark
+  public UUID createAccount(Customers customers) {
+    return bank.createCheckingAccount(customers.next(), 1_000_00);
+  }
+
+  @State(Scope.Thread)
+  public static class Customers {
+
+    private static final AtomicInteger THREADS = new AtomicInteger();
+
+    private final String prefix = "Customer " + THREADS.incrementAndGet() + "-";
+    private long count;
+
+    String next() {
+      return prefix + count++;
+    }
+
+  }
+
+}
@@ -0,0 +1,119 @@
+package ee.alex.bank.benchmark;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+import ee.alex.bank.model.Account;
+import ee.alex.bank.service.AccountStore;
+import ee.alex.bank.service.ColumnarAccountStore;
+import ee.alex.bank.service.ObjectAccountStore;
+import static ee.alex.bank.model.AccountType.CHECKING;
+import static ee.alex.bank.model.AccountType.SAVINGS;
+
+/**
+ * Compares heap footprint and collector time of the account stores.
+ * <p>
+ * Usage: {@code java -Xmx8g -cp target/benchmarks.jar ee.alex.bank.benchmark.AccountStoreFootprintTest
+ * [object|columnar|all] [accounts]}, for example {@code AccountStoreFootprintTest columnar 10000000};
+ * run one store per JVM for clean numbers. For every store it reports the heap retained by the
+ * accounts, and the time and count of collections while the accounts are added and while random
+ * deposits run against them.
+ *
+ * @author Aleksei Kulitškov
+ */
+public final class AccountStoreFootprintTest {
+
+  private static final int DEPOSITS = 20_000_000;
+
+  private AccountStoreFootprintTest() {
+  }
+
+  public static void main(String[] args) {
+    String store = args.length > 0 ? args[0] : "all";
+    int accounts = args.length > 1 ? Integer.parseInt(args[1]) : 5_000_000;
+
+    if (!"columnar".equals(store)) {
+      run("object", () -> new ObjectAccountStore(accounts), accounts);
+    }
+    if (!"object".equals(store)) {
+      run("columnar", () -> new ColumnarAccountStore(accounts), accounts);
+    }
+  }
+
+  private static void run(String name, Supplier<AccountStore> factory, int count) {
+    long heapBefore = usedHeapAfterGc();
+    CollectorStats fill = new CollectorStats();
+    AccountStore store = factory.get();
+    UUID[] accountIds = new UUID[count];
+    for (int i = 0; i < count; i++) {
+      accountIds[i] = UUID.randomUUID();
+      store.add(accountIds[i], i % 2 == 0 ? CHECKING : SAVINGS, "Owner " + i, 100_00, 500_00);
+    }
+    fill.stop();
+    // the id array is benchmark state, not part of the store
+    long retained = usedHeapAfterGc() - heapBefore - (long) count * (16 + 32);
+
+    CollectorStats deposits = new CollectorStats();
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    long started = System.nanoTime();
+    for (int i = 0; i < DEPOSITS; i++) {
+      Account account = store.get(accountIds[random.nextInt(count)]);
+      try {
+        account.deposit(1);
+      } catch (Exception e) {
+        throw new IllegalStateException(e);
+      }
+    }
+    long elapsed = System.nanoTime() - started;
+    deposits.stop();
+
+    System.out.printf("%-8s accounts=%d retained=%d MB (%d bytes/account)%n", name, count, retained >> 20, retained / count);
+    System.out.printf("%-8s fill: gc count=%d, gc time=%d ms%n", name, fill.count, fill.millis);
+    System.out.printf("%-8s %d deposits: %d ms, gc count=%d, gc time=%d ms%n", name, DEPOSITS, elapsed / 1_000_000,
+        deposits.count, deposits.millis);
+    if (store.size() != count) {
+      throw new IllegalStateException("Lost accounts");
+    }
+  }
+
+  private static long usedHeapAfterGc() {
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    Runtime runtime = Runtime.getRuntime();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  private static final class CollectorStats {
+
+    private final long startCount = totalCount();
+    private final long startMillis = totalMillis();
+    private long count;
+    private long millis;
+
+    void stop() {
+      count = totalCount() - startCount;
+      millis = totalMillis() - startMillis;
+    }
+
+    private static long totalCount() {
+      long total = 0;
+      for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+        total += Math.max(collector.getCollectionCount(), 0);
+      }
+      return total;
+    }
+
+    private static long totalMillis() {
+      long total = 0;
+      for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+        total += Math.max(collector.getCollectionTime(), 0);
+      }
+      return total;
+    }
+
+  }
+
+}
@@ -0,0 +1,60 @@
+package ee.alex.bank.benchmark;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import ee.alex.bank.exception.AccountErrorException;
+import ee.alex.bank.model.Account;
+
+/**
+ * Throughput of the single-account operations of {@link ee.alex.bank.service.BankService} on
+ * random accounts.
+ * <p>
+ * Withdrawals and transfers only debit checking accounts, whose limits are far beyond what a run
+ * can spend, so every operation succeeds.
+ *
+ * @author Aleksei Kulitškov
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class BankServiceBenchmark {
+
+  @Benchmark
+  public Account findAccount(BankState state) throws AccountErrorException {
+    return state.bank.find(state.anyAccount(ThreadLocalRandom.current()));
+  }
+
+  @Benchmark
+  public void depositMoney(BankState state) {
+    state.bank.depositMoney(state.anyAccount(ThreadLocalRandom.current()), 1_00);
+  }
+
+  @Benchmark
+  public void withdrawMoney(BankState state) {
+    state.bank.withdrawMoney(state.checkingAccount(ThreadLocalRandom.current()), 1_00);
+  }
+
+  @Benchmark
+  public void transferMoney(BankState state) {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    UUID from = state.checkingAccount(random);
+    UUID to = state.checkingAccount(random);
+    state.bank.transferMoney(from, to, 1_00);
+  }
+
+  @Benchmark
+  public String getAccountDetails(BankState state) {
+    return state.bank.getAccountDetails(state.anyAccount(ThreadLocalRandom.current()));
+  }
+
+}
@@ -0,0 +1,84 @@
+package ee.alex.bank.benchmark;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import ee.alex.bank.exception.AccountErrorException;
+import ee.alex.bank.model.Account;
+import ee.alex.bank.persistence.Journal;
+import ee.alex.bank.service.AccountStore;
+import ee.alex.bank.service.BankService;
+import ee.alex.bank.service.ColumnarAccountStore;
+import ee.alex.bank.service.ObjectAccountStore;
+
+/**
+ * A bank filled with accounts, shared by all benchmark threads of a trial.
+ * <p>
+ * Three of every four accounts are checking accounts with a limit no benchmark reaches; the rest
+ * are savings accounts. Every account starts with the same balance.
+ *
+ * @author Aleksei Kulitškov
+ */
+@State(Scope.Benchmark)
+public class BankState {
+
+  static final long OPENING_BALANCE = 1_000_00;
+  private static final long LIMIT = 1_000_000_000_00L;
+
+  @Param({"1000", "100000", "1000000", "10000000"})
+  public int accounts;
+
+  @Param({"object", "columnar"})
+  public String store;
+
+  Bank bank;
+  UUID[] accountIds;
+  UUID[] checkingAccountIds;
+
+  @Setup(Level.Trial)
+  public void createAccounts() {
+    bank = new Bank("columnar".equals(store) ? new ColumnarAccountStore(accounts) : new ObjectAccountStore(accounts));
+    accountIds = new UUID[accounts];
+    checkingAccountIds = new UUID[accounts - accounts / 4];
+    int checking = 0;
+    for (int i = 0; i < accounts; i++) {
+      UUID accountId;
+      if (i % 4 == 3) {
+        accountId = bank.createSavingsAccount("Owner " + i);
+      } else {
+        accountId = bank.createCheckingAccount("Owner " + i, LIMIT);
+        checkingAccountIds[checking++] = accountId;
+      }
+      bank.depositMoney(accountId, OPENING_BALANCE);
+      accountIds[i] = accountId;
+    }
+  }
+
+  UUID anyAccount(ThreadLocalRandom random) {
+    return accountIds[random.nextInt(accountIds.length)];
+  }
+
+  UUID checkingAccount(ThreadLocalRandom random) {
+    return checkingAccountIds[random.nextInt(checkingAccountIds.length)];
+  }
+
+  /**
+   * Opens up the account lookup for the lookup benchmark.
+   */
+  static class Bank extends BankService {
+
+    Bank(AccountStore store) {
+      super(Journal.NONE, store);
+    }
+
+    Account find(UUID accountId) throws AccountErrorException {
+      return findAccount(accountId);
+    }
+
+  }
+
+}
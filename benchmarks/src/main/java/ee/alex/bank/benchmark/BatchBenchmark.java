@@ -0,0 +1,96 @@
+package ee.alex.bank.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ee.alex.bank.service.BankService;
+import ee.alex.bank.service.Operation;
+import ee.alex.bank.service.OperationStatus;
+
+/**
+ * Deposits per second when submitted one call at a time and when submitted as one batch.
+ * <p>
+ * Both benchmarks make the same deposits to the same random accounts; with a journal, the batch
+ * waits for durability once instead of once per deposit.
+ *
+ * @author Aleksei Kulitškov
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BatchBenchmark {
+
+  private static final int ACCOUNTS = 100_000;
+  private static final int BATCH_SIZE = 256;
+  private static final int BATCHES = 1024;
+
+  private BankService bank;
+  private List<List<Operation>> batches;
+
+  @Setup(Level.Trial)
+  public void createAccounts(JournalState journalState) {
+    bank = new BankService(journalState.journal);
+    UUID[] accountIds = new UUID[ACCOUNTS];
+    for (int i = 0; i < ACCOUNTS; i++) {
+      accountIds[i] = bank.createSavingsAccount("Owner " + i);
+    }
+
+    // drawn up front, so drawing is not measured
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    batches = new ArrayList<>(BATCHES);
+    for (int b = 0; b < BATCHES; b++) {
+      List<Operation> batch = new ArrayList<>(BATCH_SIZE);
+      for (int i = 0; i < BATCH_SIZE; i++) {
+        batch.add(Operation.deposit(accountIds[random.nextInt(ACCOUNTS)], 1_00));
+      }
+      batches.add(batch);
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public void singleCalls(Cursor cursor) {
+    for (Operation deposit : batches.get(cursor.next())) {
+      bank.depositMoney(deposit.getAccountId(), deposit.getAmount());
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public OperationStatus[] submitBatch(Cursor cursor) {
+    return bank.submitBatch(batches.get(cursor.next()));
+  }
+
+  /**
+   * Position of a thread in the prepared batches.
+   */
+  @State(Scope.Thread)
+  public static class Cursor {
+
+    private int position;
+
+    int next() {
+      position = (position + 1) % BATCHES;
+      return position;
+    }
+
+  }
+
+}
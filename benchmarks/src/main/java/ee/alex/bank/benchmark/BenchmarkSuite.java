@@ -0,0 +1,53 @@
+package ee.alex.bank.benchmark;
+
+import java.io.File;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks once per thread count and writes one JSON report per run, named after the
+ * release, so that runs of two releases can be compared side by side.
+ * <p>
+ * Usage: {@code java -cp target/benchmarks.jar ee.alex.bank.benchmark.BenchmarkSuite <release>
+ * [threads,...] [benchmark regexp] [accounts,...]}, for example {@code BenchmarkSuite 1.1 1,4,16
+ * MixedWorkload 1000000}. Reports go to {@code reports/<release>-t<threads>.json}.
+ *
+ * @author Aleksei Kulitškov
+ */
+public final class BenchmarkSuite {
+
+  private BenchmarkSuite() {
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    if (args.length == 0) {
+      System.err.println("Usage: BenchmarkSuite <release> [threads,...] [benchmark regexp] [accounts,...]");
+      System.exit(1);
+    }
+    String release = args[0];
+    String[] threadCounts = (args.length > 1 ? args[1] : "1,4,16").split(",");
+    String include = args.length > 2 ? args[2] : ".*";
+
+    File reports = new File("reports");
+    if (!reports.isDirectory() && !reports.mkdirs()) {
+      throw new IllegalStateException("Cannot create " + reports.getAbsolutePath());
+    }
+
+    for (String threadCount : threadCounts) {
+      int threads = Integer.parseInt(threadCount.trim());
+      ChainedOptionsBuilder options = new OptionsBuilder()
+          .include(include)
+          .threads(threads)
+          .resultFormat(ResultFormatType.JSON)
+          .result(new File(reports, release + "-t" + threads + ".json").getPath());
+      if (args.length > 3) {
+        options.param("accounts", args[3].split(","));
+      }
+      new Runner(options.build()).run();
+    }
+  }
+
+}
@@ -0,0 +1,99 @@
+package ee.alex.bank.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ee.alex.bank.persistence.JournalListener;
+import ee.alex.bank.service.BankService;
+import ee.alex.bank.service.OperationStatus;
+import ee.alex.bank.stream.ChangeStream;
+
+/**
+ * Events published per second through a {@link ChangeStream}, and what the stream costs deposits.
+ * <p>
+ * {@code publish} hands records straight to the publisher of the stream, so it measures the ring
+ * alone; {@code deposit} goes through a bank that publishes to the stream, or to none at all with
+ * {@code subscribers=-1}, the baseline. Each subscriber reads the stream on its own thread.
+ * Subscribers never hold publishers back, so the loss each one saw is printed after the trial.
+ *
+ * @author Aleksei Kulitškov
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChangeStreamBenchmark {
+
+  private static final int ACCOUNTS = 100_000;
+
+  @Param({"-1", "0", "1", "2"})
+  public int subscribers;
+
+  @Param({"65536"})
+  public int capacity;
+
+  private ChangeStream stream;
+  private JournalListener publisher;
+  private BankService bank;
+  private UUID[] accountIds;
+  private final List<ChangeStream.Subscription> subscriptions = new ArrayList<>();
+
+  @Setup(Level.Trial)
+  public void createAccounts() {
+    stream = new ChangeStream(capacity);
+    publisher = stream.publisher();
+    bank = new BankService();
+    if (subscribers >= 0) {
+      bank.setChangeStream(stream);
+    }
+    accountIds = new UUID[ACCOUNTS];
+    for (int i = 0; i < ACCOUNTS; i++) {
+      accountIds[i] = bank.createCheckingAccount("Owner " + i, 1_000_000_000_00L);
+    }
+    for (int i = 0; i < subscribers; i++) {
+      long[] total = new long[1];
+      subscriptions.add(stream.subscribe((event, endOfBatch) -> total[0] += event.getAmount()));
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void closeSubscriptions() {
+    for (ChangeStream.Subscription subscription : subscriptions) {
+      subscription.close();
+      System.out.printf("%nsubscriber lost %d of %d events%n", subscription.getLost(), stream.getPublished());
+    }
+    subscriptions.clear();
+  }
+
+  @Benchmark
+  public void publish() {
+    publisher.deposited(0, anyAccount(ThreadLocalRandom.current()), 1_00);
+  }
+
+  @Benchmark
+  public OperationStatus deposit() {
+    return bank.depositMoney(anyAccount(ThreadLocalRandom.current()), 1_00);
+  }
+
+  private UUID anyAccount(ThreadLocalRandom random) {
+    return accountIds[random.nextInt(accountIds.length)];
+  }
+
+}
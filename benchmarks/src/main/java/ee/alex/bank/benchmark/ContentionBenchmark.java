@@ -0,0 +1,91 @@
+package ee.alex.bank.benchmark;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import ee.alex.bank.exception.AccountErrorException;
+import ee.alex.bank.model.Account;
+import ee.alex.bank.model.CheckingAccount;
+import ee.alex.bank.service.AccountLocks;
+
+/**
+ * Latency of deposits and withdrawals when many threads hit a few hot merchant accounts.
+ * <p>
+ * {@code cas} changes the balance cells directly, as a bank without a journal does; {@code lock}
+ * makes the same changes under the lock stripe of the account, as every change was made before the
+ * balances became lock-free. Run in sample mode, so the report has the percentiles of each.
+ *
+ * @author Aleksei Kulitškov
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(64)
+@State(Scope.Benchmark)
+public class ContentionBenchmark {
+
+  private static final long LIMIT = 1_000_000_000_00L;
+
+  @Param({"1", "4"})
+  public int hotAccounts;
+
+  @Param({"cas", "lock"})
+  public String balance;
+
+  private Account[] accounts;
+  private AccountLocks locks;
+  private boolean locking;
+
+  @Setup(Level.Trial)
+  public void createAccounts() {
+    accounts = new Account[hotAccounts];
+    for (int i = 0; i < hotAccounts; i++) {
+      accounts[i] = new CheckingAccount(UUID.randomUUID(), "Merchant " + i, LIMIT);
+    }
+    locks = new AccountLocks();
+    locking = "lock".equals(balance);
+  }
+
+  @Benchmark
+  public long payment() throws AccountErrorException {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    Account account = accounts[random.nextInt(hotAccounts)];
+    boolean deposit = random.nextBoolean();
+    if (!locking) {
+      return change(account, deposit);
+    }
+    Lock lock = locks.lockFor(account.getAccountId());
+    lock.lock();
+    try {
+      return change(account, deposit);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private static long change(Account account, boolean deposit) throws AccountErrorException {
+    if (deposit) {
+      account.deposit(1_00);
+    } else {
+      account.withdraw(1_00);
+    }
+    return account.getBalance();
+  }
+
+}
@@ -0,0 +1,110 @@
+package ee.alex.bank.benchmark;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import ee.alex.bank.persistence.DurabilityPolicy;
+import ee.alex.bank.persistence.FileJournal;
+import ee.alex.bank.persistence.Journal;
+import ee.alex.bank.service.BankFrontEnd;
+import ee.alex.bank.service.BankService;
+import ee.alex.bank.service.Operation;
+
+/**
+ * Load test of the {@link BankFrontEnd}: keeps a fixed number of random transfers in flight and
+ * reports throughput and latency percentiles, from submit to completion.
+ * <p>
+ * Usage: {@code java -cp target/benchmarks.jar ee.alex.bank.benchmark.FrontEndLoadTest [requests]
+ * [in flight] [accounts] [durability]}, for example {@code FrontEndLoadTest 2000000 200000 100000
+ * BATCHED}. Durability is {@code NONE} or a {@link DurabilityPolicy}; with a journal most requests
+ * in flight wait for a flush, which is where virtual threads pay off. Run it on JDK 21 or later to
+ * get virtual threads; older JDKs fall back to a pool of platform threads.
+ *
+ * @author Aleksei Kulitškov
+ */
+public final class FrontEndLoadTest {
+
+  private FrontEndLoadTest() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    int requests = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+    int inFlight = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+    int accountCount = args.length > 2 ? Integer.parseInt(args[2]) : 100_000;
+    String durability = args.length > 3 ? args[3] : "NONE";
+
+    Path directory = null;
+    Journal journal = Journal.NONE;
+    if (!"NONE".equals(durability)) {
+      directory = Files.createTempDirectory("bank-journal");
+      journal = FileJournal.open(directory.resolve("bank.journal"), DurabilityPolicy.valueOf(durability));
+    }
+
+    try {
+      BankService bank = new BankService(journal);
+      UUID[] accounts = new UUID[accountCount];
+      for (int i = 0; i < accountCount; i++) {
+        accounts[i] = bank.createCheckingAccount("Customer " + i, 0);
+        bank.depositMoney(accounts[i], 1_000_000_00L);
+      }
+
+      System.out.printf("%d requests, %d in flight, %d accounts, durability %s, %s threads%n", requests, inFlight,
+          accountCount, durability, BankFrontEnd.hasVirtualThreads() ? "virtual" : "platform");
+      run(bank, accounts, requests / 10, inFlight);
+      report(requests, run(bank, accounts, requests, inFlight));
+    } finally {
+      journal.close();
+      if (directory != null) {
+        Files.deleteIfExists(directory.resolve("bank.journal"));
+        Files.deleteIfExists(directory);
+      }
+    }
+  }
+
+  /**
+   * @return latency of every request in nanoseconds, followed by the elapsed time of the run
+   */
+  private static long[] run(BankService bank, UUID[] accounts, int requests, int inFlight)
+      throws InterruptedException {
+    long[] latencies = new long[requests + 1];
+    Semaphore permits = new Semaphore(inFlight);
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+
+    long start = System.nanoTime();
+    try (BankFrontEnd frontEnd = new BankFrontEnd(bank)) {
+      for (int i = 0; i < requests; i++) {
+        UUID from = accounts[random.nextInt(accounts.length)];
+        UUID to = accounts[random.nextInt(accounts.length)];
+        int request = i;
+        permits.acquire();
+        long submitted = System.nanoTime();
+        frontEnd.submit(Operation.transfer(from, to, 1_00)).whenComplete((status, e) -> {
+          latencies[request] = System.nanoTime() - submitted;
+          permits.release();
+        });
+      }
+    }
+    latencies[requests] = System.nanoTime() - start;
+
+    return latencies;
+  }
+
+  private static void report(int requests, long[] latencies) {
+    long elapsed = latencies[requests];
+    long[] sorted = Arrays.copyOf(latencies, requests);
+    Arrays.sort(sorted);
+
+    System.out.printf("throughput %.0f ops/s%n", requests * 1e9 / elapsed);
+    System.out.printf("latency us: p50 %.1f, p90 %.1f, p99 %.1f, p99.9 %.1f, max %.1f%n",
+        percentile(sorted, 0.5), percentile(sorted, 0.9), percentile(sorted, 0.99), percentile(sorted, 0.999),
+        sorted[requests - 1] / 1e3);
+  }
+
+  private static double percentile(long[] sorted, double quantile) {
+    return sorted[(int) Math.min(sorted.length - 1, (long) (sorted.length * quantile))] / 1e3;
+  }
+
+}
@@ -0,0 +1,71 @@
+package ee.alex.bank.benchmark;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ee.alex.bank.service.BankService;
+import ee.alex.bank.service.OperationStatus;
+
+/**
+ * Deposit throughput on a single settlement account, with and without striped deposit cells.
+ * <p>
+ * Run it once per thread count ({@code -t 1}, {@code -t 2}, ...) to see how deposits scale with
+ * cores. {@code depositAndWithdraw} withdraws every tenth operation, so the cells are folded too.
+ *
+ * @author Aleksei Kulitškov
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HotDepositBenchmark {
+
+  @Param({"false", "true"})
+  public boolean hot;
+
+  private BankService bank;
+  private UUID accountId;
+
+  @Setup(Level.Trial)
+  public void createAccount() {
+    bank = new BankService();
+    accountId = bank.createCheckingAccount("Settlement", 1_000_000_000_00L);
+    if (hot) {
+      bank.enableHotDeposits(accountId);
+    }
+  }
+
+  @Benchmark
+  public OperationStatus deposit() {
+    return bank.depositMoney(accountId, 1_00);
+  }
+
+  @Benchmark
+  public OperationStatus depositAndWithdraw(Counter counter) {
+    if (++counter.operations % 10 == 0) {
+      return bank.withdrawMoney(accountId, 1_00);
+    }
+    return bank.depositMoney(accountId, 1_00);
+  }
+
+  @State(Scope.Thread)
+  public static class Counter {
+
+    int operations;
+
+  }
+
+}
@@ -0,0 +1,77 @@
+package ee.alex.bank.benchmark;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ee.alex.bank.service.BankService;
+import ee.alex.bank.service.IdempotencyCache;
+import ee.alex.bank.service.OperationStatus;
+
+/**
+ * Cost of idempotency keys on deposits: {@code keys=off} deposits without a key, {@code fresh}
+ * with a new key every time, which fills the cache and evicts from it, and {@code retried} with
+ * keys already answered, which returns from the cache. The {@code capacity} of the cache decides
+ * how much of it fits in the processor caches.
+ *
+ * @author Aleksei Kulitškov
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IdempotencyBenchmark {
+
+  private static final int ACCOUNTS = 100_000;
+  @Param({"off", "fresh", "retried"})
+  public String keys;
+
+  @Param({"65536", "1048576"})
+  public int capacity;
+
+  private BankService bank;
+  private UUID[] accountIds;
+  private UUID[] answeredIds;
+
+  @Setup(Level.Trial)
+  public void createAccounts() {
+    bank = new BankService();
+    bank.setIdempotencyCache(new IdempotencyCache(capacity, Duration.ofHours(1)));
+    accountIds = new UUID[ACCOUNTS];
+    answeredIds = new UUID[ACCOUNTS];
+    for (int i = 0; i < ACCOUNTS; i++) {
+      accountIds[i] = bank.createCheckingAccount("Owner " + i, 1_000_000_000_00L);
+      answeredIds[i] = new UUID(i, i);
+      bank.depositMoney(answeredIds[i], accountIds[i], 1_000_00);
+    }
+  }
+
+  @Benchmark
+  public OperationStatus deposit() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int account = random.nextInt(ACCOUNTS);
+    if ("fresh".equals(keys)) {
+      // random keys, as clients would make them, without the cost of SecureRandom
+      return bank.depositMoney(new UUID(random.nextLong(), random.nextLong()), accountIds[account], 1_00);
+    }
+    if ("retried".equals(keys)) {
+      return bank.depositMoney(answeredIds[account], accountIds[account], 1_00);
+    }
+    return bank.depositMoney(accountIds[account], 1_00);
+  }
+
+}
@@ -0,0 +1,88 @@
+package ee.alex.bank.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import ee.alex.bank.model.AccountIdGenerator;
+import ee.alex.bank.model.AccountType;
+import ee.alex.bank.persistence.Journal;
+import ee.alex.bank.service.AccountImporter;
+import ee.alex.bank.service.BankService;
+import ee.alex.bank.service.ColumnarAccountStore;
+import ee.alex.bank.service.ImportReport;
+import ee.alex.bank.service.ObjectAccountStore;
+
+/**
+ * Load test of the {@link AccountImporter}: writes a file of accounts, imports it into an empty
+ * bank, printing progress every second, and then reports the throughput.
+ * <p>
+ * Usage: {@code java -cp target/benchmarks.jar ee.alex.bank.benchmark.ImportLoadTest [accounts]
+ * [csv|binary] [object|columnar] [workers]}, for example {@code ImportLoadTest 20000000 binary
+ * columnar 4}. For comparison it also opens a tenth of the accounts one by one with
+ * {@link BankService#createCheckingAccount(String, long)} and a deposit. Both number accounts with
+ * {@link AccountIdGenerator#RANDOM}, so neither waits on the shared secure generator.
+ *
+ * @author Aleksei Kulitškov
+ */
+public final class ImportLoadTest {
+
+  private ImportLoadTest() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+    String format = args.length > 1 ? args[1] : "binary";
+    String store = args.length > 2 ? args[2] : "object";
+    int workers = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+    Path file = Files.createTempFile("accounts", "." + format);
+    try {
+      write(file, format, accounts);
+      System.out.printf("%d accounts, %s file of %d MB, %s store, %d workers%n", accounts, format,
+          Files.size(file) >> 20, store, workers);
+
+      BankService bank = new BankService(Journal.NONE,
+          "columnar".equals(store) ? new ColumnarAccountStore() : new ObjectAccountStore());
+      AccountImporter importer = new AccountImporter(bank, workers, AccountIdGenerator.RANDOM, System.out::println,
+          1_000);
+      ImportReport report = "csv".equals(format) ? importer.importCsv(file) : importer.importBinary(file);
+      System.out.printf("import: %.0f accounts/s, %d rejected%n", report.getThroughput(), report.getRejected());
+
+      BankService oneByOne = new BankService(Journal.NONE,
+          "columnar".equals(store) ? new ColumnarAccountStore() : new ObjectAccountStore());
+      oneByOne.setAccountIdGenerator(AccountIdGenerator.RANDOM);
+      long start = System.nanoTime();
+      for (int i = 0; i < accounts / 10; i++) {
+        oneByOne.depositMoney(oneByOne.createCheckingAccount("Customer " + i, 1_000_00), 1_00);
+      }
+      System.out.printf("one by one: %.0f accounts/s%n", accounts / 10 * 1e9 / (System.nanoTime() - start));
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  private static void write(Path file, String format, int accounts) throws Exception {
+    if ("csv".equals(format)) {
+      try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+        writer.write("owner,type,limit,balance\n");
+        for (int i = 0; i < accounts; i++) {
+          writer.write(i % 4 == 0 ? "Customer " + i + ",SAVINGS,0,1000\n" : "Customer " + i + ",CHECKING,100000,100\n");
+        }
+      }
+      return;
+    }
+    try (OutputStream out = Files.newOutputStream(file);
+        AccountImporter.BinaryWriter writer = new AccountImporter.BinaryWriter(out)) {
+      for (int i = 0; i < accounts; i++) {
+        if (i % 4 == 0) {
+          writer.write(AccountType.SAVINGS, "Customer " + i, 0, 1000);
+        } else {
+          writer.write(AccountType.CHECKING, "Customer " + i, 100000, 100);
+        }
+      }
+    }
+  }
+
+}
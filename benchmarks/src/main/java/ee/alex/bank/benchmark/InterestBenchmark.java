@@ -0,0 +1,41 @@
+package ee.alex.bank.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ee.alex.bank.service.InterestReport;
+
+/**
+ * Time of one interest run over all savings accounts of the bank.
+ *
+ * @author Aleksei Kulitškov
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class InterestBenchmark {
+
+  @Setup(Level.Trial)
+  public void lowerInterestRate(BankState state) {
+    // balances grow with every run; keep them far from overflow however many runs fit an iteration
+    state.bank.updateInterestRate(0.0001);
+  }
+
+  @Benchmark
+  public InterestReport provideInterestToAllUsers(BankState state) {
+    return state.bank.provideInterestToAllUsers();
+  }
+
+}
@@ -0,0 +1,36 @@
+package ee.alex.bank.benchmark;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of durable journal appends under each durability policy.
+ * <p>
+ * Every operation appends one record and waits until it is durable, as a service call does. With
+ * one thread every policy forces once per record; run with more threads ({@code -t 8}) to see
+ * group commit share a force between waiting callers.
+ *
+ * @author Aleksei Kulitškov
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class JournalBenchmark {
+
+  private static final UUID ACCOUNT = UUID.fromString("a2d10319-a240-4b29-bcd9-b2a546472747");
+
+  @Benchmark
+  public void appendDurably(JournalState state) {
+    state.journal.awaitDurable(state.journal.appendDeposited(ACCOUNT, 1_00));
+  }
+
+}
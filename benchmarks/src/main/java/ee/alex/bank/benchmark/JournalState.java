@@ -0,0 +1,52 @@
+package ee.alex.bank.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import ee.alex.bank.persistence.DurabilityPolicy;
+import ee.alex.bank.persistence.FileJournal;
+import ee.alex.bank.persistence.Journal;
+
+/**
+ * A journal in a fresh temporary directory, or no journal at all.
+ * <p>
+ * The directory is created under {@code java.io.tmpdir}; point it at the disk to measure with
+ * {@code -jvmArgsAppend -Djava.io.tmpdir=...}.
+ *
+ * @author Aleksei Kulitškov
+ */
+@State(Scope.Benchmark)
+public class JournalState {
+
+  @Param({"NONE", "PER_OPERATION", "BATCHED", "ASYNC"})
+  public String durability;
+
+  Journal journal;
+  private Path directory;
+
+  @Setup(Level.Trial)
+  public void openJournal() throws IOException {
+    if ("NONE".equals(durability)) {
+      journal = Journal.NONE;
+      return;
+    }
+    directory = Files.createTempDirectory("bank-journal");
+    journal = FileJournal.open(directory.resolve("bank.journal"), DurabilityPolicy.valueOf(durability));
+  }
+
+  @TearDown(Level.Trial)
+  public void deleteJournal() throws IOException {
+    journal.close();
+    if (directory != null) {
+      Files.deleteIfExists(directory.resolve("bank.journal"));
+      Files.deleteIfExists(directory);
+    }
+  }
+
+}
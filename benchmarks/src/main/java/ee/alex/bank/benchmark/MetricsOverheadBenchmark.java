@@ -0,0 +1,76 @@
+package ee.alex.bank.benchmark;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ee.alex.bank.service.BankMetrics;
+import ee.alex.bank.service.BankService;
+import ee.alex.bank.service.OperationStatus;
+
+/**
+ * Cost of metrics on the cheapest operations, which is where it shows most.
+ * <p>
+ * {@code metrics=off} is the default bank, {@code all} times every operation and {@code sampled}
+ * times one in sixteen, the default; every operation is counted in both.
+ *
+ * @author Aleksei Kulitškov
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetricsOverheadBenchmark {
+
+  private static final int ACCOUNTS = 100_000;
+
+  @Param({"off", "all", "sampled"})
+  public String metrics;
+
+  private BankService bank;
+  private UUID[] accountIds;
+
+  @Setup(Level.Trial)
+  public void createAccounts() {
+    bank = new BankService();
+    if ("all".equals(metrics)) {
+      bank.setMetrics(new BankMetrics(1));
+    } else if ("sampled".equals(metrics)) {
+      bank.setMetrics(new BankMetrics());
+    }
+    accountIds = new UUID[ACCOUNTS];
+    for (int i = 0; i < ACCOUNTS; i++) {
+      accountIds[i] = bank.createCheckingAccount("Owner " + i, 1_000_000_000_00L);
+      bank.depositMoney(accountIds[i], 1_000_00);
+    }
+  }
+
+  @Benchmark
+  public OperationStatus deposit() {
+    return bank.depositMoney(anyAccount(ThreadLocalRandom.current()), 1_00);
+  }
+
+  @Benchmark
+  public OperationStatus transfer() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    return bank.transferMoney(anyAccount(random), anyAccount(random), 1_00);
+  }
+
+  private UUID anyAccount(ThreadLocalRandom random) {
+    return accountIds[random.nextInt(accountIds.length)];
+  }
+
+}
@@ -0,0 +1,67 @@
+package ee.alex.bank.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Throughput of a mix of operations, drawn at random per operation.
+ * <p>
+ * The mix is given as percentages of transfers, deposits and account reads, for example
+ * {@code 70/20/10}. Run it with several {@code -t} values to see how the mix scales with threads.
+ *
+ * @author Aleksei Kulitškov
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class MixedWorkloadBenchmark {
+
+  @Param({"70/20/10", "20/20/60"})
+  public String mix;
+
+  private int transferBound;
+  private int depositBound;
+
+  @Setup(Level.Trial)
+  public void parseMix() {
+    String[] percentages = mix.split("/");
+    int transfers = Integer.parseInt(percentages[0]);
+    int deposits = Integer.parseInt(percentages[1]);
+    int reads = Integer.parseInt(percentages[2]);
+    if (transfers + deposits + reads != 100) {
+      throw new IllegalArgumentException("Mix must add up to 100: " + mix);
+    }
+    transferBound = transfers;
+    depositBound = transfers + deposits;
+  }
+
+  @Benchmark
+  public void mixed(BankState state, Blackhole blackhole) {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int draw = random.nextInt(100);
+    if (draw < transferBound) {
+      state.bank.transferMoney(state.checkingAccount(random), state.checkingAccount(random), 1_00);
+    } else if (draw < depositBound) {
+      state.bank.depositMoney(state.anyAccount(random), 1_00);
+    } else {
+      blackhole.consume(state.bank.getAccountDetails(state.anyAccount(random)));
+    }
+  }
+
+}
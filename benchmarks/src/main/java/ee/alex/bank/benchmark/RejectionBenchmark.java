@@ -0,0 +1,75 @@
+package ee.alex.bank.benchmark;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ee.alex.bank.exception.AccountErrorException;
+import ee.alex.bank.service.BankService;
+import ee.alex.bank.service.OperationStatus;
+
+/**
+ * Cost of rejected operations with and without stack traces on account exceptions.
+ * <p>
+ * {@code rejectedWithdrawal} only takes the rejection path; {@code withdrawalsWithRejections}
+ * rejects the given share of withdrawals, as during a burst of declined payments.
+ *
+ * @author Aleksei Kulitškov
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RejectionBenchmark {
+
+  private static final int ACCOUNTS = 10_000;
+
+  @Param({"true", "false"})
+  public boolean stackTraces;
+
+  @Param({"30"})
+  public int rejectedPercent;
+
+  private BankService bank;
+  private UUID[] emptyAccountIds;
+  private UUID[] fundedAccountIds;
+
+  @Setup(Level.Trial)
+  public void createAccounts() {
+    AccountErrorException.setStackTraces(stackTraces);
+
+    bank = new BankService();
+    emptyAccountIds = new UUID[ACCOUNTS];
+    fundedAccountIds = new UUID[ACCOUNTS];
+    for (int i = 0; i < ACCOUNTS; i++) {
+      emptyAccountIds[i] = bank.createSavingsAccount("Owner " + i);
+      fundedAccountIds[i] = bank.createCheckingAccount("Owner " + i, 1_000_000_000_00L);
+    }
+  }
+
+  @Benchmark
+  public OperationStatus rejectedWithdrawal() {
+    return bank.withdrawMoney(emptyAccountIds[ThreadLocalRandom.current().nextInt(ACCOUNTS)], 1_00);
+  }
+
+  @Benchmark
+  public OperationStatus withdrawalsWithRejections() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    UUID[] accountIds = random.nextInt(100) < rejectedPercent ? emptyAccountIds : fundedAccountIds;
+    return bank.withdrawMoney(accountIds[random.nextInt(ACCOUNTS)], 1_00);
+  }
+
+}
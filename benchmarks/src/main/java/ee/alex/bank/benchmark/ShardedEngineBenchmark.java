@@ -0,0 +1,94 @@
+package ee.alex.bank.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ee.alex.bank.service.BankService;
+import ee.alex.bank.service.ObjectAccountStore;
+import ee.alex.bank.service.Operation;
+import ee.alex.bank.service.OperationStatus;
+
+/**
+ * Throughput of accounts guarded by lock stripes against accounts owned by single-threaded shards,
+ * one shard per core.
+ * <p>
+ * Single operations make the caller wait for its shard every time; batches hand a hundred
+ * operations to the shards at once. Run it with several {@code -t} values to see how both scale.
+ *
+ * @author Aleksei Kulitškov
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ShardedEngineBenchmark {
+
+  private static final int ACCOUNTS = 100_000;
+  private static final int BATCH_SIZE = 100;
+
+  @Param({"locks", "sharded"})
+  public String engine;
+
+  private BankService bank;
+  private UUID[] accountIds;
+
+  @Setup(Level.Trial)
+  public void createAccounts() {
+    bank = "sharded".equals(engine)
+        ? new BankService(new ObjectAccountStore(ACCOUNTS), Runtime.getRuntime().availableProcessors())
+        : new BankService();
+    accountIds = new UUID[ACCOUNTS];
+    for (int i = 0; i < ACCOUNTS; i++) {
+      accountIds[i] = bank.createCheckingAccount("Owner " + i, 1_000_000_000_00L);
+      bank.depositMoney(accountIds[i], 1_000_00);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void stopShards() {
+    bank.close();
+  }
+
+  @Benchmark
+  public OperationStatus deposit() {
+    return bank.depositMoney(anyAccount(ThreadLocalRandom.current()), 1_00);
+  }
+
+  @Benchmark
+  public OperationStatus transfer() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    return bank.transferMoney(anyAccount(random), anyAccount(random), 1_00);
+  }
+
+  @Benchmark
+  public OperationStatus[] transferBatch() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    List<Operation> operations = new ArrayList<>(BATCH_SIZE);
+    for (int i = 0; i < BATCH_SIZE; i++) {
+      operations.add(Operation.transfer(anyAccount(random), anyAccount(random), 1_00));
+    }
+    return bank.submitBatch(operations);
+  }
+
+  private UUID anyAccount(ThreadLocalRandom random) {
+    return accountIds[random.nextInt(accountIds.length)];
+  }
+
+}
@@ -0,0 +1,125 @@
+package ee.alex.bank.benchmark;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import ee.alex.bank.net.BankClient;
+import ee.alex.bank.net.BankServer;
+import ee.alex.bank.service.BankService;
+import ee.alex.bank.service.LatencyHistogram;
+
+/**
+ * Load generator for the {@link BankServer}: opens a number of connections over loopback, keeps a
+ * fixed number of random transfers in flight on each and reports throughput and latency
+ * percentiles, from the request being written to its response being read.
+ * <p>
+ * Usage: {@code java -cp target/benchmarks.jar ee.alex.bank.benchmark.WireLoadTest [requests]
+ * [connections] [in flight per connection] [accounts] [event loops]}, for example
+ * {@code WireLoadTest 5000000 4 256 100000 2}. The server runs in the same process, on an
+ * in-memory bank.
+ *
+ * @author Aleksei Kulitškov
+ */
+public final class WireLoadTest {
+
+  private WireLoadTest() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    int requests = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+    int connections = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+    int inFlight = args.length > 2 ? Integer.parseInt(args[2]) : 256;
+    int accountCount = args.length > 3 ? Integer.parseInt(args[3]) : 100_000;
+    int eventLoops = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+
+    BankService bank = new BankService();
+    UUID[] accounts = new UUID[accountCount];
+    for (int i = 0; i < accountCount; i++) {
+      accounts[i] = bank.createCheckingAccount("Customer " + i, 0);
+      bank.depositMoney(accounts[i], 1_000_000_00L);
+    }
+
+    try (BankServer server = BankServer.start(bank, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+        eventLoops)) {
+      System.out.printf("%d requests, %d connections, %d in flight each, %d accounts, %d event loops%n", requests,
+          connections, inFlight, accountCount, eventLoops);
+      run(server.getAddress(), accounts, requests / 10, connections, inFlight);
+      LatencyHistogram latencies = new LatencyHistogram();
+      long elapsed = run(server.getAddress(), accounts, requests, connections, inFlight, latencies);
+      report(requests, elapsed, latencies.snapshot());
+    }
+  }
+
+  private static void run(InetSocketAddress address, UUID[] accounts, int requests, int connections, int inFlight)
+      throws Exception {
+    run(address, accounts, requests, connections, inFlight, new LatencyHistogram());
+  }
+
+  /**
+   * @return elapsed time of the run in nanoseconds
+   */
+  private static long run(InetSocketAddress address, UUID[] accounts, int requests, int connections, int inFlight,
+      LatencyHistogram latencies) throws Exception {
+    List<Thread> threads = new ArrayList<>();
+    List<Exception> failures = new ArrayList<>();
+    long start = System.nanoTime();
+    for (int c = 0; c < connections; c++) {
+      int share = requests / connections + (c < requests % connections ? 1 : 0);
+      Thread thread = new Thread(() -> {
+        try {
+          drive(address, accounts, share, inFlight, latencies);
+        } catch (IOException e) {
+          synchronized (failures) {
+            failures.add(e);
+          }
+        }
+      }, "wire-load-" + c);
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    long elapsed = System.nanoTime() - start;
+    if (!failures.isEmpty()) {
+      throw failures.get(0);
+    }
+    return elapsed;
+  }
+
+  /**
+   * Sends the requests over one connection, topping the requests in flight up after every batch
+   * of responses.
+   */
+  private static void drive(InetSocketAddress address, UUID[] accounts, int requests, int inFlight,
+      LatencyHistogram latencies) throws IOException {
+    long[] sentAt = new long[inFlight];
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    try (BankClient client = BankClient.connect(address)) {
+      int sent = 0;
+      while (sent < requests || client.getInFlight() > 0) {
+        while (sent < requests && client.getInFlight() < inFlight) {
+          UUID from = accounts[random.nextInt(accounts.length)];
+          UUID to = accounts[random.nextInt(accounts.length)];
+          sentAt[sent % inFlight] = System.nanoTime();
+          client.transfer(sent, from, to, 1_00);
+          sent++;
+        }
+        client.receive((tag, status, accountId) -> latencies.record(System.nanoTime() - sentAt[tag % inFlight]));
+      }
+    }
+  }
+
+  private static void report(int requests, long elapsed, LatencyHistogram.Snapshot latencies) {
+    System.out.printf("throughput %.0f ops/s%n", requests * 1e9 / elapsed);
+    System.out.printf("latency us: p50 %.1f, p90 %.1f, p99 %.1f, p99.9 %.1f, max %.1f%n",
+        latencies.getValueAtPercentile(50) / 1e3, latencies.getValueAtPercentile(90) / 1e3,
+        latencies.getValueAtPercentile(99) / 1e3, latencies.getValueAtPercentile(99.9) / 1e3,
+        latencies.getMax() / 1e3);
+  }
+
+}
@@ -2,6 +2,7 @@ package ee.alex.bank;
 
 import java.util.UUID;
 import ee.alex.bank.service.BankService;
+import ee.alex.bank.service.ConsoleOperationLog;
 
 /**
  * @author Aleksei Kulitškov
@@ -10,44 +11,45 @@ public class Bank {
 
   public static void main(String[] args) {
     BankService bankService = new BankService();
+    bankService.setOperationLog(new ConsoleOperationLog());
 
     UUID savingsAccountNumber1 = bankService.createSavingsAccount("Peter Parker");
     UUID savingsAccountNumber2 = bankService.createSavingsAccount("Rick Grimes");
 
-    UUID checkingAccountNumber1 = bankService.createCheckingAccount("Peter Parker", 500.0);
-    UUID checkingAccountNumber2 = bankService.createCheckingAccount("Rick Grimes", 120.0);
+    UUID checkingAccountNumber1 = bankService.createCheckingAccount("Peter Parker", 500_00);
+    UUID checkingAccountNumber2 = bankService.createCheckingAccount("Rick Grimes", 120_00);
 
     // Testing checking accounts
     System.out.println("=== CHECKING ACCOUNTS ===");
-    bankService.depositMoney(checkingAccountNumber1, 100.0);
+    bankService.depositMoney(checkingAccountNumber1, 100_00);
     bankService.getAccountDetails(checkingAccountNumber1);
 
-    bankService.withdrawMoney(checkingAccountNumber1, 100.0);
+    bankService.withdrawMoney(checkingAccountNumber1, 100_00);
     bankService.getAccountDetails(checkingAccountNumber1);
 
-    bankService.transferMoney(checkingAccountNumber1, savingsAccountNumber2, 100.0);
+    bankService.transferMoney(checkingAccountNumber1, savingsAccountNumber2, 100_00);
     bankService.getAccountDetails(checkingAccountNumber1);
     bankService.getAccountDetails(savingsAccountNumber2);
 
-    bankService.changeCheckingAccountLimit(checkingAccountNumber2, 200.0);
+    bankService.changeCheckingAccountLimit(checkingAccountNumber2, 200_00);
     bankService.getAccountDetails(checkingAccountNumber2);
 
     // Errors
-    bankService.withdrawMoney(checkingAccountNumber1, 1000.0);
-    bankService.withdrawMoney(checkingAccountNumber1, 0.0);
-    bankService.withdrawMoney(checkingAccountNumber1, -1000.0);
+    bankService.withdrawMoney(checkingAccountNumber1, 1000_00);
+    bankService.withdrawMoney(checkingAccountNumber1, 0);
+    bankService.withdrawMoney(checkingAccountNumber1, -1000_00);
 
-    bankService.depositMoney(checkingAccountNumber1, 0.0);
-    bankService.depositMoney(checkingAccountNumber1, -1000.0);
+    bankService.depositMoney(checkingAccountNumber1, 0);
+    bankService.depositMoney(checkingAccountNumber1, -1000_00);
 
-    bankService.transferMoney(savingsAccountNumber2, savingsAccountNumber1, 1000.0);
+    bankService.transferMoney(savingsAccountNumber2, savingsAccountNumber1, 1000_00);
 
     // Testing savings accounts
     System.out.println("=== SAVINGS ACCOUNTS ===");
-    bankService.depositMoney(savingsAccountNumber1, 200.0);
+    bankService.depositMoney(savingsAccountNumber1, 200_00);
     bankService.getAccountDetails(savingsAccountNumber1);
 
-    bankService.withdrawMoney(savingsAccountNumber1, 100.0);
+    bankService.withdrawMoney(savingsAccountNumber1, 100_00);
     bankService.getAccountDetails(savingsAccountNumber1);
 
     bankService.provideInterestToAllUsers();
@@ -60,12 +62,12 @@ public class Bank {
     bankService.getAccountDetails(savingsAccountNumber2);
 
     // Errors
-    bankService.withdrawMoney(savingsAccountNumber2, 1000.0);
-    bankService.withdrawMoney(savingsAccountNumber2, 0.0);
-    bankService.withdrawMoney(savingsAccountNumber2, -1000.0);
+    bankService.withdrawMoney(savingsAccountNumber2, 1000_00);
+    bankService.withdrawMoney(savingsAccountNumber2, 0);
+    bankService.withdrawMoney(savingsAccountNumber2, -1000_00);
 
-    bankService.depositMoney(savingsAccountNumber2, 0.0);
-    bankService.depositMoney(savingsAccountNumber2, -1000.0);
+    bankService.depositMoney(savingsAccountNumber2, 0);
+    bankService.depositMoney(savingsAccountNumber2, -1000_00);
   }
 
 }
@@ -1,14 +1,40 @@
 package ee.alex.bank.exception;
 
 /**
+ * Rejection of an operation on an account.
+ * <p>
+ * Rejections are part of normal traffic and are reported as statuses, so their stack traces are
+ * rarely read. Filling in the stack trace is by far the most expensive part of creating one, and
+ * can be turned off for all account exceptions, either with
+ * {@code -Dee.alex.bank.stacklessExceptions=true} or with {@link #setStackTraces(boolean)}.
+ * Exceptions created without a stack trace have an empty one and do not record suppressed
+ * exceptions.
+ *
  * @author Aleksei Kulitškov
  */
 public class AccountErrorException extends Exception {
 
   private static final long serialVersionUID = 9207900019763116146L;
 
+  private static volatile boolean stackTraces = !Boolean.getBoolean("ee.alex.bank.stacklessExceptions");
+
   public AccountErrorException(String message) {
-    super(message);
+    this(message, stackTraces);
+  }
+
+  protected AccountErrorException(String message, boolean writableStackTrace) {
+    super(message, null, writableStackTrace, writableStackTrace);
+  }
+
+  public static boolean isStackTraces() {
+    return stackTraces;
+  }
+
+  /**
+   * Whether account exceptions created from now on fill in their stack trace.
+   */
+  public static void setStackTraces(boolean stackTraces) {
+    AccountErrorException.stackTraces = stackTraces;
   }
 
 }
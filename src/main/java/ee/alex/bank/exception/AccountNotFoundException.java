@@ -0,0 +1,14 @@
+package ee.alex.bank.exception;
+
+/**
+ * @author Aleksei Kulitškov
+ */
+public class AccountNotFoundException extends AccountErrorException {
+
+  private static String ERROR_MESSAGE = "Invalid account number";
+
+  public AccountNotFoundException() {
+    super(ERROR_MESSAGE);
+  }
+
+}
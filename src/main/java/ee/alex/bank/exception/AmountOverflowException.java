@@ -0,0 +1,14 @@
+package ee.alex.bank.exception;
+
+/**
+ * @author Aleksei Kulitškov
+ */
+public class AmountOverflowException extends AccountErrorException {
+
+  private static String ERROR_MESSAGE = "Money amount is out of range";
+
+  public AmountOverflowException() {
+    super(ERROR_MESSAGE);
+  }
+
+}
@@ -0,0 +1,14 @@
+package ee.alex.bank.exception;
+
+/**
+ * @author Aleksei Kulitškov
+ */
+public class WrongAccountTypeException extends AccountErrorException {
+
+  private static String ERROR_MESSAGE = "Wrong account type";
+
+  public WrongAccountTypeException() {
+    super(ERROR_MESSAGE);
+  }
+
+}
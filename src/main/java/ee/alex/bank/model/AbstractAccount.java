@@ -1,50 +1,118 @@
 package ee.alex.bank.model;
 
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
 import ee.alex.bank.exception.AccountErrorException;
+import ee.alex.bank.exception.AmountOverflowException;
 import ee.alex.bank.exception.InvalidAmountException;
 
 /**
+ * Base of the account objects.
+ * <p>
+ * The balance is a lock-free cell: every change reads the balance, applies the rule of the account
+ * to it and publishes the result with a compare-and-set, retrying if another change got there
+ * first. A rule check and its update are therefore one atomic step, and a deposit or withdrawal
+ * never blocks, however many threads work on the same account.
+ * <p>
+ * A hot account also keeps striped deposit cells next to the cell: deposits only add to a cell of
+ * their own thread and never meet on one balance. The balance is the cell plus the deposit cells.
+ * Deposit cells never shrink, so a debit checked against the balance it read stays valid while
+ * deposits keep arriving; it is applied to the cell only.
+ *
  * @author Aleksei Kulitškov
  */
 abstract class AbstractAccount implements Account {
 
+  private static final AtomicLongFieldUpdater<AbstractAccount> BALANCE =
+      AtomicLongFieldUpdater.newUpdater(AbstractAccount.class, "balance");
+
   private UUID accountId;
   private String owner;
-  private double balance;
+  private volatile long balance;
+  private volatile long version;
+  private volatile LongAdder deposits;
 
   AbstractAccount(String owner) {
-    this.accountId = UUID.randomUUID();
+    this(AccountIdGenerator.SECURE_RANDOM.next(), owner);
+  }
+
+  AbstractAccount(UUID accountId, String owner) {
+    this.accountId = accountId;
     this.owner = owner;
-    this.balance = 0.0;
+    this.balance = 0;
   }
 
   public UUID getAccountId() {
     return accountId;
   }
 
-  public double getBalance() {
-    return balance;
+  public long getBalance() {
+    LongAdder deposits = this.deposits;
+    return deposits == null ? balance : balance + deposits.sum();
   }
 
   public String getOwner() {
     return owner;
   }
 
-  public void setBalance(double balance) {
-    this.balance = balance;
+  public void setBalance(long balance) {
+    LongAdder deposits = this.deposits;
+    this.balance = deposits == null ? balance : balance - deposits.sum();
+  }
+
+  public long getVersion() {
+    return version;
+  }
+
+  public void setVersion(long version) {
+    this.version = version;
   }
 
   public abstract AccountType getType();
 
-  public abstract void withdraw(double amount) throws AccountErrorException;
+  public abstract void withdraw(long amount) throws AccountErrorException;
 
-  public void deposit(double amount) throws InvalidAmountException {
-    if (amount <= 0) {
-      throw new InvalidAmountException();
+  public void deposit(long amount) throws InvalidAmountException, AmountOverflowException {
+    LongAdder deposits = this.deposits;
+    if (deposits != null) {
+      // folding the cells here would make every deposit read them all; overflow is checked on the cell
+      AccountRules.credit(this.balance, amount);
+      deposits.add(amount);
+      return;
     }
+    long current;
+    do {
+      current = this.balance;
+    } while (!compareAndSetBalance(current, AccountRules.credit(current, amount)));
+  }
 
-    this.balance += amount;
+  public boolean enableHotDeposits() {
+    if (deposits == null) {
+      synchronized (this) {
+        if (deposits == null) {
+          deposits = new LongAdder();
+        }
+      }
+    }
+    return true;
+  }
+
+  public boolean isHotDeposits() {
+    return deposits != null;
+  }
+
+  /**
+   * Changes the balance by {@code balance - expected}, if the balance is still {@code expected} or,
+   * on a hot account, at least {@code expected}.
+   */
+  boolean compareAndSetBalance(long expected, long balance) {
+    LongAdder deposits = this.deposits;
+    if (deposits == null) {
+      return BALANCE.compareAndSet(this, expected, balance);
+    }
+    long cell = this.balance;
+    return cell + deposits.sum() >= expected && BALANCE.compareAndSet(this, cell, cell + (balance - expected));
   }
 
   abstract String getAdditionalDetails();
@@ -55,10 +123,7 @@ abstract class AbstractAccount implements Account {
 
   @Override
   public String toString() {
-    String ACCOUNT_DETAILS_MESSAGE = "Account details:\nHolder: %s\nType: %s\nBalance: %s\n";
-    String mainMsg = String.format(ACCOUNT_DETAILS_MESSAGE, this.owner, this.getType().name().toLowerCase(), this.balance);
-
-    return mainMsg + getAdditionalDetails() + "\n";
+    return AccountRules.details(this.owner, this.getType(), this.getBalance(), getAdditionalDetails());
   }
 
   @Override
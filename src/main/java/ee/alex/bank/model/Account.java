@@ -2,6 +2,7 @@ package ee.alex.bank.model;
 
 import java.util.UUID;
 import ee.alex.bank.exception.AccountErrorException;
+import ee.alex.bank.exception.AmountOverflowException;
 import ee.alex.bank.exception.InvalidAmountException;
 
 /**
@@ -9,9 +10,9 @@ import ee.alex.bank.exception.InvalidAmountException;
  */
 public interface Account {
 
-  void deposit(double amount) throws InvalidAmountException;
+  void deposit(long amount) throws InvalidAmountException, AmountOverflowException;
 
-  void withdraw(double amount) throws AccountErrorException;
+  void withdraw(long amount) throws AccountErrorException;
 
   String getDetails();
 
@@ -19,8 +20,29 @@ public interface Account {
 
   AccountType getType();
 
-  double getBalance();
+  long getBalance();
 
   String getOwner();
 
+  /**
+   * Journal sequence number of the last change applied to this account, 0 if never journaled.
+   */
+  long getVersion();
+
+  void setVersion(long version);
+
+  /**
+   * Switches the account to striped deposit cells, for accounts that take deposits from many
+   * threads at once. The account stays hot for as long as it lives.
+   *
+   * @return false if the account cannot stripe its deposits and keeps taking them on the balance
+   */
+  default boolean enableHotDeposits() {
+    return false;
+  }
+
+  default boolean isHotDeposits() {
+    return false;
+  }
+
 }
@@ -0,0 +1,44 @@
+package ee.alex.bank.model;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Makes the numbers of new accounts.
+ * <p>
+ * {@link #SECURE_RANDOM} is {@link UUID#randomUUID()}, whose numbers cannot be guessed from the
+ * ones before them, but every thread draws them from one shared {@link java.security.SecureRandom},
+ * so threads opening accounts at once queue for it. The other generators keep their state per
+ * thread and never meet: {@link #RANDOM} makes random numbers of the same form, and
+ * {@link #TIME_ORDERED} makes numbers that sort by the time they were made. Both are drawn from
+ * {@link ThreadLocalRandom}, which is fast but predictable, so {@link #SECURE_RANDOM} is the
+ * default and the others must be chosen, where account numbers may be guessable.
+ *
+ * @author Aleksei Kulitškov
+ */
+@FunctionalInterface
+public interface AccountIdGenerator {
+
+  /**
+   * Random numbers from the shared secure generator of {@link UUID#randomUUID()}.
+   */
+  AccountIdGenerator SECURE_RANDOM = UUID::randomUUID;
+
+  /**
+   * Random numbers of version 4, like {@link UUID#randomUUID()}, from a generator per thread.
+   */
+  AccountIdGenerator RANDOM = () -> {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    return new UUID((random.nextLong() & ~0xF000L) | 0x4000L,
+        (random.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L);
+  };
+
+  /**
+   * Numbers of version 7, led by the time in milliseconds, from state per thread; see
+   * {@link TimeOrderedIdGenerator}.
+   */
+  AccountIdGenerator TIME_ORDERED = new TimeOrderedIdGenerator(System::currentTimeMillis);
+
+  UUID next();
+
+}
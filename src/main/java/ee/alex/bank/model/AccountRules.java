@@ -0,0 +1,71 @@
+package ee.alex.bank.model;
+
+import ee.alex.bank.exception.AmountOverflowException;
+import ee.alex.bank.exception.InsufficientFundsException;
+import ee.alex.bank.exception.InvalidAmountException;
+import ee.alex.bank.exception.LimitReachedException;
+
+/**
+ * Balance rules and details formatting shared by every account implementation, whether the account
+ * is an object of its own or a view over a column store.
+ * <p>
+ * Rules take the current balance and return the new one, so the caller decides where it lives.
+ *
+ * @author Aleksei Kulitškov
+ */
+public final class AccountRules {
+
+  private static final String ACCOUNT_DETAILS_MESSAGE = "Account details:\nHolder: %s\nType: %s\nBalance: %s\n";
+
+  private AccountRules() {
+  }
+
+  public static long credit(long balance, long amount) throws InvalidAmountException, AmountOverflowException {
+    if (amount <= 0) {
+      throw new InvalidAmountException();
+    }
+
+    return Money.add(balance, amount);
+  }
+
+  public static long debitChecking(long balance, long amount, long limit)
+      throws InvalidAmountException, LimitReachedException, AmountOverflowException {
+    if (amount <= 0) {
+      throw new InvalidAmountException();
+    }
+
+    long newBalance = Money.subtract(balance, amount);
+    if (newBalance < -limit) {
+      throw new LimitReachedException();
+    }
+
+    return newBalance;
+  }
+
+  public static long debitSavings(long balance, long amount) throws InvalidAmountException, InsufficientFundsException {
+    if (amount <= 0) {
+      throw new InvalidAmountException();
+    }
+
+    if (balance < amount) {
+      throw new InsufficientFundsException();
+    }
+
+    return balance - amount;
+  }
+
+  public static String details(String owner, AccountType type, long balance, String additionalDetails) {
+    String mainMsg = String.format(ACCOUNT_DETAILS_MESSAGE, owner, type.name().toLowerCase(), Money.format(balance));
+
+    return mainMsg + additionalDetails + "\n";
+  }
+
+  public static String checkingDetails(long limit) {
+    return String.format("Limit: %s", Money.format(limit));
+  }
+
+  public static String savingsDetails(double interestRate) {
+    return String.format("Interest rate: %s", interestRate);
+  }
+
+}
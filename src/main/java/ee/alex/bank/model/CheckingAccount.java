@@ -1,5 +1,7 @@
 package ee.alex.bank.model;
 
+import java.util.UUID;
+import ee.alex.bank.exception.AmountOverflowException;
 import ee.alex.bank.exception.InvalidAmountException;
 import ee.alex.bank.exception.LimitReachedException;
 import static ee.alex.bank.model.AccountType.CHECKING;
@@ -7,20 +9,25 @@ import static ee.alex.bank.model.AccountType.CHECKING;
 /**
  * @author Aleksei Kulitškov
  */
-public class CheckingAccount extends AbstractAccount {
+public class CheckingAccount extends AbstractAccount implements LimitedAccount {
 
-  private double limit;
+  private volatile long limit;
 
-  public CheckingAccount(String owner, double limit) {
+  public CheckingAccount(String owner, long limit) {
     super(owner);
     this.limit = limit;
   }
 
-  public double getLimit() {
+  public CheckingAccount(UUID accountId, String owner, long limit) {
+    super(accountId, owner);
+    this.limit = limit;
+  }
+
+  public long getLimit() {
     return limit;
   }
 
-  public void setLimit(double limit) throws InvalidAmountException {
+  public void setLimit(long limit) throws InvalidAmountException {
     if (limit <= 0) {
       throw new InvalidAmountException();
     }
@@ -31,27 +38,22 @@ public class CheckingAccount extends AbstractAccount {
     return CHECKING;
   }
 
-  public void withdraw(double amount) throws InvalidAmountException, LimitReachedException {
-    if (amount <= 0.0) {
-      throw new InvalidAmountException();
-    }
-
-    double currentBalance = this.getBalance();
-    if (Math.abs(currentBalance - amount) > limit) {
-      throw new LimitReachedException();
-    }
-
-    this.setBalance(currentBalance - amount);
+  public void withdraw(long amount) throws InvalidAmountException, LimitReachedException, AmountOverflowException {
+    long current;
+    do {
+      current = this.getBalance();
+    } while (!compareAndSetBalance(current, AccountRules.debitChecking(current, amount, limit)));
   }
 
-  public void transferMoney(Account to, double amount) throws InvalidAmountException, LimitReachedException {
+  public void transferMoney(Account to, long amount)
+      throws InvalidAmountException, LimitReachedException, AmountOverflowException {
     this.withdraw(amount);
     to.deposit(amount);
   }
 
   @Override
   protected String getAdditionalDetails() {
-    return String.format("Limit: %s", this.limit);
+    return AccountRules.checkingDetails(this.limit);
   }
 
 }
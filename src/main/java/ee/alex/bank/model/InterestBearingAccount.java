@@ -0,0 +1,36 @@
+package ee.alex.bank.model;
+
+import ee.alex.bank.exception.AmountOverflowException;
+
+/**
+ * Account credited with interest at the {@link InterestRates} of its bank.
+ * <p>
+ * Interest is earned per interest period. The account remembers up to which period it has been
+ * credited, so periods closed while it was not touched are credited later at their own rates.
+ *
+ * @author Aleksei Kulitškov
+ */
+public interface InterestBearingAccount extends Account {
+
+  /**
+   * Credits interest for one period at the current rates.
+   *
+   * @return the interest credited, in minor units
+   */
+  long provideInterest() throws AmountOverflowException;
+
+  /**
+   * Credits interest for one period at the rate of the given table for the balance.
+   *
+   * @return the interest credited, in minor units
+   */
+  long provideInterest(InterestRateTable rateTable) throws AmountOverflowException;
+
+  /**
+   * First interest period the account has not been credited for.
+   */
+  long getAccruedPeriod();
+
+  void setAccruedPeriod(long period);
+
+}
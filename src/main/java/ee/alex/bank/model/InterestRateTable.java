@@ -0,0 +1,148 @@
+package ee.alex.bank.model;
+
+import java.util.Arrays;
+import ee.alex.bank.exception.InvalidInterestRateException;
+
+/**
+ * Immutable, versioned interest rates per product and balance tier.
+ * <p>
+ * Every product, an account type, has one or more tiers. A tier starts at a balance and runs up to
+ * the start of the next one; the first tier starts at 0 and also covers negative balances. The
+ * whole balance earns the rate of the tier it falls into. Products without tiers earn nothing.
+ * <p>
+ * Tables are never changed: a switch builds a new table with the next version, which is published
+ * as a whole, so a reader that got a table sees one consistent set of rates. Looking up a rate
+ * indexes arrays, without allocating or locking.
+ *
+ * @author Aleksei Kulitškov
+ */
+public final class InterestRateTable {
+
+  private static final long[] NO_TIERS = new long[0];
+  private static final double[] NO_RATES = new double[0];
+
+  private final long version;
+  private final long[][] tierStarts;
+  private final double[][] rates;
+
+  private InterestRateTable(long version, long[][] tierStarts, double[][] rates) {
+    this.version = version;
+    this.tierStarts = tierStarts;
+    this.rates = rates;
+  }
+
+  /**
+   * Table of version 0 in which savings accounts earn one rate on any balance.
+   */
+  public static InterestRateTable flat(double interestRate) {
+    int products = AccountType.values().length;
+    long[][] tierStarts = new long[products][];
+    double[][] rates = new double[products][];
+    Arrays.fill(tierStarts, NO_TIERS);
+    Arrays.fill(rates, NO_RATES);
+    tierStarts[AccountType.SAVINGS.ordinal()] = new long[] {0};
+    rates[AccountType.SAVINGS.ordinal()] = new double[] {interestRate};
+
+    return new InterestRateTable(0, tierStarts, rates);
+  }
+
+  /**
+   * Rebuilds a table as it was, version included.
+   *
+   * @throws InvalidInterestRateException if a rate is not positive
+   * @throws IllegalArgumentException if the tiers of a product do not start at 0 and ascend
+   */
+  public static InterestRateTable of(long version, long[][] tierStarts, double[][] rates)
+      throws InvalidInterestRateException {
+    int products = AccountType.values().length;
+    if (tierStarts.length != products || rates.length != products) {
+      throw new IllegalArgumentException("Expected tiers for " + products + " products");
+    }
+    long[][] tierStartsCopy = new long[products][];
+    double[][] ratesCopy = new double[products][];
+    for (int product = 0; product < products; product++) {
+      validate(tierStarts[product], rates[product]);
+      tierStartsCopy[product] = tierStarts[product].clone();
+      ratesCopy[product] = rates[product].clone();
+    }
+
+    return new InterestRateTable(version, tierStartsCopy, ratesCopy);
+  }
+
+  public long getVersion() {
+    return version;
+  }
+
+  /**
+   * Rate the given balance of the product earns.
+   */
+  public double rate(AccountType product, long balance) {
+    long[] starts = tierStarts[product.ordinal()];
+    int tier = starts.length - 1;
+    while (tier > 0 && balance < starts[tier]) {
+      tier--;
+    }
+    return tier < 0 ? 0.0 : rates[product.ordinal()][tier];
+  }
+
+  /**
+   * Rate of the first tier of the product, 0 if the product earns no interest.
+   */
+  public double getBaseRate(AccountType product) {
+    double[] productRates = rates[product.ordinal()];
+    return productRates.length == 0 ? 0.0 : productRates[0];
+  }
+
+  public int getTierCount(AccountType product) {
+    return rates[product.ordinal()].length;
+  }
+
+  public long getTierStart(AccountType product, int tier) {
+    return tierStarts[product.ordinal()][tier];
+  }
+
+  public double getRate(AccountType product, int tier) {
+    return rates[product.ordinal()][tier];
+  }
+
+  /**
+   * Next version of the table, in which the product earns one rate on any balance.
+   */
+  public InterestRateTable withRate(AccountType product, double interestRate) throws InvalidInterestRateException {
+    return withTiers(product, new long[] {0}, new double[] {interestRate});
+  }
+
+  /**
+   * Next version of the table, with new tiers for the product.
+   *
+   * @param tierStarts balance each tier starts at, ascending from 0
+   * @param rates rate of each tier
+   * @throws InvalidInterestRateException if a rate is not positive
+   * @throws IllegalArgumentException if the tiers do not start at 0 and ascend
+   */
+  public InterestRateTable withTiers(AccountType product, long[] tierStarts, double[] rates)
+      throws InvalidInterestRateException {
+    validate(tierStarts, rates);
+    long[][] newTierStarts = this.tierStarts.clone();
+    double[][] newRates = this.rates.clone();
+    newTierStarts[product.ordinal()] = tierStarts.clone();
+    newRates[product.ordinal()] = rates.clone();
+
+    return new InterestRateTable(version + 1, newTierStarts, newRates);
+  }
+
+  private static void validate(long[] tierStarts, double[] rates) throws InvalidInterestRateException {
+    if (tierStarts.length != rates.length) {
+      throw new IllegalArgumentException("Every tier needs a rate");
+    }
+    for (int tier = 0; tier < rates.length; tier++) {
+      if (tier == 0 ? tierStarts[0] != 0 : tierStarts[tier] <= tierStarts[tier - 1]) {
+        throw new IllegalArgumentException("Tiers must start at 0 and ascend");
+      }
+      if (!(rates[tier] > 0.0)) {
+        throw new InvalidInterestRateException();
+      }
+    }
+  }
+
+}
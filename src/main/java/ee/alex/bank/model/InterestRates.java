@@ -0,0 +1,76 @@
+package ee.alex.bank.model;
+
+import java.util.concurrent.atomic.AtomicReference;
+import ee.alex.bank.exception.InvalidInterestRateException;
+import static ee.alex.bank.model.AccountType.SAVINGS;
+
+/**
+ * The {@link InterestRateTable} in force at one bank.
+ * <p>
+ * The table is published through an atomic reference and replaced as a whole, so interest is
+ * always computed from one version of the rates, read without locking. Every savings account of a
+ * bank holds the rates of that bank, so banks in one JVM never see each other's rates.
+ *
+ * @author Aleksei Kulitškov
+ */
+public final class InterestRates {
+
+  public static final double DEFAULT_INTEREST_RATE = 0.2;
+
+  private final AtomicReference<InterestRateTable> rateTable;
+
+  public InterestRates() {
+    this(InterestRateTable.flat(DEFAULT_INTEREST_RATE));
+  }
+
+  public InterestRates(InterestRateTable rateTable) {
+    this.rateTable = new AtomicReference<>(rateTable);
+  }
+
+  /**
+   * Rate of the first tier of savings accounts.
+   */
+  public double getInterestRate() {
+    return rateTable.get().getBaseRate(SAVINGS);
+  }
+
+  /**
+   * Switches savings accounts to one rate on any balance.
+   */
+  public void setInterestRate(double newInterestRate) throws InvalidInterestRateException {
+    if (newInterestRate <= 0.0) {
+      throw new InvalidInterestRateException();
+    }
+
+    InterestRateTable current;
+    do {
+      current = rateTable.get();
+    } while (!rateTable.compareAndSet(current, current.withRate(SAVINGS, newInterestRate)));
+  }
+
+  /**
+   * Switches savings accounts to the given tiers.
+   *
+   * @see InterestRateTable#withTiers(AccountType, long[], double[])
+   */
+  public void setInterestTiers(long[] tierStarts, double[] rates) throws InvalidInterestRateException {
+    InterestRateTable current;
+    InterestRateTable next;
+    do {
+      current = rateTable.get();
+      next = current.withTiers(SAVINGS, tierStarts, rates);
+    } while (!rateTable.compareAndSet(current, next));
+  }
+
+  public InterestRateTable getRateTable() {
+    return rateTable.get();
+  }
+
+  /**
+   * Publishes the table as it is, version included; meant for recovery.
+   */
+  public void setRateTable(InterestRateTable rateTable) {
+    this.rateTable.set(rateTable);
+  }
+
+}
@@ -0,0 +1,16 @@
+package ee.alex.bank.model;
+
+import ee.alex.bank.exception.InvalidAmountException;
+
+/**
+ * Account that may go below zero down to its limit.
+ *
+ * @author Aleksei Kulitškov
+ */
+public interface LimitedAccount extends Account {
+
+  long getLimit();
+
+  void setLimit(long limit) throws InvalidAmountException;
+
+}
@@ -0,0 +1,77 @@
+package ee.alex.bank.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import ee.alex.bank.exception.AmountOverflowException;
+
+/**
+ * Arithmetic on money amounts held as {@code long} minor units (cents).
+ * <p>
+ * All operations work on primitives and allocate nothing unless they fail, so they are safe to
+ * use on the hot path; only interest that {@code double} cannot round exactly is worked out in
+ * decimal. Overflow is reported instead of silently wrapping around.
+ *
+ * @author Aleksei Kulitškov
+ */
+public final class Money {
+
+  public static final long MINOR_UNITS_PER_MAJOR = 100;
+
+  // amounts below this are exact in a double
+  private static final long EXACT_DOUBLE_LIMIT = 1L << 53;
+
+  private Money() {
+  }
+
+  public static long add(long amount, long addend) throws AmountOverflowException {
+    long result = amount + addend;
+    if (((amount ^ result) & (addend ^ result)) < 0) {
+      throw new AmountOverflowException();
+    }
+    return result;
+  }
+
+  public static long subtract(long amount, long subtrahend) throws AmountOverflowException {
+    long result = amount - subtrahend;
+    if (((amount ^ subtrahend) & (amount ^ result)) < 0) {
+      throw new AmountOverflowException();
+    }
+    return result;
+  }
+
+  /**
+   * Interest on the given amount at the decimal rate the given {@code double} prints as, rounded
+   * half-even to whole minor units.
+   * <p>
+   * The product is taken in {@code double} when its error is too small to change the rounding,
+   * which is any amount below 2<sup>53</sup> whose interest is not close to half a minor unit;
+   * otherwise it is computed exactly.
+   */
+  public static long interest(long amount, double rate) throws AmountOverflowException {
+    double estimate = amount * rate;
+    double magnitude = Math.abs(estimate);
+    if (-EXACT_DOUBLE_LIMIT < amount && amount < EXACT_DOUBLE_LIMIT && magnitude < 0x1p50
+        && Math.abs(estimate - Math.floor(estimate) - 0.5) > (magnitude + 1) * 0x1p-50) {
+      return (long) Math.rint(estimate);
+    }
+    try {
+      return BigDecimal.valueOf(amount).multiply(BigDecimal.valueOf(rate))
+          .setScale(0, RoundingMode.HALF_EVEN).longValueExact();
+    } catch (ArithmeticException e) {
+      throw new AmountOverflowException();
+    }
+  }
+
+  /**
+   * Formats minor units as a decimal amount with two fraction digits, e.g. {@code 15050} as
+   * {@code 150.50}.
+   */
+  public static String format(long amount) {
+    long major = amount / MINOR_UNITS_PER_MAJOR;
+    long minor = Math.abs(amount % MINOR_UNITS_PER_MAJOR);
+    String sign = amount < 0 && major == 0 ? "-" : "";
+
+    return sign + major + (minor < 10 ? ".0" : ".") + minor;
+  }
+
+}
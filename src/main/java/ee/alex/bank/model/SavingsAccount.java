@@ -1,57 +1,81 @@
 package ee.alex.bank.model;
 
+import java.util.UUID;
+import ee.alex.bank.exception.AmountOverflowException;
 import ee.alex.bank.exception.InsufficientFundsException;
 import ee.alex.bank.exception.InvalidAmountException;
-import ee.alex.bank.exception.InvalidInterestRateException;
 import static ee.alex.bank.model.AccountType.SAVINGS;
 
 /**
+ * Account that earns interest at the {@link InterestRates} of its bank. An account created without
+ * them has rates of its own, at {@link InterestRates#DEFAULT_INTEREST_RATE}.
+ *
  * @author Aleksei Kulitškov
  */
-public class SavingsAccount extends AbstractAccount {
+public class SavingsAccount extends AbstractAccount implements InterestBearingAccount {
 
-  private static double interestRate = 0.2;
+  private final InterestRates rates;
+  private volatile long accruedPeriod;
 
   public SavingsAccount(String owner) {
+    this(owner, new InterestRates());
+  }
+
+  public SavingsAccount(String owner, InterestRates rates) {
     super(owner);
+    this.rates = rates;
   }
 
-  public static double getInterestRate() {
-    return interestRate;
+  public SavingsAccount(UUID accountId, String owner) {
+    this(accountId, owner, new InterestRates());
   }
 
-  public static void setInterestRate(double newInterestRate) throws InvalidInterestRateException {
-    if (newInterestRate <= 0.0) {
-      throw new InvalidInterestRateException();
-    }
+  public SavingsAccount(UUID accountId, String owner, InterestRates rates) {
+    super(accountId, owner);
+    this.rates = rates;
+  }
 
-    interestRate = newInterestRate;
+  public InterestRates getRates() {
+    return rates;
   }
 
   public AccountType getType() {
     return SAVINGS;
   }
 
-  public void withdraw(double amount) throws InvalidAmountException, InsufficientFundsException {
-    if (amount <= 0) {
-      throw new InvalidAmountException();
-    }
+  public void withdraw(long amount) throws InvalidAmountException, InsufficientFundsException {
+    long current;
+    do {
+      current = this.getBalance();
+    } while (!compareAndSetBalance(current, AccountRules.debitSavings(current, amount)));
+  }
+
+  public long provideInterest() throws AmountOverflowException {
+    return provideInterest(rates.getRateTable());
+  }
+
+  public long provideInterest(InterestRateTable rateTable) throws AmountOverflowException {
+    long currentBalance;
+    long interest;
+    do {
+      currentBalance = this.getBalance();
+      interest = Money.interest(currentBalance, rateTable.rate(SAVINGS, currentBalance));
+    } while (!compareAndSetBalance(currentBalance, Money.add(currentBalance, interest)));
 
-    if (this.getBalance() < amount) {
-      throw new InsufficientFundsException();
-    }
+    return interest;
+  }
 
-    this.setBalance(this.getBalance() - amount);
+  public long getAccruedPeriod() {
+    return accruedPeriod;
   }
 
-  public void provideInterest() {
-    double currentBalance = this.getBalance();
-    this.setBalance(currentBalance + currentBalance * interestRate);
+  public void setAccruedPeriod(long period) {
+    this.accruedPeriod = period;
   }
 
   @Override
   protected String getAdditionalDetails() {
-    return String.format("Interest rate: %s", interestRate);
+    return AccountRules.savingsDetails(rates.getInterestRate());
   }
 
 }
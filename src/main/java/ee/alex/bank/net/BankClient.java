@@ -0,0 +1,226 @@
+package ee.alex.bank.net;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.UUID;
+import ee.alex.bank.service.OperationStatus;
+import static ee.alex.bank.net.WireProtocol.CHANGE_LIMIT;
+import static ee.alex.bank.net.WireProtocol.DEPOSIT;
+import static ee.alex.bank.net.WireProtocol.KEYED;
+import static ee.alex.bank.net.WireProtocol.MAX_OWNER_LENGTH;
+import static ee.alex.bank.net.WireProtocol.MAX_REQUEST_SIZE;
+import static ee.alex.bank.net.WireProtocol.OPEN_CHECKING;
+import static ee.alex.bank.net.WireProtocol.OPEN_RESPONSE_SIZE;
+import static ee.alex.bank.net.WireProtocol.OPEN_SAVINGS;
+import static ee.alex.bank.net.WireProtocol.RESPONSE_SIZE;
+import static ee.alex.bank.net.WireProtocol.TRANSFER;
+import static ee.alex.bank.net.WireProtocol.WITHDRAW;
+
+/**
+ * Client of a {@link BankServer}, over one blocking connection.
+ * <p>
+ * Requests are written to a buffer and sent on {@link #flush()}, or when the buffer fills up, so
+ * any number of them can be pipelined; {@link #receive(ResponseHandler)} then hands the responses
+ * over in the order the requests were sent. The server stops reading a client that does not read
+ * its responses, so keep the requests in flight to a few thousand, or read from another thread.
+ * A client is not thread-safe.
+ *
+ * @author Aleksei Kulitškov
+ */
+public class BankClient implements AutoCloseable {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final OperationStatus[] STATUSES = OperationStatus.values();
+
+  private final SocketChannel channel;
+  private final ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_SIZE);
+  // kept in read mode between receives
+  private final ByteBuffer in = ByteBuffer.allocateDirect(BUFFER_SIZE).flip();
+  // numbers of the requests in flight that open accounts, whose responses are longer
+  private final Queue<Long> opening = new ArrayDeque<>();
+  private long sent;
+  private long received;
+
+  private BankClient(SocketChannel channel) {
+    this.channel = channel;
+  }
+
+  public static BankClient connect(InetSocketAddress address) throws IOException {
+    SocketChannel channel = SocketChannel.open(address);
+    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+    return new BankClient(channel);
+  }
+
+  public void deposit(int tag, UUID accountId, long amount) throws IOException {
+    header(tag, DEPOSIT, null);
+    uuid(accountId).putLong(amount);
+  }
+
+  public void deposit(int tag, UUID requestId, UUID accountId, long amount) throws IOException {
+    header(tag, DEPOSIT, requestId);
+    uuid(accountId).putLong(amount);
+  }
+
+  public void withdraw(int tag, UUID accountId, long amount) throws IOException {
+    header(tag, WITHDRAW, null);
+    uuid(accountId).putLong(amount);
+  }
+
+  public void withdraw(int tag, UUID requestId, UUID accountId, long amount) throws IOException {
+    header(tag, WITHDRAW, requestId);
+    uuid(accountId).putLong(amount);
+  }
+
+  public void transfer(int tag, UUID fromAccountId, UUID toAccountId, long amount) throws IOException {
+    header(tag, TRANSFER, null);
+    uuid(fromAccountId);
+    uuid(toAccountId).putLong(amount);
+  }
+
+  public void transfer(int tag, UUID requestId, UUID fromAccountId, UUID toAccountId, long amount)
+      throws IOException {
+    header(tag, TRANSFER, requestId);
+    uuid(fromAccountId);
+    uuid(toAccountId).putLong(amount);
+  }
+
+  public void changeLimit(int tag, UUID accountId, long newLimit) throws IOException {
+    header(tag, CHANGE_LIMIT, null);
+    uuid(accountId).putLong(newLimit);
+  }
+
+  public void changeLimit(int tag, UUID requestId, UUID accountId, long newLimit) throws IOException {
+    header(tag, CHANGE_LIMIT, requestId);
+    uuid(accountId).putLong(newLimit);
+  }
+
+  public void openSavingsAccount(int tag, String owner) throws IOException {
+    byte[] name = encode(owner);
+    opening.add(sent);
+    header(tag, OPEN_SAVINGS, null);
+    out.putShort((short) name.length).put(name);
+  }
+
+  public void openCheckingAccount(int tag, String owner, long limit) throws IOException {
+    byte[] name = encode(owner);
+    opening.add(sent);
+    header(tag, OPEN_CHECKING, null);
+    out.putLong(limit).putShort((short) name.length).put(name);
+  }
+
+  /**
+   * Sends the requests written so far.
+   */
+  public void flush() throws IOException {
+    out.flip();
+    while (out.hasRemaining()) {
+      channel.write(out);
+    }
+    out.clear();
+  }
+
+  /**
+   * Sends the requests written so far and waits for at least one response.
+   *
+   * @return number of responses handed to the handler
+   */
+  public int receive(ResponseHandler handler) throws IOException {
+    if (received == sent) {
+      throw new IllegalStateException("No requests in flight");
+    }
+    flush();
+    int count = 0;
+    while (count == 0) {
+      count = handleResponses(handler);
+      if (count == 0) {
+        in.compact();
+        int read = channel.read(in);
+        in.flip();
+        if (read < 0) {
+          throw new EOFException("Server closed the connection with " + (sent - received) + " requests in flight");
+        }
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Number of requests sent, or written to be sent, that have no response yet.
+   */
+  public long getInFlight() {
+    return sent - received;
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  private int handleResponses(ResponseHandler handler) {
+    int count = 0;
+    while (in.remaining() >= RESPONSE_SIZE) {
+      boolean opened = !opening.isEmpty() && opening.peek() == received;
+      if (opened && in.remaining() < OPEN_RESPONSE_SIZE) {
+        break;
+      }
+      int tag = in.getInt();
+      OperationStatus status = STATUSES[in.get()];
+      UUID accountId = null;
+      if (opened) {
+        accountId = new UUID(in.getLong(), in.getLong());
+        opening.remove();
+      }
+      received++;
+      count++;
+      handler.onResponse(tag, status, accountId);
+    }
+    return count;
+  }
+
+  private void header(int tag, byte opcode, UUID requestId) throws IOException {
+    if (out.remaining() < MAX_REQUEST_SIZE) {
+      flush();
+    }
+    sent++;
+    if (requestId == null) {
+      out.putInt(tag).put(opcode);
+    } else {
+      out.putInt(tag).put((byte) (opcode | KEYED));
+      uuid(requestId);
+    }
+  }
+
+  private ByteBuffer uuid(UUID uuid) {
+    return out.putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits());
+  }
+
+  private static byte[] encode(String owner) {
+    byte[] name = owner.getBytes(StandardCharsets.UTF_8);
+    if (name.length > MAX_OWNER_LENGTH) {
+      throw new IllegalArgumentException("Owner longer than " + MAX_OWNER_LENGTH + " bytes: " + owner);
+    }
+    return name;
+  }
+
+  /**
+   * Receives the responses of a {@link BankClient}, on the thread that calls
+   * {@link #receive(ResponseHandler)}.
+   */
+  @FunctionalInterface
+  public interface ResponseHandler {
+
+    /**
+     * @param accountId number of the account opened, {@code null} for other requests
+     */
+    void onResponse(int tag, OperationStatus status, UUID accountId);
+
+  }
+
+}
@@ -0,0 +1,395 @@
+package ee.alex.bank.net;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import ee.alex.bank.persistence.DurabilityPolicy;
+import ee.alex.bank.persistence.FileJournal;
+import ee.alex.bank.service.BankService;
+import ee.alex.bank.service.OperationStatus;
+import static ee.alex.bank.net.WireProtocol.CHANGE_LIMIT;
+import static ee.alex.bank.net.WireProtocol.DEPOSIT;
+import static ee.alex.bank.net.WireProtocol.HEADER_SIZE;
+import static ee.alex.bank.net.WireProtocol.KEYED;
+import static ee.alex.bank.net.WireProtocol.OPEN_CHECKING;
+import static ee.alex.bank.net.WireProtocol.OPEN_RESPONSE_SIZE;
+import static ee.alex.bank.net.WireProtocol.OPEN_SAVINGS;
+import static ee.alex.bank.net.WireProtocol.TRANSFER;
+import static ee.alex.bank.net.WireProtocol.UUID_SIZE;
+import static ee.alex.bank.net.WireProtocol.WITHDRAW;
+
+/**
+ * Network front-end of a {@link BankService}, speaking the {@link WireProtocol} over non-blocking
+ * sockets.
+ * <p>
+ * Connections are spread over a few event loops, each a thread with a selector of its own. A loop
+ * reads whatever its connections sent into one direct buffer per connection, runs every complete
+ * request in it against the bank, in order, and writes the responses back from a second direct
+ * buffer, so a client that pipelines requests gets a batch of them served per read and per write.
+ * Requests are parsed with absolute reads straight from the buffer; the only objects made for a
+ * money operation are the account numbers the bank takes. When a client stops reading, its
+ * connection stops being read too until the responses drain.
+ * <p>
+ * Requests run on the loop thread, which defers their durability: it runs the batch of requests
+ * read from a connection, waits once for the journal to make all of their changes durable, and
+ * only then sends the responses. A slow journal still holds up the other connections of the loop
+ * for that one wait per batch; give such a bank more loops.
+ *
+ * @author Aleksei Kulitškov
+ */
+public class BankServer implements AutoCloseable {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+  private final BankService bankService;
+  private final ServerSocketChannel serverChannel;
+  private final EventLoop[] loops;
+  private int nextLoop;
+
+  private BankServer(BankService bankService, ServerSocketChannel serverChannel, int eventLoops)
+      throws IOException {
+    this.bankService = bankService;
+    this.serverChannel = serverChannel;
+    this.loops = new EventLoop[eventLoops];
+    for (int i = 0; i < eventLoops; i++) {
+      loops[i] = new EventLoop();
+    }
+  }
+
+  /**
+   * Server with one event loop per core.
+   */
+  public static BankServer start(BankService bankService, InetSocketAddress address) throws IOException {
+    return start(bankService, address, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Listens on the address, port 0 picking a free one, and serves the bank until closed.
+   */
+  public static BankServer start(BankService bankService, InetSocketAddress address, int eventLoops)
+      throws IOException {
+    if (eventLoops < 1) {
+      throw new IllegalArgumentException("Event loop count must be positive: " + eventLoops);
+    }
+    ServerSocketChannel serverChannel = ServerSocketChannel.open();
+    try {
+      serverChannel.bind(address);
+      serverChannel.configureBlocking(false);
+      BankServer server = new BankServer(bankService, serverChannel, eventLoops);
+      serverChannel.register(server.loops[0].selector, SelectionKey.OP_ACCEPT);
+      for (EventLoop loop : server.loops) {
+        loop.thread.start();
+      }
+      return server;
+    } catch (IOException | RuntimeException e) {
+      serverChannel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Serves an in-memory bank, or one recovered from the given journal, on the given port.
+   * <p>
+   * Usage: {@code java -cp bank-1.0.jar ee.alex.bank.net.BankServer [port] [journal]}
+   */
+  public static void main(String[] args) throws Exception {
+    int port = args.length > 0 ? Integer.parseInt(args[0]) : 7070;
+    BankService bankService = args.length > 1
+        ? BankService.recover(FileJournal.open(Paths.get(args[1]), DurabilityPolicy.BATCHED))
+        : new BankService();
+    BankServer server = start(bankService, new InetSocketAddress(port));
+    System.out.println("Serving the bank on " + server.getAddress());
+    for (EventLoop loop : server.loops) {
+      loop.thread.join();
+    }
+  }
+
+  public InetSocketAddress getAddress() {
+    try {
+      return (InetSocketAddress) serverChannel.getLocalAddress();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Stops listening, closes every connection and waits for the loops to stop.
+   */
+  @Override
+  public void close() {
+    try {
+      serverChannel.close();
+    } catch (IOException e) {
+      // closing anyway
+    }
+    for (EventLoop loop : loops) {
+      loop.running = false;
+      loop.selector.wakeup();
+    }
+    for (EventLoop loop : loops) {
+      try {
+        loop.thread.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  /**
+   * Called on the first loop, which also accepts connections.
+   */
+  private void accept() throws IOException {
+    SocketChannel channel;
+    while ((channel = serverChannel.accept()) != null) {
+      channel.configureBlocking(false);
+      channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+      EventLoop loop = loops[nextLoop];
+      nextLoop = (nextLoop + 1) % loops.length;
+      loop.pending.add(channel);
+      loop.selector.wakeup();
+    }
+  }
+
+  /**
+   * One selector and the thread that runs it.
+   */
+  private final class EventLoop implements Runnable {
+
+    private final Selector selector;
+    private final Thread thread;
+    private final Queue<SocketChannel> pending = new ConcurrentLinkedQueue<>();
+    private volatile boolean running = true;
+
+    EventLoop() throws IOException {
+      this.selector = Selector.open();
+      this.thread = new Thread(this, "bank-server-" + THREAD_COUNT.incrementAndGet());
+    }
+
+    @Override
+    public void run() {
+      bankService.deferDurability();
+      try {
+        while (running) {
+          selector.select();
+          registerPending();
+          for (SelectionKey key : selector.selectedKeys()) {
+            handle(key);
+          }
+          selector.selectedKeys().clear();
+        }
+      } catch (IOException | ClosedSelectorException e) {
+        // the loop cannot go on; its connections are closed below
+      } finally {
+        for (SelectionKey key : selector.keys()) {
+          closeQuietly(key);
+        }
+        SocketChannel channel;
+        while ((channel = pending.poll()) != null) {
+          closeQuietly(channel);
+        }
+        try {
+          selector.close();
+        } catch (IOException e) {
+          // nothing left to release
+        }
+      }
+    }
+
+    private void registerPending() {
+      SocketChannel channel;
+      while ((channel = pending.poll()) != null) {
+        try {
+          channel.register(selector, SelectionKey.OP_READ, new Connection(channel));
+        } catch (IOException e) {
+          closeQuietly(channel);
+        }
+      }
+    }
+
+    private void handle(SelectionKey key) {
+      if (!key.isValid()) {
+        return;
+      }
+      if (key.isAcceptable()) {
+        try {
+          accept();
+        } catch (IOException e) {
+          // the client gave up before it was accepted; keep listening
+        }
+        return;
+      }
+      Connection connection = (Connection) key.attachment();
+      try {
+        if (key.isWritable()) {
+          connection.flush();
+          connection.process();
+        } else if (key.isReadable()) {
+          if (connection.channel.read(connection.in) < 0) {
+            closeQuietly(key);
+            return;
+          }
+          connection.process();
+        }
+        key.interestOps(connection.out.position() > 0 ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+      } catch (IOException | RuntimeException e) {
+        // a broken connection, a malformed request or a failed journal ends only that connection
+        closeQuietly(key);
+      }
+    }
+
+    private void closeQuietly(SelectionKey key) {
+      key.cancel();
+      closeQuietly(key.channel());
+    }
+
+    private void closeQuietly(Channel channel) {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        // already gone
+      }
+    }
+
+  }
+
+  /**
+   * Buffers of one connection. The input buffer is kept in write mode between reads, and so is
+   * the output buffer between flushes.
+   */
+  private final class Connection {
+
+    private final SocketChannel channel;
+    private final ByteBuffer in = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    Connection(SocketChannel channel) {
+      this.channel = channel;
+    }
+
+    /**
+     * Runs the complete requests read so far, while there is room for their responses.
+     */
+    void process() throws IOException {
+      in.flip();
+      try {
+        while (true) {
+          if (out.remaining() < OPEN_RESPONSE_SIZE) {
+            flushDurable();
+            if (out.remaining() < OPEN_RESPONSE_SIZE) {
+              // the client is not reading; the rest waits until it does
+              break;
+            }
+          }
+          int size = WireProtocol.requestSize(in);
+          if (size < 0 || in.remaining() < size) {
+            break;
+          }
+          execute(in.position());
+          in.position(in.position() + size);
+        }
+      } finally {
+        in.compact();
+      }
+      flushDurable();
+    }
+
+    /**
+     * Sends the responses once the changes they report are durable.
+     */
+    private void flushDurable() throws IOException {
+      bankService.awaitDeferred();
+      flush();
+    }
+
+    void flush() throws IOException {
+      if (out.position() == 0) {
+        return;
+      }
+      out.flip();
+      channel.write(out);
+      out.compact();
+    }
+
+    private void execute(int at) {
+      int tag = in.getInt(at);
+      byte opcode = in.get(at + 4);
+      int body = at + HEADER_SIZE;
+      UUID requestId = null;
+      if ((opcode & KEYED) != 0) {
+        requestId = uuidAt(body);
+        body += UUID_SIZE;
+      }
+      OperationStatus status;
+      switch (opcode & ~KEYED) {
+        case DEPOSIT:
+          status = requestId == null
+              ? bankService.depositMoney(uuidAt(body), in.getLong(body + UUID_SIZE))
+              : bankService.depositMoney(requestId, uuidAt(body), in.getLong(body + UUID_SIZE));
+          break;
+        case WITHDRAW:
+          status = requestId == null
+              ? bankService.withdrawMoney(uuidAt(body), in.getLong(body + UUID_SIZE))
+              : bankService.withdrawMoney(requestId, uuidAt(body), in.getLong(body + UUID_SIZE));
+          break;
+        case TRANSFER:
+          status = requestId == null
+              ? bankService.transferMoney(uuidAt(body), uuidAt(body + UUID_SIZE), in.getLong(body + 2 * UUID_SIZE))
+              : bankService.transferMoney(requestId, uuidAt(body), uuidAt(body + UUID_SIZE),
+                  in.getLong(body + 2 * UUID_SIZE));
+          break;
+        case CHANGE_LIMIT:
+          status = requestId == null
+              ? bankService.changeCheckingAccountLimit(uuidAt(body), in.getLong(body + UUID_SIZE))
+              : bankService.changeCheckingAccountLimit(requestId, uuidAt(body), in.getLong(body + UUID_SIZE));
+          break;
+        case OPEN_SAVINGS:
+          respond(tag, OperationStatus.OK, bankService.createSavingsAccount(ownerAt(body)));
+          return;
+        case OPEN_CHECKING:
+          respond(tag, OperationStatus.OK,
+              bankService.createCheckingAccount(ownerAt(body + 8), in.getLong(body)));
+          return;
+        default:
+          // requestSize() let nothing else through
+          throw new IllegalStateException("Unknown opcode " + opcode);
+      }
+      out.putInt(tag).put((byte) status.ordinal());
+    }
+
+    private void respond(int tag, OperationStatus status, UUID accountId) {
+      out.putInt(tag).put((byte) status.ordinal())
+          .putLong(accountId.getMostSignificantBits())
+          .putLong(accountId.getLeastSignificantBits());
+    }
+
+    private UUID uuidAt(int at) {
+      return new UUID(in.getLong(at), in.getLong(at + 8));
+    }
+
+    private String ownerAt(int at) {
+      byte[] owner = new byte[in.getShort(at) & 0xFFFF];
+      for (int i = 0; i < owner.length; i++) {
+        owner[i] = in.get(at + 2 + i);
+      }
+      return new String(owner, StandardCharsets.UTF_8);
+    }
+
+  }
+
+}
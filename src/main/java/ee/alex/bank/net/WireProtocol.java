@@ -0,0 +1,91 @@
+package ee.alex.bank.net;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+
+/**
+ * Binary protocol of the {@link BankServer}.
+ * <p>
+ * Every message has a fixed layout per kind, in network byte order, with no framing beyond it. A
+ * request starts with an int tag, chosen by the client and sent back in the response, and a byte
+ * opcode. If the opcode has the {@link #KEYED} bit set, a 16-byte idempotency key follows. Then
+ * comes the body of the opcode; account numbers are 16 bytes, most significant half first, and
+ * amounts are longs in cents:
+ * <pre>
+ * DEPOSIT, WITHDRAW   account, amount
+ * TRANSFER            from account, to account, amount
+ * CHANGE_LIMIT        account, new limit
+ * OPEN_SAVINGS        short owner length, owner in UTF-8
+ * OPEN_CHECKING       limit, short owner length, owner in UTF-8
+ * </pre>
+ * A response is the tag and the status as a byte, the ordinal of the
+ * {@link ee.alex.bank.service.OperationStatus}, followed for an account opened by its number.
+ * Requests of one connection are answered in the order they were sent, so a client may send many
+ * without waiting for the answers. A request the server cannot parse closes the connection.
+ *
+ * @author Aleksei Kulitškov
+ */
+public final class WireProtocol {
+
+  public static final byte DEPOSIT = 1;
+  public static final byte WITHDRAW = 2;
+  public static final byte TRANSFER = 3;
+  public static final byte CHANGE_LIMIT = 4;
+  public static final byte OPEN_SAVINGS = 5;
+  public static final byte OPEN_CHECKING = 6;
+  /**
+   * Bit of an opcode whose request carries an idempotency key; only for the first four opcodes.
+   */
+  public static final byte KEYED = (byte) 0x80;
+
+  public static final int HEADER_SIZE = 5;
+  public static final int UUID_SIZE = 16;
+  public static final int MAX_OWNER_LENGTH = 1024;
+  public static final int MAX_REQUEST_SIZE = HEADER_SIZE + 8 + 2 + MAX_OWNER_LENGTH;
+  public static final int RESPONSE_SIZE = 5;
+  public static final int OPEN_RESPONSE_SIZE = RESPONSE_SIZE + UUID_SIZE;
+
+  private WireProtocol() {
+  }
+
+  /**
+   * Size of the request at the position of the buffer, read without moving it.
+   *
+   * @return the size, or -1 if the buffer does not yet hold enough of the request to tell
+   * @throws ProtocolException if the request is malformed
+   */
+  public static int requestSize(ByteBuffer buffer) throws ProtocolException {
+    int position = buffer.position();
+    int available = buffer.remaining();
+    if (available < HEADER_SIZE) {
+      return -1;
+    }
+    byte opcode = buffer.get(position + 4);
+    int key = (opcode & KEYED) != 0 ? UUID_SIZE : 0;
+    switch (opcode & ~KEYED) {
+      case DEPOSIT:
+      case WITHDRAW:
+      case CHANGE_LIMIT:
+        return HEADER_SIZE + key + UUID_SIZE + 8;
+      case TRANSFER:
+        return HEADER_SIZE + key + 2 * UUID_SIZE + 8;
+      case OPEN_SAVINGS:
+      case OPEN_CHECKING:
+        if (key != 0) {
+          throw new ProtocolException("Accounts are not opened with idempotency keys");
+        }
+        int ownerAt = HEADER_SIZE + (opcode == OPEN_CHECKING ? 8 : 0);
+        if (available < ownerAt + 2) {
+          return -1;
+        }
+        int ownerLength = buffer.getShort(position + ownerAt) & 0xFFFF;
+        if (ownerLength > MAX_OWNER_LENGTH) {
+          throw new ProtocolException("Owner longer than " + MAX_OWNER_LENGTH + " bytes: " + ownerLength);
+        }
+        return ownerAt + 2 + ownerLength;
+      default:
+        throw new ProtocolException("Unknown opcode " + opcode);
+    }
+  }
+
+}
@@ -0,0 +1,27 @@
+package ee.alex.bank.persistence;
+
+/**
+ * When appended journal records are forced to disk.
+ *
+ * @author Aleksei Kulitškov
+ */
+public enum DurabilityPolicy {
+
+  /**
+   * Every record is written and forced before the append returns. The force runs outside the
+   * append lock, so records appended meanwhile are forced together by the next one.
+   */
+  PER_OPERATION,
+
+  /**
+   * Records are group-committed: a writer waiting for durability forces everything appended so
+   * far, so one fsync covers all writers that queued up behind it.
+   */
+  BATCHED,
+
+  /**
+   * Records are forced by a background thread at a fixed interval; writers never wait.
+   */
+  ASYNC
+
+}
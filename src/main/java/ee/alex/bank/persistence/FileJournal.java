@@ -0,0 +1,668 @@
+package ee.alex.bank.persistence;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+import ee.alex.bank.model.AccountType;
+import ee.alex.bank.model.InterestRateTable;
+import static ee.alex.bank.persistence.DurabilityPolicy.ASYNC;
+import static ee.alex.bank.persistence.DurabilityPolicy.BATCHED;
+import static ee.alex.bank.persistence.DurabilityPolicy.PER_OPERATION;
+import static ee.alex.bank.persistence.JournalRecordType.ACCOUNT_CREATED;
+import static ee.alex.bank.persistence.JournalRecordType.DEPOSITED;
+import static ee.alex.bank.persistence.JournalRecordType.INTEREST_ACCRUED;
+import static ee.alex.bank.persistence.JournalRecordType.INTEREST_PERIOD_CLOSED;
+import static ee.alex.bank.persistence.JournalRecordType.LIMIT_CHANGED;
+import static ee.alex.bank.persistence.JournalRecordType.RATE_TABLE_CHANGED;
+import static ee.alex.bank.persistence.JournalRecordType.REQUEST_REJECTED;
+import static ee.alex.bank.persistence.JournalRecordType.TRANSFERRED;
+import static ee.alex.bank.persistence.JournalRecordType.WITHDRAWN;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Binary append-only journal file written through a {@link FileChannel}.
+ * <p>
+ * Every record is framed as {@code [int body length][int CRC-32 of body][body]}, the body being
+ * {@code [byte type][long sequence][payload]}; a change made for a request with an idempotency key
+ * is followed by {@code [key][long request time]} in the same body. Appends only encode into an in-memory buffer; how
+ * and when the buffer reaches the disk depends on the {@link DurabilityPolicy}. On open the file
+ * is scanned and cut back after the last intact record, so a write torn by a crash is dropped.
+ * <p>
+ * A failed write or force leaves the journal failed: the records not yet on disk are kept in no
+ * buffer to retry, as a partial write may already have torn the file, so every append and every
+ * wait for durability from then on throws the failure instead.
+ * <p>
+ * A {@link #setDurableListener(JournalListener) durable listener} is handed the records of every
+ * write right after the file was forced, decoded from the buffer just written, so it learns of a
+ * record before any writer waiting for it returns.
+ *
+ * @author Aleksei Kulitškov
+ */
+public class FileJournal implements Journal {
+
+  static final int HEADER_SIZE = 8;
+  static final int MAX_BODY_SIZE = 1 << 20;
+
+  private static final int MIN_BODY_SIZE = 1 + 8;
+  private static final int UUID_SIZE = 16;
+  private static final int REQUEST_SIZE = UUID_SIZE + 8;
+  private static final int MAX_OWNER_SIZE = 1 << 16;
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final long DEFAULT_ASYNC_INTERVAL_MILLIS = 10;
+  private static final JournalListener IGNORE = new JournalListener() {
+  };
+
+  private final Path path;
+  private final FileChannel channel;
+  private final DurabilityPolicy policy;
+  private final ReentrantLock appendLock = new ReentrantLock();
+  // fair, so a writer returning from a flush cannot barge ahead of the ones its flush kept waiting
+  // and force its next record alone: the lock passes to a waiter, whose flush covers them all
+  private final ReentrantLock flushLock = new ReentrantLock(true);
+  private final CRC32 checksum = new CRC32();
+  private final AtomicLong syncCount = new AtomicLong();
+  private final ScheduledExecutorService asyncFlusher;
+
+  private ByteBuffer pending = ByteBuffer.allocate(BUFFER_SIZE);
+  private ByteBuffer spare = ByteBuffer.allocate(BUFFER_SIZE);
+  private int recordStart;
+  private long lastSequence;
+  private volatile long durableSequence;
+  private volatile JournalCheckpoint checkpoint;
+  private volatile boolean closed;
+  private volatile IOException failure;
+  private volatile JournalListener durableListener;
+
+  private FileJournal(Path path, FileChannel channel, DurabilityPolicy policy, JournalCheckpoint end,
+      long asyncIntervalMillis) {
+    this.path = path;
+    this.channel = channel;
+    this.policy = policy;
+    this.lastSequence = end.getSequence();
+    this.durableSequence = end.getSequence();
+    this.checkpoint = end;
+
+    if (policy == ASYNC) {
+      asyncFlusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "journal-flusher");
+        thread.setDaemon(true);
+        return thread;
+      });
+      asyncFlusher.scheduleWithFixedDelay(this::flushInBackground, asyncIntervalMillis, asyncIntervalMillis,
+          TimeUnit.MILLISECONDS);
+    } else {
+      asyncFlusher = null;
+    }
+  }
+
+  public static FileJournal open(Path path, DurabilityPolicy policy) throws IOException {
+    return open(path, policy, DEFAULT_ASYNC_INTERVAL_MILLIS);
+  }
+
+  public static FileJournal open(Path path, DurabilityPolicy policy, long asyncIntervalMillis) throws IOException {
+    return open(path, FileChannel.open(path, CREATE, READ, WRITE), policy, asyncIntervalMillis);
+  }
+
+  static FileJournal open(Path path, FileChannel channel, DurabilityPolicy policy, long asyncIntervalMillis)
+      throws IOException {
+    try {
+      long[] end = scan(channel, 0, IGNORE);
+      channel.truncate(end[0]);
+      channel.position(end[0]);
+      return new FileJournal(path, channel, policy, new JournalCheckpoint(end[0], end[1]), asyncIntervalMillis);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  public Path getPath() {
+    return path;
+  }
+
+  public DurabilityPolicy getPolicy() {
+    return policy;
+  }
+
+  public long getLastSequence() {
+    appendLock.lock();
+    try {
+      return lastSequence;
+    } finally {
+      appendLock.unlock();
+    }
+  }
+
+  public long getDurableSequence() {
+    return durableSequence;
+  }
+
+  /**
+   * Number of times the file was forced to disk since it was opened.
+   */
+  public long getSyncCount() {
+    return syncCount.get();
+  }
+
+  @Override
+  public long appendAccountCreated(UUID accountId, AccountType type, String owner, long limit) {
+    byte[] ownerBytes = owner == null ? new byte[0] : owner.getBytes(StandardCharsets.UTF_8);
+    if (ownerBytes.length > MAX_OWNER_SIZE) {
+      throw new IllegalArgumentException("Owner name is too long to journal");
+    }
+
+    long sequence;
+    appendLock.lock();
+    try {
+      sequence = begin(ACCOUNT_CREATED, UUID_SIZE + 1 + 8 + 4 + ownerBytes.length);
+      putUuid(accountId);
+      pending.put((byte) type.ordinal());
+      pending.putLong(limit);
+      pending.putInt(ownerBytes.length);
+      pending.put(ownerBytes);
+      commit(sequence);
+    } finally {
+      appendLock.unlock();
+    }
+    return forceIfPerOperation(sequence);
+  }
+
+  @Override
+  public long appendDeposited(UUID accountId, long amount) {
+    return appendAmount(DEPOSITED, accountId, amount, null, 0);
+  }
+
+  @Override
+  public long appendDeposited(UUID accountId, long amount, UUID requestId, long requestTime) {
+    return appendAmount(DEPOSITED, accountId, amount, requestId, requestTime);
+  }
+
+  @Override
+  public long appendWithdrawn(UUID accountId, long amount) {
+    return appendAmount(WITHDRAWN, accountId, amount, null, 0);
+  }
+
+  @Override
+  public long appendWithdrawn(UUID accountId, long amount, UUID requestId, long requestTime) {
+    return appendAmount(WITHDRAWN, accountId, amount, requestId, requestTime);
+  }
+
+  @Override
+  public long appendTransferred(UUID fromAccountId, UUID toAccountId, long amount) {
+    return appendTransferred(fromAccountId, toAccountId, amount, null, 0);
+  }
+
+  @Override
+  public long appendTransferred(UUID fromAccountId, UUID toAccountId, long amount, UUID requestId,
+      long requestTime) {
+    long sequence;
+    appendLock.lock();
+    try {
+      sequence = begin(TRANSFERRED, UUID_SIZE * 2 + 8 + requestSize(requestId));
+      putUuid(fromAccountId);
+      putUuid(toAccountId);
+      pending.putLong(amount);
+      putRequest(requestId, requestTime);
+      commit(sequence);
+    } finally {
+      appendLock.unlock();
+    }
+    return forceIfPerOperation(sequence);
+  }
+
+  @Override
+  public long appendLimitChanged(UUID accountId, long newLimit) {
+    return appendAmount(LIMIT_CHANGED, accountId, newLimit, null, 0);
+  }
+
+  @Override
+  public long appendLimitChanged(UUID accountId, long newLimit, UUID requestId, long requestTime) {
+    return appendAmount(LIMIT_CHANGED, accountId, newLimit, requestId, requestTime);
+  }
+
+  @Override
+  public long appendRequestRejected(UUID requestId, long requestTime, int status, long fingerprint) {
+    long sequence;
+    appendLock.lock();
+    try {
+      sequence = begin(REQUEST_REJECTED, REQUEST_SIZE + 1 + 8);
+      putRequest(requestId, requestTime);
+      pending.put((byte) status);
+      pending.putLong(fingerprint);
+      commit(sequence);
+    } finally {
+      appendLock.unlock();
+    }
+    return forceIfPerOperation(sequence);
+  }
+
+  @Override
+  public long appendRateTableChanged(InterestRateTable rateTable) {
+    long sequence;
+    appendLock.lock();
+    try {
+      sequence = begin(RATE_TABLE_CHANGED, RateTableCodec.size(rateTable));
+      RateTableCodec.write(pending, rateTable);
+      commit(sequence);
+    } finally {
+      appendLock.unlock();
+    }
+    return forceIfPerOperation(sequence);
+  }
+
+  @Override
+  public long appendInterestPeriodClosed(long period, InterestRateTable rateTable) {
+    long sequence;
+    appendLock.lock();
+    try {
+      sequence = begin(INTEREST_PERIOD_CLOSED, 8 + RateTableCodec.size(rateTable));
+      pending.putLong(period);
+      RateTableCodec.write(pending, rateTable);
+      commit(sequence);
+    } finally {
+      appendLock.unlock();
+    }
+    return forceIfPerOperation(sequence);
+  }
+
+  @Override
+  public long appendInterestAccrued(UUID accountId, long amount, long accruedPeriod) {
+    long sequence;
+    appendLock.lock();
+    try {
+      sequence = begin(INTEREST_ACCRUED, UUID_SIZE + 8 + 8);
+      putUuid(accountId);
+      pending.putLong(amount);
+      pending.putLong(accruedPeriod);
+      commit(sequence);
+    } finally {
+      appendLock.unlock();
+    }
+    return forceIfPerOperation(sequence);
+  }
+
+  @Override
+  public void awaitDurable(long sequence) {
+    if (sequence <= durableSequence) {
+      return;
+    }
+    checkNotFailed();
+    if (policy != BATCHED) {
+      return;
+    }
+    forceUpTo(sequence);
+  }
+
+  @Override
+  public void sync() {
+    flushLock.lock();
+    try {
+      flush();
+    } finally {
+      flushLock.unlock();
+    }
+  }
+
+  @Override
+  public void setDurableListener(JournalListener listener) {
+    durableListener = listener;
+  }
+
+  @Override
+  public JournalCheckpoint checkpoint() {
+    return checkpoint;
+  }
+
+  /**
+   * Feeds the records on disk after the checkpoint to the listener. Meant for recovery, before
+   * anything is appended.
+   */
+  @Override
+  public void replay(JournalCheckpoint from, JournalListener listener) {
+    try {
+      scan(channel, from.getPosition(), listener);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+
+    if (asyncFlusher != null) {
+      asyncFlusher.shutdown();
+    }
+    flushLock.lock();
+    try {
+      // a failed journal has already thrown its failure to every writer
+      if (failure == null) {
+        flush();
+      }
+    } finally {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      } finally {
+        flushLock.unlock();
+      }
+    }
+  }
+
+  private long appendAmount(JournalRecordType type, UUID accountId, long amount, UUID requestId, long requestTime) {
+    long sequence;
+    appendLock.lock();
+    try {
+      sequence = begin(type, UUID_SIZE + 8 + requestSize(requestId));
+      putUuid(accountId);
+      pending.putLong(amount);
+      putRequest(requestId, requestTime);
+      commit(sequence);
+    } finally {
+      appendLock.unlock();
+    }
+    return forceIfPerOperation(sequence);
+  }
+
+  private long begin(JournalRecordType type, int payloadSize) {
+    if (closed) {
+      throw new IllegalStateException("Journal is closed");
+    }
+    checkNotFailed();
+
+    int recordSize = HEADER_SIZE + MIN_BODY_SIZE + payloadSize;
+    if (pending.remaining() < recordSize) {
+      ByteBuffer larger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + recordSize));
+      pending.flip();
+      larger.put(pending);
+      pending = larger;
+    }
+
+    long sequence = lastSequence + 1;
+    recordStart = pending.position();
+    pending.putLong(0L);
+    pending.put(type.getCode());
+    pending.putLong(sequence);
+    return sequence;
+  }
+
+  private void commit(long sequence) {
+    int bodyStart = recordStart + HEADER_SIZE;
+    int bodyLength = pending.position() - bodyStart;
+    checksum.reset();
+    checksum.update(pending.array(), pending.arrayOffset() + bodyStart, bodyLength);
+    pending.putInt(recordStart, bodyLength);
+    pending.putInt(recordStart + 4, (int) checksum.getValue());
+    lastSequence = sequence;
+  }
+
+  // called after appendLock is released, so others keep appending while the file is forced and
+  // the next force covers them all
+  private long forceIfPerOperation(long sequence) {
+    if (policy == PER_OPERATION) {
+      forceUpTo(sequence);
+    }
+    return sequence;
+  }
+
+  private void forceUpTo(long sequence) {
+    flushLock.lock();
+    try {
+      // the writer that held the lock before us may already have forced our record
+      if (sequence > durableSequence) {
+        flush();
+      }
+    } finally {
+      flushLock.unlock();
+    }
+  }
+
+  private void putUuid(UUID uuid) {
+    pending.putLong(uuid.getMostSignificantBits());
+    pending.putLong(uuid.getLeastSignificantBits());
+  }
+
+  private void putRequest(UUID requestId, long requestTime) {
+    if (requestId != null) {
+      putUuid(requestId);
+      pending.putLong(requestTime);
+    }
+  }
+
+  private static int requestSize(UUID requestId) {
+    return requestId == null ? 0 : REQUEST_SIZE;
+  }
+
+  // called with flushLock held
+  private void flush() {
+    checkNotFailed();
+    ByteBuffer batch;
+    long upTo;
+    appendLock.lock();
+    try {
+      batch = pending;
+      pending = spare;
+      upTo = lastSequence;
+    } finally {
+      appendLock.unlock();
+    }
+
+    int length = batch.position();
+    try {
+      if (length > 0) {
+        writePending(batch);
+        channel.force(false);
+        syncCount.incrementAndGet();
+        checkpoint = new JournalCheckpoint(channel.position(), upTo);
+      }
+    } catch (IOException e) {
+      // the batch is not recycled: its records are lost, and so is every record appended after them
+      throw fail(e);
+    }
+    publishDurable(batch, length);
+    durableSequence = upTo;
+    batch.clear();
+    spare = batch;
+  }
+
+  /**
+   * Hands the records at the start of the buffer, up to the given length, to the durable listener;
+   * they are on disk, and are handed over by the one thread that wrote them, in sequence order.
+   */
+  private void publishDurable(ByteBuffer buffer, int length) {
+    JournalListener listener = durableListener;
+    if (listener == null) {
+      return;
+    }
+    int start = 0;
+    while (start < length) {
+      buffer.limit(length);
+      int end = start + HEADER_SIZE + buffer.getInt(start);
+      buffer.limit(end);
+      buffer.position(start + HEADER_SIZE);
+      decode(buffer, listener);
+      start = end;
+    }
+    buffer.clear();
+  }
+
+  private void flushInBackground() {
+    flushLock.lock();
+    try {
+      if (!closed && failure == null) {
+        flush();
+      }
+    } catch (UncheckedIOException e) {
+      // kept in failure, thrown to the next append or wait
+    } finally {
+      flushLock.unlock();
+    }
+  }
+
+  private UncheckedIOException fail(IOException e) {
+    failure = e;
+    return new UncheckedIOException("Journal write failed", e);
+  }
+
+  private void checkNotFailed() {
+    IOException cause = failure;
+    if (cause != null) {
+      throw new UncheckedIOException("Journal write failed", cause);
+    }
+  }
+
+  private void writePending(ByteBuffer buffer) throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  /**
+   * Reads intact records from the given file offset on.
+   *
+   * @return the offset just past the last intact record and the sequence number of that record
+   */
+  static long[] scan(FileChannel channel, long from, JournalListener listener) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    buffer.flip();
+    CRC32 checksum = new CRC32();
+    long readPosition = from;
+    long validEnd = from;
+    long lastSequence = 0;
+
+    while (true) {
+      if (buffer.remaining() < HEADER_SIZE) {
+        int read = fill(channel, buffer, readPosition);
+        if (read <= 0) {
+          break;
+        }
+        readPosition += read;
+        continue;
+      }
+
+      int start = buffer.position();
+      int length = buffer.getInt(start);
+      if (length < MIN_BODY_SIZE || length > MAX_BODY_SIZE) {
+        break;
+      }
+      if (buffer.remaining() < HEADER_SIZE + length) {
+        if (buffer.capacity() < HEADER_SIZE + length) {
+          ByteBuffer larger = ByteBuffer.allocate(HEADER_SIZE + length);
+          larger.put(buffer);
+          larger.flip();
+          buffer = larger;
+        }
+        int read = fill(channel, buffer, readPosition);
+        if (read <= 0) {
+          break;
+        }
+        readPosition += read;
+        continue;
+      }
+
+      checksum.reset();
+      checksum.update(buffer.array(), buffer.arrayOffset() + start + HEADER_SIZE, length);
+      if ((int) checksum.getValue() != buffer.getInt(start + 4)) {
+        break;
+      }
+
+      // the body ends at the limit, so a key after the payload can be told apart from the next record
+      int end = buffer.limit();
+      buffer.limit(start + HEADER_SIZE + length);
+      buffer.position(start + HEADER_SIZE);
+      long sequence = decode(buffer, listener);
+      buffer.limit(end);
+      if (sequence < 0) {
+        break;
+      }
+      buffer.position(start + HEADER_SIZE + length);
+      lastSequence = sequence;
+      validEnd = readPosition - buffer.remaining();
+    }
+    return new long[] {validEnd, lastSequence};
+  }
+
+  private static int fill(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    buffer.compact();
+    int read = channel.read(buffer, position);
+    buffer.flip();
+    return read;
+  }
+
+  private static long decode(ByteBuffer body, JournalListener listener) {
+    JournalRecordType type = JournalRecordType.fromCode(body.get());
+    if (type == null) {
+      return -1;
+    }
+
+    long sequence = body.getLong();
+    switch (type) {
+      case ACCOUNT_CREATED:
+        UUID accountId = getUuid(body);
+        AccountType accountType = AccountType.values()[body.get()];
+        long limit = body.getLong();
+        byte[] owner = new byte[body.getInt()];
+        body.get(owner);
+        listener.accountCreated(sequence, accountId, accountType, new String(owner, StandardCharsets.UTF_8), limit);
+        break;
+      case DEPOSITED:
+        listener.deposited(sequence, getUuid(body), body.getLong());
+        break;
+      case WITHDRAWN:
+        listener.withdrawn(sequence, getUuid(body), body.getLong());
+        break;
+      case TRANSFERRED:
+        listener.transferred(sequence, getUuid(body), getUuid(body), body.getLong());
+        break;
+      case LIMIT_CHANGED:
+        listener.limitChanged(sequence, getUuid(body), body.getLong());
+        break;
+      case INTEREST_PERIOD_CLOSED:
+        listener.interestPeriodClosed(sequence, body.getLong(), RateTableCodec.read(body));
+        break;
+      case RATE_TABLE_CHANGED:
+        listener.rateTableChanged(sequence, RateTableCodec.read(body));
+        break;
+      case INTEREST_ACCRUED:
+        listener.interestAccrued(sequence, getUuid(body), body.getLong(), body.getLong());
+        break;
+      case REQUEST_REJECTED:
+        UUID requestId = getUuid(body);
+        long requestTime = body.getLong();
+        int status = body.get();
+        // rejections journaled before fingerprints end at the status
+        long fingerprint = body.remaining() >= 8 ? body.getLong() : 0;
+        listener.requestCompleted(sequence, requestId, requestTime, status, fingerprint);
+        break;
+      default:
+        return -1;
+    }
+    if (body.remaining() >= REQUEST_SIZE) {
+      listener.requestCompleted(sequence, getUuid(body), body.getLong(), 0, 0);
+    }
+    return sequence;
+  }
+
+  private static UUID getUuid(ByteBuffer buffer) {
+    return new UUID(buffer.getLong(), buffer.getLong());
+  }
+
+}
@@ -0,0 +1,143 @@
+package ee.alex.bank.persistence;
+
+import java.util.UUID;
+import ee.alex.bank.model.AccountType;
+import ee.alex.bank.model.InterestRateTable;
+
+/**
+ * Write-ahead log of every state change of the bank.
+ * <p>
+ * Appends return the sequence number assigned to the record. Callers append while they still hold
+ * the locks of the accounts involved, so the journal order of the records of one account is the
+ * order in which they were applied, and then call {@link #awaitDurable(long)} after releasing the
+ * locks. Failures to write the journal are reported as {@link java.io.UncheckedIOException}.
+ * <p>
+ * A change made for a request with an idempotency key carries the key and the time the request
+ * was received in its own record, so after a crash either both the change and the key are there
+ * or neither is.
+ *
+ * @author Aleksei Kulitškov
+ */
+public interface Journal extends AutoCloseable {
+
+  /**
+   * Journal that records nothing, for a purely in-memory bank.
+   */
+  Journal NONE = new Journal() {
+  };
+
+  default long appendAccountCreated(UUID accountId, AccountType type, String owner, long limit) {
+    return 0;
+  }
+
+  default long appendDeposited(UUID accountId, long amount) {
+    return 0;
+  }
+
+  default long appendDeposited(UUID accountId, long amount, UUID requestId, long requestTime) {
+    return appendDeposited(accountId, amount);
+  }
+
+  default long appendWithdrawn(UUID accountId, long amount) {
+    return 0;
+  }
+
+  default long appendWithdrawn(UUID accountId, long amount, UUID requestId, long requestTime) {
+    return appendWithdrawn(accountId, amount);
+  }
+
+  default long appendTransferred(UUID fromAccountId, UUID toAccountId, long amount) {
+    return 0;
+  }
+
+  default long appendTransferred(UUID fromAccountId, UUID toAccountId, long amount, UUID requestId,
+      long requestTime) {
+    return appendTransferred(fromAccountId, toAccountId, amount);
+  }
+
+  default long appendLimitChanged(UUID accountId, long newLimit) {
+    return 0;
+  }
+
+  default long appendLimitChanged(UUID accountId, long newLimit, UUID requestId, long requestTime) {
+    return appendLimitChanged(accountId, newLimit);
+  }
+
+  /**
+   * Request with an idempotency key rejected with the given status code, without changing anything.
+   *
+   * @param fingerprint fingerprint of the operation requested, which a change needs not carry as it
+   * can be told from the change
+   */
+  default long appendRequestRejected(UUID requestId, long requestTime, int status, long fingerprint) {
+    return 0;
+  }
+
+  default long appendRateTableChanged(InterestRateTable rateTable) {
+    return 0;
+  }
+
+  /**
+   * Closes the interest period with the given number, which earns the rates of the given table.
+   */
+  default long appendInterestPeriodClosed(long period, InterestRateTable rateTable) {
+    return 0;
+  }
+
+  /**
+   * Interest credited to an account for the periods it had not been credited for; the account is
+   * then credited up to, but not including, the given period.
+   */
+  default long appendInterestAccrued(UUID accountId, long amount, long accruedPeriod) {
+    return 0;
+  }
+
+  /**
+   * Blocks until the record with the given sequence number is on disk, as far as the durability
+   * policy of the journal promises it.
+   */
+  default void awaitDurable(long sequence) {
+  }
+
+  /**
+   * Blocks until every record appended so far is on disk, whatever the durability policy of the
+   * journal.
+   */
+  default void sync() {
+  }
+
+  /**
+   * Hands every record appended from now on to the listener once it is durable, in sequence order,
+   * on the thread that made it durable; {@code null} stops handing them over.
+   *
+   * @throws UnsupportedOperationException if the journal cannot tell when its records are durable
+   */
+  default void setDurableListener(JournalListener listener) {
+    throw new UnsupportedOperationException("Journal does not report durable records");
+  }
+
+  /**
+   * Point up to which the journal is on disk.
+   */
+  default JournalCheckpoint checkpoint() {
+    return JournalCheckpoint.START;
+  }
+
+  /**
+   * Feeds every intact record to the listener, in sequence order.
+   */
+  default void replay(JournalListener listener) {
+    replay(JournalCheckpoint.START, listener);
+  }
+
+  /**
+   * Feeds the intact records after the checkpoint to the listener, in sequence order.
+   */
+  default void replay(JournalCheckpoint from, JournalListener listener) {
+  }
+
+  @Override
+  default void close() {
+  }
+
+}
@@ -0,0 +1,34 @@
+package ee.alex.bank.persistence;
+
+/**
+ * A point in the journal: every record up to {@link #getSequence()} lies before
+ * {@link #getPosition()} in the file, every later record at or after it.
+ *
+ * @author Aleksei Kulitškov
+ */
+public final class JournalCheckpoint {
+
+  public static final JournalCheckpoint START = new JournalCheckpoint(0, 0);
+
+  private final long position;
+  private final long sequence;
+
+  public JournalCheckpoint(long position, long sequence) {
+    this.position = position;
+    this.sequence = sequence;
+  }
+
+  public long getPosition() {
+    return position;
+  }
+
+  public long getSequence() {
+    return sequence;
+  }
+
+  @Override
+  public String toString() {
+    return "JournalCheckpoint[position=" + position + ", sequence=" + sequence + "]";
+  }
+
+}
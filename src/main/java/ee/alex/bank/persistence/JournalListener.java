@@ -0,0 +1,50 @@
+package ee.alex.bank.persistence;
+
+import java.util.UUID;
+import ee.alex.bank.model.AccountType;
+import ee.alex.bank.model.InterestRateTable;
+
+/**
+ * Receives journal records in sequence order during replay. Every record carries the sequence
+ * number it was appended with.
+ *
+ * @author Aleksei Kulitškov
+ */
+public interface JournalListener {
+
+  default void accountCreated(long sequence, UUID accountId, AccountType type, String owner, long limit) {
+  }
+
+  default void deposited(long sequence, UUID accountId, long amount) {
+  }
+
+  default void withdrawn(long sequence, UUID accountId, long amount) {
+  }
+
+  default void transferred(long sequence, UUID fromAccountId, UUID toAccountId, long amount) {
+  }
+
+  default void limitChanged(long sequence, UUID accountId, long newLimit) {
+  }
+
+  default void rateTableChanged(long sequence, InterestRateTable rateTable) {
+  }
+
+  default void interestPeriodClosed(long sequence, long period, InterestRateTable rateTable) {
+  }
+
+  default void interestAccrued(long sequence, UUID accountId, long amount, long accruedPeriod) {
+  }
+
+  /**
+   * The request with the given idempotency key, received at the given time, was answered with the
+   * given status code. A request that succeeded has status 0 and is reported right after the
+   * change it made, which came in the same record.
+   *
+   * @param fingerprint fingerprint of the operation requested, 0 for a request that succeeded, whose
+   * operation is the change, and for a rejection journaled before fingerprints were
+   */
+  default void requestCompleted(long sequence, UUID requestId, long requestTime, int status, long fingerprint) {
+  }
+
+}
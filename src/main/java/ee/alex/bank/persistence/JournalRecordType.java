@@ -0,0 +1,40 @@
+package ee.alex.bank.persistence;
+
+/**
+ * @author Aleksei Kulitškov
+ */
+public enum JournalRecordType {
+
+  ACCOUNT_CREATED(1),
+  DEPOSITED(2),
+  WITHDRAWN(3),
+  TRANSFERRED(4),
+  LIMIT_CHANGED(5),
+  INTEREST_PERIOD_CLOSED(6),
+  INTEREST_ACCRUED(7),
+  RATE_TABLE_CHANGED(8),
+  REQUEST_REJECTED(9);
+
+  private static final JournalRecordType[] BY_CODE = new JournalRecordType[10];
+
+  static {
+    for (JournalRecordType type : values()) {
+      BY_CODE[type.code] = type;
+    }
+  }
+
+  private final byte code;
+
+  JournalRecordType(int code) {
+    this.code = (byte) code;
+  }
+
+  public byte getCode() {
+    return code;
+  }
+
+  public static JournalRecordType fromCode(byte code) {
+    return code > 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+  }
+
+}
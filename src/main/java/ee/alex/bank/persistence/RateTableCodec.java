@@ -0,0 +1,64 @@
+package ee.alex.bank.persistence;
+
+import java.nio.ByteBuffer;
+import ee.alex.bank.exception.InvalidInterestRateException;
+import ee.alex.bank.model.AccountType;
+import ee.alex.bank.model.InterestRateTable;
+
+/**
+ * Binary form of an {@link InterestRateTable}, shared by the journal and snapshots: the version,
+ * then for every product in account type order the number of tiers followed by the start balance
+ * and rate of each tier.
+ *
+ * @author Aleksei Kulitškov
+ */
+final class RateTableCodec {
+
+  private RateTableCodec() {
+  }
+
+  static int size(InterestRateTable rateTable) {
+    int size = 8;
+    for (AccountType product : AccountType.values()) {
+      size += 4 + rateTable.getTierCount(product) * (8 + 8);
+    }
+    return size;
+  }
+
+  static void write(ByteBuffer buffer, InterestRateTable rateTable) {
+    buffer.putLong(rateTable.getVersion());
+    for (AccountType product : AccountType.values()) {
+      int tiers = rateTable.getTierCount(product);
+      buffer.putInt(tiers);
+      for (int tier = 0; tier < tiers; tier++) {
+        buffer.putLong(rateTable.getTierStart(product, tier));
+        buffer.putDouble(rateTable.getRate(product, tier));
+      }
+    }
+  }
+
+  /**
+   * @throws IllegalStateException if the bytes do not hold a valid table
+   */
+  static InterestRateTable read(ByteBuffer buffer) {
+    long version = buffer.getLong();
+    int products = AccountType.values().length;
+    long[][] tierStarts = new long[products][];
+    double[][] rates = new double[products][];
+    for (int product = 0; product < products; product++) {
+      int tiers = buffer.getInt();
+      tierStarts[product] = new long[tiers];
+      rates[product] = new double[tiers];
+      for (int tier = 0; tier < tiers; tier++) {
+        tierStarts[product][tier] = buffer.getLong();
+        rates[product][tier] = buffer.getDouble();
+      }
+    }
+    try {
+      return InterestRateTable.of(version, tierStarts, rates);
+    } catch (InvalidInterestRateException | IllegalArgumentException e) {
+      throw new IllegalStateException("Invalid interest rate table of version " + version, e);
+    }
+  }
+
+}
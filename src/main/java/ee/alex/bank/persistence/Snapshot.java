@@ -0,0 +1,197 @@
+package ee.alex.bank.persistence;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.UUID;
+import ee.alex.bank.model.AccountType;
+import ee.alex.bank.model.InterestRateTable;
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Binary image of all accounts at one point, written by {@link SnapshotWriter}.
+ * <p>
+ * The file starts with a fixed header followed by one fixed-size record per account; owner names
+ * are stored after the records and referenced by offset. The file is read through memory-mapped
+ * windows, so loading it copies nothing but the decoded fields.
+ * <p>
+ * Snapshots are fuzzy: accounts are copied one by one while transactions go on. Every account
+ * carries the journal sequence of the last change it includes, and the header carries the
+ * journal checkpoint taken before the first account was copied, so recovery replays the journal
+ * from the checkpoint and skips the records an account already contains.
+ * <p>
+ * Savings accounts have no limit; their record holds the interest period they are credited up to
+ * in its place. The header holds the interest period that was open at the checkpoint, and the
+ * offset of the interest rate table, which follows the owner names. The results of recent requests
+ * with an idempotency key follow the rate table, as a count and fixed-size records. Snapshots of
+ * format version 1 still load; their requests carry no fingerprint.
+ *
+ * @author Aleksei Kulitškov
+ */
+public final class Snapshot {
+
+  static final int MAGIC = 0x424E4B53;
+  static final int FORMAT_VERSION = 2;
+  static final int FINGERPRINT_FORMAT_VERSION = 2;
+  static final int HEADER_SIZE = 64;
+  static final int RECORD_SIZE = 56;
+  static final int REQUEST_SIZE = 16 + 8 + 1 + 8;
+  static final int UNFINGERPRINTED_REQUEST_SIZE = 16 + 8 + 1;
+  static final long WINDOW_SIZE = 64L * 1024 * 1024;
+
+  static final int COUNT_OFFSET = 8;
+  static final int JOURNAL_POSITION_OFFSET = 16;
+  static final int JOURNAL_SEQUENCE_OFFSET = 24;
+  static final int OWNERS_OFFSET = 32;
+  static final int INTEREST_PERIOD_OFFSET = 40;
+  static final int RATE_TABLE_OFFSET = 48;
+
+  private final Path path;
+  private final long accountCount;
+  private final JournalCheckpoint journalCheckpoint;
+  private final InterestRateTable rateTable;
+  private final long interestPeriod;
+  private final long ownersStart;
+  private final long requestsStart;
+  private final boolean fingerprinted;
+
+  private Snapshot(Path path, long accountCount, JournalCheckpoint journalCheckpoint, InterestRateTable rateTable,
+      long interestPeriod, long ownersStart, long requestsStart, boolean fingerprinted) {
+    this.path = path;
+    this.accountCount = accountCount;
+    this.journalCheckpoint = journalCheckpoint;
+    this.rateTable = rateTable;
+    this.interestPeriod = interestPeriod;
+    this.ownersStart = ownersStart;
+    this.requestsStart = requestsStart;
+    this.fingerprinted = fingerprinted;
+  }
+
+  public long getAccountCount() {
+    return accountCount;
+  }
+
+  /**
+   * Journal point to replay from after loading the snapshot.
+   */
+  public JournalCheckpoint getJournalCheckpoint() {
+    return journalCheckpoint;
+  }
+
+  public double getInterestRate() {
+    return rateTable.getBaseRate(AccountType.SAVINGS);
+  }
+
+  public InterestRateTable getRateTable() {
+    return rateTable;
+  }
+
+  /**
+   * Interest period open at the journal checkpoint; every account is credited at least up to it.
+   */
+  public long getInterestPeriod() {
+    return interestPeriod;
+  }
+
+  /**
+   * Reads the header of the snapshot file.
+   */
+  public static Snapshot read(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, READ)) {
+      MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+      int formatVersion = header.getInt(4);
+      if (header.getInt(0) != MAGIC || formatVersion < 1 || formatVersion > FORMAT_VERSION) {
+        throw new IOException("Not a bank snapshot: " + path);
+      }
+      JournalCheckpoint checkpoint = new JournalCheckpoint(header.getLong(JOURNAL_POSITION_OFFSET),
+          header.getLong(JOURNAL_SEQUENCE_OFFSET));
+      long rateTableStart = header.getLong(RATE_TABLE_OFFSET);
+      InterestRateTable rateTable = RateTableCodec.read(channel.map(FileChannel.MapMode.READ_ONLY, rateTableStart,
+          channel.size() - rateTableStart));
+
+      return new Snapshot(path, header.getLong(COUNT_OFFSET), checkpoint, rateTable,
+          header.getLong(INTEREST_PERIOD_OFFSET), header.getLong(OWNERS_OFFSET),
+          rateTableStart + RateTableCodec.size(rateTable), formatVersion >= FINGERPRINT_FORMAT_VERSION);
+    }
+  }
+
+  /**
+   * Feeds every account of the snapshot to the listener.
+   */
+  public void forEachAccount(SnapshotListener listener) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, READ)) {
+      Window records = new Window(channel, HEADER_SIZE);
+      Window owners = new Window(channel, ownersStart);
+      for (long i = 0; i < accountCount; i++) {
+        MappedByteBuffer record = records.at(HEADER_SIZE + i * RECORD_SIZE, RECORD_SIZE);
+        int base = record.position();
+        UUID accountId = new UUID(record.getLong(base), record.getLong(base + 8));
+        long balance = record.getLong(base + 16);
+        long limit = record.getLong(base + 24);
+        long version = record.getLong(base + 32);
+        long ownerOffset = record.getLong(base + 40);
+        int ownerLength = record.getInt(base + 48);
+        AccountType type = AccountType.values()[record.get(base + 52)];
+
+        MappedByteBuffer ownerBytes = owners.at(ownersStart + ownerOffset, ownerLength);
+        byte[] owner = new byte[ownerLength];
+        ownerBytes.get(owner);
+
+        listener.account(accountId, type, new String(owner, StandardCharsets.UTF_8), balance, limit, version);
+      }
+    }
+  }
+
+  /**
+   * Feeds the results of the requests in the snapshot to the listener, as if journaled at the
+   * journal checkpoint of the snapshot.
+   */
+  public void forEachRequest(JournalListener listener) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, READ)) {
+      Window requests = new Window(channel, requestsStart);
+      int count = requests.at(requestsStart, 4).getInt();
+      int size = fingerprinted ? REQUEST_SIZE : UNFINGERPRINTED_REQUEST_SIZE;
+      for (int i = 0; i < count; i++) {
+        MappedByteBuffer request = requests.at(requestsStart + 4 + (long) i * size, size);
+        UUID requestId = new UUID(request.getLong(), request.getLong());
+        long requestTime = request.getLong();
+        int status = request.get();
+        listener.requestCompleted(journalCheckpoint.getSequence(), requestId, requestTime, status,
+            fingerprinted ? request.getLong() : 0);
+      }
+    }
+  }
+
+  /**
+   * Read-only mapping of a part of the file that is moved forward as reading proceeds.
+   */
+  private static final class Window {
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private MappedByteBuffer buffer;
+    private long start;
+
+    Window(FileChannel channel, long start) throws IOException {
+      this.channel = channel;
+      this.fileSize = channel.size();
+      this.start = start;
+    }
+
+    /**
+     * @return the window, positioned at the given file offset with at least length bytes after it
+     */
+    MappedByteBuffer at(long offset, int length) throws IOException {
+      if (buffer == null || offset < start || offset + length > start + buffer.capacity()) {
+        start = offset;
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(Math.max(WINDOW_SIZE, length), fileSize - start));
+      }
+      buffer.position((int) (offset - start));
+      return buffer;
+    }
+
+  }
+
+}
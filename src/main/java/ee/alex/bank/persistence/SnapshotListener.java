@@ -0,0 +1,15 @@
+package ee.alex.bank.persistence;
+
+import java.util.UUID;
+import ee.alex.bank.model.AccountType;
+
+/**
+ * Receives the accounts of a snapshot in the order they were written.
+ *
+ * @author Aleksei Kulitškov
+ */
+public interface SnapshotListener {
+
+  void account(UUID accountId, AccountType type, String owner, long balance, long limit, long version);
+
+}
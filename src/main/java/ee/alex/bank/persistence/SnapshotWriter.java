@@ -0,0 +1,200 @@
+package ee.alex.bank.persistence;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+import ee.alex.bank.model.AccountType;
+import ee.alex.bank.model.InterestRateTable;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static ee.alex.bank.persistence.Snapshot.COUNT_OFFSET;
+import static ee.alex.bank.persistence.Snapshot.FORMAT_VERSION;
+import static ee.alex.bank.persistence.Snapshot.HEADER_SIZE;
+import static ee.alex.bank.persistence.Snapshot.INTEREST_PERIOD_OFFSET;
+import static ee.alex.bank.persistence.Snapshot.JOURNAL_POSITION_OFFSET;
+import static ee.alex.bank.persistence.Snapshot.JOURNAL_SEQUENCE_OFFSET;
+import static ee.alex.bank.persistence.Snapshot.MAGIC;
+import static ee.alex.bank.persistence.Snapshot.OWNERS_OFFSET;
+import static ee.alex.bank.persistence.Snapshot.RATE_TABLE_OFFSET;
+import static ee.alex.bank.persistence.Snapshot.RECORD_SIZE;
+import static ee.alex.bank.persistence.Snapshot.REQUEST_SIZE;
+import static ee.alex.bank.persistence.Snapshot.WINDOW_SIZE;
+
+/**
+ * Writes a {@link Snapshot} through memory-mapped windows.
+ * <p>
+ * The snapshot is written next to its final path and moved into place on {@link #commit()}, so the
+ * previous snapshot stays valid until the new one is complete.
+ *
+ * @author Aleksei Kulitškov
+ */
+public class SnapshotWriter implements AutoCloseable {
+
+  private final Path path;
+  private final Path temporaryPath;
+  private final FileChannel channel;
+  private final long capacity;
+  private final long ownersStart;
+  private final Window records;
+  private final Window owners;
+  private final InterestRateTable rateTable;
+  private long count;
+  private long ownersSize;
+  private int requestCount;
+  private boolean committed;
+
+  /**
+   * @param capacity the most accounts that will be written
+   */
+  public SnapshotWriter(Path path, long capacity, JournalCheckpoint journalCheckpoint, double interestRate)
+      throws IOException {
+    this(path, capacity, journalCheckpoint, InterestRateTable.flat(interestRate), 0);
+  }
+
+  /**
+   * @param capacity the most accounts that will be written
+   * @param rateTable interest rates in force at the journal checkpoint
+   * @param interestPeriod interest period open at the journal checkpoint
+   */
+  public SnapshotWriter(Path path, long capacity, JournalCheckpoint journalCheckpoint, InterestRateTable rateTable,
+      long interestPeriod) throws IOException {
+    this.path = path;
+    this.temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+    this.channel = FileChannel.open(temporaryPath, CREATE, READ, WRITE, TRUNCATE_EXISTING);
+    this.capacity = capacity;
+    this.ownersStart = HEADER_SIZE + capacity * RECORD_SIZE;
+    this.records = new Window(channel, HEADER_SIZE);
+    this.owners = new Window(channel, ownersStart);
+    this.rateTable = rateTable;
+
+    MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+    header.putInt(0, MAGIC);
+    header.putInt(4, FORMAT_VERSION);
+    header.putLong(JOURNAL_POSITION_OFFSET, journalCheckpoint.getPosition());
+    header.putLong(JOURNAL_SEQUENCE_OFFSET, journalCheckpoint.getSequence());
+    header.putLong(INTEREST_PERIOD_OFFSET, interestPeriod);
+    header.putLong(OWNERS_OFFSET, ownersStart);
+  }
+
+  public void write(UUID accountId, AccountType type, String owner, long balance, long limit, long version)
+      throws IOException {
+    if (count == capacity) {
+      throw new IllegalStateException("Snapshot holds at most " + capacity + " accounts");
+    }
+    if (requestCount > 0) {
+      throw new IllegalStateException("Accounts must be written before requests");
+    }
+    byte[] ownerBytes = owner.getBytes(StandardCharsets.UTF_8);
+
+    MappedByteBuffer record = records.at(HEADER_SIZE + count * RECORD_SIZE, RECORD_SIZE);
+    record.putLong(accountId.getMostSignificantBits());
+    record.putLong(accountId.getLeastSignificantBits());
+    record.putLong(balance);
+    record.putLong(limit);
+    record.putLong(version);
+    record.putLong(ownersSize);
+    record.putInt(ownerBytes.length);
+    record.put((byte) type.ordinal());
+
+    owners.at(ownersStart + ownersSize, ownerBytes.length).put(ownerBytes);
+    ownersSize += ownerBytes.length;
+    count++;
+  }
+
+  /**
+   * Writes the result of a request with an idempotency key, after every account.
+   *
+   * @param fingerprint fingerprint of the operation requested, 0 if not known
+   */
+  public void writeRequest(UUID requestId, long requestTime, int status, long fingerprint) throws IOException {
+    MappedByteBuffer request = owners.at(requestsStart() + 4 + (long) requestCount * REQUEST_SIZE, REQUEST_SIZE);
+    request.putLong(requestId.getMostSignificantBits());
+    request.putLong(requestId.getLeastSignificantBits());
+    request.putLong(requestTime);
+    request.put((byte) status);
+    request.putLong(fingerprint);
+    requestCount++;
+  }
+
+  /**
+   * Completes the snapshot and atomically replaces the previous one.
+   */
+  public void commit() throws IOException {
+    long rateTableStart = ownersStart + ownersSize;
+    int rateTableSize = RateTableCodec.size(rateTable);
+    RateTableCodec.write(owners.at(rateTableStart, rateTableSize), rateTable);
+    long requestsEnd = requestsStart() + 4 + (long) requestCount * REQUEST_SIZE;
+    owners.at(requestsStart(), 4).putInt(requestCount);
+
+    MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+    header.putLong(COUNT_OFFSET, count);
+    header.putLong(RATE_TABLE_OFFSET, rateTableStart);
+    header.force();
+    records.force();
+    owners.force();
+    channel.truncate(requestsEnd);
+    channel.force(true);
+    channel.close();
+
+    Files.move(temporaryPath, path, ATOMIC_MOVE, REPLACE_EXISTING);
+    committed = true;
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  // requests follow the rate table, which follows the owner names
+  private long requestsStart() {
+    return ownersStart + ownersSize + RateTableCodec.size(rateTable);
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (!committed) {
+      channel.close();
+      Files.deleteIfExists(temporaryPath);
+    }
+  }
+
+  /**
+   * Writable mapping of a part of the file that is moved forward as writing proceeds.
+   */
+  private static final class Window {
+
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private long start;
+
+    Window(FileChannel channel, long start) {
+      this.channel = channel;
+      this.start = start;
+    }
+
+    MappedByteBuffer at(long offset, int length) throws IOException {
+      if (buffer == null || offset < start || offset + length > start + buffer.capacity()) {
+        force();
+        start = offset;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, start, Math.max(WINDOW_SIZE, length));
+      }
+      buffer.position((int) (offset - start));
+      return buffer;
+    }
+
+    void force() {
+      if (buffer != null) {
+        buffer.force();
+      }
+    }
+
+  }
+
+}
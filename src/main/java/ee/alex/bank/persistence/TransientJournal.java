@@ -0,0 +1,98 @@
+package ee.alex.bank.persistence;
+
+import java.util.UUID;
+import ee.alex.bank.model.AccountType;
+import ee.alex.bank.model.InterestRateTable;
+
+/**
+ * Journal of a bank that keeps no record of its changes, like {@link Journal#NONE}, but still
+ * reports them.
+ * <p>
+ * Nothing is ever written, so a change is as durable as it will get once it is made: every append
+ * is handed to the {@link #setDurableListener(JournalListener) durable listener} at once, on the
+ * appending thread, with sequence number 0. Without a listener an append only reads one field.
+ *
+ * @author Aleksei Kulitškov
+ */
+public final class TransientJournal implements Journal {
+
+  private volatile JournalListener listener;
+
+  @Override
+  public void setDurableListener(JournalListener listener) {
+    this.listener = listener;
+  }
+
+  @Override
+  public long appendAccountCreated(UUID accountId, AccountType type, String owner, long limit) {
+    JournalListener listener = this.listener;
+    if (listener != null) {
+      listener.accountCreated(0, accountId, type, owner, limit);
+    }
+    return 0;
+  }
+
+  @Override
+  public long appendDeposited(UUID accountId, long amount) {
+    JournalListener listener = this.listener;
+    if (listener != null) {
+      listener.deposited(0, accountId, amount);
+    }
+    return 0;
+  }
+
+  @Override
+  public long appendWithdrawn(UUID accountId, long amount) {
+    JournalListener listener = this.listener;
+    if (listener != null) {
+      listener.withdrawn(0, accountId, amount);
+    }
+    return 0;
+  }
+
+  @Override
+  public long appendTransferred(UUID fromAccountId, UUID toAccountId, long amount) {
+    JournalListener listener = this.listener;
+    if (listener != null) {
+      listener.transferred(0, fromAccountId, toAccountId, amount);
+    }
+    return 0;
+  }
+
+  @Override
+  public long appendLimitChanged(UUID accountId, long newLimit) {
+    JournalListener listener = this.listener;
+    if (listener != null) {
+      listener.limitChanged(0, accountId, newLimit);
+    }
+    return 0;
+  }
+
+  @Override
+  public long appendRateTableChanged(InterestRateTable rateTable) {
+    JournalListener listener = this.listener;
+    if (listener != null) {
+      listener.rateTableChanged(0, rateTable);
+    }
+    return 0;
+  }
+
+  @Override
+  public long appendInterestPeriodClosed(long period, InterestRateTable rateTable) {
+    JournalListener listener = this.listener;
+    if (listener != null) {
+      listener.interestPeriodClosed(0, period, rateTable);
+    }
+    return 0;
+  }
+
+  @Override
+  public long appendInterestAccrued(UUID accountId, long amount, long accruedPeriod) {
+    JournalListener listener = this.listener;
+    if (listener != null) {
+      listener.interestAccrued(0, accountId, amount, accruedPeriod);
+    }
+    return 0;
+  }
+
+}
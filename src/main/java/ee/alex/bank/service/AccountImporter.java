@@ -0,0 +1,616 @@
+package ee.alex.bank.service;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import ee.alex.bank.exception.AccountErrorException;
+import ee.alex.bank.model.AccountIdGenerator;
+import ee.alex.bank.model.AccountType;
+
+/**
+ * Opens accounts in bulk from a file, for migrations from other systems.
+ * <p>
+ * Every record gives the owner, type, limit and opening balance of an account, in cents. A CSV
+ * file has one record per line, {@code owner,type,limit,balance}, with the type {@code SAVINGS}
+ * or {@code CHECKING}; the owner may be quoted, with quotes inside doubled, and a first line that
+ * starts with {@code owner} is taken for a header. A binary file, as written by
+ * {@link BinaryWriter}, starts with the int {@link #BINARY_MAGIC} and the int version 1, followed
+ * by records of a type byte (0 savings, 1 checking), the limit and the balance as longs, and the
+ * owner as a short length and that many bytes of UTF-8, in network byte order.
+ * <p>
+ * The file is read in chunks of a megabyte, cut at the last whole record, by the calling thread,
+ * and parsed and imported by a pool of workers, so reading, parsing and opening accounts overlap
+ * and the last two run on every core. The account index is grown once up front, to the record
+ * count estimated from the first chunk. Accounts are numbered by the {@link AccountIdGenerator}
+ * the importer is given, the one of the bank unless another is chosen. The default one of a bank is
+ * secure, which workers share; one that keeps its state per thread, such as
+ * {@link AccountIdGenerator#RANDOM}, lets workers never wait for each other there.
+ * Opening balances are journaled as deposits, or as withdrawals within the limit; the
+ * import waits for the journal once, at the end.
+ * <p>
+ * A record that cannot be parsed or would not make a valid account is rejected and the import
+ * goes on. Progress is reported at an interval while the import runs.
+ *
+ * @author Aleksei Kulitškov
+ */
+public class AccountImporter {
+
+  public static final int BINARY_MAGIC = 0x42414E4B;
+  public static final int BINARY_VERSION = 1;
+  public static final int MAX_ERRORS_REPORTED = 100;
+
+  private static final int BINARY_HEADER_SIZE = 8;
+  // type, limit, balance and owner length
+  private static final int BINARY_RECORD_HEADER_SIZE = 1 + 8 + 8 + 2;
+  private static final int CHUNK_SIZE = 1 << 20;
+  private static final long DEFAULT_PROGRESS_INTERVAL_MILLIS = 1_000;
+  private static final AccountType[] TYPES = AccountType.values();
+  private static final byte[] SAVINGS = "SAVINGS".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] CHECKING = "CHECKING".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] HEADER = "OWNER".getBytes(StandardCharsets.US_ASCII);
+
+  private final BankService bankService;
+  private final int workers;
+  private final AccountIdGenerator accountIds;
+  private final Progress progress;
+  private final long progressIntervalNanos;
+
+  /**
+   * Importer with a worker per core that reports nothing while it runs.
+   */
+  public AccountImporter(BankService bankService) {
+    this(bankService, Runtime.getRuntime().availableProcessors(), Progress.NONE, DEFAULT_PROGRESS_INTERVAL_MILLIS);
+  }
+
+  /**
+   * @param progress told how the import is going every {@code progressIntervalMillis}, on the
+   * thread that runs it, and once more at the end
+   */
+  public AccountImporter(BankService bankService, int workers, Progress progress, long progressIntervalMillis) {
+    this(bankService, workers, bankService.getAccountIdGenerator(), progress, progressIntervalMillis);
+  }
+
+  /**
+   * @param accountIds numbers the imported accounts instead of the generator of the bank
+   * @param progress told how the import is going every {@code progressIntervalMillis}, on the
+   * thread that runs it, and once more at the end
+   */
+  public AccountImporter(BankService bankService, int workers, AccountIdGenerator accountIds, Progress progress,
+      long progressIntervalMillis) {
+    if (workers < 1) {
+      throw new IllegalArgumentException("Worker count must be positive: " + workers);
+    }
+    this.bankService = bankService;
+    this.workers = workers;
+    this.accountIds = accountIds;
+    this.progress = progress;
+    this.progressIntervalNanos = TimeUnit.MILLISECONDS.toNanos(progressIntervalMillis);
+  }
+
+  public ImportReport importCsv(Path file) throws IOException {
+    return new Run(new CsvFormat()).execute(file);
+  }
+
+  public ImportReport importBinary(Path file) throws IOException {
+    return new Run(new BinaryFormat()).execute(file);
+  }
+
+  /**
+   * Told how an import is going.
+   */
+  @FunctionalInterface
+  public interface Progress {
+
+    Progress NONE = report -> {
+    };
+
+    void progress(ImportReport report);
+
+  }
+
+  /**
+   * Writes accounts to a binary file for {@link #importBinary(Path)}.
+   */
+  public static final class BinaryWriter implements Closeable {
+
+    private final DataOutputStream out;
+
+    public BinaryWriter(OutputStream out) throws IOException {
+      this.out = new DataOutputStream(new BufferedOutputStream(out, CHUNK_SIZE));
+      this.out.writeInt(BINARY_MAGIC);
+      this.out.writeInt(BINARY_VERSION);
+    }
+
+    public void write(AccountType type, String owner, long limit, long balance) throws IOException {
+      byte[] name = owner.getBytes(StandardCharsets.UTF_8);
+      if (name.length > 0xFFFF) {
+        throw new IllegalArgumentException("Owner longer than 65535 bytes: " + owner);
+      }
+      out.writeByte(type.ordinal());
+      out.writeLong(limit);
+      out.writeLong(balance);
+      out.writeShort(name.length);
+      out.write(name);
+    }
+
+    @Override
+    public void close() throws IOException {
+      out.close();
+    }
+
+  }
+
+  /**
+   * Part of the file, cut at a record boundary.
+   */
+  private static final class Chunk {
+
+    private static final Chunk END = new Chunk(0);
+
+    private final byte[] data;
+    private int length;
+    // position of the chunk in the file
+    private long offset;
+
+    Chunk(int size) {
+      this.data = new byte[size];
+    }
+
+  }
+
+  /**
+   * Layout of the records of one file format.
+   */
+  private abstract static class Format {
+
+    /**
+     * Reads and checks the header of the file.
+     *
+     * @return size of the header
+     */
+    abstract int readHeader(FileChannel channel) throws IOException;
+
+    /**
+     * @return end of the last whole record among the first {@code length} bytes
+     */
+    abstract int boundary(byte[] data, int length);
+
+    /**
+     * @return number of records up to the given end
+     */
+    abstract int count(byte[] data, int end);
+
+    /**
+     * Imports the records of the chunk.
+     */
+    abstract void parse(Chunk chunk, Run run);
+
+  }
+
+  private static final class CsvFormat extends Format {
+
+    @Override
+    int readHeader(FileChannel channel) {
+      return 0;
+    }
+
+    @Override
+    int boundary(byte[] data, int length) {
+      for (int i = length - 1; i >= 0; i--) {
+        if (data[i] == '\n') {
+          return i + 1;
+        }
+      }
+      return 0;
+    }
+
+    @Override
+    int count(byte[] data, int end) {
+      int count = 0;
+      for (int i = 0; i < end; i++) {
+        if (data[i] == '\n') {
+          count++;
+        }
+      }
+      return count;
+    }
+
+    @Override
+    void parse(Chunk chunk, Run run) {
+      byte[] data = chunk.data;
+      int position = 0;
+      while (position < chunk.length) {
+        int start = position;
+        int end = start;
+        while (end < chunk.length && data[end] != '\n') {
+          end++;
+        }
+        position = end + 1;
+        if (end > start && data[end - 1] == '\r') {
+          end--;
+        }
+        if (end == start || (chunk.offset == 0 && start == 0 && startsWith(data, start, end, HEADER))) {
+          continue;
+        }
+        parseLine(data, start, end, chunk.offset + start, run);
+      }
+    }
+
+    private void parseLine(byte[] data, int start, int end, long offset, Run run) {
+      String owner;
+      int at;
+      if (data[start] == '"') {
+        StringBuilder quoted = new StringBuilder();
+        int from = start + 1;
+        at = from;
+        while (true) {
+          if (at >= end) {
+            run.reject(offset, "unterminated quote");
+            return;
+          }
+          if (data[at] == '"') {
+            quoted.append(new String(data, from, at - from, StandardCharsets.UTF_8));
+            if (at + 1 < end && data[at + 1] == '"') {
+              quoted.append('"');
+              at += 2;
+              from = at;
+              continue;
+            }
+            at++;
+            break;
+          }
+          at++;
+        }
+        owner = quoted.toString();
+      } else {
+        at = start;
+        while (at < end && data[at] != ',') {
+          at++;
+        }
+        owner = new String(data, start, at - start, StandardCharsets.UTF_8);
+      }
+      if (at >= end || data[at] != ',') {
+        run.reject(offset, "expected owner,type,limit,balance");
+        return;
+      }
+
+      int typeStart = at + 1;
+      int typeEnd = indexOf(data, typeStart, end, (byte) ',');
+      int limitEnd = indexOf(data, typeEnd + 1, end, (byte) ',');
+      if (typeEnd >= end || limitEnd >= end || indexOf(data, limitEnd + 1, end, (byte) ',') < end) {
+        run.reject(offset, "expected owner,type,limit,balance");
+        return;
+      }
+      AccountType type;
+      if (equals(data, typeStart, typeEnd, SAVINGS)) {
+        type = AccountType.SAVINGS;
+      } else if (equals(data, typeStart, typeEnd, CHECKING)) {
+        type = AccountType.CHECKING;
+      } else {
+        run.reject(offset, "unknown account type " + new String(data, typeStart, typeEnd - typeStart,
+            StandardCharsets.UTF_8));
+        return;
+      }
+      long limit;
+      long balance;
+      try {
+        limit = parseLong(data, typeEnd + 1, limitEnd);
+        balance = parseLong(data, limitEnd + 1, end);
+      } catch (NumberFormatException e) {
+        run.reject(offset, e.getMessage());
+        return;
+      }
+      run.open(type, owner, limit, balance, offset);
+    }
+
+    private static int indexOf(byte[] data, int from, int end, byte b) {
+      int i = from;
+      while (i < end && data[i] != b) {
+        i++;
+      }
+      return i;
+    }
+
+    private static boolean startsWith(byte[] data, int start, int end, byte[] prefix) {
+      return end - start >= prefix.length && equals(data, start, start + prefix.length, prefix);
+    }
+
+    private static boolean equals(byte[] data, int start, int end, byte[] word) {
+      if (end - start != word.length) {
+        return false;
+      }
+      for (int i = 0; i < word.length; i++) {
+        // ASCII letters only, so one bit folds the case
+        if ((data[start + i] & ~0x20) != word[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private static long parseLong(byte[] data, int start, int end) {
+      boolean negative = start < end && data[start] == '-';
+      int i = negative ? start + 1 : start;
+      if (i == end) {
+        throw new NumberFormatException("missing amount");
+      }
+      long value = 0;
+      for (; i < end; i++) {
+        int digit = data[i] - '0';
+        if (digit < 0 || digit > 9) {
+          throw new NumberFormatException("invalid amount " + new String(data, start, end - start,
+              StandardCharsets.UTF_8));
+        }
+        if (value < (Long.MIN_VALUE + digit) / 10) {
+          throw new NumberFormatException("amount out of range");
+        }
+        // accumulated negatively, so Long.MIN_VALUE parses too
+        value = value * 10 - digit;
+      }
+      if (!negative && value == Long.MIN_VALUE) {
+        throw new NumberFormatException("amount out of range");
+      }
+      return negative ? value : -value;
+    }
+
+  }
+
+  private static final class BinaryFormat extends Format {
+
+    @Override
+    int readHeader(FileChannel channel) throws IOException {
+      ByteBuffer header = ByteBuffer.allocate(BINARY_HEADER_SIZE);
+      while (header.hasRemaining() && channel.read(header) >= 0) {
+        // read the whole header
+      }
+      if (header.hasRemaining() || header.getInt(0) != BINARY_MAGIC) {
+        throw new IOException("Not an account import file");
+      }
+      if (header.getInt(4) != BINARY_VERSION) {
+        throw new IOException("Unsupported account import file version " + header.getInt(4));
+      }
+      return BINARY_HEADER_SIZE;
+    }
+
+    @Override
+    int boundary(byte[] data, int length) {
+      int position = 0;
+      while (position + BINARY_RECORD_HEADER_SIZE <= length) {
+        int size = recordSize(data, position);
+        if (position + size > length) {
+          break;
+        }
+        position += size;
+      }
+      return position;
+    }
+
+    @Override
+    int count(byte[] data, int end) {
+      int count = 0;
+      for (int position = 0; position < end; position += recordSize(data, position)) {
+        count++;
+      }
+      return count;
+    }
+
+    @Override
+    void parse(Chunk chunk, Run run) {
+      byte[] data = chunk.data;
+      int position = 0;
+      while (position < chunk.length) {
+        long offset = chunk.offset + position;
+        if (position + BINARY_RECORD_HEADER_SIZE > chunk.length
+            || position + recordSize(data, position) > chunk.length) {
+          run.reject(offset, "truncated record");
+          return;
+        }
+        int size = recordSize(data, position);
+        int type = data[position];
+        long limit = getLong(data, position + 1);
+        long balance = getLong(data, position + 9);
+        if (type < 0 || type >= TYPES.length) {
+          run.reject(offset, "unknown account type " + type);
+        } else {
+          String owner = new String(data, position + BINARY_RECORD_HEADER_SIZE, size - BINARY_RECORD_HEADER_SIZE,
+              StandardCharsets.UTF_8);
+          run.open(TYPES[type], owner, limit, balance, offset);
+        }
+        position += size;
+      }
+    }
+
+    private static int recordSize(byte[] data, int position) {
+      int ownerLength = ((data[position + 17] & 0xFF) << 8) | (data[position + 18] & 0xFF);
+      return BINARY_RECORD_HEADER_SIZE + ownerLength;
+    }
+
+    private static long getLong(byte[] data, int position) {
+      long value = 0;
+      for (int i = 0; i < 8; i++) {
+        value = (value << 8) | (data[position + i] & 0xFF);
+      }
+      return value;
+    }
+
+  }
+
+  /**
+   * State of one import: the reader, the workers and the counts they keep.
+   */
+  private final class Run {
+
+    private final Format format;
+    // two chunks per worker and the one being read; the queue of full ones also takes the ends
+    private final BlockingQueue<Chunk> free = new ArrayBlockingQueue<>(workers * 2 + 1);
+    private final BlockingQueue<Chunk> full = new ArrayBlockingQueue<>(workers * 3 + 1);
+    private final LongAdder imported = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong lastSequence = new AtomicLong();
+    private final List<String> errors = new ArrayList<>();
+    private final long started = System.nanoTime();
+    private volatile RuntimeException failure;
+    private long totalBytes;
+
+    Run(Format format) {
+      this.format = format;
+      for (int i = 0; i < workers * 2 + 1; i++) {
+        free.add(new Chunk(CHUNK_SIZE));
+      }
+    }
+
+    ImportReport execute(Path file) throws IOException {
+      List<Thread> threads = new ArrayList<>();
+      for (int i = 0; i < workers; i++) {
+        Thread thread = new Thread(this::work, "account-import-" + (i + 1));
+        threads.add(thread);
+        thread.start();
+      }
+      try {
+        read(file);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Import interrupted", e);
+      } finally {
+        for (int i = 0; i < workers; i++) {
+          full.add(Chunk.END);
+        }
+        for (Thread thread : threads) {
+          try {
+            thread.join();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      }
+      if (failure != null) {
+        throw failure;
+      }
+      bankService.awaitDurable(lastSequence.get());
+      ImportReport report = report();
+      progress.progress(report);
+      return report;
+    }
+
+    /**
+     * Cuts the file into chunks for the workers; the tail of a chunk after its last whole record
+     * starts the next one.
+     */
+    private void read(Path file) throws IOException, InterruptedException {
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+        totalBytes = channel.size();
+        long offset = format.readHeader(channel);
+        bytesRead.set(offset);
+        long lastReport = System.nanoTime();
+        boolean first = true;
+        Chunk chunk = free.take();
+        chunk.length = 0;
+        while (failure == null) {
+          ByteBuffer buffer = ByteBuffer.wrap(chunk.data, chunk.length, CHUNK_SIZE - chunk.length);
+          boolean eof = false;
+          while (buffer.hasRemaining() && !eof) {
+            eof = channel.read(buffer) < 0;
+          }
+          int filled = buffer.position();
+          int end = eof ? filled : format.boundary(chunk.data, filled);
+          if (end == 0 && !eof) {
+            throw new IOException("Record at byte " + offset + " is longer than " + CHUNK_SIZE + " bytes");
+          }
+          if (first) {
+            first = false;
+            long records = format.count(chunk.data, end);
+            bankService.reserveAccounts((int) Math.min(records * (totalBytes - offset) / Math.max(end, 1),
+                Integer.MAX_VALUE));
+          }
+
+          Chunk next = eof ? null : free.take();
+          if (next != null) {
+            next.length = filled - end;
+            System.arraycopy(chunk.data, end, next.data, 0, next.length);
+          }
+          chunk.length = end;
+          chunk.offset = offset;
+          offset += end;
+          full.put(chunk);
+          bytesRead.set(offset);
+
+          long now = System.nanoTime();
+          if (now - lastReport >= progressIntervalNanos) {
+            lastReport = now;
+            progress.progress(report());
+          }
+          if (next == null) {
+            return;
+          }
+          chunk = next;
+        }
+      }
+    }
+
+    private void work() {
+      try {
+        Chunk chunk;
+        while ((chunk = full.take()) != Chunk.END) {
+          if (failure == null) {
+            try {
+              format.parse(chunk, this);
+            } catch (RuntimeException e) {
+              failure = e;
+            }
+          }
+          free.put(chunk);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    void open(AccountType type, String owner, long limit, long balance, long offset) {
+      try {
+        long sequence = bankService.importAccount(accountIds.next(), type, owner, limit, balance);
+        if (sequence != 0) {
+          lastSequence.accumulateAndGet(sequence, Math::max);
+        }
+        imported.increment();
+      } catch (AccountErrorException e) {
+        reject(offset, e.getMessage());
+      }
+    }
+
+    void reject(long offset, String reason) {
+      rejected.increment();
+      synchronized (errors) {
+        if (errors.size() < MAX_ERRORS_REPORTED) {
+          errors.add("byte " + offset + ": " + reason);
+        }
+      }
+    }
+
+    private ImportReport report() {
+      List<String> snapshot;
+      synchronized (errors) {
+        snapshot = Collections.unmodifiableList(new ArrayList<>(errors));
+      }
+      return new ImportReport(imported.sum(), rejected.sum(), bytesRead.get(), totalBytes,
+          System.nanoTime() - started, snapshot);
+    }
+
+  }
+
+}
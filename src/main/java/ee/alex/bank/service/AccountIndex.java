@@ -0,0 +1,221 @@
+package ee.alex.bank.service;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import ee.alex.bank.model.Account;
+
+/**
+ * Concurrent hash index of accounts keyed by account number.
+ * <p>
+ * Account numbers are stored as two primitive longs in open-addressing tables that are split
+ * into independently locked segments. Adds lock with a {@link ReentrantLock}, not a monitor, as an
+ * add may rehash its whole segment, which must not pin the carrier of a virtual thread waiting for
+ * it. Lookups never lock: the key of a slot is written before the
+ * account is published into it, so a reader that sees the account also sees its key. Accounts are
+ * never removed, which keeps probe chains valid without tombstones.
+ *
+ * @author Aleksei Kulitškov
+ */
+public class AccountIndex {
+
+  private static final int SEGMENT_SHIFT = 4;
+  private static final int SEGMENT_COUNT = 1 << SEGMENT_SHIFT;
+  private static final int DEFAULT_EXPECTED_SIZE = 1024;
+  private static final int MAXIMUM_TABLE_CAPACITY = 1 << 30;
+
+  private final Segment[] segments = new Segment[SEGMENT_COUNT];
+
+  public AccountIndex() {
+    this(DEFAULT_EXPECTED_SIZE);
+  }
+
+  public AccountIndex(int expectedSize) {
+    int perSegment = Math.max(expectedSize / SEGMENT_COUNT, 1);
+    for (int i = 0; i < SEGMENT_COUNT; i++) {
+      segments[i] = new Segment(tableCapacityFor(perSegment));
+    }
+  }
+
+  public Account get(UUID accountId) {
+    return get(accountId.getMostSignificantBits(), accountId.getLeastSignificantBits());
+  }
+
+  public Account get(long mostSigBits, long leastSigBits) {
+    int hash = hash(mostSigBits, leastSigBits);
+    return segmentFor(hash).get(mostSigBits, leastSigBits, hash);
+  }
+
+  /**
+   * Adds the account unless an account with the same number is already indexed.
+   *
+   * @return {@code true} if the account was added
+   */
+  public boolean put(Account account) {
+    UUID accountId = account.getAccountId();
+    long mostSigBits = accountId.getMostSignificantBits();
+    long leastSigBits = accountId.getLeastSignificantBits();
+    int hash = hash(mostSigBits, leastSigBits);
+
+    return segmentFor(hash).put(mostSigBits, leastSigBits, hash, account);
+  }
+
+  /**
+   * Grows the tables, if needed, so that they hold the given number of accounts without resizing.
+   */
+  public void ensureCapacity(int expectedSize) {
+    int perSegment = Math.max(expectedSize / SEGMENT_COUNT, 1);
+    for (Segment segment : segments) {
+      segment.ensureCapacity(tableCapacityFor(perSegment));
+    }
+  }
+
+  public int size() {
+    int size = 0;
+    for (Segment segment : segments) {
+      size += segment.size;
+    }
+    return size;
+  }
+
+  public void forEach(Consumer<? super Account> action) {
+    for (Segment segment : segments) {
+      segment.forEach(action);
+    }
+  }
+
+  static int hash(long mostSigBits, long leastSigBits) {
+    long h = mostSigBits * 0x9E3779B97F4A7C15L + leastSigBits;
+    h = (h ^ (h >>> 32)) * 0xD6E8FEB86659FD93L;
+    return (int) (h ^ (h >>> 32));
+  }
+
+  private Segment segmentFor(int hash) {
+    return segments[hash >>> (Integer.SIZE - SEGMENT_SHIFT)];
+  }
+
+  private static int tableCapacityFor(int expectedSize) {
+    // keep the load factor at or below one half so probe chains stay short
+    long wanted = Math.max((long) expectedSize * 2, 2);
+    if (wanted >= MAXIMUM_TABLE_CAPACITY) {
+      return MAXIMUM_TABLE_CAPACITY;
+    }
+    return Integer.highestOneBit((int) wanted - 1) << 1;
+  }
+
+  private static final class Segment {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile Table table;
+    private volatile int size;
+
+    Segment(int capacity) {
+      this.table = new Table(capacity);
+    }
+
+    Account get(long mostSigBits, long leastSigBits, int hash) {
+      Table t = table;
+      int mask = t.mask;
+      for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+        Account account = t.accounts.get(slot);
+        if (account == null) {
+          return null;
+        }
+        if (t.keys[slot << 1] == mostSigBits && t.keys[(slot << 1) + 1] == leastSigBits) {
+          return account;
+        }
+      }
+    }
+
+    boolean put(long mostSigBits, long leastSigBits, int hash, Account account) {
+      lock.lock();
+      try {
+        Table t = table;
+        if (size + 1 > t.threshold) {
+          t = t.resize((t.mask + 1) << 1);
+          table = t;
+        }
+
+        if (!t.insert(mostSigBits, leastSigBits, hash, account)) {
+          return false;
+        }
+        size = size + 1;
+        return true;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    void ensureCapacity(int capacity) {
+      lock.lock();
+      try {
+        if (capacity > table.mask + 1) {
+          table = table.resize(capacity);
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    void forEach(Consumer<? super Account> action) {
+      Table t = table;
+      for (int slot = 0; slot <= t.mask; slot++) {
+        Account account = t.accounts.get(slot);
+        if (account != null) {
+          action.accept(account);
+        }
+      }
+    }
+
+  }
+
+  private static final class Table {
+
+    private final long[] keys;
+    private final AtomicReferenceArray<Account> accounts;
+    private final int mask;
+    private final int threshold;
+
+    Table(int capacity) {
+      this.keys = new long[capacity << 1];
+      this.accounts = new AtomicReferenceArray<>(capacity);
+      this.mask = capacity - 1;
+      this.threshold = capacity == MAXIMUM_TABLE_CAPACITY ? capacity - 1 : capacity >> 1;
+    }
+
+    boolean insert(long mostSigBits, long leastSigBits, int hash, Account account) {
+      for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+        Account existing = accounts.get(slot);
+        if (existing == null) {
+          keys[slot << 1] = mostSigBits;
+          keys[(slot << 1) + 1] = leastSigBits;
+          accounts.set(slot, account);
+          return true;
+        }
+        if (keys[slot << 1] == mostSigBits && keys[(slot << 1) + 1] == leastSigBits) {
+          return false;
+        }
+      }
+    }
+
+    Table resize(int capacity) {
+      if (mask + 1 == MAXIMUM_TABLE_CAPACITY) {
+        throw new IllegalStateException("Account index segment is full");
+      }
+
+      Table resized = new Table(capacity);
+      for (int slot = 0; slot <= mask; slot++) {
+        Account account = accounts.get(slot);
+        if (account != null) {
+          long mostSigBits = keys[slot << 1];
+          long leastSigBits = keys[(slot << 1) + 1];
+          resized.insert(mostSigBits, leastSigBits, hash(mostSigBits, leastSigBits), account);
+        }
+      }
+      return resized;
+    }
+
+  }
+
+}
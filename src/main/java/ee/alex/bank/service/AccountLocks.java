@@ -0,0 +1,51 @@
+package ee.alex.bank.service;
+
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fixed set of lock stripes guarding account balances.
+ * <p>
+ * Each account number maps to one stripe, so operations on unrelated accounts only meet when
+ * their numbers happen to share a stripe. The stripe count scales with the number of cores to
+ * keep such collisions rare.
+ *
+ * @author Aleksei Kulitškov
+ */
+public class AccountLocks {
+
+  private static final int STRIPES_PER_CORE = 256;
+
+  private final ReentrantLock[] stripes;
+  private final int mask;
+
+  public AccountLocks() {
+    this(Runtime.getRuntime().availableProcessors() * STRIPES_PER_CORE);
+  }
+
+  public AccountLocks(int minimumStripes) {
+    int count = Integer.highestOneBit(Math.max(minimumStripes, 1) * 2 - 1);
+    this.stripes = new ReentrantLock[count];
+    this.mask = count - 1;
+    for (int i = 0; i < count; i++) {
+      stripes[i] = new ReentrantLock();
+    }
+  }
+
+  public ReentrantLock lockFor(UUID accountId) {
+    return stripes[stripeOf(accountId)];
+  }
+
+  public int stripeOf(UUID accountId) {
+    return AccountIndex.hash(accountId.getMostSignificantBits(), accountId.getLeastSignificantBits()) & mask;
+  }
+
+  public ReentrantLock stripe(int stripe) {
+    return stripes[stripe];
+  }
+
+  public int stripeCount() {
+    return stripes.length;
+  }
+
+}
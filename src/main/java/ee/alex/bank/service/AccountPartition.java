@@ -0,0 +1,68 @@
+package ee.alex.bank.service;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+import ee.alex.bank.model.Account;
+
+/**
+ * Append-only list of accounts of one kind, read without locking.
+ * <p>
+ * Writers append under the partition lock, a lock rather than a monitor as an append may copy the
+ * whole array, which must not pin the carrier of a virtual thread. Readers take the size first and the backing array
+ * second; both are volatile and written in the opposite order, so every slot below the size a
+ * reader saw is already filled in the array it reads.
+ *
+ * @author Aleksei Kulitškov
+ */
+public class AccountPartition<T extends Account> {
+
+  private static final int DEFAULT_CAPACITY = 1024;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private volatile Account[] elements;
+  private volatile int size;
+
+  public AccountPartition() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  public AccountPartition(int initialCapacity) {
+    this.elements = new Account[Math.max(initialCapacity, 1)];
+  }
+
+  public void add(T account) {
+    lock.lock();
+    try {
+      Account[] current = elements;
+      if (size == current.length) {
+        current = Arrays.copyOf(current, current.length * 2);
+        elements = current;
+      }
+      current[size] = account;
+      size = size + 1;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Accounts appended so far; the returned array must not be modified and may be longer than
+   * {@link #size()} read beforehand.
+   */
+  Account[] elements() {
+    return elements;
+  }
+
+  @SuppressWarnings("unchecked")
+  public T get(int index) {
+    if (index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+    }
+    return (T) elements[index];
+  }
+
+}
@@ -0,0 +1,62 @@
+package ee.alex.bank.service;
+
+import java.util.UUID;
+import java.util.function.Consumer;
+import ee.alex.bank.model.Account;
+import ee.alex.bank.model.AccountType;
+import ee.alex.bank.model.InterestBearingAccount;
+import ee.alex.bank.model.InterestRates;
+
+/**
+ * Holds the accounts of a bank and finds them by account number.
+ * <p>
+ * Implementations only store; the caller changes the accounts they hand out. A bank with a journal
+ * changes an account under its lock stripe, and so does every transfer of an unsharded bank. A bank
+ * without a journal changes balances without locking, by compare-and-set on the balance or by
+ * adding to the striped deposit cells of a hot account. A sharded bank changes an account on the
+ * shard thread that owns it.
+ * Accounts must therefore keep their balance in a cell that is safe to compare-and-set from any
+ * thread. Lookups and iteration must not lock. Accounts are never removed.
+ *
+ * @author Aleksei Kulitškov
+ */
+public interface AccountStore {
+
+  /**
+   * @return the account, or {@code null} if there is no account with this number
+   */
+  Account get(UUID accountId);
+
+  /**
+   * Adds an account unless the account number is already taken.
+   *
+   * @param limit limit of a checking account, ignored for other types
+   * @return the stored account, or {@code null} if the account number is already taken
+   */
+  Account add(UUID accountId, AccountType type, String owner, long balance, long limit);
+
+  int size();
+
+  /**
+   * Grows the index, if needed, so that it holds the given number of accounts without rehashing
+   * on the way, for example ahead of a bulk import.
+   */
+  default void ensureCapacity(int expectedSize) {
+  }
+
+  void forEach(Consumer<? super Account> action);
+
+  /**
+   * Number of interest bearing accounts, which are numbered in the order they were added.
+   */
+  int interestBearingCount();
+
+  InterestBearingAccount getInterestBearing(int index);
+
+  /**
+   * Rates the interest bearing accounts of the store earn. Each store has its own, which the bank
+   * that keeps its accounts in the store changes.
+   */
+  InterestRates getInterestRates();
+
+}
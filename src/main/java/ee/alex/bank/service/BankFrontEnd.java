@@ -0,0 +1,131 @@
+package ee.alex.bank.service;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Request front-end that runs every request to a {@link BankService} on a thread of its own.
+ * <p>
+ * On a JDK with virtual threads (21 and later) each request gets a new virtual thread, so callers
+ * can keep hundreds of thousands of requests in flight, most of them parked on a lock stripe or
+ * waiting for the journal. Everything a request may block on is a
+ * {@link java.util.concurrent.locks.ReentrantLock}, which unmounts a waiting virtual thread
+ * instead of pinning its carrier. That includes the locks that serialize adds to the account
+ * stores, which may rehash or copy a whole table while held. The monitors left guard no more than
+ * allocating a deposit cell or recording an import error. On older JDKs requests queue for a fixed
+ * pool of platform threads instead.
+ * <p>
+ * Requests are independent: two requests submitted one after the other may run in either order.
+ *
+ * @author Aleksei Kulitškov
+ */
+public class BankFrontEnd implements AutoCloseable {
+
+  private static final int PLATFORM_THREADS_PER_CORE = 16;
+  private static final MethodHandle NEW_VIRTUAL_THREAD_EXECUTOR = findVirtualThreadExecutor();
+
+  private final BankService bankService;
+  private final ExecutorService executor;
+
+  public BankFrontEnd(BankService bankService) {
+    this(bankService, newRequestExecutor());
+  }
+
+  /**
+   * @param executor runs the requests; shut down when the front-end is closed
+   */
+  public BankFrontEnd(BankService bankService, ExecutorService executor) {
+    this.bankService = bankService;
+    this.executor = executor;
+  }
+
+  /**
+   * Whether this JDK runs requests on virtual threads.
+   */
+  public static boolean hasVirtualThreads() {
+    return NEW_VIRTUAL_THREAD_EXECUTOR != null;
+  }
+
+  /**
+   * Executor that starts a virtual thread per request, or a pool of platform threads on a JDK
+   * without virtual threads.
+   */
+  public static ExecutorService newRequestExecutor() {
+    if (NEW_VIRTUAL_THREAD_EXECUTOR != null) {
+      try {
+        return (ExecutorService) NEW_VIRTUAL_THREAD_EXECUTOR.invokeExact();
+      } catch (Throwable e) {
+        throw new IllegalStateException("Cannot start virtual threads", e);
+      }
+    }
+
+    AtomicInteger threadCount = new AtomicInteger();
+    return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * PLATFORM_THREADS_PER_CORE,
+        runnable -> {
+          Thread thread = new Thread(runnable, "bank-request-" + threadCount.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+  }
+
+  public CompletableFuture<OperationStatus> submit(Operation operation) {
+    return submit(bank -> execute(bank, operation));
+  }
+
+  /**
+   * Runs any request against the bank, such as opening an account or reading its details.
+   */
+  public <T> CompletableFuture<T> submit(Function<BankService, ? extends T> request) {
+    return CompletableFuture.supplyAsync(() -> request.apply(bankService), executor);
+  }
+
+  /**
+   * Stops taking requests and waits until those in flight are done.
+   */
+  @Override
+  public void close() {
+    executor.shutdown();
+    try {
+      executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    } catch (InterruptedException e) {
+      executor.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static OperationStatus execute(BankService bank, Operation operation) {
+    switch (operation.getType()) {
+      case DEPOSIT:
+        return bank.depositMoney(operation.getAccountId(), operation.getAmount());
+      case WITHDRAW:
+        return bank.withdrawMoney(operation.getAccountId(), operation.getAmount());
+      case TRANSFER:
+        return bank.transferMoney(operation.getAccountId(), operation.getTargetAccountId(), operation.getAmount());
+      case CHANGE_LIMIT:
+        return bank.changeCheckingAccountLimit(operation.getAccountId(), operation.getAmount());
+      default:
+        throw new IllegalArgumentException("Unknown operation " + operation.getType());
+    }
+  }
+
+  private static MethodHandle findVirtualThreadExecutor() {
+    if (Runtime.version().feature() < 21) {
+      // a preview before 21 fails without --enable-preview
+      return null;
+    }
+    try {
+      return MethodHandles.publicLookup().findStatic(Executors.class, "newVirtualThreadPerTaskExecutor",
+          MethodType.methodType(ExecutorService.class));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      return null;
+    }
+  }
+
+}
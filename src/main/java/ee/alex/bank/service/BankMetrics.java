@@ -0,0 +1,124 @@
+package ee.alex.bank.service;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histograms and outcome counters per {@link MeasuredOperation} of a {@link BankService}.
+ * <p>
+ * Every operation is counted once by its {@link OperationStatus}; each status other than
+ * {@link OperationStatus#OK} stands for the exception class that rejected the operation. Timing
+ * costs two clock reads per operation, which is a good part of a deposit, so it is sampled: with
+ * a sample rate of {@code n}, one operation in {@code n}, drawn at random, is timed, while every
+ * operation is still counted.
+ * <p>
+ * {@link #NONE} records nothing and is the default of every bank. Read the numbers with
+ * {@link #snapshot()}.
+ *
+ * @author Aleksei Kulitškov
+ */
+public class BankMetrics {
+
+  private static final int DEFAULT_SAMPLE_RATE = 16;
+  private static final long NOT_TIMED = Long.MIN_VALUE;
+  private static final MeasuredOperation[] OPERATIONS = MeasuredOperation.values();
+  private static final OperationStatus[] STATUSES = OperationStatus.values();
+
+  /**
+   * Records nothing.
+   */
+  public static final BankMetrics NONE = new BankMetrics(false, 1);
+
+  private final boolean enabled;
+  private final int sampleMask;
+  private final LatencyHistogram[] latencies = new LatencyHistogram[OPERATIONS.length];
+  private final LongAdder[][] outcomes = new LongAdder[OPERATIONS.length][STATUSES.length];
+  private final long startNanos = System.nanoTime();
+
+  /**
+   * Metrics that time one operation in sixteen.
+   */
+  public BankMetrics() {
+    this(DEFAULT_SAMPLE_RATE);
+  }
+
+  /**
+   * @param sampleRate time one operation in this many, a power of two; 1 times every operation
+   */
+  public BankMetrics(int sampleRate) {
+    this(true, sampleRate);
+  }
+
+  private BankMetrics(boolean enabled, int sampleRate) {
+    if (sampleRate < 1 || Integer.bitCount(sampleRate) != 1) {
+      throw new IllegalArgumentException("Sample rate must be a power of two: " + sampleRate);
+    }
+    this.enabled = enabled;
+    this.sampleMask = sampleRate - 1;
+    if (enabled) {
+      for (int i = 0; i < OPERATIONS.length; i++) {
+        latencies[i] = new LatencyHistogram();
+        for (int j = 0; j < STATUSES.length; j++) {
+          outcomes[i][j] = new LongAdder();
+        }
+      }
+    }
+  }
+
+  /**
+   * Called when an operation starts.
+   *
+   * @return the start time to pass to {@link #record(MeasuredOperation, long, OperationStatus)}
+   */
+  public long start() {
+    if (!enabled || (sampleMask != 0 && (ThreadLocalRandom.current().nextInt() & sampleMask) != 0)) {
+      return NOT_TIMED;
+    }
+    return System.nanoTime();
+  }
+
+  /**
+   * Called when an operation ends.
+   *
+   * @param started what {@link #start()} returned for the operation
+   */
+  public void record(MeasuredOperation operation, long started, OperationStatus status) {
+    if (!enabled) {
+      return;
+    }
+    if (started != NOT_TIMED) {
+      latencies[operation.ordinal()].record(System.nanoTime() - started);
+    }
+    outcomes[operation.ordinal()][status.ordinal()].increment();
+  }
+
+  /**
+   * Like {@link #record(MeasuredOperation, long, OperationStatus)}, but the operation is only
+   * counted if it was timed. For steps that every operation takes, such as looking up an account,
+   * whose counts the operations already give.
+   */
+  public void recordIfTimed(MeasuredOperation operation, long started, OperationStatus status) {
+    if (started != NOT_TIMED) {
+      record(operation, started, status);
+    }
+  }
+
+  /**
+   * Numbers recorded so far; all zero for {@link #NONE}.
+   */
+  public MetricsSnapshot snapshot() {
+    if (!enabled) {
+      return new BankMetrics().snapshot();
+    }
+    MetricsSnapshot.OperationMetrics[] operations = new MetricsSnapshot.OperationMetrics[OPERATIONS.length];
+    for (int i = 0; i < OPERATIONS.length; i++) {
+      long[] counts = new long[STATUSES.length];
+      for (int j = 0; j < STATUSES.length; j++) {
+        counts[j] = outcomes[i][j].sum();
+      }
+      operations[i] = new MetricsSnapshot.OperationMetrics(counts, latencies[i].snapshot());
+    }
+    return new MetricsSnapshot(operations, System.nanoTime() - startNanos);
+  }
+
+}
@@ -1,120 +1,1115 @@
 package ee.alex.bank.service;
 
-import java.util.HashSet;
-import java.util.Optional;
-import java.util.Set;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Function;
+import java.util.function.IntFunction;
 import ee.alex.bank.exception.AccountErrorException;
+import ee.alex.bank.exception.AccountNotFoundException;
+import ee.alex.bank.exception.AmountOverflowException;
+import ee.alex.bank.exception.InsufficientFundsException;
+import ee.alex.bank.exception.InvalidAmountException;
 import ee.alex.bank.exception.InvalidInterestRateException;
+import ee.alex.bank.exception.LimitReachedException;
+import ee.alex.bank.exception.WrongAccountTypeException;
 import ee.alex.bank.model.Account;
-import ee.alex.bank.model.CheckingAccount;
-import ee.alex.bank.model.SavingsAccount;
+import ee.alex.bank.model.AccountIdGenerator;
+import ee.alex.bank.model.AccountType;
+import ee.alex.bank.model.InterestBearingAccount;
+import ee.alex.bank.model.InterestRateTable;
+import ee.alex.bank.model.InterestRates;
+import ee.alex.bank.model.LimitedAccount;
+import ee.alex.bank.persistence.Journal;
+import ee.alex.bank.persistence.JournalCheckpoint;
+import ee.alex.bank.persistence.Snapshot;
+import ee.alex.bank.persistence.SnapshotWriter;
+import ee.alex.bank.persistence.TransientJournal;
+import ee.alex.bank.service.IdempotencyCache.Request;
+import ee.alex.bank.stream.ChangeStream;
 import static ee.alex.bank.model.AccountType.CHECKING;
 import static ee.alex.bank.model.AccountType.SAVINGS;
-import static java.lang.String.*;
+import static ee.alex.bank.service.OperationStatus.ACCOUNT_NOT_FOUND;
+import static ee.alex.bank.service.OperationStatus.OK;
+import static ee.alex.bank.service.OperationStatus.REJECTED;
+import static ee.alex.bank.service.OperationStatus.WRONG_ACCOUNT_TYPE;
+import static ee.alex.bank.service.OperationType.CHANGE_LIMIT;
+import static ee.alex.bank.service.OperationType.DEPOSIT;
+import static ee.alex.bank.service.OperationType.TRANSFER;
+import static ee.alex.bank.service.OperationType.WITHDRAW;
 
 /**
+ * Bank operations over a store of accounts.
+ * <p>
+ * Balances are lock-free cells, so a bank without a journal deposits and withdraws without taking
+ * any lock. With a journal, each change and its record are made under the lock stripe of the
+ * account: the records of an account must be in the order the changes were applied, or replaying a
+ * withdrawal could meet a different balance than it did live, and the version of the account must
+ * only grow.
+ * <p>
+ * A bank without a journal can instead hand its operations to a {@link ShardedEngine}, where each
+ * account is owned by one single-threaded shard and is changed without any lock. The caller waits
+ * for the shard to complete the operation.
+ * <p>
+ * Deposits, withdrawals, transfers and limit changes can be made once per request: given an
+ * idempotency key, a retry of the request gets the result of the first attempt from an
+ * {@link IdempotencyCache}. The key is journaled with the change, or with the rejection, so the
+ * cache is rebuilt on recovery.
+ * <p>
+ * An operation returns once its change is durable, unless the calling thread defers durability:
+ * a thread that serves requests in batches then waits once per batch instead of once per request.
+ * <p>
+ * Every change can be published to a {@link ChangeStream} once it is durable. A bank without a
+ * journal keeps a {@link TransientJournal} instead, which records nothing; it reports the changes
+ * made under a lock stripe as they are appended, and those made without one, by lock-free cells or
+ * on shards, are appended to it only to be reported.
+ *
  * @author Aleksei Kulitškov
  */
-public class BankService {
+public class BankService implements AutoCloseable {
 
-  private Set<Account> accounts = new HashSet<>();
+  // a generator that draws this many taken numbers in a row is broken, not unlucky
+  private static final int MAX_ACCOUNT_ID_ATTEMPTS = 16;
 
+  private final AccountStore accounts;
+  private final OwnerIndex owners = new OwnerIndex();
+  private final AccountLocks locks = new AccountLocks();
+  private final Journal journal;
+  private final boolean journaled;
+  private final TransferEngine transferEngine;
+  private final InterestAccrual interestAccrual;
+  // null when accounts are guarded by lock stripes
+  private final ShardedEngine shards;
+  private volatile OperationLog operationLog = OperationLog.NONE;
+  private volatile BankMetrics metrics = BankMetrics.NONE;
+  private volatile AccountIdGenerator accountIds = AccountIdGenerator.SECURE_RANDOM;
+  // created on first use, so a bank that takes no idempotency keys has no table for them
+  private final AtomicReference<IdempotencyCache> requests = new AtomicReference<>();
+  // highest journal sequence written by each thread that defers durability, unset for the others
+  private final ThreadLocal<long[]> deferred = new ThreadLocal<>();
+
+  public BankService() {
+    this(Journal.NONE);
+  }
+
+  /**
+   * Bank that appends every state change to the given journal before reporting it as done.
+   */
+  public BankService(Journal journal) {
+    this(journal, new ObjectAccountStore());
+  }
+
+  /**
+   * Bank that keeps its accounts in the given store, which must be empty.
+   */
+  public BankService(Journal journal, AccountStore accounts) {
+    this(journal, accounts, 0, 0);
+  }
+
+  /**
+   * Bank without a journal whose accounts, kept in the given empty store, are owned by the given
+   * number of shards. {@link #close() Close} it to stop the shard threads.
+   */
+  public BankService(AccountStore accounts, int shardCount) {
+    this(Journal.NONE, accounts, 0, shardCount);
+  }
+
+  private BankService(Journal journal, AccountStore accounts, long firstInterestPeriod, int shardCount) {
+    // the accounts of the store earn the rates the bank sets
+    InterestPeriods interestPeriods = new InterestPeriods(firstInterestPeriod, accounts.getInterestRates());
+    this.accounts = accounts;
+    this.journaled = journal != Journal.NONE;
+    this.journal = journaled ? journal : new TransientJournal();
+    this.transferEngine = new TransferEngine(locks, this.journal);
+    this.interestAccrual = new InterestAccrual(ForkJoinPool.commonPool(), locks, this.journal, interestPeriods);
+    this.shards = shardCount == 0 ? null : new ShardedEngine(shardCount, interestAccrual, this.journal);
+  }
+
+  /**
+   * Rebuilds the bank by replaying the journal, which then keeps recording new changes.
+   */
+  public static BankService recover(Journal journal) {
+    return recover(journal, new ObjectAccountStore());
+  }
+
+  /**
+   * Rebuilds the bank into the given empty store by replaying the journal.
+   */
+  public static BankService recover(Journal journal, AccountStore accounts) {
+    BankService bankService = new BankService(journal, accounts);
+    journal.replay(new JournalRecovery(bankService));
+
+    return bankService;
+  }
+
+  /**
+   * Rebuilds the bank from the snapshot, if there is one, and the part of the journal written
+   * after it. The journal then keeps recording new changes.
+   */
+  public static BankService recover(Path snapshot, Journal journal) {
+    return recover(snapshot, journal, ObjectAccountStore::new);
+  }
+
+  /**
+   * Like {@link #recover(Path, Journal)}, with the accounts kept in a store created for the
+   * number of accounts in the snapshot.
+   */
+  public static BankService recover(Path snapshot, Journal journal, IntFunction<AccountStore> storeFactory) {
+    if (!Files.exists(snapshot)) {
+      return recover(journal, storeFactory.apply(0));
+    }
+
+    try {
+      Snapshot image = Snapshot.read(snapshot);
+      BankService bankService = new BankService(journal, storeFactory.apply((int) image.getAccountCount()),
+          image.getInterestPeriod(), 0);
+      image.forEachAccount((accountId, type, owner, balance, limit, version) -> {
+        Account account = bankService.addAccount(accountId, type, owner, balance, limit);
+        if (account instanceof InterestBearingAccount) {
+          ((InterestBearingAccount) account).setAccruedPeriod(limit);
+        }
+        account.setVersion(version);
+      });
+      bankService.getInterestRates().setRateTable(image.getRateTable());
+      JournalRecovery recovery = new JournalRecovery(bankService);
+      image.forEachRequest(recovery);
+      journal.replay(image.getJournalCheckpoint(), recovery);
+
+      return bankService;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * @throws IllegalStateException if the account id generator keeps drawing numbers already taken
+   */
   public UUID createSavingsAccount(String customer) {
-    Account createdAccount = new SavingsAccount(customer);
-    accounts.add(createdAccount);
+    return createAccount(SAVINGS, customer, 0);
+  }
+
+  /**
+   * @throws IllegalStateException if the account id generator keeps drawing numbers already taken
+   */
+  public UUID createCheckingAccount(String customer, long limit) {
+    return createAccount(CHECKING, customer, limit);
+  }
 
-    return createdAccount.getAccountId();
+  public OperationStatus withdrawMoney(UUID accountId, long amount) {
+    return withdraw(accountId, amount, null);
   }
 
-  public UUID createCheckingAccount(String customer, double limit) {
-    Account createdAccount = new CheckingAccount(customer, limit);
-    accounts.add(createdAccount);
+  /**
+   * Withdraws once per request: a retry with the same idempotency key gets the result of the first
+   * attempt.
+   */
+  public OperationStatus withdrawMoney(UUID requestId, UUID accountId, long amount) {
+    return once(requestId, IdempotencyCache.fingerprint(WITHDRAW, accountId, null, amount),
+        request -> withdraw(accountId, amount, request));
+  }
 
-    return createdAccount.getAccountId();
+  public OperationStatus depositMoney(UUID accountId, long amount) {
+    return deposit(accountId, amount, null);
   }
 
-  public void withdrawMoney(UUID accountId, double amount) {
+  /**
+   * Deposits once per request: a retry with the same idempotency key gets the result of the first
+   * attempt.
+   */
+  public OperationStatus depositMoney(UUID requestId, UUID accountId, long amount) {
+    return once(requestId, IdempotencyCache.fingerprint(DEPOSIT, accountId, null, amount),
+        request -> deposit(accountId, amount, request));
+  }
+
+  private OperationStatus withdraw(UUID accountId, long amount, Request request) {
+    BankMetrics metrics = this.metrics;
+    long started = metrics.start();
+    OperationStatus status = OK;
     try {
-      findAccount(accountId).withdraw(amount);
-      System.out.println(format("Withdrawn %s€ from bank account %S", amount, accountId));
+      Account account = findAccount(accountId);
+      if (shards != null) {
+        status = shards.submit(accountId, () -> applyOwned(WITHDRAW, account, amount)).join();
+      } else if (journaled) {
+        catchUpInterest(account);
+        long sequence;
+        Lock lock = locks.lockFor(accountId);
+        lock.lock();
+        try {
+          account.withdraw(amount);
+          sequence = request == null
+              ? journal.appendWithdrawn(accountId, amount)
+              : journal.appendWithdrawn(accountId, amount, request.getRequestId(), request.getTime());
+          account.setVersion(sequence);
+        } finally {
+          lock.unlock();
+        }
+        awaitDurable(sequence);
+      } else {
+        catchUpInterest(account);
+        account.withdraw(amount);
+        journal.appendWithdrawn(accountId, amount);
+      }
     } catch (AccountErrorException e) {
-      System.out.println(e.getMessage());
+      status = OperationStatus.of(e);
     }
+
+    metrics.record(MeasuredOperation.WITHDRAW, started, status);
+    operationLog.operation(WITHDRAW, accountId, null, amount, status);
+    return status;
   }
 
-  public void depositMoney(UUID accountId, double amount) {
+  private OperationStatus deposit(UUID accountId, long amount, Request request) {
+    BankMetrics metrics = this.metrics;
+    long started = metrics.start();
+    OperationStatus status = OK;
     try {
-      findAccount(accountId).deposit(amount);
-      System.out.println(format("Deposited %s€ to bank account %S", amount, accountId));
+      Account account = findAccount(accountId);
+      if (shards != null) {
+        status = shards.submit(accountId, () -> applyOwned(DEPOSIT, account, amount)).join();
+      } else if (journaled) {
+        catchUpInterest(account);
+        long sequence;
+        Lock lock = locks.lockFor(accountId);
+        lock.lock();
+        try {
+          account.deposit(amount);
+          sequence = request == null
+              ? journal.appendDeposited(accountId, amount)
+              : journal.appendDeposited(accountId, amount, request.getRequestId(), request.getTime());
+          account.setVersion(sequence);
+        } finally {
+          lock.unlock();
+        }
+        awaitDurable(sequence);
+      } else {
+        catchUpInterest(account);
+        account.deposit(amount);
+        journal.appendDeposited(accountId, amount);
+      }
     } catch (AccountErrorException e) {
-      System.out.println(e.getMessage());
+      status = OperationStatus.of(e);
     }
+
+    metrics.record(MeasuredOperation.DEPOSIT, started, status);
+    operationLog.operation(DEPOSIT, accountId, null, amount, status);
+    return status;
   }
 
+  /**
+   * @return the details, or {@code null} if there is no such account
+   */
   public String getAccountDetails(UUID accountId) {
+    BankMetrics metrics = this.metrics;
+    long started = metrics.start();
+    String details;
     try {
-      String details = findAccount(accountId).getDetails();
-      System.out.println(details);
-      return details;
+      Account account = findAccount(accountId);
+      catchUpInterest(account);
+      details = account.getDetails();
     } catch (AccountErrorException e) {
-      System.out.println(e.getMessage());
-      return null;
+      details = null;
     }
+
+    metrics.record(MeasuredOperation.ACCOUNT_DETAILS, started, details == null ? ACCOUNT_NOT_FOUND : OK);
+    operationLog.accountDetails(accountId, details);
+    return details;
+  }
+
+  /**
+   * Account numbers of the customer, oldest first. Looked up in the owner index, so the cost depends
+   * on the number of accounts of the customer, not of the bank.
+   */
+  public List<UUID> getCustomerAccounts(String customer) {
+    return Collections.unmodifiableList(Arrays.asList(owners.get(customer)));
   }
 
-  public void changeCheckingAccountLimit(UUID accountId, double newLimit) {
+  /**
+   * Sum of the balances of every account of the customer. Balances are read one by one without
+   * locking, so the sum is not a point in time while the accounts change.
+   *
+   * @throws ArithmeticException if the sum is out of the range of a money amount
+   */
+  public long getCustomerBalance(String customer) {
+    long total = 0;
+    for (UUID accountId : owners.get(customer)) {
+      Account account = accounts.get(accountId);
+      catchUpInterest(account);
+      total = Math.addExact(total, account.getBalance());
+    }
+    return total;
+  }
+
+  public OperationStatus changeCheckingAccountLimit(UUID accountId, long newLimit) {
+    return changeLimit(accountId, newLimit, null);
+  }
+
+  /**
+   * Changes the limit once per request: a retry with the same idempotency key gets the result of
+   * the first attempt.
+   */
+  public OperationStatus changeCheckingAccountLimit(UUID requestId, UUID accountId, long newLimit) {
+    return once(requestId, IdempotencyCache.fingerprint(CHANGE_LIMIT, accountId, null, newLimit),
+        request -> changeLimit(accountId, newLimit, request));
+  }
+
+  private OperationStatus changeLimit(UUID accountId, long newLimit, Request request) {
+    BankMetrics metrics = this.metrics;
+    long started = metrics.start();
+    OperationStatus status = OK;
     try {
       Account acc = findAccount(accountId);
       if (acc.getType() != CHECKING) {
-        throw new AccountErrorException("Wrong account type");
+        throw new WrongAccountTypeException();
+      }
+
+      if (shards != null) {
+        status = shards.submit(accountId, () -> applyOwned(CHANGE_LIMIT, acc, newLimit)).join();
+      } else {
+        long sequence;
+        Lock lock = locks.lockFor(accountId);
+        lock.lock();
+        try {
+          ((LimitedAccount) acc).setLimit(newLimit);
+          sequence = request == null
+              ? journal.appendLimitChanged(accountId, newLimit)
+              : journal.appendLimitChanged(accountId, newLimit, request.getRequestId(), request.getTime());
+          acc.setVersion(sequence);
+        } finally {
+          lock.unlock();
+        }
+        awaitDurable(sequence);
       }
+    } catch (AccountErrorException e) {
+      status = OperationStatus.of(e);
+    }
+
+    metrics.record(MeasuredOperation.CHANGE_LIMIT, started, status);
+    operationLog.operation(CHANGE_LIMIT, accountId, null, newLimit, status);
+    return status;
+  }
 
-      ((CheckingAccount) acc).setLimit(newLimit);
-      System.out.println(format("Changed limit to %s€ of bank account %s", newLimit, accountId));
+  /**
+   * Lets the account take deposits on striped cells, so that deposits from many threads scale
+   * instead of meeting on one balance. Meant for settlement accounts that receive most deposits.
+   * The mode is not journaled: it is set again after recovery, like any other tuning. Deposits only
+   * stripe on a bank without a journal, which has no lock to take for them.
+   *
+   * @return {@link OperationStatus#REJECTED} if the store cannot stripe deposits of its accounts
+   */
+  public OperationStatus enableHotDeposits(UUID accountId) {
+    try {
+      return findAccount(accountId).enableHotDeposits() ? OK : REJECTED;
     } catch (AccountErrorException e) {
-      System.out.println(e.getMessage());
+      return OperationStatus.of(e);
     }
   }
 
-  public void transferMoney(UUID fromAccountId, UUID toAccountId, double amount) {
+  public OperationStatus transferMoney(UUID fromAccountId, UUID toAccountId, long amount) {
+    return transfer(fromAccountId, toAccountId, amount, null);
+  }
+
+  /**
+   * Transfers once per request: a retry with the same idempotency key gets the result of the first
+   * attempt.
+   */
+  public OperationStatus transferMoney(UUID requestId, UUID fromAccountId, UUID toAccountId, long amount) {
+    return once(requestId, IdempotencyCache.fingerprint(TRANSFER, fromAccountId, toAccountId, amount),
+        request -> transfer(fromAccountId, toAccountId, amount, request));
+  }
+
+  private OperationStatus transfer(UUID fromAccountId, UUID toAccountId, long amount, Request request) {
+    BankMetrics metrics = this.metrics;
+    long started = metrics.start();
+    OperationStatus status = OK;
     try {
       Account accFrom = findAccount(fromAccountId);
       if (accFrom.getType() != CHECKING) {
-        throw new AccountErrorException("Wrong account type");
+        throw new WrongAccountTypeException();
       }
 
       Account accTo = findAccount(toAccountId);
-
-      ((CheckingAccount) accFrom).transferMoney(accTo, amount);
-      System.out.println(format("Transferred %s€ from account %s to account %s", amount, fromAccountId, toAccountId));
+      if (shards != null) {
+        // reported by the target shard, before it changes the target account again
+        status = shards.transfer(accFrom, accTo, amount).join();
+      } else {
+        catchUpInterest(accTo);
+        awaitDurable(request == null
+            ? transferEngine.transfer(accFrom, accTo, amount)
+            : transferEngine.transfer(accFrom, accTo, amount, request.getRequestId(), request.getTime()));
+      }
     } catch (AccountErrorException e) {
-      System.out.println(e.getMessage());
+      status = OperationStatus.of(e);
     }
+
+    metrics.record(MeasuredOperation.TRANSFER, started, status);
+    operationLog.operation(TRANSFER, fromAccountId, toAccountId, amount, status);
+    return status;
   }
 
-  public void updateInterestRate(double interestRate) {
+  /**
+   * Changes the rate of the open interest period. Closed periods keep their rates, also for the
+   * accounts not yet credited for them.
+   */
+  public OperationStatus updateInterestRate(double interestRate) {
+    double currentInterestRate = getInterestRates().getInterestRate();
+    OperationStatus status = OK;
     try {
-      double currentInterestRate = SavingsAccount.getInterestRate();
-      SavingsAccount.setInterestRate(interestRate);
-      System.out.println(format("Changed interest rate from %s to %s", currentInterestRate, interestRate));
+      interestAccrual.updateRate(interestRate);
     } catch (InvalidInterestRateException e) {
-      System.out.println(e.getMessage());
+      status = OperationStatus.of(e);
+    }
+
+    operationLog.interestRateChanged(currentInterestRate, interestRate, status);
+    return status;
+  }
+
+  /**
+   * Sets balance tiers for savings accounts from the open interest period on. The whole balance
+   * earns the rate of the tier it falls into.
+   *
+   * @param tierStarts balance each tier starts at, ascending from 0
+   * @param rates rate of each tier
+   */
+  public OperationStatus updateInterestTiers(long[] tierStarts, double[] rates) {
+    double currentInterestRate = getInterestRates().getInterestRate();
+    OperationStatus status = OK;
+    try {
+      interestAccrual.updateTiers(tierStarts, rates);
+    } catch (InvalidInterestRateException e) {
+      status = OperationStatus.of(e);
+    } catch (IllegalArgumentException e) {
+      status = REJECTED;
+    }
+
+    operationLog.interestRateChanged(currentInterestRate, getInterestRates().getInterestRate(), status);
+    return status;
+  }
+
+  /**
+   * Closes the open interest period and credits every savings account for it at once.
+   */
+  public InterestReport provideInterestToAllUsers() {
+    BankMetrics metrics = this.metrics;
+    long started = metrics.start();
+    double interestRate = getInterestRates().getInterestRate();
+    InterestReport report = shards != null ? interestAccrual.run(shards) : interestAccrual.run(accounts);
+
+    metrics.record(MeasuredOperation.INTEREST_RUN, started, OK);
+    operationLog.interestProvided(interestRate, report);
+    return report;
+  }
+
+  /**
+   * Closes the open interest period at the current rate without touching any account. Accounts are
+   * credited for it the next time they are touched or swept.
+   *
+   * @return number of the period closed
+   */
+  public long closeInterestPeriod() {
+    return interestAccrual.closePeriod();
+  }
+
+  /**
+   * Credits accounts behind on interest every period on the given executor, spending at most the
+   * given slice of time per run, until the returned future is cancelled.
+   */
+  public ScheduledFuture<?> scheduleInterestSweeper(ScheduledExecutorService executor, long period, long slice,
+      TimeUnit unit) {
+    Runnable sweeper = shards != null
+        ? interestAccrual.sweeper(shards, unit.toNanos(slice))
+        : interestAccrual.sweeper(accounts, unit.toNanos(slice));
+    return executor.scheduleAtFixedRate(sweeper, period, period, unit);
+  }
+
+  /**
+   * Reports every completed operation to the given log; {@link OperationLog#NONE} turns reporting
+   * off, which is the default.
+   */
+  public void setOperationLog(OperationLog operationLog) {
+    this.operationLog = operationLog;
+  }
+
+  /**
+   * Times and counts every operation in the given metrics; {@link BankMetrics#NONE} turns them off,
+   * which is the default.
+   */
+  public void setMetrics(BankMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  public BankMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Publishes every change from now on to the given stream, once it is durable; {@code null} stops
+   * publishing. A bank with a journal publishes from its {@link Journal#setDurableListener durable
+   * listener}, so the journal must support one.
+   */
+  public void setChangeStream(ChangeStream stream) {
+    journal.setDurableListener(stream == null ? null : stream.publisher());
+  }
+
+  /**
+   * Numbers new accounts with the given generator. {@link AccountIdGenerator#SECURE_RANDOM} is the
+   * default, as its numbers cannot be guessed; the faster generators are for banks where they may.
+   */
+  public void setAccountIdGenerator(AccountIdGenerator accountIds) {
+    this.accountIds = accountIds;
+  }
+
+  public AccountIdGenerator getAccountIdGenerator() {
+    return accountIds;
+  }
+
+  /**
+   * Remembers requests with idempotency keys in the given cache from now on. The requests the
+   * current cache remembers are carried over, as far as the new one holds them.
+   */
+  public void setIdempotencyCache(IdempotencyCache cache) {
+    IdempotencyCache current = requests.getAndSet(cache);
+    if (current != null) {
+      for (Request request : current.answered()) {
+        cache.restore(request.getRequestId(), request.getTime(), request.getStatus(), request.getFingerprint());
+      }
+    }
+  }
+
+  /**
+   * The cache of requests with idempotency keys, created with the default capacity and window if
+   * there is none yet.
+   */
+  public IdempotencyCache getIdempotencyCache() {
+    IdempotencyCache cache = requests.get();
+    if (cache == null) {
+      requests.compareAndSet(null, new IdempotencyCache());
+      cache = requests.get();
+    }
+    return cache;
+  }
+
+  /**
+   * Lets operations on the calling thread return before their changes are durable, for as long as
+   * the thread lives. The thread must call {@link #awaitDeferred()} before it tells anyone
+   * the outcome of those operations. Other threads may see the changes before they are durable,
+   * as they may with any journal.
+   */
+  public void deferDurability() {
+    if (deferred.get() == null) {
+      deferred.set(new long[1]);
+    }
+  }
+
+  /**
+   * Waits once until every change the calling thread made while deferring durability is durable.
+   * The thread keeps deferring.
+   */
+  public void awaitDeferred() {
+    long[] highest = deferred.get();
+    if (highest != null && highest[0] != 0) {
+      long sequence = highest[0];
+      highest[0] = 0;
+      journal.awaitDurable(sequence);
+    }
+  }
+
+  /**
+   * Writes every account to the snapshot file while transactions go on.
+   * <p>
+   * The journal checkpoint is taken first, so every change it covers is already applied to the
+   * accounts copied afterwards. Each account is copied under its lock stripe together with its
+   * version; recovery replays the journal from the checkpoint and skips, per account, the records
+   * the copy already contains. The requests remembered by the idempotency cache are copied last, so
+   * every request journaled up to the checkpoint is among them.
+   *
+   * @return the number of accounts written
+   * @throws IllegalStateException if the accounts are owned by shards, which may have transfers in
+   * flight at any time
+   */
+  public long takeSnapshot(Path snapshot) {
+    if (shards != null) {
+      throw new IllegalStateException("Snapshots need accounts guarded by lock stripes");
+    }
+    InterestPeriods periods = interestAccrual.getPeriods();
+    JournalCheckpoint checkpoint;
+    long interestPeriod;
+    InterestRateTable rateTable;
+    // a period closed or rate changed up to the checkpoint must be counted, one after it is replayed
+    periods.getLock().lock();
+    try {
+      checkpoint = journal.checkpoint();
+      interestPeriod = periods.current();
+      rateTable = periods.getInterestRates().getRateTable();
+    } finally {
+      periods.getLock().unlock();
     }
+    List<Account> all = new ArrayList<>(accounts.size());
+    accounts.forEach(all::add);
+
+    try (SnapshotWriter writer = new SnapshotWriter(snapshot, all.size(), checkpoint, rateTable, interestPeriod)) {
+      for (Account account : all) {
+        long balance;
+        long limit;
+        long version;
+        Lock lock = locks.lockFor(account.getAccountId());
+        lock.lock();
+        try {
+          if (account.getType() == CHECKING) {
+            limit = ((LimitedAccount) account).getLimit();
+          } else {
+            // credited up to the open period, so recovery needs no rates from before the snapshot
+            accrueInterest(account);
+            limit = ((InterestBearingAccount) account).getAccruedPeriod();
+          }
+          balance = account.getBalance();
+          version = account.getVersion();
+        } finally {
+          lock.unlock();
+        }
+        writer.write(account.getAccountId(), account.getType(), account.getOwner(), balance, limit, version);
+      }
+      IdempotencyCache cache = requests.get();
+      if (cache != null) {
+        for (Request request : cache.answered()) {
+          writer.writeRequest(request.getRequestId(), request.getTime(), request.getStatus().ordinal(),
+              request.getFingerprint());
+        }
+      }
+      // the snapshot must not get ahead of the journal: after a crash the journal would hand out the
+      // sequence numbers of the lost records again, and recovery would skip those as already applied
+      journal.sync();
+      writer.commit();
+
+      return writer.getCount();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Takes a snapshot every period on the given executor until the returned future is cancelled.
+   */
+  public ScheduledFuture<?> scheduleSnapshots(ScheduledExecutorService executor, Path snapshot, long period,
+      TimeUnit unit) {
+    return executor.scheduleAtFixedRate(() -> takeSnapshot(snapshot), period, period, unit);
   }
 
-  public void provideInterestToAllUsers() {
-    System.out.println(format("Providing interest at rate %s", SavingsAccount.getInterestRate()));
-    accounts.stream().filter(acc -> acc.getType() == SAVINGS).forEach(x -> ((SavingsAccount) x).provideInterest());
+  /**
+   * Applies the operations in submission order and reports one status per operation.
+   * <p>
+   * Every account is looked up once before any lock is taken. Between transfers, operations are
+   * grouped by lock stripe so that each stripe is locked once per group, while operations on the
+   * same account keep their relative order. Nothing is printed.
+   */
+  public OperationStatus[] submitBatch(List<Operation> operations) {
+    BankMetrics metrics = this.metrics;
+    long started = metrics.start();
+    OperationStatus[] statuses = shards != null ? submitToShards(operations) : applyBatch(operations);
+    metrics.record(MeasuredOperation.BATCH, started, OK);
+
+    return statuses;
+  }
+
+  /**
+   * Stops the shard threads, if any, once every operation submitted so far is done.
+   */
+  @Override
+  public void close() {
+    if (shards != null) {
+      shards.close();
+    }
   }
 
   protected Account findAccount(UUID accountId) throws AccountErrorException {
-    Optional<Account> accountOptional = accounts.stream().filter(acc -> acc.getAccountId() == accountId).findFirst();
-    if (!accountOptional.isPresent()) {
-      throw new AccountErrorException("Invalid account number");
+    BankMetrics metrics = this.metrics;
+    long started = metrics.start();
+    Account account = lookupAccount(accountId);
+    metrics.recordIfTimed(MeasuredOperation.FIND_ACCOUNT, started, account == null ? ACCOUNT_NOT_FOUND : OK);
+    if (account == null) {
+      throw new AccountNotFoundException();
+    }
+
+    return account;
+  }
+
+  /**
+   * Opens an empty account under a fresh number, drawing another one while the drawn number is
+   * taken. Nothing is journaled for a taken number.
+   */
+  private UUID createAccount(AccountType type, String customer, long limit) {
+    for (int attempt = 0; attempt < MAX_ACCOUNT_ID_ATTEMPTS; attempt++) {
+      UUID accountId = accountIds.next();
+      // stored before journaled, so a snapshot that covers the record also sees the account
+      Account createdAccount = addAccount(accountId, type, customer, 0, limit);
+      if (createdAccount != null) {
+        long sequence = journal.appendAccountCreated(accountId, type, customer, limit);
+        createdAccount.setVersion(sequence);
+        awaitDurable(sequence);
+
+        return accountId;
+      }
+    }
+    throw new IllegalStateException("No free account number in " + MAX_ACCOUNT_ID_ATTEMPTS + " attempts");
+  }
+
+  /**
+   * @return the added account, or {@code null} if the account number is already taken
+   */
+  Account addAccount(UUID accountId, AccountType type, String owner, long balance, long limit) {
+    Account account = accounts.add(accountId, type, owner, balance, limit);
+    if (account != null) {
+      if (account instanceof InterestBearingAccount) {
+        // earns from the open period on
+        ((InterestBearingAccount) account).setAccruedPeriod(interestAccrual.getPeriods().current());
+        if (shards != null) {
+          shards.addInterestBearing((InterestBearingAccount) account);
+        }
+      }
+      owners.add(owner, accountId);
+    }
+    return account;
+  }
+
+  /**
+   * Opens an imported account with its opening balance, without waiting for the journal. The
+   * account is journaled as opened empty and then credited, or debited within its limit, so
+   * recovery needs no records of its own for imports.
+   *
+   * @return sequence number of the last journal record written for the account, 0 without a journal
+   */
+  long importAccount(UUID accountId, AccountType type, String owner, long limit, long balance)
+      throws AccountErrorException {
+    if (limit < 0) {
+      throw new InvalidAmountException();
+    }
+    if (balance < (type == CHECKING ? -limit : 0)) {
+      throw type == CHECKING ? new LimitReachedException() : new InsufficientFundsException();
+    }
+    if (!journaled) {
+      if (addAccount(accountId, type, owner, balance, limit) == null) {
+        throw new IllegalStateException("Account number already taken: " + accountId);
+      }
+      journal.appendAccountCreated(accountId, type, owner, type == CHECKING ? limit : 0);
+      if (balance > 0) {
+        journal.appendDeposited(accountId, balance);
+      } else if (balance < 0) {
+        journal.appendWithdrawn(accountId, -balance);
+      }
+      return 0;
+    }
+
+    Account account = addAccount(accountId, type, owner, 0, limit);
+    if (account == null) {
+      throw new IllegalStateException("Account number already taken: " + accountId);
+    }
+    long sequence = journal.appendAccountCreated(accountId, type, owner, type == CHECKING ? limit : 0);
+    account.setVersion(sequence);
+    if (balance != 0) {
+      Lock lock = locks.lockFor(accountId);
+      lock.lock();
+      try {
+        if (balance > 0) {
+          account.deposit(balance);
+          sequence = journal.appendDeposited(accountId, balance);
+        } else {
+          account.withdraw(-balance);
+          sequence = journal.appendWithdrawn(accountId, -balance);
+        }
+        account.setVersion(sequence);
+      } finally {
+        lock.unlock();
+      }
+    }
+    return sequence;
+  }
+
+  /**
+   * Waits until the record with the given sequence number is durable, or leaves the wait to
+   * {@link #awaitDeferred()} if the calling thread defers durability.
+   */
+  void awaitDurable(long sequence) {
+    long[] highest = deferred.get();
+    if (highest == null) {
+      journal.awaitDurable(sequence);
+    } else if (sequence > highest[0]) {
+      highest[0] = sequence;
+    }
+  }
+
+  /**
+   * Grows the account index ahead of adding the given number of accounts.
+   */
+  void reserveAccounts(int count) {
+    accounts.ensureCapacity((int) Math.min((long) accounts.size() + count, Integer.MAX_VALUE));
+  }
+
+  InterestPeriods getInterestPeriods() {
+    return interestAccrual.getPeriods();
+  }
+
+  /**
+   * Rates the savings accounts of this bank earn in the open interest period.
+   */
+  public InterestRateTable getRateTable() {
+    return getInterestRates().getRateTable();
+  }
+
+  private InterestRates getInterestRates() {
+    return interestAccrual.getPeriods().getInterestRates();
+  }
+
+  /**
+   * Runs the operation unless the request was run before; a rejection is journaled with its key
+   * and the fingerprint of the operation, since no change carries them.
+   */
+  private OperationStatus once(UUID requestId, long fingerprint, Function<Request, OperationStatus> operation) {
+    return getIdempotencyCache().execute(requestId, fingerprint, request -> {
+      OperationStatus status = operation.apply(request);
+      if (status != OK) {
+        awaitDurable(journal.appendRequestRejected(request.getRequestId(), request.getTime(),
+            status.ordinal(), request.getFingerprint()));
+      }
+      return status;
+    });
+  }
+
+  private void catchUpInterest(Account account) {
+    if (!(account instanceof InterestBearingAccount)) {
+      return;
+    }
+    InterestBearingAccount interestBearing = (InterestBearingAccount) account;
+    if (shards == null) {
+      interestAccrual.catchUp(interestBearing);
+    } else if (interestAccrual.isBehind(interestBearing)) {
+      shards.submit(account.getAccountId(), () -> accrueInterest(account)).join();
+    }
+  }
+
+  /**
+   * Applies a deposit, withdrawal or limit change on the shard that owns the account, after
+   * crediting the interest the account is behind on.
+   */
+  private OperationStatus applyOwned(OperationType type, Account account, long amount) {
+    try {
+      accrueInterest(account);
+      // reported from the shard, so the events of an account keep the order of its changes
+      switch (type) {
+        case DEPOSIT:
+          account.deposit(amount);
+          journal.appendDeposited(account.getAccountId(), amount);
+          break;
+        case WITHDRAW:
+          account.withdraw(amount);
+          journal.appendWithdrawn(account.getAccountId(), amount);
+          break;
+        case CHANGE_LIMIT:
+          ((LimitedAccount) account).setLimit(amount);
+          journal.appendLimitChanged(account.getAccountId(), amount);
+          break;
+        default:
+          return REJECTED;
+      }
+      return OK;
+    } catch (AccountErrorException e) {
+      return OperationStatus.of(e);
+    }
+  }
+
+  private OperationStatus[] applyBatch(List<Operation> operations) {
+    int size = operations.size();
+    OperationStatus[] statuses = new OperationStatus[size];
+    Account[] resolved = new Account[size];
+    long[] groupKeys = new long[size];
+
+    long sequence = 0;
+    int groupStart = 0;
+    for (int i = 0; i < size; i++) {
+      if (operations.get(i).getType() == TRANSFER) {
+        sequence = Math.max(sequence, applyGrouped(operations, groupStart, i, resolved, groupKeys, statuses));
+        sequence = Math.max(sequence, applyTransfer(operations.get(i), statuses, i));
+        groupStart = i + 1;
+      }
+    }
+    sequence = Math.max(sequence, applyGrouped(operations, groupStart, size, resolved, groupKeys, statuses));
+    // one wait covers the whole batch
+    awaitDurable(sequence);
+
+    return statuses;
+  }
+
+  /**
+   * Hands every operation of the batch to its shard at once and waits for all of them. Operations
+   * on one account keep their order, since they queue on the same shard.
+   */
+  private OperationStatus[] submitToShards(List<Operation> operations) {
+    int size = operations.size();
+    OperationStatus[] statuses = new OperationStatus[size];
+    List<CompletableFuture<OperationStatus>> results = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      Operation operation = operations.get(i);
+      Account account = lookupAccount(operation.getAccountId());
+      CompletableFuture<OperationStatus> result;
+      if (account == null) {
+        result = CompletableFuture.completedFuture(ACCOUNT_NOT_FOUND);
+      } else if (operation.getType() == TRANSFER) {
+        Account target = lookupAccount(operation.getTargetAccountId());
+        if (target == null) {
+          result = CompletableFuture.completedFuture(ACCOUNT_NOT_FOUND);
+        } else if (account.getType() != CHECKING) {
+          result = CompletableFuture.completedFuture(WRONG_ACCOUNT_TYPE);
+        } else {
+          result = shards.transfer(account, target, operation.getAmount());
+        }
+      } else if (operation.getType() == CHANGE_LIMIT && account.getType() != CHECKING) {
+        result = CompletableFuture.completedFuture(WRONG_ACCOUNT_TYPE);
+      } else {
+        result = shards.submit(account.getAccountId(), () -> applyOwned(operation.getType(), account,
+            operation.getAmount()));
+      }
+      results.add(result);
+    }
+    for (int i = 0; i < size; i++) {
+      statuses[i] = results.get(i).join();
+    }
+
+    return statuses;
+  }
+
+  /**
+   * Credits the interest the account is behind on; the caller holds its lock stripe.
+   *
+   * @return sequence number of the journal record appended, 0 if none
+   */
+  private long accrueInterest(Account account) {
+    if (!(account instanceof InterestBearingAccount)) {
+      return 0;
+    }
+    try {
+      return interestAccrual.accrue((InterestBearingAccount) account);
+    } catch (AmountOverflowException e) {
+      // left for a later touch
+      return account.getVersion();
+    }
+  }
+
+  private Account lookupAccount(UUID accountId) {
+    return accountId == null ? null : accounts.get(accountId);
+  }
+
+  /**
+   * @return sequence number of the last journal record appended for the group
+   */
+  private long applyGrouped(List<Operation> operations, int from, int to, Account[] resolved, long[] groupKeys,
+      OperationStatus[] statuses) {
+    int count = 0;
+    for (int i = from; i < to; i++) {
+      UUID accountId = operations.get(i).getAccountId();
+      Account account = lookupAccount(accountId);
+      if (account == null) {
+        statuses[i] = ACCOUNT_NOT_FOUND;
+        continue;
+      }
+      resolved[i] = account;
+      // stripe in the high half, batch position in the low half: sorting keeps submission order per stripe
+      groupKeys[count++] = ((long) locks.stripeOf(accountId) << 32) | i;
     }
+    Arrays.sort(groupKeys, 0, count);
 
-    return accountOptional.get();
+    long sequence = 0;
+    int next = 0;
+    while (next < count) {
+      int stripe = (int) (groupKeys[next] >>> 32);
+      Lock lock = locks.stripe(stripe);
+      lock.lock();
+      try {
+        do {
+          int i = (int) groupKeys[next++];
+          sequence = Math.max(sequence, accrueInterest(resolved[i]));
+          sequence = Math.max(sequence, apply(operations.get(i), resolved[i], statuses, i));
+        } while (next < count && (int) (groupKeys[next] >>> 32) == stripe);
+      } finally {
+        lock.unlock();
+      }
+    }
+    return sequence;
+  }
+
+  /**
+   * Stores the status of the operation at the given batch position.
+   *
+   * @return sequence number of the journal record appended, 0 if the operation was rejected
+   */
+  private long apply(Operation operation, Account account, OperationStatus[] statuses, int position) {
+    UUID accountId = account.getAccountId();
+    long amount = operation.getAmount();
+    long sequence = 0;
+    OperationStatus status = OK;
+    try {
+      switch (operation.getType()) {
+        case DEPOSIT:
+          account.deposit(amount);
+          sequence = journal.appendDeposited(accountId, amount);
+          break;
+        case WITHDRAW:
+          account.withdraw(amount);
+          sequence = journal.appendWithdrawn(accountId, amount);
+          break;
+        case CHANGE_LIMIT:
+          if (account.getType() != CHECKING) {
+            status = WRONG_ACCOUNT_TYPE;
+            break;
+          }
+          ((LimitedAccount) account).setLimit(amount);
+          sequence = journal.appendLimitChanged(accountId, amount);
+          break;
+        default:
+          status = REJECTED;
+      }
+    } catch (AccountErrorException e) {
+      status = OperationStatus.of(e);
+    }
+
+    if (sequence != 0) {
+      account.setVersion(sequence);
+    }
+    statuses[position] = status;
+    return sequence;
+  }
+
+  private long applyTransfer(Operation operation, OperationStatus[] statuses, int position) {
+    Account accFrom = lookupAccount(operation.getAccountId());
+    Account accTo = lookupAccount(operation.getTargetAccountId());
+    if (accFrom == null || accTo == null) {
+      statuses[position] = ACCOUNT_NOT_FOUND;
+      return 0;
+    }
+    if (accFrom.getType() != CHECKING) {
+      statuses[position] = WRONG_ACCOUNT_TYPE;
+      return 0;
+    }
+    catchUpInterest(accTo);
+
+    try {
+      long sequence = transferEngine.transfer(accFrom, accTo, operation.getAmount());
+      statuses[position] = OK;
+      return sequence;
+    } catch (AccountErrorException e) {
+      statuses[position] = OperationStatus.of(e);
+      return 0;
+    }
   }
 
 }
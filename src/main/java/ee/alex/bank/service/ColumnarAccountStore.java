@@ -0,0 +1,475 @@
+package ee.alex.bank.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import ee.alex.bank.exception.AccountErrorException;
+import ee.alex.bank.exception.AmountOverflowException;
+import ee.alex.bank.exception.InvalidAmountException;
+import ee.alex.bank.model.Account;
+import ee.alex.bank.model.AccountRules;
+import ee.alex.bank.model.AccountType;
+import ee.alex.bank.model.InterestBearingAccount;
+import ee.alex.bank.model.InterestRateTable;
+import ee.alex.bank.model.InterestRates;
+import ee.alex.bank.model.LimitedAccount;
+import ee.alex.bank.model.Money;
+import static ee.alex.bank.model.AccountType.CHECKING;
+import static ee.alex.bank.model.AccountType.SAVINGS;
+
+/**
+ * Keeps accounts as columns of primitive arrays instead of one object per account.
+ * <p>
+ * Every account gets a slot number when it is added. Account numbers, balances, limits, versions
+ * and types are stored in fixed-size chunks of parallel arrays at that slot, and owner names as
+ * UTF-8 bytes in a shared byte pool. Adding a million accounts therefore allocates a few dozen
+ * arrays rather than millions of small objects, so the heap the collector has to trace stays small
+ * however many accounts there are.
+ * <p>
+ * {@link #get(UUID)} returns a short-lived view that reads and writes the columns of its slot. Views
+ * of the same account are equal but not the same object, so callers must not synchronize on them.
+ * Balances change by compare-and-set on the balance column, like the balance of an account object.
+ * Savings accounts have no limit and keep their accrued interest period in the limit column.
+ * <p>
+ * The index maps account numbers to slots through an open-addressing table of slot numbers; the
+ * keys are compared against the account number columns. Adds are serialized by the store lock, a
+ * lock rather than a monitor because an add may rehash the table or allocate a chunk, which must not
+ * pin the carrier of a virtual thread.
+ * Lookups never lock: the columns of a slot, and the chunk that holds them, are written before the
+ * slot is published into the table with a volatile write, so a lookup reads the chunks only after
+ * it has read the slot.
+ *
+ * @author Aleksei Kulitškov
+ */
+public class ColumnarAccountStore implements AccountStore {
+
+  private static final int CHUNK_SHIFT = 16;
+  private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+  private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+  private static final int OWNER_CHUNK_SHIFT = 20;
+  private static final int OWNER_CHUNK_SIZE = 1 << OWNER_CHUNK_SHIFT;
+  private static final int DEFAULT_EXPECTED_SIZE = 1024;
+  private static final int MAXIMUM_TABLE_CAPACITY = 1 << 30;
+
+  private static final AccountType[] TYPES = AccountType.values();
+
+  private volatile Chunk[] chunks = new Chunk[0];
+  private volatile byte[][] ownerChunks = new byte[0][];
+  private volatile int[] interestBearingSlots;
+  private volatile int interestBearingCount;
+  private volatile AtomicIntegerArray table;
+  private volatile int size;
+  private long ownersEnd;
+  private final InterestRates interestRates = new InterestRates();
+  private final ReentrantLock lock = new ReentrantLock();
+
+  public ColumnarAccountStore() {
+    this(DEFAULT_EXPECTED_SIZE);
+  }
+
+  public ColumnarAccountStore(int expectedSize) {
+    this.table = new AtomicIntegerArray(tableCapacityFor(expectedSize));
+    this.interestBearingSlots = new int[Math.max(expectedSize, 1)];
+  }
+
+  @Override
+  public Account get(UUID accountId) {
+    int slot = find(accountId.getMostSignificantBits(), accountId.getLeastSignificantBits());
+    return slot < 0 ? null : view(slot);
+  }
+
+  @Override
+  public Account add(UUID accountId, AccountType type, String owner, long balance, long limit) {
+    lock.lock();
+    try {
+      return addLocked(accountId, type, owner, balance, limit);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void ensureCapacity(int expectedSize) {
+    lock.lock();
+    try {
+      AtomicIntegerArray t = table;
+      int capacity = tableCapacityFor(expectedSize);
+      if (capacity > t.length()) {
+        table = resize(t, capacity);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private Account addLocked(UUID accountId, AccountType type, String owner, long balance, long limit) {
+    long mostSigBits = accountId.getMostSignificantBits();
+    long leastSigBits = accountId.getLeastSignificantBits();
+    if (find(mostSigBits, leastSigBits) >= 0) {
+      return null;
+    }
+
+    int slot = size;
+    Chunk chunk = chunkForAdd(slot);
+    int offset = slot & CHUNK_MASK;
+    chunk.mostSigBits[offset] = mostSigBits;
+    chunk.leastSigBits[offset] = leastSigBits;
+    chunk.types[offset] = (byte) type.ordinal();
+    chunk.balances.set(offset, balance);
+    chunk.limits.set(offset, type == CHECKING ? limit : 0);
+    byte[] ownerBytes = owner.getBytes(StandardCharsets.UTF_8);
+    chunk.owners[offset] = storeOwner(ownerBytes);
+    chunk.ownerLengths[offset] = ownerBytes.length;
+
+    AtomicIntegerArray t = table;
+    if (slot + 1 > threshold(t)) {
+      t = resize(t, t.length() << 1);
+      table = t;
+    }
+    insert(t, mostSigBits, leastSigBits, slot);
+    size = slot + 1;
+
+    if (type == SAVINGS) {
+      addInterestBearing(slot);
+    }
+    return view(slot);
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public void forEach(Consumer<? super Account> action) {
+    int count = size;
+    for (int slot = 0; slot < count; slot++) {
+      action.accept(view(slot));
+    }
+  }
+
+  @Override
+  public int interestBearingCount() {
+    return interestBearingCount;
+  }
+
+  @Override
+  public InterestBearingAccount getInterestBearing(int index) {
+    int count = interestBearingCount;
+    if (index >= count) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", size: " + count);
+    }
+    return (InterestBearingAccount) view(interestBearingSlots[index]);
+  }
+
+  @Override
+  public InterestRates getInterestRates() {
+    return interestRates;
+  }
+
+  private Account view(int slot) {
+    Chunk chunk = chunks[slot >>> CHUNK_SHIFT];
+    int offset = slot & CHUNK_MASK;
+    return TYPES[chunk.types[offset]] == CHECKING ? new CheckingView(chunk, offset) : new SavingsView(chunk, offset);
+  }
+
+  /**
+   * @return slot of the account, -1 if not found
+   */
+  private int find(long mostSigBits, long leastSigBits) {
+    AtomicIntegerArray t = table;
+    int mask = t.length() - 1;
+    for (int i = AccountIndex.hash(mostSigBits, leastSigBits) & mask; ; i = (i + 1) & mask) {
+      int entry = t.get(i);
+      if (entry == 0) {
+        return -1;
+      }
+      int slot = entry - 1;
+      // read after the entry: the first slot of a new chunk is published after the chunk
+      Chunk chunk = chunks[slot >>> CHUNK_SHIFT];
+      int offset = slot & CHUNK_MASK;
+      if (chunk.mostSigBits[offset] == mostSigBits && chunk.leastSigBits[offset] == leastSigBits) {
+        return slot;
+      }
+    }
+  }
+
+  private Chunk chunkForAdd(int slot) {
+    Chunk[] c = chunks;
+    int chunkIndex = slot >>> CHUNK_SHIFT;
+    if (chunkIndex == c.length) {
+      c = Arrays.copyOf(c, c.length + 1);
+      c[chunkIndex] = new Chunk();
+      chunks = c;
+    }
+    return c[chunkIndex];
+  }
+
+  /**
+   * @return position of the bytes in the owner pool
+   */
+  private long storeOwner(byte[] ownerBytes) {
+    if (ownerBytes.length > OWNER_CHUNK_SIZE) {
+      throw new IllegalArgumentException("Owner name is longer than " + OWNER_CHUNK_SIZE + " bytes");
+    }
+    // a name never spans two chunks
+    long position = ownersEnd;
+    int chunkOffset = (int) (position & (OWNER_CHUNK_SIZE - 1));
+    if (chunkOffset + ownerBytes.length > OWNER_CHUNK_SIZE) {
+      position += OWNER_CHUNK_SIZE - chunkOffset;
+      chunkOffset = 0;
+    }
+
+    byte[][] o = ownerChunks;
+    int chunkIndex = (int) (position >>> OWNER_CHUNK_SHIFT);
+    if (chunkIndex == o.length) {
+      o = Arrays.copyOf(o, o.length + 1);
+      o[chunkIndex] = new byte[OWNER_CHUNK_SIZE];
+      ownerChunks = o;
+    }
+    System.arraycopy(ownerBytes, 0, o[chunkIndex], chunkOffset, ownerBytes.length);
+    ownersEnd = position + ownerBytes.length;
+
+    return position;
+  }
+
+  private String owner(long position, int length) {
+    byte[] chunk = ownerChunks[(int) (position >>> OWNER_CHUNK_SHIFT)];
+    return new String(chunk, (int) (position & (OWNER_CHUNK_SIZE - 1)), length, StandardCharsets.UTF_8);
+  }
+
+  private void addInterestBearing(int slot) {
+    int[] current = interestBearingSlots;
+    int count = interestBearingCount;
+    if (count == current.length) {
+      current = Arrays.copyOf(current, current.length * 2);
+      interestBearingSlots = current;
+    }
+    current[count] = slot;
+    interestBearingCount = count + 1;
+  }
+
+  private void insert(AtomicIntegerArray t, long mostSigBits, long leastSigBits, int slot) {
+    int mask = t.length() - 1;
+    int i = AccountIndex.hash(mostSigBits, leastSigBits) & mask;
+    while (t.get(i) != 0) {
+      i = (i + 1) & mask;
+    }
+    t.set(i, slot + 1);
+  }
+
+  private AtomicIntegerArray resize(AtomicIntegerArray t, int capacity) {
+    if (t.length() == MAXIMUM_TABLE_CAPACITY) {
+      throw new IllegalStateException("Account store is full");
+    }
+
+    AtomicIntegerArray resized = new AtomicIntegerArray(capacity);
+    Chunk[] c = chunks;
+    for (int i = 0; i < t.length(); i++) {
+      int entry = t.get(i);
+      if (entry != 0) {
+        int slot = entry - 1;
+        Chunk chunk = c[slot >>> CHUNK_SHIFT];
+        int offset = slot & CHUNK_MASK;
+        insert(resized, chunk.mostSigBits[offset], chunk.leastSigBits[offset], slot);
+      }
+    }
+    return resized;
+  }
+
+  private static int threshold(AtomicIntegerArray t) {
+    // load factor of three quarters: a slot number takes a quarter of an AccountIndex entry
+    return t.length() == MAXIMUM_TABLE_CAPACITY ? t.length() - 1 : t.length() - (t.length() >> 2);
+  }
+
+  private static int tableCapacityFor(int expectedSize) {
+    // at least four, so the threshold always leaves an empty entry that ends every probe
+    long wanted = Math.max((long) expectedSize * 4 / 3 + 1, 4);
+    if (wanted >= MAXIMUM_TABLE_CAPACITY) {
+      return MAXIMUM_TABLE_CAPACITY;
+    }
+    return Integer.highestOneBit((int) wanted - 1) << 1;
+  }
+
+  private static final class Chunk {
+
+    private final long[] mostSigBits = new long[CHUNK_SIZE];
+    private final long[] leastSigBits = new long[CHUNK_SIZE];
+    private final byte[] types = new byte[CHUNK_SIZE];
+    private final long[] owners = new long[CHUNK_SIZE];
+    private final int[] ownerLengths = new int[CHUNK_SIZE];
+    private final AtomicLongArray balances = new AtomicLongArray(CHUNK_SIZE);
+    private final AtomicLongArray limits = new AtomicLongArray(CHUNK_SIZE);
+    private final AtomicLongArray versions = new AtomicLongArray(CHUNK_SIZE);
+
+  }
+
+  /**
+   * Flyweight over one slot; holds nothing but the position of the slot.
+   */
+  private abstract class View implements Account {
+
+    final Chunk chunk;
+    final int offset;
+
+    View(Chunk chunk, int offset) {
+      this.chunk = chunk;
+      this.offset = offset;
+    }
+
+    @Override
+    public void deposit(long amount) throws InvalidAmountException, AmountOverflowException {
+      long current;
+      do {
+        current = chunk.balances.get(offset);
+      } while (!chunk.balances.compareAndSet(offset, current, AccountRules.credit(current, amount)));
+    }
+
+    @Override
+    public String getDetails() {
+      return this.toString();
+    }
+
+    @Override
+    public UUID getAccountId() {
+      return new UUID(chunk.mostSigBits[offset], chunk.leastSigBits[offset]);
+    }
+
+    @Override
+    public long getBalance() {
+      return chunk.balances.get(offset);
+    }
+
+    @Override
+    public String getOwner() {
+      return owner(chunk.owners[offset], chunk.ownerLengths[offset]);
+    }
+
+    @Override
+    public long getVersion() {
+      return chunk.versions.get(offset);
+    }
+
+    @Override
+    public void setVersion(long version) {
+      chunk.versions.set(offset, version);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+
+      View that = (View) o;
+
+      return chunk == that.chunk && offset == that.offset;
+    }
+
+    @Override
+    public int hashCode() {
+      return AccountIndex.hash(chunk.mostSigBits[offset], chunk.leastSigBits[offset]);
+    }
+
+  }
+
+  private final class CheckingView extends View implements LimitedAccount {
+
+    CheckingView(Chunk chunk, int offset) {
+      super(chunk, offset);
+    }
+
+    @Override
+    public AccountType getType() {
+      return CHECKING;
+    }
+
+    @Override
+    public void withdraw(long amount) throws AccountErrorException {
+      long current;
+      do {
+        current = chunk.balances.get(offset);
+      } while (!chunk.balances.compareAndSet(offset, current, AccountRules.debitChecking(current, amount, getLimit())));
+    }
+
+    @Override
+    public long getLimit() {
+      return chunk.limits.get(offset);
+    }
+
+    @Override
+    public void setLimit(long limit) throws InvalidAmountException {
+      if (limit <= 0) {
+        throw new InvalidAmountException();
+      }
+      chunk.limits.set(offset, limit);
+    }
+
+    @Override
+    public String toString() {
+      return AccountRules.details(getOwner(), CHECKING, getBalance(), AccountRules.checkingDetails(getLimit()));
+    }
+
+  }
+
+  private final class SavingsView extends View implements InterestBearingAccount {
+
+    SavingsView(Chunk chunk, int offset) {
+      super(chunk, offset);
+    }
+
+    @Override
+    public AccountType getType() {
+      return SAVINGS;
+    }
+
+    @Override
+    public void withdraw(long amount) throws AccountErrorException {
+      long current;
+      do {
+        current = chunk.balances.get(offset);
+      } while (!chunk.balances.compareAndSet(offset, current, AccountRules.debitSavings(current, amount)));
+    }
+
+    @Override
+    public long provideInterest() throws AmountOverflowException {
+      return provideInterest(interestRates.getRateTable());
+    }
+
+    @Override
+    public long provideInterest(InterestRateTable rateTable) throws AmountOverflowException {
+      long currentBalance;
+      long interest;
+      do {
+        currentBalance = chunk.balances.get(offset);
+        interest = Money.interest(currentBalance, rateTable.rate(SAVINGS, currentBalance));
+      } while (!chunk.balances.compareAndSet(offset, currentBalance, Money.add(currentBalance, interest)));
+
+      return interest;
+    }
+
+    @Override
+    public long getAccruedPeriod() {
+      return chunk.limits.get(offset);
+    }
+
+    @Override
+    public void setAccruedPeriod(long period) {
+      chunk.limits.set(offset, period);
+    }
+
+    @Override
+    public String toString() {
+      return AccountRules.details(getOwner(), SAVINGS, getBalance(), AccountRules.savingsDetails(interestRates.getInterestRate()));
+    }
+
+  }
+
+}
@@ -0,0 +1,72 @@
+package ee.alex.bank.service;
+
+import java.io.PrintStream;
+import java.util.UUID;
+import ee.alex.bank.model.Money;
+import static java.lang.String.format;
+
+/**
+ * Prints one line per operation, or the details of an account, to a print stream.
+ *
+ * @author Aleksei Kulitškov
+ */
+public class ConsoleOperationLog implements OperationLog {
+
+  private final PrintStream out;
+
+  public ConsoleOperationLog() {
+    this(System.out);
+  }
+
+  public ConsoleOperationLog(PrintStream out) {
+    this.out = out;
+  }
+
+  @Override
+  public void operation(OperationType type, UUID accountId, UUID targetAccountId, long amount,
+      OperationStatus status) {
+    if (!status.isSuccess()) {
+      out.println(status.getMessage());
+      return;
+    }
+
+    switch (type) {
+      case DEPOSIT:
+        out.println(format("Deposited %s€ to bank account %S", Money.format(amount), accountId));
+        break;
+      case WITHDRAW:
+        out.println(format("Withdrawn %s€ from bank account %S", Money.format(amount), accountId));
+        break;
+      case TRANSFER:
+        out.println(format("Transferred %s€ from account %s to account %s", Money.format(amount), accountId,
+            targetAccountId));
+        break;
+      case CHANGE_LIMIT:
+        out.println(format("Changed limit to %s€ of bank account %s", Money.format(amount), accountId));
+        break;
+      default:
+        out.println(format("%s of %s€ on bank account %s", type, Money.format(amount), accountId));
+    }
+  }
+
+  @Override
+  public void accountDetails(UUID accountId, String details) {
+    out.println(details != null ? details : OperationStatus.ACCOUNT_NOT_FOUND.getMessage());
+  }
+
+  @Override
+  public void interestRateChanged(double previousInterestRate, double interestRate, OperationStatus status) {
+    if (!status.isSuccess()) {
+      out.println(status.getMessage());
+      return;
+    }
+    out.println(format("Changed interest rate from %s to %s", previousInterestRate, interestRate));
+  }
+
+  @Override
+  public void interestProvided(double interestRate, InterestReport report) {
+    out.println(format("Provided interest at rate %s", interestRate));
+    out.println(report);
+  }
+
+}
@@ -0,0 +1,439 @@
+package ee.alex.bank.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Results of recent requests by idempotency key, so that a request retried by the client gets the
+ * result of the first attempt instead of being applied twice.
+ * <p>
+ * The cache is a fixed table of primitive longs, like the {@link AccountIndex}: a request takes
+ * four longs, its key, its time with its status, and the {@link #fingerprint fingerprint} of its
+ * operation, so remembering one allocates nothing and the garbage collector never looks at the
+ * requests. A key hashes to a bucket of eight slots, which are scanned under the lock stripe of the
+ * bucket. The cache is bounded twice: a request older than the window counts as gone, and a new
+ * request in a full bucket evicts the oldest answered one there. Since keys do not fill buckets
+ * evenly, the capacity should be about twice the requests of a window, at the rate the bank takes
+ * them; a retry of an evicted request is applied again.
+ * <p>
+ * A retry that arrives while the first attempt is still running polls until it has a result. If
+ * the first attempt fails without one, the retry runs in its place. A running request is never
+ * evicted, however long it runs, as its retry would then run a second time: a new request whose
+ * bucket holds only running ones waits until one of them has a result.
+ * <p>
+ * A key sent again with another operation is answered {@link OperationStatus#IDEMPOTENCY_KEY_REUSED}
+ * instead of the result of the operation the key was first used for.
+ *
+ * @author Aleksei Kulitškov
+ */
+public class IdempotencyCache {
+
+  public static final int DEFAULT_CAPACITY = 1 << 16;
+  public static final Duration DEFAULT_WINDOW = Duration.ofHours(24);
+
+  private static final int WAYS = 8;
+  // key high bits, key low bits, time shifted left by STATUS_BITS with the status in the low bits,
+  // fingerprint of the operation
+  private static final int SLOT_SIZE = 4;
+  private static final int STATUS_BITS = 8;
+  private static final int PENDING = (1 << STATUS_BITS) - 1;
+  private static final int CLAIMED = -1;
+  private static final int BUCKET_FULL = -2;
+  private static final long EMPTY = Long.MIN_VALUE;
+  private static final int MAXIMUM_STRIPES = 256;
+  private static final int SPINS_BEFORE_PARK = 1 << 6;
+  private static final long PARK_NANOS = 50_000;
+  private static final OperationStatus[] STATUSES = OperationStatus.values();
+
+  private final long[] slots;
+  private final ReentrantLock[] locks;
+  private final int bucketMask;
+  private final long windowMillis;
+  private final LongSupplier clock;
+
+  public IdempotencyCache() {
+    this(DEFAULT_CAPACITY, DEFAULT_WINDOW);
+  }
+
+  /**
+   * @param capacity most requests remembered, a power of two of at least 8
+   * @param window how long a request is remembered for
+   */
+  public IdempotencyCache(int capacity, Duration window) {
+    this(capacity, window.toMillis(), System::currentTimeMillis);
+  }
+
+  IdempotencyCache(int capacity, long windowMillis, LongSupplier clock) {
+    if (capacity < WAYS || Integer.bitCount(capacity) != 1) {
+      throw new IllegalArgumentException("Capacity must be a power of two of at least " + WAYS + ": " + capacity);
+    }
+    int buckets = capacity / WAYS;
+    this.slots = new long[capacity * SLOT_SIZE];
+    for (int slot = 0; slot < capacity; slot++) {
+      slots[slot * SLOT_SIZE + 2] = EMPTY;
+    }
+    this.locks = new ReentrantLock[Math.min(buckets, MAXIMUM_STRIPES)];
+    for (int i = 0; i < locks.length; i++) {
+      locks[i] = new ReentrantLock();
+    }
+    this.bucketMask = buckets - 1;
+    this.windowMillis = windowMillis;
+    this.clock = clock;
+  }
+
+  /**
+   * Fingerprint of an operation, which a key must be sent again with to get the result of its
+   * first attempt. Journaled with rejected requests, so it must stay the same across versions.
+   *
+   * @param targetAccountId account credited by a transfer, {@code null} for other operations
+   * @param amount amount moved, or the new limit
+   * @return the fingerprint, never 0
+   */
+  public static long fingerprint(OperationType type, UUID accountId, UUID targetAccountId, long amount) {
+    long h = type.ordinal();
+    h = h * 0x9E3779B97F4A7C15L + accountId.getMostSignificantBits();
+    h = h * 0x9E3779B97F4A7C15L + accountId.getLeastSignificantBits();
+    if (targetAccountId != null) {
+      h = h * 0x9E3779B97F4A7C15L + targetAccountId.getMostSignificantBits();
+      h = h * 0x9E3779B97F4A7C15L + targetAccountId.getLeastSignificantBits();
+    }
+    h = h * 0x9E3779B97F4A7C15L + amount;
+    h = (h ^ (h >>> 32)) * 0xD6E8FEB86659FD93L;
+    h ^= h >>> 32;
+    return h == 0 ? 1 : h;
+  }
+
+  /**
+   * Runs the operation for the request, unless a request with the same key was already run within
+   * the window.
+   *
+   * @param fingerprint {@link #fingerprint fingerprint} of the operation
+   * @return the status of the operation, or of the first attempt of the request;
+   * {@link OperationStatus#IDEMPOTENCY_KEY_REUSED} if that attempt ran another operation
+   */
+  public OperationStatus execute(UUID requestId, long fingerprint, Function<Request, OperationStatus> operation) {
+    long high = requestId.getMostSignificantBits();
+    long low = requestId.getLeastSignificantBits();
+    int bucket = AccountIndex.hash(high, low) & bucketMask;
+    long now = clock.getAsLong();
+
+    int status;
+    for (int spins = 0; ; spins++) {
+      status = claim(bucket, high, low, fingerprint, now);
+      if (status == PENDING) {
+        // another attempt is running; if it fails without a result, this one takes over
+        status = await(bucket, high, low);
+        if (status >= 0) {
+          break;
+        }
+      } else if (status == BUCKET_FULL) {
+        pause(spins);
+      } else {
+        break;
+      }
+    }
+    if (status >= 0) {
+      return STATUSES[status];
+    }
+
+    OperationStatus result;
+    try {
+      result = operation.apply(new Request(requestId, now, fingerprint));
+    } catch (RuntimeException | Error e) {
+      complete(bucket, high, low, -1);
+      throw e;
+    }
+    complete(bucket, high, low, result.ordinal());
+    return result;
+  }
+
+  /**
+   * Remembers a request answered before, for example one read back from the journal. Does nothing
+   * if the key is taken, the request is older than the window or its bucket holds only running
+   * requests.
+   *
+   * @param fingerprint fingerprint of the operation, or 0 if it is not known, which any operation
+   * sent with the key matches
+   */
+  public void restore(UUID requestId, long time, OperationStatus status, long fingerprint) {
+    long now = clock.getAsLong();
+    if (now - time >= windowMillis) {
+      return;
+    }
+    long high = requestId.getMostSignificantBits();
+    long low = requestId.getLeastSignificantBits();
+    int bucket = AccountIndex.hash(high, low) & bucketMask;
+    ReentrantLock lock = lockFor(bucket);
+    lock.lock();
+    try {
+      int slot = find(bucket, high, low);
+      if (slot < 0) {
+        slot = victim(bucket, high, now);
+      } else if (isLive(slot * SLOT_SIZE, now)) {
+        slot = -1;
+      }
+      if (slot >= 0) {
+        put(slot, high, low, time, status.ordinal(), fingerprint);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Requests within the window that have a result, waiting for the ones still running.
+   */
+  public List<Request> answered() {
+    List<Request> answered = new ArrayList<>();
+    for (int bucket = 0; bucket <= bucketMask; bucket++) {
+      long now = clock.getAsLong();
+      List<Request> running = new ArrayList<>();
+      ReentrantLock lock = lockFor(bucket);
+      lock.lock();
+      try {
+        for (int slot = bucket * WAYS; slot < (bucket + 1) * WAYS; slot++) {
+          int base = slot * SLOT_SIZE;
+          if (isLive(base, now)) {
+            Request request = new Request(new UUID(slots[base], slots[base + 1]), slots[base + 2] >> STATUS_BITS,
+                slots[base + 3]);
+            int status = (int) (slots[base + 2] & PENDING);
+            if (status == PENDING) {
+              running.add(request);
+            } else {
+              answered.add(request.answered(status));
+            }
+          }
+        }
+      } finally {
+        lock.unlock();
+      }
+      for (Request request : running) {
+        UUID requestId = request.getRequestId();
+        int status = await(bucket, requestId.getMostSignificantBits(), requestId.getLeastSignificantBits());
+        // a request that fails without a result is not remembered
+        if (status >= 0) {
+          answered.add(request.answered(status));
+        }
+      }
+    }
+    return answered;
+  }
+
+  /**
+   * Number of requests within the window; counts every slot, so meant for tests and monitoring.
+   */
+  public int size() {
+    int size = 0;
+    for (int bucket = 0; bucket <= bucketMask; bucket++) {
+      long now = clock.getAsLong();
+      ReentrantLock lock = lockFor(bucket);
+      lock.lock();
+      try {
+        for (int slot = bucket * WAYS; slot < (bucket + 1) * WAYS; slot++) {
+          if (isLive(slot * SLOT_SIZE, now)) {
+            size++;
+          }
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Claims the key for a new attempt unless it is taken.
+   *
+   * @return the status of the request, {@link #PENDING} if it is running, {@link #CLAIMED} if it
+   * was claimed, or {@link #BUCKET_FULL} if every slot of the bucket is running a request
+   */
+  private int claim(int bucket, long high, long low, long fingerprint, long now) {
+    ReentrantLock lock = lockFor(bucket);
+    lock.lock();
+    try {
+      int slot = find(bucket, high, low);
+      if (slot >= 0 && isLive(slot * SLOT_SIZE, now)) {
+        long first = slots[slot * SLOT_SIZE + 3];
+        if (first != fingerprint && first != 0) {
+          return OperationStatus.IDEMPOTENCY_KEY_REUSED.ordinal();
+        }
+        return (int) (slots[slot * SLOT_SIZE + 2] & PENDING);
+      }
+      if (slot < 0) {
+        slot = victim(bucket, high, now);
+        if (slot < 0) {
+          return BUCKET_FULL;
+        }
+      }
+      put(slot, high, low, now, PENDING, fingerprint);
+      return CLAIMED;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Polls until a running request has a result.
+   *
+   * @return the status, or -1 if the request failed without one
+   */
+  private int await(int bucket, long high, long low) {
+    for (int spins = 0; ; spins++) {
+      ReentrantLock lock = lockFor(bucket);
+      lock.lock();
+      try {
+        int slot = find(bucket, high, low);
+        if (slot < 0) {
+          return -1;
+        }
+        int status = (int) (slots[slot * SLOT_SIZE + 2] & PENDING);
+        if (status != PENDING) {
+          return status;
+        }
+      } finally {
+        lock.unlock();
+      }
+      pause(spins);
+    }
+  }
+
+  private static void pause(int spins) {
+    if (spins < SPINS_BEFORE_PARK) {
+      Thread.onSpinWait();
+    } else {
+      LockSupport.parkNanos(PARK_NANOS);
+    }
+  }
+
+  /**
+   * Stores the status of a claimed request, or frees its slot if the status is negative.
+   */
+  private void complete(int bucket, long high, long low, int status) {
+    ReentrantLock lock = lockFor(bucket);
+    lock.lock();
+    try {
+      // a running request is never evicted, so its slot is still there
+      int base = find(bucket, high, low) * SLOT_SIZE;
+      slots[base + 2] = status < 0 ? EMPTY : (slots[base + 2] & ~(long) PENDING) | status;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Slot of the key, expired or not; called with the lock of the bucket held.
+   */
+  private int find(int bucket, long high, long low) {
+    for (int slot = bucket * WAYS; slot < (bucket + 1) * WAYS; slot++) {
+      int base = slot * SLOT_SIZE;
+      if (slots[base] == high && slots[base + 1] == low && slots[base + 2] != EMPTY) {
+        return slot;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Slot for a new request: a free or expired one, or else the oldest answered one of the bucket.
+   * The scan starts at a slot picked by the new key, so that requests of the same millisecond do
+   * not all evict the same slot.
+   *
+   * @return the slot, or -1 if every slot of the bucket is running a request
+   */
+  private int victim(int bucket, long high, long now) {
+    int oldest = -1;
+    long oldestTime = Long.MAX_VALUE;
+    for (int i = 0; i < WAYS; i++) {
+      int slot = bucket * WAYS + (((int) high + i) & (WAYS - 1));
+      int base = slot * SLOT_SIZE;
+      if (!isLive(base, now)) {
+        return slot;
+      }
+      long time = slots[base + 2] >> STATUS_BITS;
+      boolean running = (slots[base + 2] & PENDING) == PENDING;
+      if (!running && time < oldestTime) {
+        oldest = slot;
+        oldestTime = time;
+      }
+    }
+    return oldest;
+  }
+
+  private void put(int slot, long high, long low, long time, int status, long fingerprint) {
+    int base = slot * SLOT_SIZE;
+    slots[base] = high;
+    slots[base + 1] = low;
+    slots[base + 2] = (time << STATUS_BITS) | status;
+    slots[base + 3] = fingerprint;
+  }
+
+  // a running request stays live however old it is
+  private boolean isLive(int base, long now) {
+    long timeAndStatus = slots[base + 2];
+    return timeAndStatus != EMPTY
+        && ((timeAndStatus & PENDING) == PENDING || now - (timeAndStatus >> STATUS_BITS) < windowMillis);
+  }
+
+  private ReentrantLock lockFor(int bucket) {
+    return locks[bucket & (locks.length - 1)];
+  }
+
+  /**
+   * One request with an idempotency key.
+   */
+  public static final class Request {
+
+    private final UUID requestId;
+    private final long time;
+    private final long fingerprint;
+    private final OperationStatus status;
+
+    Request(UUID requestId, long time, long fingerprint) {
+      this(requestId, time, fingerprint, null);
+    }
+
+    private Request(UUID requestId, long time, long fingerprint, OperationStatus status) {
+      this.requestId = requestId;
+      this.time = time;
+      this.fingerprint = fingerprint;
+      this.status = status;
+    }
+
+    Request answered(int status) {
+      return new Request(requestId, time, fingerprint, STATUSES[status]);
+    }
+
+    public UUID getRequestId() {
+      return requestId;
+    }
+
+    /**
+     * When the first attempt of the request was received, in milliseconds since the epoch.
+     */
+    public long getTime() {
+      return time;
+    }
+
+    /**
+     * {@link IdempotencyCache#fingerprint Fingerprint} of the operation, 0 if not known.
+     */
+    public long getFingerprint() {
+      return fingerprint;
+    }
+
+    /**
+     * @return the result, {@code null} while the request is running
+     */
+    public OperationStatus getStatus() {
+      return status;
+    }
+
+  }
+
+}
@@ -0,0 +1,83 @@
+package ee.alex.bank.service;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Progress of an {@link AccountImporter} run at one point in time, or its outcome once it is done.
+ *
+ * @author Aleksei Kulitškov
+ */
+public final class ImportReport {
+
+  private final long imported;
+  private final long rejected;
+  private final long bytesRead;
+  private final long totalBytes;
+  private final long elapsedNanos;
+  private final List<String> errors;
+
+  ImportReport(long imported, long rejected, long bytesRead, long totalBytes, long elapsedNanos, List<String> errors) {
+    this.imported = imported;
+    this.rejected = rejected;
+    this.bytesRead = bytesRead;
+    this.totalBytes = totalBytes;
+    this.elapsedNanos = elapsedNanos;
+    this.errors = errors;
+  }
+
+  /**
+   * Accounts opened so far.
+   */
+  public long getImported() {
+    return imported;
+  }
+
+  /**
+   * Records that could not be parsed or would not make a valid account.
+   */
+  public long getRejected() {
+    return rejected;
+  }
+
+  public long getBytesRead() {
+    return bytesRead;
+  }
+
+  public long getTotalBytes() {
+    return totalBytes;
+  }
+
+  /**
+   * Share of the file read so far, from 0 to 1.
+   */
+  public double getProgress() {
+    return totalBytes == 0 ? 1.0 : (double) bytesRead / totalBytes;
+  }
+
+  public long getElapsedNanos() {
+    return elapsedNanos;
+  }
+
+  /**
+   * Accounts opened per second since the import started.
+   */
+  public double getThroughput() {
+    return elapsedNanos == 0 ? 0.0 : imported * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+  }
+
+  /**
+   * Why the first records were rejected, each with the byte offset of the record in the file; at
+   * most {@link AccountImporter#MAX_ERRORS_REPORTED} of them.
+   */
+  public List<String> getErrors() {
+    return errors;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d accounts imported, %d rejected, %.1f%% read, %.0f accounts/s", imported, rejected,
+        getProgress() * 100, getThroughput());
+  }
+
+}
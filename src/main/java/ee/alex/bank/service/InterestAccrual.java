@@ -0,0 +1,365 @@
+package ee.alex.bank.service;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.function.IntFunction;
+import java.util.function.IntSupplier;
+import ee.alex.bank.exception.AmountOverflowException;
+import ee.alex.bank.exception.InvalidInterestRateException;
+import ee.alex.bank.model.Account;
+import ee.alex.bank.model.InterestBearingAccount;
+import ee.alex.bank.model.InterestRateTable;
+import ee.alex.bank.model.InterestRates;
+import ee.alex.bank.persistence.Journal;
+
+/**
+ * Credits interest to interest bearing accounts, lazily or all at once.
+ * <p>
+ * Closing an interest period only records its rates. Each account is credited for the periods
+ * closed since it was last credited, at the rate of each period, the next time it is touched, by a
+ * {@link #sweeper(AccountStore, long) sweeper} that works through the store in short time slices,
+ * or by a {@link #run(AccountStore) run} that closes a period and credits every account at once.
+ * <p>
+ * An account is credited under its own lock stripe, so crediting overlaps with ordinary
+ * transactions. Every credit is journaled with the amount credited and the period the account is
+ * credited up to. Period closes and rate changes are serialized on the {@link InterestPeriods}, so
+ * a rate change takes effect exactly from the open period on, whenever the accounts are credited.
+ * Each period is credited from the one rate table it closed with, whatever the rates are now.
+ * <p>
+ * A run is split into fork-join tasks over index ranges. Accounts opened after the run started are
+ * left for the next touch, and the run waits once at the end until all credits are durable.
+ * <p>
+ * When the accounts are owned by the shards of a {@link ShardedEngine}, runs and sweeps are handed
+ * to the shards instead, and each shard credits only the accounts it owns, without locking.
+ *
+ * @author Aleksei Kulitškov
+ */
+public class InterestAccrual {
+
+  private static final int LEAF_SIZE = 2048;
+  private static final int SWEEP_CLOCK_MASK = 63;
+
+  private final ForkJoinPool pool;
+  private final AccountLocks locks;
+  private final Journal journal;
+  private final InterestPeriods periods;
+
+  public InterestAccrual(ForkJoinPool pool, AccountLocks locks) {
+    this(pool, locks, Journal.NONE);
+  }
+
+  public InterestAccrual(ForkJoinPool pool, AccountLocks locks, Journal journal) {
+    this(pool, locks, journal, new InterestPeriods());
+  }
+
+  public InterestAccrual(ForkJoinPool pool, AccountLocks locks, Journal journal, InterestPeriods periods) {
+    this.pool = pool;
+    this.locks = locks;
+    this.journal = journal;
+    this.periods = periods;
+  }
+
+  public InterestPeriods getPeriods() {
+    return periods;
+  }
+
+  /**
+   * Closes the open period at the current rate without crediting any account.
+   *
+   * @return number of the period closed
+   */
+  public long closePeriod() {
+    long period;
+    long sequence;
+    periods.getLock().lock();
+    try {
+      InterestRateTable rateTable = periods.getInterestRates().getRateTable();
+      sequence = journal.appendInterestPeriodClosed(periods.current(), rateTable);
+      period = periods.close(rateTable);
+    } finally {
+      periods.getLock().unlock();
+    }
+    journal.awaitDurable(sequence);
+
+    return period;
+  }
+
+  /**
+   * Sets the one rate savings accounts earn in the open period.
+   */
+  public void updateRate(double interestRate) throws InvalidInterestRateException {
+    long sequence;
+    periods.getLock().lock();
+    try {
+      InterestRates interestRates = periods.getInterestRates();
+      interestRates.setInterestRate(interestRate);
+      sequence = journal.appendRateTableChanged(interestRates.getRateTable());
+    } finally {
+      periods.getLock().unlock();
+    }
+    journal.awaitDurable(sequence);
+  }
+
+  /**
+   * Sets the balance tiers savings accounts earn in the open period.
+   */
+  public void updateTiers(long[] tierStarts, double[] rates) throws InvalidInterestRateException {
+    long sequence;
+    periods.getLock().lock();
+    try {
+      InterestRates interestRates = periods.getInterestRates();
+      interestRates.setInterestTiers(tierStarts, rates);
+      sequence = journal.appendRateTableChanged(interestRates.getRateTable());
+    } finally {
+      periods.getLock().unlock();
+    }
+    journal.awaitDurable(sequence);
+  }
+
+  /**
+   * Closes a period and credits every account of the partition.
+   */
+  public InterestReport run(AccountPartition<? extends InterestBearingAccount> partition) {
+    closePeriod();
+    int size = partition.size();
+    Account[] accounts = partition.elements();
+
+    return run(size, i -> (InterestBearingAccount) accounts[i]);
+  }
+
+  /**
+   * Closes a period and credits every interest bearing account of the store.
+   */
+  public InterestReport run(AccountStore store) {
+    closePeriod();
+    return run(store.interestBearingCount(), store::getInterestBearing);
+  }
+
+  /**
+   * Closes a period and credits every interest bearing account of the shards on the shard that owns
+   * it.
+   */
+  public InterestReport run(ShardedEngine shards) {
+    closePeriod();
+    long start = System.nanoTime();
+    LongAdder processed = new LongAdder();
+    LongAdder rejected = new LongAdder();
+    shards.submitToEveryShard(shard -> {
+      AccountPartition<InterestBearingAccount> accounts = shards.interestBearing(shard);
+      int size = accounts.size();
+      for (int i = 0; i < size; i++) {
+        try {
+          accrue(accounts.get(i));
+        } catch (AmountOverflowException e) {
+          rejected.increment();
+        }
+      }
+      processed.add(size);
+    }).join();
+
+    return new InterestReport(processed.sum(), rejected.sum(), System.nanoTime() - start);
+  }
+
+  public boolean isBehind(InterestBearingAccount account) {
+    return account.getAccruedPeriod() < periods.current();
+  }
+
+  /**
+   * Credits the account for the periods closed since it was last credited, under its lock stripe,
+   * and waits until the credit is durable. An overflowing credit is left for a later touch.
+   */
+  public void catchUp(InterestBearingAccount account) {
+    if (!isBehind(account)) {
+      return;
+    }
+
+    long sequence;
+    Lock lock = locks.lockFor(account.getAccountId());
+    lock.lock();
+    try {
+      sequence = accrue(account);
+    } catch (AmountOverflowException e) {
+      sequence = account.getVersion();
+    } finally {
+      lock.unlock();
+    }
+    journal.awaitDurable(sequence);
+  }
+
+  /**
+   * Credits the account for the periods closed since it was last credited and journals the total.
+   * The caller holds the lock stripe of the account.
+   *
+   * @return sequence number of the journal record appended, 0 if the account was up to date
+   * @throws AmountOverflowException if the interest of a period would overflow the balance; the
+   * periods before it stay credited and journaled
+   */
+  public long accrue(InterestBearingAccount account) throws AmountOverflowException {
+    long from = account.getAccruedPeriod();
+    long to = periods.current();
+    if (from >= to) {
+      return 0;
+    }
+
+    long interest = 0;
+    long period = from;
+    try {
+      for (; period < to; period++) {
+        interest += account.provideInterest(periods.rates(period));
+      }
+    } finally {
+      if (period > from) {
+        account.setAccruedPeriod(period);
+        account.setVersion(journal.appendInterestAccrued(account.getAccountId(), interest, period));
+      }
+    }
+    return account.getVersion();
+  }
+
+  /**
+   * Task that credits the accounts of the store that are behind, a slice of time per run, resuming
+   * where the previous run stopped. Meant to be scheduled at a fixed rate; runs must not overlap.
+   */
+  public Runnable sweeper(AccountStore store, long sliceNanos) {
+    return new Sweeper(store::interestBearingCount, store::getInterestBearing, sliceNanos, false);
+  }
+
+  /**
+   * Like {@link #sweeper(AccountStore, long)}, with every shard crediting the accounts it owns for a
+   * slice of time per run.
+   */
+  public Runnable sweeper(ShardedEngine shards, long sliceNanos) {
+    Sweeper[] sweepers = new Sweeper[shards.shardCount()];
+    for (int shard = 0; shard < sweepers.length; shard++) {
+      AccountPartition<InterestBearingAccount> accounts = shards.interestBearing(shard);
+      sweepers[shard] = new Sweeper(accounts::size, accounts::get, sliceNanos, true);
+    }
+    return () -> shards.submitToEveryShard(shard -> sweepers[shard].run()).join();
+  }
+
+  private InterestReport run(int size, IntFunction<InterestBearingAccount> accounts) {
+    long start = System.nanoTime();
+    LongAccumulator lastSequence = new LongAccumulator(Math::max, 0);
+    long credited = pool.invoke(new AccrualTask(accounts, 0, size, lastSequence));
+    journal.awaitDurable(lastSequence.get());
+
+    return new InterestReport(size, size - credited, System.nanoTime() - start);
+  }
+
+  private final class AccrualTask extends RecursiveTask<Long> {
+
+    private static final long serialVersionUID = 2360283427458210915L;
+
+    private final IntFunction<InterestBearingAccount> accounts;
+    private final int from;
+    private final int to;
+    private final LongAccumulator lastSequence;
+
+    AccrualTask(IntFunction<InterestBearingAccount> accounts, int from, int to, LongAccumulator lastSequence) {
+      this.accounts = accounts;
+      this.from = from;
+      this.to = to;
+      this.lastSequence = lastSequence;
+    }
+
+    @Override
+    protected Long compute() {
+      if (to - from <= LEAF_SIZE) {
+        return accrue();
+      }
+
+      int middle = (from + to) >>> 1;
+      AccrualTask left = new AccrualTask(accounts, from, middle, lastSequence);
+      left.fork();
+      long right = new AccrualTask(accounts, middle, to, lastSequence).compute();
+      return right + left.join();
+    }
+
+    private long accrue() {
+      long credited = 0;
+      long sequence = 0;
+      for (int i = from; i < to; i++) {
+        InterestBearingAccount account = accounts.apply(i);
+        Lock lock = locks.lockFor(account.getAccountId());
+        lock.lock();
+        try {
+          sequence = Math.max(sequence, InterestAccrual.this.accrue(account));
+          credited++;
+        } catch (AmountOverflowException e) {
+          // interest of the period left for a later touch, reported as rejected
+          sequence = Math.max(sequence, account.getVersion());
+        } finally {
+          lock.unlock();
+        }
+      }
+      lastSequence.accumulate(sequence);
+      return credited;
+    }
+
+  }
+
+  private final class Sweeper implements Runnable {
+
+    private final IntSupplier size;
+    private final IntFunction<InterestBearingAccount> accounts;
+    private final long sliceNanos;
+    // true if run on the shard that owns the accounts, false if they are guarded by lock stripes
+    private final boolean owned;
+    private int next;
+    private long target = -1;
+
+    Sweeper(IntSupplier size, IntFunction<InterestBearingAccount> accounts, long sliceNanos, boolean owned) {
+      this.size = size;
+      this.accounts = accounts;
+      this.sliceNanos = sliceNanos;
+      this.owned = owned;
+    }
+
+    @Override
+    public void run() {
+      // a pass starts only when a period closed since the previous pass started
+      if (next == 0) {
+        long current = periods.current();
+        if (current == target) {
+          return;
+        }
+        target = current;
+      }
+
+      long deadline = System.nanoTime() + sliceNanos;
+      int size = this.size.getAsInt();
+      long sequence = 0;
+      int i = next;
+      while (i < size) {
+        InterestBearingAccount account = accounts.apply(i++);
+        if (isBehind(account) && !owned) {
+          Lock lock = locks.lockFor(account.getAccountId());
+          lock.lock();
+          try {
+            sequence = Math.max(sequence, accrue(account));
+          } catch (AmountOverflowException e) {
+            sequence = Math.max(sequence, account.getVersion());
+          } finally {
+            lock.unlock();
+          }
+        } else if (isBehind(account)) {
+          try {
+            accrue(account);
+          } catch (AmountOverflowException e) {
+            // left for a later touch
+          }
+        }
+        if ((i & SWEEP_CLOCK_MASK) == 0 && System.nanoTime() - deadline >= 0) {
+          break;
+        }
+      }
+      next = i < size ? i : 0;
+      journal.awaitDurable(sequence);
+    }
+
+  }
+
+}
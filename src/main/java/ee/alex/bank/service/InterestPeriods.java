@@ -0,0 +1,125 @@
+package ee.alex.bank.service;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantLock;
+import ee.alex.bank.model.InterestRateTable;
+import ee.alex.bank.model.InterestRates;
+
+/**
+ * Rate tables of the closed interest periods of a bank, and the {@link InterestRates} of its open
+ * period.
+ * <p>
+ * Periods are numbered from 0, and the open period is the number of periods closed so far. A closed
+ * period keeps the rate table that was in force when it closed, so an account credited late still
+ * earns every period at the rates of that period. The tables are kept in an array that only grows:
+ * a close writes the next free slot and then publishes the new count, so readers never lock and a
+ * close copies the array only when it is full, which makes it O(1) amortized.
+ * <p>
+ * Closes are serialized on {@link #getLock()}. Hold it to read the open period together with
+ * something that must agree with it, such as a journal checkpoint. It is a lock rather than a
+ * monitor because it is held while appending to the journal, which may block.
+ * <p>
+ * Rates of periods before {@link #getFirst()} are not kept: a bank restored from a snapshot only
+ * knows the periods closed after it, and every restored account is credited at least that far.
+ * While the bank runs, the history keeps one reference per closed period, as an account left
+ * behind may still have to be credited for any of them; only a restart from a snapshot drops it.
+ *
+ * @author Aleksei Kulitškov
+ */
+public class InterestPeriods {
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final InterestRates interestRates;
+  private volatile Rates rates;
+
+  public InterestPeriods() {
+    this(0);
+  }
+
+  public InterestPeriods(long first) {
+    this(first, new InterestRates());
+  }
+
+  /**
+   * @param interestRates rates of the open period, shared with the accounts that earn them
+   */
+  public InterestPeriods(long first, InterestRates interestRates) {
+    this.interestRates = interestRates;
+    this.rates = new Rates(first, new InterestRateTable[INITIAL_CAPACITY], 0);
+  }
+
+  /**
+   * Rates of the open period. Change them under {@link #getLock()}.
+   */
+  public InterestRates getInterestRates() {
+    return interestRates;
+  }
+
+  public ReentrantLock getLock() {
+    return lock;
+  }
+
+  /**
+   * Number of the open period.
+   */
+  public long current() {
+    Rates rates = this.rates;
+    return rates.first + rates.count;
+  }
+
+  /**
+   * First period whose rate is known.
+   */
+  public long getFirst() {
+    return rates.first;
+  }
+
+  /**
+   * Rate table of a closed period, from {@link #getFirst()} on.
+   */
+  public InterestRateTable rates(long period) {
+    Rates rates = this.rates;
+    return rates.values[Objects.checkIndex((int) (period - rates.first), rates.count)];
+  }
+
+  /**
+   * Closes the open period at the given rates.
+   *
+   * @return number of the period closed
+   */
+  public long close(InterestRateTable rateTable) {
+    lock.lock();
+    try {
+      Rates rates = this.rates;
+      InterestRateTable[] values = rates.values;
+      if (rates.count == values.length) {
+        values = Arrays.copyOf(values, values.length * 2);
+      }
+      // the slot is past the count every reader knows, so it is written before it is published
+      values[rates.count] = rateTable;
+      this.rates = new Rates(rates.first, values, rates.count + 1);
+
+      return rates.first + rates.count;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private static final class Rates {
+
+    private final long first;
+    private final InterestRateTable[] values;
+    private final int count;
+
+    Rates(long first, InterestRateTable[] values, int count) {
+      this.first = first;
+      this.values = values;
+      this.count = count;
+    }
+
+  }
+
+}
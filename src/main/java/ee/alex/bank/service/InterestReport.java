@@ -0,0 +1,50 @@
+package ee.alex.bank.service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Summary of one interest run.
+ *
+ * @author Aleksei Kulitškov
+ */
+public class InterestReport {
+
+  private final long accountsProcessed;
+  private final long accountsRejected;
+  private final long elapsedNanos;
+
+  public InterestReport(long accountsProcessed, long accountsRejected, long elapsedNanos) {
+    this.accountsProcessed = accountsProcessed;
+    this.accountsRejected = accountsRejected;
+    this.elapsedNanos = elapsedNanos;
+  }
+
+  public long getAccountsProcessed() {
+    return accountsProcessed;
+  }
+
+  /**
+   * Accounts whose interest could not be applied because the new balance would overflow.
+   */
+  public long getAccountsRejected() {
+    return accountsRejected;
+  }
+
+  public long getElapsedNanos() {
+    return elapsedNanos;
+  }
+
+  public double getAccountsPerSecond() {
+    if (elapsedNanos <= 0) {
+      return 0.0;
+    }
+    return accountsProcessed * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Provided interest to %d accounts (%d rejected) in %d ms, %.0f accounts/s",
+        accountsProcessed, accountsRejected, TimeUnit.NANOSECONDS.toMillis(elapsedNanos), getAccountsPerSecond());
+  }
+
+}
@@ -0,0 +1,174 @@
+package ee.alex.bank.service;
+
+import java.util.UUID;
+import ee.alex.bank.exception.AccountErrorException;
+import ee.alex.bank.model.Account;
+import ee.alex.bank.model.AccountType;
+import ee.alex.bank.model.InterestBearingAccount;
+import ee.alex.bank.model.InterestRateTable;
+import ee.alex.bank.model.LimitedAccount;
+import ee.alex.bank.persistence.JournalListener;
+
+/**
+ * Re-applies journal records to a bank without journaling them again.
+ * <p>
+ * Records of one account are journaled in the order they were applied, so replaying them through
+ * the ordinary account operations passes the same checks again. A record that cannot be applied
+ * means the journal does not belong to this state and stops the recovery.
+ * <p>
+ * When recovering on top of a snapshot, the replay starts before some of the accounts were copied,
+ * so a record is applied only to accounts whose version is older than the record, and becomes
+ * their new version.
+ * <p>
+ * Interest is replayed as the amounts credited, never recomputed. Period closes carry their period
+ * number and are applied once, whether or not the snapshot already counts them.
+ * <p>
+ * Requests with idempotency keys are remembered again with their original time, so the ones older
+ * than the window of the cache are left out. A request that succeeded is remembered with the
+ * fingerprint of the change it came with.
+ *
+ * @author Aleksei Kulitškov
+ */
+class JournalRecovery implements JournalListener {
+
+  private final BankService bankService;
+  // the change of the record replayed last, which a request reported with the same sequence made
+  private long changeSequence;
+  private long changeFingerprint;
+
+  JournalRecovery(BankService bankService) {
+    this.bankService = bankService;
+  }
+
+  @Override
+  public void accountCreated(long sequence, UUID accountId, AccountType type, String owner, long limit) {
+    // already there if recovering on top of a snapshot
+    Account account = bankService.addAccount(accountId, type, owner, 0, limit);
+    if (account != null) {
+      account.setVersion(sequence);
+    }
+  }
+
+  @Override
+  public void deposited(long sequence, UUID accountId, long amount) {
+    changed(sequence, OperationType.DEPOSIT, accountId, null, amount);
+    try {
+      Account account = account(accountId);
+      if (account.getVersion() < sequence) {
+        account.deposit(amount);
+        account.setVersion(sequence);
+      }
+    } catch (AccountErrorException e) {
+      throw failed(sequence, e);
+    }
+  }
+
+  @Override
+  public void withdrawn(long sequence, UUID accountId, long amount) {
+    changed(sequence, OperationType.WITHDRAW, accountId, null, amount);
+    try {
+      Account account = account(accountId);
+      if (account.getVersion() < sequence) {
+        account.withdraw(amount);
+        account.setVersion(sequence);
+      }
+    } catch (AccountErrorException e) {
+      throw failed(sequence, e);
+    }
+  }
+
+  @Override
+  public void transferred(long sequence, UUID fromAccountId, UUID toAccountId, long amount) {
+    changed(sequence, OperationType.TRANSFER, fromAccountId, toAccountId, amount);
+    try {
+      Account from = account(fromAccountId);
+      Account to = account(toAccountId);
+      // both sides are checked first, a transfer to the same account must not skip its credit
+      boolean debit = from.getVersion() < sequence;
+      boolean credit = to.getVersion() < sequence;
+      if (debit) {
+        from.withdraw(amount);
+        from.setVersion(sequence);
+      }
+      if (credit) {
+        to.deposit(amount);
+        to.setVersion(sequence);
+      }
+    } catch (AccountErrorException e) {
+      throw failed(sequence, e);
+    }
+  }
+
+  @Override
+  public void limitChanged(long sequence, UUID accountId, long newLimit) {
+    changed(sequence, OperationType.CHANGE_LIMIT, accountId, null, newLimit);
+    try {
+      Account account = account(accountId);
+      if (account.getVersion() < sequence) {
+        ((LimitedAccount) account).setLimit(newLimit);
+        account.setVersion(sequence);
+      }
+    } catch (AccountErrorException e) {
+      throw failed(sequence, e);
+    }
+  }
+
+  @Override
+  public void rateTableChanged(long sequence, InterestRateTable rateTable) {
+    bankService.getInterestPeriods().getInterestRates().setRateTable(rateTable);
+  }
+
+  @Override
+  public void interestPeriodClosed(long sequence, long period, InterestRateTable rateTable) {
+    InterestPeriods periods = bankService.getInterestPeriods();
+    if (period > periods.current()) {
+      throw new IllegalStateException("Journal record " + sequence + " closes interest period " + period
+          + ", but period " + periods.current() + " is open");
+    }
+    if (period == periods.current()) {
+      periods.close(rateTable);
+    }
+  }
+
+  @Override
+  public void interestAccrued(long sequence, UUID accountId, long amount, long accruedPeriod) {
+    try {
+      InterestBearingAccount account = (InterestBearingAccount) account(accountId);
+      if (account.getVersion() < sequence) {
+        if (amount != 0) {
+          account.deposit(amount);
+        }
+        account.setAccruedPeriod(accruedPeriod);
+        account.setVersion(sequence);
+      }
+    } catch (AccountErrorException e) {
+      throw failed(sequence, e);
+    }
+  }
+
+  @Override
+  public void requestCompleted(long sequence, UUID requestId, long requestTime, int status, long fingerprint) {
+    OperationStatus[] statuses = OperationStatus.values();
+    if (status < 0 || status >= statuses.length) {
+      throw new IllegalStateException("Journal record " + sequence + " has unknown status " + status);
+    }
+    if (fingerprint == 0 && sequence == changeSequence) {
+      fingerprint = changeFingerprint;
+    }
+    bankService.getIdempotencyCache().restore(requestId, requestTime, statuses[status], fingerprint);
+  }
+
+  private void changed(long sequence, OperationType type, UUID accountId, UUID targetAccountId, long amount) {
+    changeSequence = sequence;
+    changeFingerprint = IdempotencyCache.fingerprint(type, accountId, targetAccountId, amount);
+  }
+
+  private Account account(UUID accountId) throws AccountErrorException {
+    return bankService.findAccount(accountId);
+  }
+
+  private static IllegalStateException failed(long sequence, AccountErrorException e) {
+    return new IllegalStateException("Journal record " + sequence + " could not be applied: " + e.getMessage(), e);
+  }
+
+}
@@ -0,0 +1,141 @@
+package ee.alex.bank.service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Concurrent histogram of latencies in nanoseconds, with a bounded relative error.
+ * <p>
+ * Buckets are log-linear, as in HDR histograms: every power of two is split into 32 equal buckets,
+ * so a recorded value is off by at most 1/32 of itself, about 3%, and the whole range of
+ * {@code long} fits in under two thousand buckets. Values below 64 are exact.
+ * <p>
+ * Recording is one atomic add on a bucket and one on the running sum, without allocation. The
+ * counts are striped by thread, so threads recording at once rarely share a cache line; a
+ * {@link #snapshot() snapshot} adds the stripes up.
+ *
+ * @author Aleksei Kulitškov
+ */
+public class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKETS = (64 - SUB_BUCKET_BITS) << SUB_BUCKET_BITS;
+  // the running sum is kept after the buckets
+  private static final int SUM = BUCKETS;
+
+  private final AtomicLongArray[] stripes;
+  private final int mask;
+
+  public LatencyHistogram() {
+    int count = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1);
+    this.stripes = new AtomicLongArray[count];
+    this.mask = count - 1;
+    for (int i = 0; i < count; i++) {
+      stripes[i] = new AtomicLongArray(BUCKETS + 1);
+    }
+  }
+
+  /**
+   * @param nanos latency to record; negative values are counted as 0
+   */
+  public void record(long nanos) {
+    long value = Math.max(nanos, 0);
+    AtomicLongArray stripe = stripes[(int) Thread.currentThread().getId() & mask];
+    stripe.getAndIncrement(bucketOf(value));
+    stripe.getAndAdd(SUM, value);
+  }
+
+  /**
+   * Counts recorded so far. Values recorded while the snapshot is taken may or may not be in it.
+   */
+  public Snapshot snapshot() {
+    long[] counts = new long[BUCKETS];
+    long sum = 0;
+    for (AtomicLongArray stripe : stripes) {
+      for (int bucket = 0; bucket < BUCKETS; bucket++) {
+        counts[bucket] += stripe.get(bucket);
+      }
+      sum += stripe.get(SUM);
+    }
+    return new Snapshot(counts, sum);
+  }
+
+  static int bucketOf(long value) {
+    int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+    return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+  }
+
+  /**
+   * Highest value that falls into the bucket.
+   */
+  static long highestValueOf(int bucket) {
+    if (bucket < 2 * SUB_BUCKETS) {
+      return bucket;
+    }
+    int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+    long subBucket = bucket - ((long) shift << SUB_BUCKET_BITS);
+    return ((subBucket + 1) << shift) - 1;
+  }
+
+  /**
+   * Immutable counts of a histogram at one point in time.
+   */
+  public static final class Snapshot {
+
+    private final long[] counts;
+    private final long count;
+    private final long sum;
+
+    Snapshot(long[] counts, long sum) {
+      this.counts = counts;
+      this.sum = sum;
+      long total = 0;
+      for (long bucketCount : counts) {
+        total += bucketCount;
+      }
+      this.count = total;
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    /**
+     * @return mean in nanoseconds, 0 if nothing was recorded
+     */
+    public double getMean() {
+      return count == 0 ? 0.0 : (double) sum / count;
+    }
+
+    /**
+     * Value that the given percentage of recorded values are at or below, within the error of the
+     * histogram.
+     *
+     * @param percentile from 0 to 100
+     * @return value in nanoseconds, 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+      if (count == 0) {
+        return 0;
+      }
+      long rank = Math.max(1, (long) Math.ceil(count * Math.min(percentile, 100.0) / 100.0));
+      long seen = 0;
+      for (int bucket = 0; bucket < counts.length; bucket++) {
+        seen += counts[bucket];
+        if (seen >= rank) {
+          return highestValueOf(bucket);
+        }
+      }
+      return highestValueOf(counts.length - 1);
+    }
+
+    /**
+     * @return highest value recorded, within the error of the histogram
+     */
+    public long getMax() {
+      return getValueAtPercentile(100.0);
+    }
+
+  }
+
+}
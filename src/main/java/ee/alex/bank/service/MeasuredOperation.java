@@ -0,0 +1,17 @@
+package ee.alex.bank.service;
+
+/**
+ * Operations of a {@link BankService} that {@link BankMetrics} times and counts.
+ *
+ * @author Aleksei Kulitškov
+ */
+public enum MeasuredOperation {
+
+  DEPOSIT, WITHDRAW, TRANSFER, CHANGE_LIMIT,
+  /**
+   * Account lookup, part of every operation; only the lookups timed are counted.
+   */
+  FIND_ACCOUNT,
+  ACCOUNT_DETAILS, BATCH, INTEREST_RUN
+
+}
@@ -0,0 +1,97 @@
+package ee.alex.bank.service;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Numbers of {@link BankMetrics} at one point in time.
+ *
+ * @author Aleksei Kulitškov
+ */
+public final class MetricsSnapshot {
+
+  private final OperationMetrics[] operations;
+  private final long elapsedNanos;
+
+  MetricsSnapshot(OperationMetrics[] operations, long elapsedNanos) {
+    this.operations = operations;
+    this.elapsedNanos = elapsedNanos;
+  }
+
+  public OperationMetrics get(MeasuredOperation operation) {
+    return operations[operation.ordinal()];
+  }
+
+  /**
+   * Time since the metrics were created.
+   */
+  public long getElapsedNanos() {
+    return elapsedNanos;
+  }
+
+  /**
+   * Operations of the given kind per second since the metrics were created.
+   */
+  public double getThroughput(MeasuredOperation operation) {
+    return elapsedNanos == 0 ? 0.0 : get(operation).getCount() * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+  }
+
+  /**
+   * Counts and latencies of one kind of operation.
+   */
+  public static final class OperationMetrics {
+
+    private final long[] counts;
+    private final LatencyHistogram.Snapshot latency;
+
+    OperationMetrics(long[] counts, LatencyHistogram.Snapshot latency) {
+      this.counts = counts;
+      this.latency = latency;
+    }
+
+    public long getCount() {
+      long total = 0;
+      for (long count : counts) {
+        total += count;
+      }
+      return total;
+    }
+
+    public long getSuccesses() {
+      return counts[OperationStatus.OK.ordinal()];
+    }
+
+    public long getRejections() {
+      return getCount() - getSuccesses();
+    }
+
+    public long getCount(OperationStatus status) {
+      return counts[status.ordinal()];
+    }
+
+    /**
+     * Rejections by the status, and so the exception class, that rejected them; statuses that
+     * rejected nothing are left out.
+     */
+    public Map<OperationStatus, Long> getRejectionsByStatus() {
+      Map<OperationStatus, Long> rejections = new EnumMap<>(OperationStatus.class);
+      for (OperationStatus status : OperationStatus.values()) {
+        if (status != OperationStatus.OK && counts[status.ordinal()] != 0) {
+          rejections.put(status, counts[status.ordinal()]);
+        }
+      }
+      return Collections.unmodifiableMap(rejections);
+    }
+
+    /**
+     * Latencies of the operations timed, which with sampling are fewer than {@link #getCount()}.
+     */
+    public LatencyHistogram.Snapshot getLatency() {
+      return latency;
+    }
+
+  }
+
+}
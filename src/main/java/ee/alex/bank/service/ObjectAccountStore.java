@@ -0,0 +1,89 @@
+package ee.alex.bank.service;
+
+import java.util.UUID;
+import java.util.function.Consumer;
+import ee.alex.bank.model.Account;
+import ee.alex.bank.model.AccountType;
+import ee.alex.bank.model.CheckingAccount;
+import ee.alex.bank.model.InterestBearingAccount;
+import ee.alex.bank.model.InterestRates;
+import ee.alex.bank.model.SavingsAccount;
+import static ee.alex.bank.model.AccountType.CHECKING;
+
+/**
+ * Keeps every account as an object of its own, indexed by an {@link AccountIndex}.
+ *
+ * @author Aleksei Kulitškov
+ */
+public class ObjectAccountStore implements AccountStore {
+
+  private final AccountIndex index;
+  private final AccountPartition<InterestBearingAccount> interestBearing = new AccountPartition<>();
+  private final InterestRates interestRates = new InterestRates();
+
+  public ObjectAccountStore() {
+    this.index = new AccountIndex();
+  }
+
+  public ObjectAccountStore(int expectedSize) {
+    this.index = new AccountIndex(expectedSize);
+  }
+
+  @Override
+  public Account get(UUID accountId) {
+    return index.get(accountId);
+  }
+
+  @Override
+  public Account add(UUID accountId, AccountType type, String owner, long balance, long limit) {
+    Account account;
+    if (type == CHECKING) {
+      CheckingAccount checkingAccount = new CheckingAccount(accountId, owner, limit);
+      checkingAccount.setBalance(balance);
+      account = checkingAccount;
+    } else {
+      SavingsAccount savingsAccount = new SavingsAccount(accountId, owner, interestRates);
+      savingsAccount.setBalance(balance);
+      account = savingsAccount;
+    }
+
+    if (!index.put(account)) {
+      return null;
+    }
+    if (account instanceof InterestBearingAccount) {
+      interestBearing.add((InterestBearingAccount) account);
+    }
+    return account;
+  }
+
+  @Override
+  public int size() {
+    return index.size();
+  }
+
+  @Override
+  public void ensureCapacity(int expectedSize) {
+    index.ensureCapacity(expectedSize);
+  }
+
+  @Override
+  public void forEach(Consumer<? super Account> action) {
+    index.forEach(action);
+  }
+
+  @Override
+  public int interestBearingCount() {
+    return interestBearing.size();
+  }
+
+  @Override
+  public InterestBearingAccount getInterestBearing(int index) {
+    return interestBearing.get(index);
+  }
+
+  @Override
+  public InterestRates getInterestRates() {
+    return interestRates;
+  }
+
+}
@@ -0,0 +1,74 @@
+package ee.alex.bank.service;
+
+import java.util.UUID;
+import static ee.alex.bank.service.OperationType.CHANGE_LIMIT;
+import static ee.alex.bank.service.OperationType.DEPOSIT;
+import static ee.alex.bank.service.OperationType.TRANSFER;
+import static ee.alex.bank.service.OperationType.WITHDRAW;
+
+/**
+ * A single posting submitted to {@link BankService#submitBatch(java.util.List)}.
+ *
+ * @author Aleksei Kulitškov
+ */
+public final class Operation {
+
+  private final OperationType type;
+  private final UUID accountId;
+  private final UUID targetAccountId;
+  private final long amount;
+
+  private Operation(OperationType type, UUID accountId, UUID targetAccountId, long amount) {
+    this.type = type;
+    this.accountId = accountId;
+    this.targetAccountId = targetAccountId;
+    this.amount = amount;
+  }
+
+  public static Operation deposit(UUID accountId, long amount) {
+    return new Operation(DEPOSIT, accountId, null, amount);
+  }
+
+  public static Operation withdraw(UUID accountId, long amount) {
+    return new Operation(WITHDRAW, accountId, null, amount);
+  }
+
+  public static Operation transfer(UUID fromAccountId, UUID toAccountId, long amount) {
+    return new Operation(TRANSFER, fromAccountId, toAccountId, amount);
+  }
+
+  public static Operation changeLimit(UUID accountId, long newLimit) {
+    return new Operation(CHANGE_LIMIT, accountId, null, newLimit);
+  }
+
+  public OperationType getType() {
+    return type;
+  }
+
+  /**
+   * Account the operation applies to; the source account of a transfer.
+   */
+  public UUID getAccountId() {
+    return accountId;
+  }
+
+  /**
+   * Destination account of a transfer, {@code null} for other operations.
+   */
+  public UUID getTargetAccountId() {
+    return targetAccountId;
+  }
+
+  /**
+   * Amount in minor units; the new limit for a limit change.
+   */
+  public long getAmount() {
+    return amount;
+  }
+
+  @Override
+  public String toString() {
+    return type + "[" + accountId + (targetAccountId == null ? "" : " -> " + targetAccountId) + ", " + amount + "]";
+  }
+
+}
@@ -0,0 +1,41 @@
+package ee.alex.bank.service;
+
+import java.util.UUID;
+
+/**
+ * Receives a report of every operation a {@link BankService} completed, successful or not.
+ * <p>
+ * Called on the thread of the caller after all locks are released. The service does no formatting
+ * or output of its own; a log that does should expect to be called from many threads at once.
+ *
+ * @author Aleksei Kulitškov
+ */
+public interface OperationLog {
+
+  /**
+   * Reports nothing. The default of every bank.
+   */
+  OperationLog NONE = new OperationLog() {
+  };
+
+  /**
+   * @param targetAccountId account credited by a transfer, {@code null} for other operations
+   * @param amount amount of the operation, or the new limit for a limit change
+   */
+  default void operation(OperationType type, UUID accountId, UUID targetAccountId, long amount,
+      OperationStatus status) {
+  }
+
+  /**
+   * @param details the details, or {@code null} if there is no such account
+   */
+  default void accountDetails(UUID accountId, String details) {
+  }
+
+  default void interestRateChanged(double previousInterestRate, double interestRate, OperationStatus status) {
+  }
+
+  default void interestProvided(double interestRate, InterestReport report) {
+  }
+
+}
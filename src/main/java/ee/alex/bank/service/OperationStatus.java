@@ -0,0 +1,73 @@
+package ee.alex.bank.service;
+
+import ee.alex.bank.exception.AccountErrorException;
+import ee.alex.bank.exception.AccountNotFoundException;
+import ee.alex.bank.exception.AmountOverflowException;
+import ee.alex.bank.exception.InsufficientFundsException;
+import ee.alex.bank.exception.InvalidAmountException;
+import ee.alex.bank.exception.InvalidInterestRateException;
+import ee.alex.bank.exception.LimitReachedException;
+import ee.alex.bank.exception.WrongAccountTypeException;
+
+/**
+ * Outcome of a single operation. Statuses are shared constants, so reporting one allocates nothing.
+ * The answers to requests with idempotency keys are journaled by ordinal, so new statuses go last.
+ *
+ * @author Aleksei Kulitškov
+ */
+public enum OperationStatus {
+
+  OK("OK"),
+  INVALID_AMOUNT("Money amount must be greater than zero"),
+  INSUFFICIENT_FUNDS("Insufficient funds"),
+  LIMIT_REACHED("Limit reached"),
+  AMOUNT_OVERFLOW("Money amount is out of range"),
+  ACCOUNT_NOT_FOUND("Invalid account number"),
+  WRONG_ACCOUNT_TYPE("Wrong account type"),
+  INVALID_INTEREST_RATE("Interest rate must be greater than zero"),
+  REJECTED("Operation rejected"),
+  IDEMPOTENCY_KEY_REUSED("Idempotency key was already used for another operation");
+
+  private final String message;
+
+  OperationStatus(String message) {
+    this.message = message;
+  }
+
+  public boolean isSuccess() {
+    return this == OK;
+  }
+
+  /**
+   * Same text as the message of the exception the status stands for.
+   */
+  public String getMessage() {
+    return message;
+  }
+
+  public static OperationStatus of(AccountErrorException e) {
+    if (e instanceof InvalidAmountException) {
+      return INVALID_AMOUNT;
+    }
+    if (e instanceof InsufficientFundsException) {
+      return INSUFFICIENT_FUNDS;
+    }
+    if (e instanceof LimitReachedException) {
+      return LIMIT_REACHED;
+    }
+    if (e instanceof AmountOverflowException) {
+      return AMOUNT_OVERFLOW;
+    }
+    if (e instanceof AccountNotFoundException) {
+      return ACCOUNT_NOT_FOUND;
+    }
+    if (e instanceof WrongAccountTypeException) {
+      return WRONG_ACCOUNT_TYPE;
+    }
+    if (e instanceof InvalidInterestRateException) {
+      return INVALID_INTEREST_RATE;
+    }
+    return REJECTED;
+  }
+
+}
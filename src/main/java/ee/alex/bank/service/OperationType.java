@@ -0,0 +1,10 @@
+package ee.alex.bank.service;
+
+/**
+ * @author Aleksei Kulitškov
+ */
+public enum OperationType {
+
+  DEPOSIT, WITHDRAW, TRANSFER, CHANGE_LIMIT
+
+}
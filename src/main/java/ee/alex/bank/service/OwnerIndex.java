@@ -0,0 +1,45 @@
+package ee.alex.bank.service;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Concurrent index of account numbers by owner.
+ * <p>
+ * Each owner maps to an array of account numbers in the order the accounts were added. The array
+ * is replaced, never changed, when an account is added, so readers get a stable list without
+ * locking. Customers have few accounts, which keeps the copy cheap.
+ *
+ * @author Aleksei Kulitškov
+ */
+public class OwnerIndex {
+
+  private static final UUID[] NONE = new UUID[0];
+
+  private final ConcurrentHashMap<String, UUID[]> accountIds = new ConcurrentHashMap<>();
+
+  public void add(String owner, UUID accountId) {
+    accountIds.merge(owner, new UUID[] {accountId}, OwnerIndex::append);
+  }
+
+  /**
+   * @return account numbers of the owner in the order they were added; the caller must not change
+   * the array
+   */
+  public UUID[] get(String owner) {
+    UUID[] ids = accountIds.get(owner);
+    return ids == null ? NONE : ids;
+  }
+
+  public int ownerCount() {
+    return accountIds.size();
+  }
+
+  private static UUID[] append(UUID[] ids, UUID[] added) {
+    UUID[] result = Arrays.copyOf(ids, ids.length + added.length);
+    System.arraycopy(added, 0, result, ids.length, added.length);
+    return result;
+  }
+
+}
@@ -0,0 +1,379 @@
+package ee.alex.bank.service;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+import ee.alex.bank.exception.AccountErrorException;
+import ee.alex.bank.exception.AmountOverflowException;
+import ee.alex.bank.exception.InvalidAmountException;
+import ee.alex.bank.model.Account;
+import ee.alex.bank.model.InterestBearingAccount;
+import ee.alex.bank.persistence.Journal;
+
+/**
+ * Runs account operations on single-threaded shards instead of under lock stripes.
+ * <p>
+ * Accounts are partitioned across the shards by the hash of their number. A shard is one thread
+ * that owns its accounts: only it changes them, so it applies operations one after the other
+ * without locking. Callers hand operations over through a lock-free queue per shard, many
+ * producers and one consumer, and get a future with the result. Operations on one account run in
+ * the order they were submitted; operations on different shards never meet.
+ * <p>
+ * A transfer between two shards is a two-phase exchange of messages. The source shard debits the
+ * source account and passes the credit to the target shard. The target shard credits the target
+ * account and completes the transfer, or, if the credit fails, sends a refund back to the source
+ * shard, which reverts the debit and completes the transfer with the failure. Until then the
+ * amount is in flight: it is on neither account.
+ * <p>
+ * Each shard also keeps the interest bearing accounts it owns, so an interest run or sweep on a
+ * shard walks only its own accounts.
+ * <p>
+ * Shards keep no durable journal; a bank that journals its changes keeps using lock stripes. The
+ * journal a shard is given only reports its transfers: the target shard appends one once it has
+ * credited the target account, before it runs anything else on that account, so the change that
+ * funds a later withdrawal is reported first. A change the source shard makes to the source
+ * account while the amount is in flight may still be reported before the transfer.
+ *
+ * @author Aleksei Kulitškov
+ */
+public class ShardedEngine implements AutoCloseable {
+
+  private static final int SPINS_BEFORE_PARK = 1 << 10;
+
+  private final Shard[] shards;
+  private final InterestAccrual interestAccrual;
+  private final Journal journal;
+
+  /**
+   * Starts the shard threads, reporting transfers nowhere.
+   *
+   * @param interestAccrual credits the target of a transfer before it is credited
+   */
+  public ShardedEngine(int shardCount, InterestAccrual interestAccrual) {
+    this(shardCount, interestAccrual, Journal.NONE);
+  }
+
+  /**
+   * Starts the shard threads.
+   *
+   * @param interestAccrual credits the target of a transfer before it is credited
+   * @param journal         the target shard appends each completed transfer to
+   */
+  public ShardedEngine(int shardCount, InterestAccrual interestAccrual, Journal journal) {
+    if (shardCount < 1) {
+      throw new IllegalArgumentException("At least one shard is needed");
+    }
+    this.interestAccrual = interestAccrual;
+    this.journal = journal;
+    this.shards = new Shard[shardCount];
+    for (int i = 0; i < shardCount; i++) {
+      shards[i] = new Shard(i);
+    }
+    for (Shard shard : shards) {
+      shard.thread.start();
+    }
+  }
+
+  public int shardCount() {
+    return shards.length;
+  }
+
+  /**
+   * Shard that owns the account.
+   */
+  public int shardOf(UUID accountId) {
+    int hash = AccountIndex.hash(accountId.getMostSignificantBits(), accountId.getLeastSignificantBits());
+    return (hash & Integer.MAX_VALUE) % shards.length;
+  }
+
+  /**
+   * Hands the interest bearing account to the shard that owns it, for interest runs and sweeps.
+   */
+  public void addInterestBearing(InterestBearingAccount account) {
+    shards[shardOf(account.getAccountId())].interestBearing.add(account);
+  }
+
+  /**
+   * Interest bearing accounts owned by the shard, in the order they were added.
+   */
+  public AccountPartition<InterestBearingAccount> interestBearing(int shard) {
+    return shards[shard].interestBearing;
+  }
+
+  /**
+   * Runs the task on the shard that owns the account. The task may change only that account, and
+   * other accounts of the same shard.
+   */
+  public <T> CompletableFuture<T> submit(UUID accountId, Supplier<T> task) {
+    Call<T> call = new Call<>(task);
+    shards[shardOf(accountId)].execute(call);
+    return call.result;
+  }
+
+  /**
+   * Runs the task once on every shard, with the number of the shard. The task may change only the
+   * accounts of that shard.
+   *
+   * @return future completed when every shard is done
+   */
+  public CompletableFuture<Void> submitToEveryShard(IntConsumer task) {
+    CompletableFuture<?>[] results = new CompletableFuture<?>[shards.length];
+    for (Shard shard : shards) {
+      Call<Void> call = new Call<>(() -> {
+        task.accept(shard.number);
+        return null;
+      });
+      shard.execute(call);
+      results[shard.number] = call.result;
+    }
+    return CompletableFuture.allOf(results);
+  }
+
+  /**
+   * Moves money between two accounts, in two phases if they are on different shards. The target
+   * is credited the interest it is behind on first.
+   */
+  public CompletableFuture<OperationStatus> transfer(Account from, Account to, long amount) {
+    if (amount <= 0) {
+      return CompletableFuture.completedFuture(OperationStatus.of(new InvalidAmountException()));
+    }
+
+    CompletableFuture<OperationStatus> result = new CompletableFuture<>();
+    Shard source = shards[shardOf(from.getAccountId())];
+    Shard target = shards[shardOf(to.getAccountId())];
+    source.execute(new Debit(from, to, amount, source, target, result));
+    return result;
+  }
+
+  /**
+   * Stops the shard threads once they have run every operation submitted so far. Operations still
+   * in progress, such as transfers between shards, must be complete.
+   */
+  @Override
+  public void close() {
+    for (Shard shard : shards) {
+      shard.execute(new Stop());
+    }
+    for (Shard shard : shards) {
+      try {
+        shard.thread.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  private void catchUpInterest(Account account) {
+    if (account instanceof InterestBearingAccount) {
+      try {
+        interestAccrual.accrue((InterestBearingAccount) account);
+      } catch (AmountOverflowException e) {
+        // left for a later touch
+      }
+    }
+  }
+
+  /**
+   * One shard thread and its queue.
+   * <p>
+   * The queue is an intrusive linked list: a producer swaps itself in as the head with one atomic
+   * exchange and then links the previous head to it, and the shard thread follows the links from
+   * the tail. The thread spins for a while when the queue runs dry and then parks; a producer
+   * wakes it only if it announced it is going to park.
+   */
+  private static final class Shard implements Runnable {
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private final int number;
+    private final Thread thread;
+    private final AtomicReference<Task> head;
+    private final AccountPartition<InterestBearingAccount> interestBearing = new AccountPartition<>();
+    private Task tail;
+    private volatile boolean parking;
+    private boolean running = true;
+
+    Shard(int number) {
+      this.number = number;
+      Task stub = new Stop();
+      this.head = new AtomicReference<>(stub);
+      this.tail = stub;
+      this.thread = new Thread(this, "bank-shard-" + THREAD_COUNT.incrementAndGet());
+      thread.setDaemon(true);
+    }
+
+    void execute(Task task) {
+      Task previous = head.getAndSet(task);
+      previous.next = task;
+      if (parking) {
+        LockSupport.unpark(thread);
+      }
+    }
+
+    @Override
+    public void run() {
+      int idle = 0;
+      while (running) {
+        Task next = tail.next;
+        if (next != null) {
+          // the task run becomes the new stub
+          tail = next;
+          next.run(this);
+          idle = 0;
+        } else if (++idle < SPINS_BEFORE_PARK) {
+          Thread.onSpinWait();
+        } else {
+          parking = true;
+          if (tail.next == null) {
+            LockSupport.park(this);
+          }
+          parking = false;
+          idle = 0;
+        }
+      }
+    }
+
+  }
+
+  private abstract static class Task {
+
+    volatile Task next;
+
+    abstract void run(Shard shard);
+
+  }
+
+  private static final class Stop extends Task {
+
+    @Override
+    void run(Shard shard) {
+      shard.running = false;
+    }
+
+  }
+
+  private static final class Call<T> extends Task {
+
+    private final Supplier<T> task;
+    private final CompletableFuture<T> result = new CompletableFuture<>();
+
+    Call(Supplier<T> task) {
+      this.task = task;
+    }
+
+    @Override
+    void run(Shard shard) {
+      try {
+        result.complete(task.get());
+      } catch (RuntimeException | Error e) {
+        result.completeExceptionally(e);
+      }
+    }
+
+  }
+
+  /**
+   * First phase of a transfer, run by the source shard.
+   */
+  private final class Debit extends Task {
+
+    private final Account from;
+    private final Account to;
+    private final long amount;
+    private final Shard source;
+    private final Shard target;
+    private final CompletableFuture<OperationStatus> result;
+
+    Debit(Account from, Account to, long amount, Shard source, Shard target,
+        CompletableFuture<OperationStatus> result) {
+      this.from = from;
+      this.to = to;
+      this.amount = amount;
+      this.source = source;
+      this.target = target;
+      this.result = result;
+    }
+
+    @Override
+    void run(Shard shard) {
+      try {
+        from.withdraw(amount);
+      } catch (AccountErrorException e) {
+        result.complete(OperationStatus.of(e));
+        return;
+      }
+
+      Credit credit = new Credit(this);
+      if (target == source) {
+        // both accounts are ours, so the transfer completes without a message
+        credit.run(shard);
+      } else {
+        target.execute(credit);
+      }
+    }
+
+  }
+
+  /**
+   * Second phase of a transfer, run by the target shard.
+   */
+  private final class Credit extends Task {
+
+    private final Debit debit;
+
+    Credit(Debit debit) {
+      this.debit = debit;
+    }
+
+    @Override
+    void run(Shard shard) {
+      catchUpInterest(debit.to);
+      try {
+        debit.to.deposit(debit.amount);
+        journal.appendTransferred(debit.from.getAccountId(), debit.to.getAccountId(), debit.amount);
+        debit.result.complete(OperationStatus.OK);
+      } catch (AccountErrorException e) {
+        Refund refund = new Refund(debit, OperationStatus.of(e));
+        if (debit.source == shard) {
+          refund.run(shard);
+        } else {
+          debit.source.execute(refund);
+        }
+      }
+    }
+
+  }
+
+  /**
+   * Reverts the debit of a transfer whose credit failed, run by the source shard.
+   */
+  private static final class Refund extends Task {
+
+    private final Debit debit;
+    private final OperationStatus status;
+
+    Refund(Debit debit, OperationStatus status) {
+      this.debit = debit;
+      this.status = status;
+    }
+
+    @Override
+    void run(Shard shard) {
+      try {
+        debit.from.deposit(debit.amount);
+      } catch (AccountErrorException e) {
+        // only deposits made while the amount was in flight can push the balance that high
+        debit.result.completeExceptionally(new IllegalStateException("Transfer could not be reverted", e));
+        return;
+      }
+      debit.result.complete(status);
+    }
+
+  }
+
+}
@@ -0,0 +1,99 @@
+package ee.alex.bank.service;
+
+import java.util.UUID;
+import java.util.concurrent.locks.Lock;
+import ee.alex.bank.exception.AccountErrorException;
+import ee.alex.bank.exception.InvalidAmountException;
+import ee.alex.bank.model.Account;
+import ee.alex.bank.persistence.Journal;
+
+/**
+ * Moves money between two accounts as one atomic step.
+ * <p>
+ * Both lock stripes are taken in ascending stripe order, which is the same global order for every
+ * caller, so opposite transfers between the same accounts can never deadlock. The debit and the
+ * credit happen while both stripes are held; if the credit fails the debit is reverted before the
+ * locks are released. Transfers are therefore serialized against every other operation that takes
+ * the stripe of either account, so none of those sees a half-done transfer. Operations that skip
+ * the stripes, the lock-free reads and single-account changes of a bank without a journal, may see
+ * the debit before the credit. The transfer is journaled as one record while both stripes are still
+ * held, and that record becomes the version of both accounts.
+ *
+ * @author Aleksei Kulitškov
+ */
+public class TransferEngine {
+
+  private final AccountLocks locks;
+  private final Journal journal;
+
+  public TransferEngine(AccountLocks locks) {
+    this(locks, Journal.NONE);
+  }
+
+  public TransferEngine(AccountLocks locks, Journal journal) {
+    this.locks = locks;
+    this.journal = journal;
+  }
+
+  /**
+   * @return sequence number of the journal record of the transfer
+   */
+  public long transfer(Account from, Account to, long amount) throws AccountErrorException {
+    return transfer(from, to, amount, null, 0);
+  }
+
+  /**
+   * Transfer made for a request with an idempotency key, which is journaled with it; a {@code null}
+   * key makes a plain transfer.
+   *
+   * @return sequence number of the journal record of the transfer
+   */
+  public long transfer(Account from, Account to, long amount, UUID requestId, long requestTime)
+      throws AccountErrorException {
+    if (amount <= 0) {
+      throw new InvalidAmountException();
+    }
+
+    int fromStripe = locks.stripeOf(from.getAccountId());
+    int toStripe = locks.stripeOf(to.getAccountId());
+    Lock first = locks.stripe(Math.min(fromStripe, toStripe));
+    Lock second = fromStripe == toStripe ? null : locks.stripe(Math.max(fromStripe, toStripe));
+
+    first.lock();
+    try {
+      if (second != null) {
+        second.lock();
+      }
+      try {
+        commit(from, to, amount);
+        long sequence = requestId == null
+            ? journal.appendTransferred(from.getAccountId(), to.getAccountId(), amount)
+            : journal.appendTransferred(from.getAccountId(), to.getAccountId(), amount, requestId, requestTime);
+        from.setVersion(sequence);
+        to.setVersion(sequence);
+        return sequence;
+      } finally {
+        if (second != null) {
+          second.unlock();
+        }
+      }
+    } finally {
+      first.unlock();
+    }
+  }
+
+  private static void commit(Account from, Account to, long amount) throws AccountErrorException {
+    from.withdraw(amount);
+
+    boolean credited = false;
+    try {
+      to.deposit(amount);
+      credited = true;
+    } finally {
+      if (!credited) {
+        from.deposit(amount);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,138 @@
+package ee.alex.bank.stream;
+
+import java.util.UUID;
+import ee.alex.bank.model.AccountType;
+import ee.alex.bank.model.InterestRateTable;
+
+/**
+ * One change of an account or of the interest rates of a bank, as journaled.
+ * <p>
+ * Events are mutable and reused: the ring of a {@link ChangeStream} holds one per slot, filled in
+ * place by the publisher, and every subscription copies each event it reads into one of its own,
+ * which it hands to its {@link ChangeHandler}. Account numbers are kept as primitive longs and
+ * turned into {@link UUID}s only when asked for.
+ *
+ * @author Aleksei Kulitškov
+ */
+public final class ChangeEvent {
+
+  private long sequence;
+  private long journalSequence;
+  private ChangeType type;
+  private long accountIdHigh;
+  private long accountIdLow;
+  private long targetAccountIdHigh;
+  private long targetAccountIdLow;
+  private long amount;
+  private long accruedPeriod;
+  private AccountType accountType;
+  private String owner;
+  private InterestRateTable rateTable;
+
+  /**
+   * Position of the event in the stream, from 0 without gaps.
+   */
+  public long getSequence() {
+    return sequence;
+  }
+
+  /**
+   * Sequence number of the journal record of the change, 0 if the bank has no journal.
+   */
+  public long getJournalSequence() {
+    return journalSequence;
+  }
+
+  public ChangeType getType() {
+    return type;
+  }
+
+  /**
+   * @return the account changed, or the account debited by a transfer; {@code null} for a change of
+   * the interest rates or period
+   */
+  public UUID getAccountId() {
+    return rateTable == null ? new UUID(accountIdHigh, accountIdLow) : null;
+  }
+
+  /**
+   * @return the account credited by a transfer, {@code null} for other changes
+   */
+  public UUID getTargetAccountId() {
+    return type == ChangeType.TRANSFERRED ? new UUID(targetAccountIdHigh, targetAccountIdLow) : null;
+  }
+
+  /**
+   * @return the amount moved, the new limit of a limit change, or the limit of an account created
+   */
+  public long getAmount() {
+    return amount;
+  }
+
+  /**
+   * @return the period a savings account is credited up to after interest accrued, or the period
+   * closed, 0 otherwise
+   */
+  public long getAccruedPeriod() {
+    return accruedPeriod;
+  }
+
+  /**
+   * @return the type of an account created, {@code null} for other changes
+   */
+  public AccountType getAccountType() {
+    return accountType;
+  }
+
+  /**
+   * @return the owner of an account created, {@code null} for other changes
+   */
+  public String getOwner() {
+    return owner;
+  }
+
+  /**
+   * @return the rates in force after a rate change, or the rates a closed period earns;
+   * {@code null} for changes of an account
+   */
+  public InterestRateTable getRateTable() {
+    return rateTable;
+  }
+
+  @Override
+  public String toString() {
+    return sequence + " " + type + " " + getAccountId() + (type == ChangeType.TRANSFERRED
+        ? " " + getTargetAccountId() : "") + " " + amount;
+  }
+
+  void set(long journalSequence, ChangeType type, UUID accountId, UUID targetAccountId, long amount,
+      long accruedPeriod, AccountType accountType, String owner, InterestRateTable rateTable) {
+    this.journalSequence = journalSequence;
+    this.type = type;
+    this.accountIdHigh = accountId == null ? 0 : accountId.getMostSignificantBits();
+    this.accountIdLow = accountId == null ? 0 : accountId.getLeastSignificantBits();
+    this.targetAccountIdHigh = targetAccountId == null ? 0 : targetAccountId.getMostSignificantBits();
+    this.targetAccountIdLow = targetAccountId == null ? 0 : targetAccountId.getLeastSignificantBits();
+    this.amount = amount;
+    this.accruedPeriod = accruedPeriod;
+    this.accountType = accountType;
+    this.owner = owner;
+    this.rateTable = rateTable;
+  }
+
+  void copyFrom(ChangeEvent event, long sequence) {
+    this.sequence = sequence;
+    this.journalSequence = event.journalSequence;
+    this.type = event.type;
+    this.accountIdHigh = event.accountIdHigh;
+    this.accountIdLow = event.accountIdLow;
+    this.targetAccountIdHigh = event.targetAccountIdHigh;
+    this.targetAccountIdLow = event.targetAccountIdLow;
+    this.amount = event.amount;
+    this.accruedPeriod = event.accruedPeriod;
+    this.accountType = event.accountType;
+    this.owner = event.owner;
+    this.rateTable = event.rateTable;
+  }
+
+}
@@ -0,0 +1,25 @@
+package ee.alex.bank.stream;
+
+/**
+ * Receives the events of a {@link ChangeStream.Subscription}, on the thread that polls it.
+ *
+ * @author Aleksei Kulitškov
+ */
+public interface ChangeHandler {
+
+  /**
+   * @param event the event, reused for the next one; copy what must be kept
+   * @param endOfBatch whether this is the last event available for now, a good point to flush
+   * whatever was gathered from the batch
+   */
+  void onChange(ChangeEvent event, boolean endOfBatch);
+
+  /**
+   * Events were overwritten before the subscriber read them, because it fell a whole ring behind.
+   *
+   * @param count number of events lost
+   */
+  default void onLoss(long count) {
+  }
+
+}
@@ -0,0 +1,282 @@
+package ee.alex.bank.stream;
+
+import java.lang.invoke.VarHandle;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import ee.alex.bank.model.AccountType;
+import ee.alex.bank.model.InterestRateTable;
+import ee.alex.bank.persistence.JournalListener;
+
+/**
+ * Stream of the changes of a bank, for subscribers such as read models, notifications or replicas.
+ * <p>
+ * A bank publishes to the stream it is given with
+ * {@code BankService.setChangeStream(ChangeStream)}: every change it journals, interest accruals,
+ * rate changes and period closes included, is published as a {@link ChangeEvent} once it is
+ * durable, through the {@link #publisher()} of the stream. A journal on disk publishes the records
+ * of each write after forcing them, in journal order, so the events of one account come in the
+ * order the changes were made and no event is ever seen for a change a crash could undo. A bank
+ * without a journal, sharded or not, publishes each change as it makes it, on the thread that made
+ * it; concurrent deposits and withdrawals of one account it makes without a lock may then come in
+ * either order. A sharded bank publishes a transfer from the shard of its target, once it is
+ * credited. Recovery replays the journal without publishing anything.
+ * <p>
+ * Events go through a ring of preallocated entries, so publishing one allocates nothing. A
+ * publisher claims the next sequence number with one atomic increment and fills the entry it
+ * maps to in place. It never waits for subscribers: each subscription reads the ring at its own
+ * pace, and one that falls a whole ring behind loses the events overwritten under it and is told
+ * how many through {@link ChangeHandler#onLoss(long)}. Size the ring for the longest stall a
+ * subscriber should survive at the rate of the bank.
+ * <p>
+ * A subscription either is polled for batches by a thread of the caller, or reads the stream on a
+ * thread of its own and hands every event to its handler as it comes.
+ *
+ * @author Aleksei Kulitškov
+ */
+public class ChangeStream {
+
+  public static final int DEFAULT_CAPACITY = 1 << 16;
+
+  // stamp of an entry never written, below every sequence number
+  private static final long UNUSED = -2;
+  // stamp of an entry being written
+  private static final long BUSY = -1;
+  private static final int SPINS_BEFORE_PARK = 1 << 8;
+  private static final long PARK_NANOS = 100_000;
+  private static final int BATCH_SIZE = 256;
+  private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+  private final ChangeEvent[] entries;
+  // sequence number of the event in each entry, or one of the markers above
+  private final AtomicLongArray stamps;
+  private final int mask;
+  private final AtomicLong cursor = new AtomicLong();
+  private final JournalListener publisher = new Publisher();
+
+  public ChangeStream() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * @param capacity number of events kept for subscribers, a power of two
+   */
+  public ChangeStream(int capacity) {
+    if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+      throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+    }
+    this.entries = new ChangeEvent[capacity];
+    this.stamps = new AtomicLongArray(capacity);
+    for (int i = 0; i < capacity; i++) {
+      entries[i] = new ChangeEvent();
+      stamps.set(i, UNUSED);
+    }
+    this.mask = capacity - 1;
+  }
+
+  /**
+   * Listener that publishes every change it is handed, to be made the durable listener of a
+   * journal.
+   */
+  public JournalListener publisher() {
+    return publisher;
+  }
+
+  /**
+   * Subscription to the events published from now on, to be polled by the caller.
+   */
+  public Subscription subscribe() {
+    return new Subscription(cursor.get());
+  }
+
+  /**
+   * Subscription to the events published from now on, read on a daemon thread of its own that
+   * hands each of them to the handler. The thread spins for a while when the stream runs dry and
+   * then sleeps in short naps, so publishers never have to wake it. An exception thrown by the
+   * handler ends the subscription.
+   */
+  public Subscription subscribe(ChangeHandler handler) {
+    Subscription subscription = new Subscription(cursor.get());
+    Thread thread = new Thread(() -> subscription.run(handler), "change-stream-" + THREAD_COUNT.incrementAndGet());
+    thread.setDaemon(true);
+    subscription.thread = thread;
+    thread.start();
+    return subscription;
+  }
+
+  /**
+   * Number of events published so far.
+   */
+  public long getPublished() {
+    return cursor.get();
+  }
+
+  void publish(long journalSequence, ChangeType type, UUID accountId, UUID targetAccountId, long amount,
+      long accruedPeriod, AccountType accountType, String owner, InterestRateTable rateTable) {
+    long sequence = cursor.getAndIncrement();
+    int index = (int) sequence & mask;
+    for (;;) {
+      long stamp = stamps.get(index);
+      if (stamp > sequence) {
+        // a publisher a whole ring ahead took the entry first; subscribers count the event as lost
+        return;
+      }
+      if (stamp == BUSY) {
+        Thread.onSpinWait();
+      } else if (stamps.compareAndSet(index, stamp, BUSY)) {
+        break;
+      }
+    }
+    entries[index].set(journalSequence, type, accountId, targetAccountId, amount, accruedPeriod, accountType, owner,
+        rateTable);
+    stamps.set(index, sequence);
+  }
+
+  /**
+   * Position of one subscriber in the stream.
+   */
+  public final class Subscription implements AutoCloseable {
+
+    private final ChangeEvent event = new ChangeEvent();
+    private long next;
+    private long lost;
+    private volatile boolean closed;
+    private Thread thread;
+
+    private Subscription(long next) {
+      this.next = next;
+    }
+
+    /**
+     * Hands the events published since the last poll to the handler, on the calling thread, up to
+     * the given number of them. Not to be called by more than one thread at a time, nor on a
+     * subscription with a thread of its own.
+     *
+     * @return number of events handed over
+     */
+    public int poll(ChangeHandler handler, int limit) {
+      int delivered = 0;
+      while (delivered < limit && !closed) {
+        int index = (int) next & mask;
+        long stamp = stamps.get(index);
+        if (stamp == next) {
+          event.copyFrom(entries[index], next);
+          // the copy must be read before the stamp is checked again
+          VarHandle.loadLoadFence();
+          if (stamps.get(index) == next) {
+            next++;
+            delivered++;
+            handler.onChange(event, delivered == limit || stamps.get((int) next & mask) != next);
+            continue;
+          }
+        }
+        long published = cursor.get();
+        if (stamp <= next && published - next <= entries.length) {
+          // not published yet
+          break;
+        }
+        // overwritten by a publisher a whole ring ahead
+        long resume = Math.max(next + 1, published - entries.length);
+        lost += resume - next;
+        handler.onLoss(resume - next);
+        next = resume;
+      }
+      return delivered;
+    }
+
+    /**
+     * Sequence number of the next event to read.
+     */
+    public long getPosition() {
+      return next;
+    }
+
+    /**
+     * Number of events lost so far, because the subscriber fell a whole ring behind.
+     */
+    public long getLost() {
+      return lost;
+    }
+
+    /**
+     * Stops the subscription, and waits for its thread if it has one, unless called from there.
+     */
+    @Override
+    public void close() {
+      closed = true;
+      if (thread != null && thread != Thread.currentThread()) {
+        LockSupport.unpark(thread);
+        try {
+          thread.join();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+
+    private void run(ChangeHandler handler) {
+      int idle = 0;
+      while (!closed) {
+        if (poll(handler, BATCH_SIZE) > 0) {
+          idle = 0;
+        } else if (++idle < SPINS_BEFORE_PARK) {
+          Thread.onSpinWait();
+        } else {
+          LockSupport.parkNanos(this, PARK_NANOS);
+        }
+      }
+    }
+
+  }
+
+  /**
+   * Publishes every change of an account or of the interest rates; requests rejected change
+   * nothing and are left out.
+   */
+  private final class Publisher implements JournalListener {
+
+    @Override
+    public void accountCreated(long sequence, UUID accountId, AccountType type, String owner, long limit) {
+      publish(sequence, ChangeType.ACCOUNT_CREATED, accountId, null, limit, 0, type, owner, null);
+    }
+
+    @Override
+    public void deposited(long sequence, UUID accountId, long amount) {
+      publish(sequence, ChangeType.DEPOSITED, accountId, null, amount, 0, null, null, null);
+    }
+
+    @Override
+    public void withdrawn(long sequence, UUID accountId, long amount) {
+      publish(sequence, ChangeType.WITHDRAWN, accountId, null, amount, 0, null, null, null);
+    }
+
+    @Override
+    public void transferred(long sequence, UUID fromAccountId, UUID toAccountId, long amount) {
+      publish(sequence, ChangeType.TRANSFERRED, fromAccountId, toAccountId, amount, 0, null, null, null);
+    }
+
+    @Override
+    public void limitChanged(long sequence, UUID accountId, long newLimit) {
+      publish(sequence, ChangeType.LIMIT_CHANGED, accountId, null, newLimit, 0, null, null, null);
+    }
+
+    @Override
+    public void rateTableChanged(long sequence, InterestRateTable rateTable) {
+      publish(sequence, ChangeType.RATE_TABLE_CHANGED, null, null, 0, 0, null, null, rateTable);
+    }
+
+    @Override
+    public void interestPeriodClosed(long sequence, long period, InterestRateTable rateTable) {
+      publish(sequence, ChangeType.INTEREST_PERIOD_CLOSED, null, null, 0, period, null, null, rateTable);
+    }
+
+    @Override
+    public void interestAccrued(long sequence, UUID accountId, long amount, long accruedPeriod) {
+      publish(sequence, ChangeType.INTEREST_ACCRUED, accountId, null, amount, accruedPeriod, null, null, null);
+    }
+
+  }
+
+}
@@ -0,0 +1,19 @@
+package ee.alex.bank.stream;
+
+/**
+ * Kind of a {@link ChangeEvent}.
+ *
+ * @author Aleksei Kulitškov
+ */
+public enum ChangeType {
+
+  ACCOUNT_CREATED,
+  DEPOSITED,
+  WITHDRAWN,
+  TRANSFERRED,
+  LIMIT_CHANGED,
+  INTEREST_ACCRUED,
+  RATE_TABLE_CHANGED,
+  INTEREST_PERIOD_CLOSED
+
+}
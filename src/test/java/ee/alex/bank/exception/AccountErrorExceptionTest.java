@@ -0,0 +1,42 @@
+package ee.alex.bank.exception;
+
+import org.junit.After;
+import org.junit.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Aleksei Kulitškov
+ */
+public class AccountErrorExceptionTest {
+
+  @After
+  public void restoreStackTraces() {
+    AccountErrorException.setStackTraces(true);
+  }
+
+  @Test
+  public void constructor_FillsInStackTrace_ByDefault() {
+    // when
+    InsufficientFundsException result = new InsufficientFundsException();
+
+    // then
+    assertThat(result.getStackTrace()).isNotEmpty();
+    assertThat(result).hasMessage("Insufficient funds");
+  }
+
+  @Test
+  public void constructor_LeavesStackTraceEmpty_IfStackTracesTurnedOff() {
+    // given
+    AccountErrorException.setStackTraces(false);
+
+    // when
+    LimitReachedException result = new LimitReachedException();
+    result.addSuppressed(new IllegalStateException());
+
+    // then
+    assertThat(result.getStackTrace()).isEmpty();
+    assertThat(result.getSuppressed()).isEmpty();
+    assertThat(result).hasMessage("Limit reached");
+  }
+
+}
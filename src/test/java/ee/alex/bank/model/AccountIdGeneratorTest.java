@@ -0,0 +1,55 @@
+package ee.alex.bank.model;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Aleksei Kulitškov
+ */
+public class AccountIdGeneratorTest {
+
+  @Test
+  public void next_ReturnsDistinctVersion4Numbers_IfRandom() {
+    // given
+    Set<UUID> accountIds = new HashSet<>();
+
+    // when
+    for (int i = 0; i < 10_000; i++) {
+      accountIds.add(AccountIdGenerator.RANDOM.next());
+    }
+
+    // then
+    assertThat(accountIds).hasSize(10_000);
+    assertThat(accountIds).allMatch(accountId -> accountId.version() == 4 && accountId.variant() == 2);
+  }
+
+  @Test
+  public void next_ReturnsIncreasingVersion7NumbersLedByTime_IfTimeOrdered() {
+    // given
+    AtomicLong now = new AtomicLong(1_700_000_000_000L);
+    TimeOrderedIdGenerator generator = new TimeOrderedIdGenerator(now::get);
+    List<UUID> accountIds = new ArrayList<>();
+
+    // when
+    for (int i = 0; i < 10_000; i++) {
+      accountIds.add(generator.next());
+      if (i == 5_000) {
+        // the clock stepping back does not break the order
+        now.set(1_600_000_000_000L);
+      }
+    }
+
+    // then
+    assertThat(accountIds).isSorted();
+    assertThat(new HashSet<>(accountIds)).hasSize(10_000);
+    assertThat(accountIds).allMatch(accountId -> accountId.version() == 7 && accountId.variant() == 2);
+    assertThat(accountIds.get(0).getMostSignificantBits() >>> 16).isEqualTo(1_700_000_000_000L);
+  }
+
+}
@@ -15,22 +15,22 @@ public class CheckingAccountTest {
   @Test
   public void setLimit_UpdatesLimit_IfNewLimitIsPositive() throws Exception {
     // given
-    CheckingAccount account = new CheckingAccount("Peter Parker", 500.0);
+    CheckingAccount account = new CheckingAccount("Peter Parker", 500_00);
 
     // when
-    account.setLimit(600.0);
+    account.setLimit(600_00);
 
     // then
-    assertThat(account.getLimit()).isEqualTo(600.0);
+    assertThat(account.getLimit()).isEqualTo(600_00);
   }
 
   @Test
   public void setLimit_ThrowsInvalidAmountException_IfNewLimitIsZero() {
     // given
-    CheckingAccount account = new CheckingAccount("Peter Parker", 500.0);
+    CheckingAccount account = new CheckingAccount("Peter Parker", 500_00);
 
     // when
-    Throwable result = catchThrowable(() -> account.setLimit(0.0));
+    Throwable result = catchThrowable(() -> account.setLimit(0));
 
     // then
     assertThat(result).isInstanceOf(InvalidAmountException.class).hasMessage("Money amount must be greater than zero");
@@ -39,10 +39,10 @@ public class CheckingAccountTest {
   @Test
   public void setLimit_ThrowsInvalidAmountException_IfNewLimitIsNegative() {
     // given
-    CheckingAccount account = new CheckingAccount("Peter Parker", 500.0);
+    CheckingAccount account = new CheckingAccount("Peter Parker", 500_00);
 
     // when
-    Throwable result = catchThrowable(() -> account.setLimit(-50.0));
+    Throwable result = catchThrowable(() -> account.setLimit(-50_00));
 
     // then
     assertThat(result).isInstanceOf(InvalidAmountException.class).hasMessage("Money amount must be greater than zero");
@@ -51,7 +51,7 @@ public class CheckingAccountTest {
   @Test
   public void getType_ReturnsChecking() {
     // given
-    CheckingAccount account = new CheckingAccount("Peter Parker", 500.0);
+    CheckingAccount account = new CheckingAccount("Peter Parker", 500_00);
 
     // when
     AccountType result = account.getType();
@@ -63,35 +63,48 @@ public class CheckingAccountTest {
   @Test
   public void withdraw_WithdrawsSpecifiedAmount_IfAmountIsPositive() throws Exception {
     // given
-    CheckingAccount account = new CheckingAccount("Peter Parker", 500.0);
-    account.setBalance(100.0);
+    CheckingAccount account = new CheckingAccount("Peter Parker", 500_00);
+    account.setBalance(100_00);
 
     // when
-    account.withdraw(50.0);
+    account.withdraw(50_00);
 
     // then
-    assertThat(account.getBalance()).isEqualTo(50.0);
+    assertThat(account.getBalance()).isEqualTo(50_00);
   }
 
   @Test
   public void withdraw_WithdrawsSpecifiedAmount_IfAmountIsPositiveAndGoesBelowZero() throws Exception {
     // given
-    CheckingAccount account = new CheckingAccount("Peter Parker", 500.0);
+    CheckingAccount account = new CheckingAccount("Peter Parker", 500_00);
 
     // when
-    account.withdraw(100.0);
+    account.withdraw(100_00);
 
     // then
-    assertThat(account.getBalance()).isEqualTo(-100.0);
+    assertThat(account.getBalance()).isEqualTo(-100_00);
+  }
+
+  @Test
+  public void withdraw_WithdrawsSpecifiedAmount_IfBalanceStaysAboveLimit() throws Exception {
+    // given
+    CheckingAccount account = new CheckingAccount("Peter Parker", 500_00);
+    account.setBalance(1000_00);
+
+    // when
+    account.withdraw(100_00);
+
+    // then
+    assertThat(account.getBalance()).isEqualTo(900_00);
   }
 
   @Test
   public void withdraw_ThrowsInvalidAmountException_IfAmountIsZero() {
     // given
-    CheckingAccount account = new CheckingAccount("Peter Parker", 500.0);
+    CheckingAccount account = new CheckingAccount("Peter Parker", 500_00);
 
     // when
-    Throwable result = catchThrowable(() -> account.withdraw(0.0));
+    Throwable result = catchThrowable(() -> account.withdraw(0));
 
     // then
     assertThat(result).isInstanceOf(InvalidAmountException.class).hasMessage("Money amount must be greater than zero");
@@ -100,10 +113,10 @@ public class CheckingAccountTest {
   @Test
   public void withdraw_ThrowsInvalidAmountException_IfAmountIsNegative() {
     // given
-    CheckingAccount account = new CheckingAccount("Peter Parker", 500.0);
+    CheckingAccount account = new CheckingAccount("Peter Parker", 500_00);
 
     // when
-    Throwable result = catchThrowable(() -> account.withdraw(-50.0));
+    Throwable result = catchThrowable(() -> account.withdraw(-50_00));
 
     // then
     assertThat(result).isInstanceOf(InvalidAmountException.class).hasMessage("Money amount must be greater than zero");
@@ -112,10 +125,10 @@ public class CheckingAccountTest {
   @Test
   public void withdraw_ThrowsLimitReachedException_IfBalanceGoesBeyondLimit() {
     // given
-    CheckingAccount account = new CheckingAccount("Peter Parker", 500.0);
+    CheckingAccount account = new CheckingAccount("Peter Parker", 500_00);
 
     // when
-    Throwable result = catchThrowable(() -> account.withdraw(600.0));
+    Throwable result = catchThrowable(() -> account.withdraw(600_00));
 
     // then
     assertThat(result).isInstanceOf(LimitReachedException.class).hasMessage("Limit reached");
@@ -124,23 +137,23 @@ public class CheckingAccountTest {
   @Test
   public void deposit_DepositsSpecifiedAmount_IfAmountIsPositive() throws Exception {
     // given
-    CheckingAccount account = new CheckingAccount("Peter Parker", 500.0);
-    assertThat(account.getBalance()).isEqualTo(0.0);
+    CheckingAccount account = new CheckingAccount("Peter Parker", 500_00);
+    assertThat(account.getBalance()).isEqualTo(0);
 
     // when
-    account.deposit(50.0);
+    account.deposit(50_00);
 
     // then
-    assertThat(account.getBalance()).isEqualTo(50.0);
+    assertThat(account.getBalance()).isEqualTo(50_00);
   }
 
   @Test
   public void deposit_ThrowsInvalidAmountException_IfAmountIsZero() {
     // given
-    CheckingAccount account = new CheckingAccount("Peter Parker", 500.0);
+    CheckingAccount account = new CheckingAccount("Peter Parker", 500_00);
 
     // when
-    Throwable result = catchThrowable(() -> account.deposit(0.0));
+    Throwable result = catchThrowable(() -> account.deposit(0));
 
     // then
     assertThat(result).isInstanceOf(InvalidAmountException.class).hasMessage("Money amount must be greater than zero");
@@ -149,37 +162,54 @@ public class CheckingAccountTest {
   @Test
   public void deposit_ThrowsInvalidAmountException_IfAmountIsNegative() {
     // given
-    CheckingAccount account = new CheckingAccount("Peter Parker", 500.0);
+    CheckingAccount account = new CheckingAccount("Peter Parker", 500_00);
 
     // when
-    Throwable result = catchThrowable(() -> account.deposit(-50.0));
+    Throwable result = catchThrowable(() -> account.deposit(-50_00));
 
     // then
     assertThat(result).isInstanceOf(InvalidAmountException.class).hasMessage("Money amount must be greater than zero");
   }
 
+  @Test
+  public void withdraw_CountsHotDepositsAgainstLimit_IfHotDepositsEnabled() throws Exception {
+    // given
+    CheckingAccount account = new CheckingAccount("Peter Parker", 500_00);
+    account.enableHotDeposits();
+    account.deposit(100_00);
+    account.deposit(50_00);
+
+    // when
+    account.withdraw(650_00);
+    Throwable result = catchThrowable(() -> account.withdraw(1));
+
+    // then
+    assertThat(result).isInstanceOf(LimitReachedException.class);
+    assertThat(account.getBalance()).isEqualTo(-500_00);
+  }
+
   @Test
   public void transferMoney_AccountFromBalanceReducesAndAccountToBalanceIncreasesBySpecifiedAmountOfMoney_IfTransferCompletesSuccessfully() throws Exception {
     // given
-    CheckingAccount accountFrom = new CheckingAccount("Peter Parker", 500.0);
+    CheckingAccount accountFrom = new CheckingAccount("Peter Parker", 500_00);
     Account accountTo = new SavingsAccount("Ave Ott");
 
     // when
-    accountFrom.transferMoney(accountTo, 100.0);
+    accountFrom.transferMoney(accountTo, 100_00);
 
     // then
-    assertThat(accountFrom.getBalance()).isEqualTo(-100.0);
-    assertThat(accountTo.getBalance()).isEqualTo(100.0);
+    assertThat(accountFrom.getBalance()).isEqualTo(-100_00);
+    assertThat(accountTo.getBalance()).isEqualTo(100_00);
   }
 
   @Test
   public void transferMoney_ThrowsInvalidAmountException_IfAmountIsZero() {
     // given
-    CheckingAccount accountFrom = new CheckingAccount("Peter Parker", 500.0);
+    CheckingAccount accountFrom = new CheckingAccount("Peter Parker", 500_00);
     Account accountTo = new SavingsAccount("Ave Ott");
 
     // when
-    Throwable result = catchThrowable(() -> accountFrom.transferMoney(accountTo, 0.0));
+    Throwable result = catchThrowable(() -> accountFrom.transferMoney(accountTo, 0));
 
     // then
     assertThat(result).isInstanceOf(InvalidAmountException.class).hasMessage("Money amount must be greater than zero");
@@ -188,11 +218,11 @@ public class CheckingAccountTest {
   @Test
   public void transferMoney_ThrowsInvalidAmountException_IfAmountIsNegative() {
     // given
-    CheckingAccount accountFrom = new CheckingAccount("Peter Parker", 500.0);
+    CheckingAccount accountFrom = new CheckingAccount("Peter Parker", 500_00);
     Account accountTo = new SavingsAccount("Ave Ott");
 
     // when
-    Throwable result = catchThrowable(() -> accountFrom.transferMoney(accountTo, -100.0));
+    Throwable result = catchThrowable(() -> accountFrom.transferMoney(accountTo, -100_00));
 
     // then
     assertThat(result).isInstanceOf(InvalidAmountException.class).hasMessage("Money amount must be greater than zero");
@@ -201,11 +231,11 @@ public class CheckingAccountTest {
   @Test
   public void transferMoney_ThrowsLimitReachedException_IfBalanceGoesBeyondLimit() {
     // given
-    CheckingAccount accountFrom = new CheckingAccount("Peter Parker", 500.0);
+    CheckingAccount accountFrom = new CheckingAccount("Peter Parker", 500_00);
     Account accountTo = new SavingsAccount("Ave Ott");
 
     // when
-    Throwable result = catchThrowable(() -> accountFrom.transferMoney(accountTo, 600.0));
+    Throwable result = catchThrowable(() -> accountFrom.transferMoney(accountTo, 600_00));
 
     // then
     assertThat(result).isInstanceOf(LimitReachedException.class).hasMessage("Limit reached");
@@ -214,8 +244,8 @@ public class CheckingAccountTest {
   @Test
   public void getDetails_CorrectInformationAboutAccount() throws Exception {
     // given
-    CheckingAccount account = new CheckingAccount("Peter Parker", 500.0);
-    account.deposit(150.0);
+    CheckingAccount account = new CheckingAccount("Peter Parker", 500_00);
+    account.deposit(150_00);
 
     // when
     String result = account.getDetails();
@@ -225,8 +255,8 @@ public class CheckingAccountTest {
         "Account details:\n" +
             "Holder: Peter Parker\n" +
             "Type: checking\n" +
-            "Balance: 150.0\n" +
-            "Limit: 500.0\n"
+            "Balance: 150.00\n" +
+            "Limit: 500.00\n"
     );
   }
 
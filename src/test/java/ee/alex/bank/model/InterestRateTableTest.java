@@ -0,0 +1,70 @@
+package ee.alex.bank.model;
+
+import org.junit.Test;
+import ee.alex.bank.exception.InvalidInterestRateException;
+import static ee.alex.bank.model.AccountType.CHECKING;
+import static ee.alex.bank.model.AccountType.SAVINGS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+/**
+ * @author Aleksei Kulitškov
+ */
+public class InterestRateTableTest {
+
+  @Test
+  public void rate_ReturnsRateOfTierBalanceFallsInto() throws Exception {
+    // given
+    InterestRateTable table = InterestRateTable.flat(0.2)
+        .withTiers(SAVINGS, new long[] {0, 1000_00, 10_000_00}, new double[] {0.1, 0.2, 0.3});
+
+    // when / then
+    assertThat(table.rate(SAVINGS, -5_00)).isEqualTo(0.1);
+    assertThat(table.rate(SAVINGS, 999_99)).isEqualTo(0.1);
+    assertThat(table.rate(SAVINGS, 1000_00)).isEqualTo(0.2);
+    assertThat(table.rate(SAVINGS, Long.MAX_VALUE)).isEqualTo(0.3);
+    assertThat(table.rate(CHECKING, 1000_00)).isZero();
+  }
+
+  @Test
+  public void withTiers_ReturnsNextVersionAndKeepsOriginal() throws Exception {
+    // given
+    InterestRateTable table = InterestRateTable.flat(0.2);
+
+    // when
+    InterestRateTable result = table.withTiers(SAVINGS, new long[] {0, 500_00}, new double[] {0.1, 0.4});
+
+    // then
+    assertThat(result.getVersion()).isEqualTo(1);
+    assertThat(result.rate(SAVINGS, 500_00)).isEqualTo(0.4);
+    assertThat(table.getVersion()).isZero();
+    assertThat(table.rate(SAVINGS, 500_00)).isEqualTo(0.2);
+  }
+
+  @Test
+  public void withTiers_ThrowsIllegalArgumentException_IfTiersDoNotAscend() {
+    // given
+    InterestRateTable table = InterestRateTable.flat(0.2);
+
+    // when
+    Throwable result = catchThrowable(() -> table.withTiers(SAVINGS, new long[] {0, 500_00, 500_00},
+        new double[] {0.1, 0.2, 0.3}));
+
+    // then
+    assertThat(result).isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  public void withTiers_ThrowsInvalidInterestRateException_IfRateIsNotPositive() {
+    // given
+    InterestRateTable table = InterestRateTable.flat(0.2);
+
+    // when
+    Throwable result = catchThrowable(() -> table.withTiers(SAVINGS, new long[] {0, 500_00},
+        new double[] {0.1, 0.0}));
+
+    // then
+    assertThat(result).isInstanceOf(InvalidInterestRateException.class);
+  }
+
+}
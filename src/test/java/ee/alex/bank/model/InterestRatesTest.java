@@ -0,0 +1,63 @@
+package ee.alex.bank.model;
+
+import org.junit.Test;
+import ee.alex.bank.exception.InvalidInterestRateException;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+/**
+ * @author Aleksei Kulitškov
+ */
+public class InterestRatesTest {
+
+  private final InterestRates rates = new InterestRates();
+
+  @Test
+  public void setInterestRate_UpdatesInterestRate_IfNewInterestRateIsPositive() throws Exception {
+    // given
+    assertThat(rates.getInterestRate()).isEqualTo(0.2);
+
+    // when
+    rates.setInterestRate(0.5);
+
+    // then
+    assertThat(rates.getInterestRate()).isEqualTo(0.5);
+  }
+
+  @Test
+  public void setInterestRate_ThrowsInvalidInterestRateException_IfNewInterestRateIsZero() {
+    // given
+    assertThat(rates.getInterestRate()).isEqualTo(0.2);
+
+    // when
+    Throwable result = catchThrowable(() -> rates.setInterestRate(0.0));
+
+    // then
+    assertThat(result).isInstanceOf(InvalidInterestRateException.class).hasMessage("Interest rate must be greater than zero");
+  }
+
+  @Test
+  public void setInterestRate_ThrowsInvalidInterestRateException_IfNewInterestRateIsNegative() {
+    // given
+    assertThat(rates.getInterestRate()).isEqualTo(0.2);
+
+    // when
+    Throwable result = catchThrowable(() -> rates.setInterestRate(-0.5));
+
+    // then
+    assertThat(result).isInstanceOf(InvalidInterestRateException.class).hasMessage("Interest rate must be greater than zero");
+  }
+
+  @Test
+  public void setInterestRate_LeavesOtherRates() throws Exception {
+    // given
+    InterestRates otherRates = new InterestRates();
+
+    // when
+    rates.setInterestRate(0.5);
+
+    // then
+    assertThat(otherRates.getInterestRate()).isEqualTo(0.2);
+  }
+
+}
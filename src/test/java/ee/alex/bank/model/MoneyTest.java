@@ -0,0 +1,83 @@
+package ee.alex.bank.model;
+
+import org.junit.Test;
+import ee.alex.bank.exception.AmountOverflowException;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+/**
+ * @author Aleksei Kulitškov
+ */
+public class MoneyTest {
+
+  @Test
+  public void add_ReturnsSum_IfNoOverflow() throws Exception {
+    // when
+    long result = Money.add(150_25, 49_75);
+
+    // then
+    assertThat(result).isEqualTo(200_00);
+  }
+
+  @Test
+  public void add_ThrowsAmountOverflowException_IfSumOverflows() {
+    // when
+    Throwable result = catchThrowable(() -> Money.add(Long.MAX_VALUE, 1));
+
+    // then
+    assertThat(result).isInstanceOf(AmountOverflowException.class).hasMessage("Money amount is out of range");
+  }
+
+  @Test
+  public void subtract_ThrowsAmountOverflowException_IfDifferenceOverflows() {
+    // when
+    Throwable result = catchThrowable(() -> Money.subtract(Long.MIN_VALUE, 1));
+
+    // then
+    assertThat(result).isInstanceOf(AmountOverflowException.class).hasMessage("Money amount is out of range");
+  }
+
+  @Test
+  public void interest_RoundsHalfToEven() throws Exception {
+    // expect
+    assertThat(Money.interest(25, 0.1)).isEqualTo(2);   // 2.5 -> 2
+    assertThat(Money.interest(35, 0.1)).isEqualTo(4);   // 3.5 -> 4
+    assertThat(Money.interest(1_33, 0.2)).isEqualTo(27); // 26.6 -> 27
+  }
+
+  @Test
+  public void interest_IsExact_IfAmountIsNearLongMaxValue() throws Exception {
+    // expect
+    assertThat(Money.interest(Long.MAX_VALUE, 1.0)).isEqualTo(Long.MAX_VALUE);
+    assertThat(Money.interest(Long.MAX_VALUE - 1, 0.1)).isEqualTo(922_337_203_685_477_581L); // ...580.6
+    assertThat(Money.interest(Long.MAX_VALUE, 0.5)).isEqualTo(4_611_686_018_427_387_904L);  // ...903.5
+    assertThat(Money.interest(-Long.MAX_VALUE, 0.5)).isEqualTo(-4_611_686_018_427_387_904L);
+  }
+
+  @Test
+  public void interest_IsExact_IfAmountIsNotExactInDouble() throws Exception {
+    // expect
+    assertThat(Money.interest((1L << 53) + 1, 1.5)).isEqualTo(13_510_798_882_111_490L); // ...489.5
+    assertThat(Money.interest((1L << 53) + 3, 0.3)).isEqualTo(2_702_159_776_422_298L);  // ...298.5
+  }
+
+  @Test
+  public void interest_ThrowsAmountOverflowException_IfInterestIsOutOfRange() {
+    // when
+    Throwable result = catchThrowable(() -> Money.interest(Long.MAX_VALUE, 2.0));
+
+    // then
+    assertThat(result).isInstanceOf(AmountOverflowException.class);
+  }
+
+  @Test
+  public void format_PrintsMajorAndTwoMinorDigits() {
+    // expect
+    assertThat(Money.format(150_00)).isEqualTo("150.00");
+    assertThat(Money.format(1_05)).isEqualTo("1.05");
+    assertThat(Money.format(-100_50)).isEqualTo("-100.50");
+    assertThat(Money.format(-5)).isEqualTo("-0.05");
+    assertThat(Money.format(0)).isEqualTo("0.00");
+  }
+
+}
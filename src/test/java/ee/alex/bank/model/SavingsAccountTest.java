@@ -3,7 +3,6 @@ package ee.alex.bank.model;
 import org.junit.Test;
 import ee.alex.bank.exception.InsufficientFundsException;
 import ee.alex.bank.exception.InvalidAmountException;
-import ee.alex.bank.exception.InvalidInterestRateException;
 import static ee.alex.bank.model.AccountType.SAVINGS;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.catchThrowable;
@@ -14,41 +13,18 @@ import static org.assertj.core.api.Assertions.catchThrowable;
 public class SavingsAccountTest {
 
   @Test
-  public void setInterestRate_UpdatesInterestRate_IfNewInterestRateIsPositive() throws Exception {
+  public void provideInterest_CreditsAtRatesItWasGiven() throws Exception {
     // given
-    assertThat(SavingsAccount.getInterestRate()).isEqualTo(0.2);
+    InterestRates rates = new InterestRates();
+    rates.setInterestRate(0.5);
+    SavingsAccount account = new SavingsAccount("Peter Parker", rates);
+    account.deposit(100_00);
 
     // when
-    SavingsAccount.setInterestRate(0.5);
+    account.provideInterest();
 
     // then
-    assertThat(SavingsAccount.getInterestRate()).isEqualTo(0.5);
-    // return to default value
-    SavingsAccount.setInterestRate(0.2);
-  }
-
-  @Test
-  public void setInterestRate_ThrowsInvalidInterestRateException_IfNewInterestRateIsZero() {
-    // given
-    assertThat(SavingsAccount.getInterestRate()).isEqualTo(0.2);
-
-    // when
-    Throwable result = catchThrowable(() -> SavingsAccount.setInterestRate(0.0));
-
-    // then
-    assertThat(result).isInstanceOf(InvalidInterestRateException.class).hasMessage("Interest rate must be greater than zero");
-  }
-
-  @Test
-  public void setInterestRate_ThrowsInvalidInterestRateException_IfNewInterestRateIsNegative() {
-    // given
-    assertThat(SavingsAccount.getInterestRate()).isEqualTo(0.2);
-
-    // when
-    Throwable result = catchThrowable(() -> SavingsAccount.setInterestRate(-0.5));
-
-    // then
-    assertThat(result).isInstanceOf(InvalidInterestRateException.class).hasMessage("Interest rate must be greater than zero");
+    assertThat(account.getBalance()).isEqualTo(150_00);
   }
 
   @Test
@@ -67,13 +43,13 @@ public class SavingsAccountTest {
   public void withdraw_WithdrawsSpecifiedAmount_IfAmountIsPositive() throws Exception {
     // given
     SavingsAccount account = new SavingsAccount("Peter Parker");
-    account.setBalance(100.0);
+    account.setBalance(100_00);
 
     // when
-    account.withdraw(50.0);
+    account.withdraw(50_00);
 
     // then
-    assertThat(account.getBalance()).isEqualTo(50.0);
+    assertThat(account.getBalance()).isEqualTo(50_00);
   }
 
   @Test
@@ -82,7 +58,7 @@ public class SavingsAccountTest {
     SavingsAccount account = new SavingsAccount("Peter Parker");
 
     // when
-    Throwable result = catchThrowable(() -> account.withdraw(0.0));
+    Throwable result = catchThrowable(() -> account.withdraw(0));
 
     // then
     assertThat(result).isInstanceOf(InvalidAmountException.class).hasMessage("Money amount must be greater than zero");
@@ -94,7 +70,7 @@ public class SavingsAccountTest {
     SavingsAccount account = new SavingsAccount("Peter Parker");
 
     // when
-    Throwable result = catchThrowable(() -> account.withdraw(-50.0));
+    Throwable result = catchThrowable(() -> account.withdraw(-50_00));
 
     // then
     assertThat(result).isInstanceOf(InvalidAmountException.class).hasMessage("Money amount must be greater than zero");
@@ -106,7 +82,7 @@ public class SavingsAccountTest {
     SavingsAccount account = new SavingsAccount("Peter Parker");
 
     // when
-    Throwable result = catchThrowable(() -> account.withdraw(600.0));
+    Throwable result = catchThrowable(() -> account.withdraw(600_00));
 
     // then
     assertThat(result).isInstanceOf(InsufficientFundsException.class).hasMessage("Insufficient funds");
@@ -116,13 +92,13 @@ public class SavingsAccountTest {
   public void deposit_DepositsSpecifiedAmount_IfAmountIsPositive() throws Exception {
     // given
     SavingsAccount account = new SavingsAccount("Peter Parker");
-    assertThat(account.getBalance()).isEqualTo(0.0);
+    assertThat(account.getBalance()).isEqualTo(0);
 
     // when
-    account.deposit(50.0);
+    account.deposit(50_00);
 
     // then
-    assertThat(account.getBalance()).isEqualTo(50.0);
+    assertThat(account.getBalance()).isEqualTo(50_00);
   }
 
   @Test
@@ -131,7 +107,7 @@ public class SavingsAccountTest {
     SavingsAccount account = new SavingsAccount("Peter Parker");
 
     // when
-    Throwable result = catchThrowable(() -> account.deposit(0.0));
+    Throwable result = catchThrowable(() -> account.deposit(0));
 
     // then
     assertThat(result).isInstanceOf(InvalidAmountException.class).hasMessage("Money amount must be greater than zero");
@@ -143,30 +119,30 @@ public class SavingsAccountTest {
     SavingsAccount account = new SavingsAccount("Peter Parker");
 
     // when
-    Throwable result = catchThrowable(() -> account.deposit(-50.0));
+    Throwable result = catchThrowable(() -> account.deposit(-50_00));
 
     // then
     assertThat(result).isInstanceOf(InvalidAmountException.class).hasMessage("Money amount must be greater than zero");
   }
 
   @Test
-  public void provideInterest_IncreasesCurrentBalanceByInterest() {
+  public void provideInterest_IncreasesCurrentBalanceByInterest() throws Exception {
     // given
     SavingsAccount account = new SavingsAccount("Peter Parker");
-    account.setBalance(500.0);
+    account.setBalance(500_00);
 
     // when
-    account.provideInterest(); // 500.0 + 500.0 * 0.2 = 600.0
+    account.provideInterest(); // 500.00 + 500.00 * 0.2 = 600.00
 
     // then
-    assertThat(account.getBalance()).isEqualTo(600.0);
+    assertThat(account.getBalance()).isEqualTo(600_00);
   }
 
   @Test
   public void getDetails_CorrectInformationAboutAccount() throws Exception {
     // given
     SavingsAccount account = new SavingsAccount("Peter Parker");
-    account.deposit(150.0);
+    account.deposit(150_00);
 
     // when
     String result = account.getDetails();
@@ -176,7 +152,7 @@ public class SavingsAccountTest {
         "Account details:\n" +
             "Holder: Peter Parker\n" +
             "Type: savings\n" +
-            "Balance: 150.0\n" +
+            "Balance: 150.00\n" +
             "Interest rate: 0.2\n"
     );
   }
@@ -0,0 +1,153 @@
+package ee.alex.bank.net;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ee.alex.bank.persistence.DurabilityPolicy;
+import ee.alex.bank.persistence.FileJournal;
+import ee.alex.bank.service.BankService;
+import ee.alex.bank.service.OperationStatus;
+import static ee.alex.bank.service.OperationStatus.LIMIT_REACHED;
+import static ee.alex.bank.service.OperationStatus.OK;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Aleksei Kulitškov
+ */
+public class BankServerTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private BankService bankService;
+  private BankServer server;
+
+  @Before
+  public void startServer() throws Exception {
+    bankService = new BankService();
+    server = BankServer.start(bankService, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 2);
+  }
+
+  @After
+  public void stopServer() {
+    server.close();
+  }
+
+  @Test
+  public void receive_AnswersRequestsInOrder_IfRequestsPipelined() throws Exception {
+    // given
+    UUID accountId = bankService.createCheckingAccount("Peter Parker", 0);
+    List<String> responses = new ArrayList<>();
+    try (BankClient client = BankClient.connect(server.getAddress())) {
+      for (int i = 0; i < 1_000; i++) {
+        client.deposit(i, accountId, 1_00);
+      }
+      client.withdraw(1_000, accountId, 2_000_00);
+      client.withdraw(1_001, UUID.randomUUID(), accountId, 500_00);
+
+      // when
+      while (client.getInFlight() > 0) {
+        client.receive((tag, status, openedAccountId) -> {
+          if (tag >= 999) {
+            responses.add(tag + " " + status);
+          }
+        });
+      }
+    }
+
+    // then
+    assertThat(responses).containsExactly("999 OK", "1000 LIMIT_REACHED", "1001 OK");
+    assertThat(bankService.getCustomerBalance("Peter Parker")).isEqualTo(500_00);
+  }
+
+  @Test
+  public void receive_ReturnsAccountNumber_IfAccountOpened() throws Exception {
+    // given
+    List<UUID> accountIds = new ArrayList<>();
+    List<OperationStatus> statuses = new ArrayList<>();
+    try (BankClient client = BankClient.connect(server.getAddress())) {
+      client.openCheckingAccount(1, "Peter Parker", 100_00);
+      client.openSavingsAccount(2, "Rick Grimes");
+      while (client.getInFlight() > 0) {
+        client.receive((tag, status, accountId) -> accountIds.add(accountId));
+      }
+
+      // when
+      client.transfer(3, accountIds.get(0), accountIds.get(1), 50_00);
+      client.transfer(4, accountIds.get(0), accountIds.get(1), 100_00);
+      while (client.getInFlight() > 0) {
+        client.receive((tag, status, accountId) -> statuses.add(status));
+      }
+    }
+
+    // then
+    assertThat(statuses).containsExactly(OK, LIMIT_REACHED);
+    assertThat(bankService.getCustomerBalance("Rick Grimes")).isEqualTo(50_00);
+    assertThat(bankService.getCustomerAccounts("Peter Parker")).containsExactly(accountIds.get(0));
+  }
+
+  @Test
+  public void receive_AnswersPipelinedRequestsAfterOneSync_IfBankHasJournal() throws Exception {
+    // given
+    Path path = folder.getRoot().toPath().resolve("bank.journal");
+    List<OperationStatus> statuses = new ArrayList<>();
+    try (FileJournal journal = FileJournal.open(path, DurabilityPolicy.BATCHED);
+        BankServer journaledServer = BankServer.start(new BankService(journal),
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1);
+        BankClient client = BankClient.connect(journaledServer.getAddress())) {
+      client.openCheckingAccount(0, "Peter Parker", 0);
+      List<UUID> accountIds = new ArrayList<>();
+      while (client.getInFlight() > 0) {
+        client.receive((tag, status, accountId) -> accountIds.add(accountId));
+      }
+      long syncsBefore = journal.getSyncCount();
+      for (int i = 1; i <= 100; i++) {
+        client.deposit(i, accountIds.get(0), 1_00);
+      }
+
+      // when
+      while (client.getInFlight() > 0) {
+        client.receive((tag, status, accountId) -> statuses.add(status));
+      }
+
+      // then
+      assertThat(statuses).hasSize(100).containsOnly(OK);
+      assertThat(journal.getSyncCount() - syncsBefore).isBetween(1L, 10L);
+    }
+  }
+
+  @Test
+  public void server_ClosesConnection_IfOpcodeUnknown() throws Exception {
+    // given
+    try (SocketChannel channel = SocketChannel.open(server.getAddress())) {
+      channel.write(ByteBuffer.allocate(WireProtocol.HEADER_SIZE).putInt(1).put((byte) 42).flip());
+
+      // when
+      int read = readFully(channel);
+
+      // then
+      assertThat(read).isEqualTo(-1);
+    }
+  }
+
+  private static int readFully(SocketChannel channel) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(64);
+    int read;
+    while ((read = channel.read(buffer)) > 0) {
+      buffer.clear();
+    }
+    return read;
+  }
+
+}
@@ -0,0 +1,443 @@
+package ee.alex.bank.persistence;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ee.alex.bank.model.AccountType;
+import ee.alex.bank.model.InterestRateTable;
+import static ee.alex.bank.persistence.DurabilityPolicy.ASYNC;
+import static ee.alex.bank.persistence.DurabilityPolicy.BATCHED;
+import static ee.alex.bank.persistence.DurabilityPolicy.PER_OPERATION;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @author Aleksei Kulitškov
+ */
+public class FileJournalTest {
+
+  private static final UUID ACCOUNT_1 = UUID.fromString("a2d10319-a240-4b29-bcd9-b2a546472747");
+  private static final UUID ACCOUNT_2 = UUID.fromString("52769427-20e4-443a-b7f3-c0989db1b4ea");
+  private static final UUID REQUEST_1 = UUID.fromString("0c6f4a55-7d2e-4b0c-9a3e-5f1b8d2c6e71");
+  private static final UUID REQUEST_2 = UUID.fromString("e3b1f9a2-4c8d-4e6f-8a1b-2d7c9e0f3a54");
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void replay_ReturnsEveryRecordInOrder_IfJournalReopened() throws Exception {
+    // given
+    Path path = folder.getRoot().toPath().resolve("bank.journal");
+    try (FileJournal journal = FileJournal.open(path, BATCHED)) {
+      journal.appendAccountCreated(ACCOUNT_1, AccountType.CHECKING, "Peter Parker", 500_00);
+      journal.appendAccountCreated(ACCOUNT_2, AccountType.SAVINGS, "Rick Grimes", 0);
+      journal.appendDeposited(ACCOUNT_1, 100_00);
+      journal.appendWithdrawn(ACCOUNT_1, 20_00);
+      journal.appendTransferred(ACCOUNT_1, ACCOUNT_2, 30_00);
+      journal.appendLimitChanged(ACCOUNT_1, 800_00);
+      journal.appendInterestPeriodClosed(0, InterestRateTable.flat(0.3));
+      journal.appendInterestAccrued(ACCOUNT_2, 12_00, 1);
+      journal.awaitDurable(journal.appendRateTableChanged(
+          InterestRateTable.flat(0.3).withTiers(AccountType.SAVINGS, new long[] {0, 1000_00}, new double[] {0.1, 0.4})));
+    }
+    List<String> records = new ArrayList<>();
+
+    // when
+    try (FileJournal journal = FileJournal.open(path, BATCHED)) {
+      journal.replay(new RecordingListener(records));
+
+      // then
+      assertThat(journal.getLastSequence()).isEqualTo(9);
+    }
+    assertThat(records).containsExactly(
+        "1 created " + ACCOUNT_1 + " CHECKING Peter Parker 50000",
+        "2 created " + ACCOUNT_2 + " SAVINGS Rick Grimes 0",
+        "3 deposited " + ACCOUNT_1 + " 10000",
+        "4 withdrawn " + ACCOUNT_1 + " 2000",
+        "5 transferred " + ACCOUNT_1 + " " + ACCOUNT_2 + " 3000",
+        "6 limit " + ACCOUNT_1 + " 80000",
+        "7 period 0 0.3",
+        "8 accrued " + ACCOUNT_2 + " 1200 1",
+        "9 rates v1 [0.1 from 0, 0.4 from 100000]");
+  }
+
+  @Test
+  public void replay_ReportsRequestAfterItsChange_IfChangeJournaledWithIdempotencyKey() throws Exception {
+    // given
+    Path path = folder.getRoot().toPath().resolve("bank.journal");
+    try (FileJournal journal = FileJournal.open(path, BATCHED)) {
+      journal.appendDeposited(ACCOUNT_1, 100_00, REQUEST_1, 1_000L);
+      journal.appendRequestRejected(REQUEST_2, 2_000L, 3, 42L);
+      journal.awaitDurable(journal.appendTransferred(ACCOUNT_1, ACCOUNT_2, 30_00));
+    }
+    List<String> records = new ArrayList<>();
+
+    // when
+    try (FileJournal journal = FileJournal.open(path, BATCHED)) {
+      journal.replay(new RecordingListener(records));
+    }
+
+    // then
+    assertThat(records).containsExactly(
+        "1 deposited " + ACCOUNT_1 + " 10000",
+        "1 request " + REQUEST_1 + " 1000 0 0",
+        "2 request " + REQUEST_2 + " 2000 3 42",
+        "3 transferred " + ACCOUNT_1 + " " + ACCOUNT_2 + " 3000");
+  }
+
+  @Test
+  public void open_DropsTornRecordAtEndOfFile() throws Exception {
+    // given
+    Path path = folder.getRoot().toPath().resolve("bank.journal");
+    try (FileJournal journal = FileJournal.open(path, PER_OPERATION)) {
+      journal.appendDeposited(ACCOUNT_1, 100_00);
+      journal.appendDeposited(ACCOUNT_1, 200_00);
+    }
+    try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+      file.setLength(file.length() - 3);
+    }
+    List<String> records = new ArrayList<>();
+
+    // when
+    try (FileJournal journal = FileJournal.open(path, PER_OPERATION)) {
+      journal.replay(new RecordingListener(records));
+      journal.appendDeposited(ACCOUNT_1, 300_00);
+    }
+    try (FileJournal journal = FileJournal.open(path, PER_OPERATION)) {
+      journal.replay(new RecordingListener(records));
+    }
+
+    // then
+    assertThat(records).containsExactly(
+        "1 deposited " + ACCOUNT_1 + " 10000",
+        "1 deposited " + ACCOUNT_1 + " 10000",
+        "2 deposited " + ACCOUNT_1 + " 30000");
+  }
+
+  @Test
+  public void append_ForcesRecordBeforeReturning_IfPolicyIsPerOperation() throws Exception {
+    // given
+    try (FileJournal journal = FileJournal.open(folder.getRoot().toPath().resolve("bank.journal"), PER_OPERATION)) {
+
+      // when
+      long sequence = journal.appendDeposited(ACCOUNT_1, 100_00);
+
+      // then
+      assertThat(journal.getDurableSequence()).isEqualTo(sequence);
+      assertThat(journal.getSyncCount()).isEqualTo(1);
+      appendConcurrently(journal, 4, 250);
+      assertThat(journal.getDurableSequence()).isEqualTo(1_001);
+      assertThat(journal.getSyncCount()).isBetween(2L, 1_001L);
+    }
+  }
+
+  @Test
+  public void append_DoesNotWaitForForceOfOtherRecord_IfPolicyIsPerOperation() throws Exception {
+    // given
+    Path path = folder.getRoot().toPath().resolve("bank.journal");
+    FailingChannel channel = new FailingChannel(FileChannel.open(path, CREATE, READ, WRITE));
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try (FileJournal journal = FileJournal.open(path, channel, PER_OPERATION, 0)) {
+      channel.stalled = new CountDownLatch(1);
+      Future<Long> first = executor.submit(() -> journal.appendDeposited(ACCOUNT_1, 100_00));
+      channel.forcing.await();
+
+      // when
+      Future<Long> second = executor.submit(() -> journal.appendWithdrawn(ACCOUNT_1, 50_00));
+
+      // then
+      while (journal.getLastSequence() < 2) {
+        Thread.sleep(1);
+      }
+      assertThat(first.isDone()).isFalse();
+      channel.stalled.countDown();
+      assertThat(first.get()).isEqualTo(1);
+      assertThat(second.get()).isEqualTo(2);
+      assertThat(journal.getDurableSequence()).isEqualTo(2);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void awaitDurable_CoversManyRecordsWithOneSync_IfPolicyIsBatched() throws Exception {
+    // given
+    try (FileJournal journal = FileJournal.open(folder.getRoot().toPath().resolve("bank.journal"), BATCHED)) {
+
+      // when
+      appendConcurrently(journal, 8, 500);
+
+      // then
+      assertThat(journal.getDurableSequence()).isEqualTo(4_000);
+      // each sync covers the records the other writers appended while the one before it ran
+      assertThat(journal.getSyncCount()).isPositive().isLessThanOrEqualTo(4_000 / 4);
+    }
+  }
+
+  @Test
+  public void close_ForcesPendingRecords_IfPolicyIsAsync() throws Exception {
+    // given
+    Path path = folder.getRoot().toPath().resolve("bank.journal");
+    try (FileJournal journal = FileJournal.open(path, ASYNC, TimeUnit.HOURS.toMillis(1))) {
+      journal.awaitDurable(journal.appendDeposited(ACCOUNT_1, 100_00));
+      assertThat(journal.getDurableSequence()).isZero();
+    }
+    List<String> records = new ArrayList<>();
+
+    // when
+    try (FileJournal journal = FileJournal.open(path, ASYNC)) {
+      journal.replay(new RecordingListener(records));
+    }
+
+    // then
+    assertThat(records).containsExactly("1 deposited " + ACCOUNT_1 + " 10000");
+  }
+
+  @Test
+  public void awaitDurable_ThrowsFromThenOn_IfWriteFailed() throws Exception {
+    // given
+    Path path = folder.getRoot().toPath().resolve("bank.journal");
+    FailingChannel channel = new FailingChannel(FileChannel.open(path, CREATE, READ, WRITE));
+    try (FileJournal journal = FileJournal.open(path, channel, BATCHED, 0)) {
+      journal.awaitDurable(journal.appendDeposited(ACCOUNT_1, 100_00));
+      long lost = journal.appendDeposited(ACCOUNT_1, 200_00);
+      channel.failing = true;
+
+      // when
+      assertThatThrownBy(() -> journal.awaitDurable(lost)).isInstanceOf(UncheckedIOException.class);
+      channel.failing = false;
+
+      // then
+      assertThatThrownBy(() -> journal.awaitDurable(lost)).isInstanceOf(UncheckedIOException.class);
+      assertThatThrownBy(() -> journal.appendDeposited(ACCOUNT_1, 300_00)).isInstanceOf(UncheckedIOException.class);
+      assertThat(journal.getDurableSequence()).isEqualTo(1);
+    }
+    List<String> records = new ArrayList<>();
+    try (FileJournal journal = FileJournal.open(path, BATCHED)) {
+      journal.replay(new RecordingListener(records));
+    }
+    assertThat(records).containsExactly("1 deposited " + ACCOUNT_1 + " 10000");
+  }
+
+  private static void appendConcurrently(FileJournal journal, int threads, int appendsPerThread) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      futures.add(executor.submit(() -> {
+        start.await();
+        for (int i = 0; i < appendsPerThread; i++) {
+          journal.awaitDurable(journal.appendDeposited(ACCOUNT_1, 1_00));
+        }
+        return null;
+      }));
+    }
+    start.countDown();
+    executor.shutdown();
+    assertThat(executor.awaitTermination(2, TimeUnit.MINUTES)).isTrue();
+    for (Future<?> future : futures) {
+      future.get();
+    }
+  }
+
+  /**
+   * File channel that, while failing, writes half of what it is given and then throws, as a full
+   * disk would; while stalled, every force waits until the latch is released, as on a slow disk.
+   */
+  private static class FailingChannel extends FileChannel {
+
+    private final FileChannel file;
+    private final CountDownLatch forcing = new CountDownLatch(1);
+    volatile boolean failing;
+    volatile CountDownLatch stalled;
+
+    FailingChannel(FileChannel file) {
+      this.file = file;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+      if (failing) {
+        src.limit(src.position() + src.remaining() / 2);
+        file.write(src);
+        throw new IOException("No space left on device");
+      }
+      return file.write(src);
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+      return file.read(dst);
+    }
+
+    @Override
+    public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+      return file.read(dsts, offset, length);
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long position() throws IOException {
+      return file.position();
+    }
+
+    @Override
+    public FileChannel position(long newPosition) throws IOException {
+      file.position(newPosition);
+      return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+      return file.size();
+    }
+
+    @Override
+    public FileChannel truncate(long size) throws IOException {
+      file.truncate(size);
+      return this;
+    }
+
+    @Override
+    public void force(boolean metaData) throws IOException {
+      CountDownLatch stalled = this.stalled;
+      if (stalled != null) {
+        forcing.countDown();
+        try {
+          stalled.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException(e);
+        }
+      }
+      file.force(metaData);
+    }
+
+    @Override
+    public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int read(ByteBuffer dst, long position) throws IOException {
+      return file.read(dst, position);
+    }
+
+    @Override
+    public int write(ByteBuffer src, long position) throws IOException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public FileLock lock(long position, long size, boolean shared) throws IOException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    protected void implCloseChannel() throws IOException {
+      file.close();
+    }
+
+  }
+
+  private static class RecordingListener implements JournalListener {
+
+    private final List<String> records;
+
+    RecordingListener(List<String> records) {
+      this.records = records;
+    }
+
+    @Override
+    public void accountCreated(long sequence, UUID accountId, AccountType type, String owner, long limit) {
+      records.add(sequence + " created " + accountId + " " + type + " " + owner + " " + limit);
+    }
+
+    @Override
+    public void deposited(long sequence, UUID accountId, long amount) {
+      records.add(sequence + " deposited " + accountId + " " + amount);
+    }
+
+    @Override
+    public void withdrawn(long sequence, UUID accountId, long amount) {
+      records.add(sequence + " withdrawn " + accountId + " " + amount);
+    }
+
+    @Override
+    public void transferred(long sequence, UUID fromAccountId, UUID toAccountId, long amount) {
+      records.add(sequence + " transferred " + fromAccountId + " " + toAccountId + " " + amount);
+    }
+
+    @Override
+    public void limitChanged(long sequence, UUID accountId, long newLimit) {
+      records.add(sequence + " limit " + accountId + " " + newLimit);
+    }
+
+    @Override
+    public void rateTableChanged(long sequence, InterestRateTable rateTable) {
+      List<String> tiers = new ArrayList<>();
+      for (int tier = 0; tier < rateTable.getTierCount(AccountType.SAVINGS); tier++) {
+        tiers.add(rateTable.getRate(AccountType.SAVINGS, tier) + " from "
+            + rateTable.getTierStart(AccountType.SAVINGS, tier));
+      }
+      records.add(sequence + " rates v" + rateTable.getVersion() + " " + tiers);
+    }
+
+    @Override
+    public void interestPeriodClosed(long sequence, long period, InterestRateTable rateTable) {
+      records.add(sequence + " period " + period + " " + rateTable.getBaseRate(AccountType.SAVINGS));
+    }
+
+    @Override
+    public void interestAccrued(long sequence, UUID accountId, long amount, long accruedPeriod) {
+      records.add(sequence + " accrued " + accountId + " " + amount + " " + accruedPeriod);
+    }
+
+    @Override
+    public void requestCompleted(long sequence, UUID requestId, long requestTime, int status, long fingerprint) {
+      records.add(sequence + " request " + requestId + " " + requestTime + " " + status + " " + fingerprint);
+    }
+
+  }
+
+}
@@ -0,0 +1,155 @@
+package ee.alex.bank.persistence;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ee.alex.bank.model.AccountType;
+import ee.alex.bank.model.InterestRateTable;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Aleksei Kulitškov
+ */
+public class SnapshotTest {
+
+  private static final UUID ACCOUNT_1 = UUID.fromString("a2d10319-a240-4b29-bcd9-b2a546472747");
+  private static final UUID ACCOUNT_2 = UUID.fromString("52769427-20e4-443a-b7f3-c0989db1b4ea");
+  private static final UUID REQUEST_1 = UUID.fromString("0c6f4a55-7d2e-4b0c-9a3e-5f1b8d2c6e71");
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void read_ReturnsEveryWrittenAccountAndHeader_IfSnapshotCommitted() throws Exception {
+    // given
+    Path path = folder.getRoot().toPath().resolve("bank.snapshot");
+    try (SnapshotWriter writer = new SnapshotWriter(path, 3, new JournalCheckpoint(1024, 42), 0.3)) {
+      writer.write(ACCOUNT_1, AccountType.CHECKING, "Peter Parker", -150_00, 500_00, 40);
+      writer.write(ACCOUNT_2, AccountType.SAVINGS, "Jürgen Tõnisson", 90_00, 0, 41);
+      writer.commit();
+    }
+    List<String> accounts = new ArrayList<>();
+
+    // when
+    Snapshot result = Snapshot.read(path);
+    result.forEachAccount((accountId, type, owner, balance, limit, version) ->
+        accounts.add(accountId + " " + type + " " + owner + " " + balance + " " + limit + " " + version));
+
+    // then
+    assertThat(result.getAccountCount()).isEqualTo(2);
+    assertThat(result.getJournalCheckpoint().getPosition()).isEqualTo(1024);
+    assertThat(result.getJournalCheckpoint().getSequence()).isEqualTo(42);
+    assertThat(result.getInterestRate()).isEqualTo(0.3);
+    assertThat(accounts).containsExactly(
+        ACCOUNT_1 + " CHECKING Peter Parker -15000 50000 40",
+        ACCOUNT_2 + " SAVINGS Jürgen Tõnisson 9000 0 41");
+  }
+
+  @Test
+  public void read_ReturnsRateTableWithTiers_IfWrittenWithTiers() throws Exception {
+    // given
+    Path path = folder.getRoot().toPath().resolve("bank.snapshot");
+    InterestRateTable rateTable = InterestRateTable.flat(0.2)
+        .withTiers(AccountType.SAVINGS, new long[] {0, 1000_00, 10_000_00}, new double[] {0.1, 0.2, 0.3});
+    try (SnapshotWriter writer = new SnapshotWriter(path, 1, JournalCheckpoint.START, rateTable, 7)) {
+      writer.write(ACCOUNT_1, AccountType.SAVINGS, "Peter Parker", 10_00, 7, 1);
+      writer.commit();
+    }
+
+    // when
+    Snapshot result = Snapshot.read(path);
+
+    // then
+    assertThat(result.getInterestPeriod()).isEqualTo(7);
+    assertThat(result.getInterestRate()).isEqualTo(0.1);
+    assertThat(result.getRateTable().getVersion()).isEqualTo(1);
+    assertThat(result.getRateTable().getTierCount(AccountType.SAVINGS)).isEqualTo(3);
+    assertThat(result.getRateTable().rate(AccountType.SAVINGS, 5000_00)).isEqualTo(0.2);
+    assertThat(result.getRateTable().rate(AccountType.SAVINGS, 10_000_00)).isEqualTo(0.3);
+  }
+
+  @Test
+  public void forEachRequest_ReportsFingerprintOfRequest_IfWrittenWithOne() throws Exception {
+    // given
+    Path path = folder.getRoot().toPath().resolve("bank.snapshot");
+    writeSnapshotWithRequest(path);
+    List<String> requests = new ArrayList<>();
+
+    // when
+    Snapshot.read(path).forEachRequest(new RequestRecorder(requests));
+
+    // then
+    assertThat(requests).containsExactly("42 " + REQUEST_1 + " 1000 2 77");
+  }
+
+  @Test
+  public void forEachRequest_ReportsNoFingerprint_IfSnapshotOfFirstFormatVersion() throws Exception {
+    // given
+    Path path = folder.getRoot().toPath().resolve("bank.snapshot");
+    writeSnapshotWithRequest(path);
+    // version 1 is the same but for the fingerprint, which ends the file
+    try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+      file.setLength(file.length() - 8);
+      file.seek(4);
+      file.writeInt(1);
+    }
+    List<String> requests = new ArrayList<>();
+
+    // when
+    Snapshot.read(path).forEachRequest(new RequestRecorder(requests));
+
+    // then
+    assertThat(requests).containsExactly("42 " + REQUEST_1 + " 1000 2 0");
+  }
+
+  @Test
+  public void close_KeepsPreviousSnapshot_IfNotCommitted() throws Exception {
+    // given
+    Path path = folder.getRoot().toPath().resolve("bank.snapshot");
+    try (SnapshotWriter writer = new SnapshotWriter(path, 1, JournalCheckpoint.START, 0.2)) {
+      writer.write(ACCOUNT_1, AccountType.SAVINGS, "Peter Parker", 10_00, 0, 1);
+      writer.commit();
+    }
+
+    // when
+    try (SnapshotWriter writer = new SnapshotWriter(path, 1, JournalCheckpoint.START, 0.2)) {
+      writer.write(ACCOUNT_2, AccountType.SAVINGS, "Rick Grimes", 20_00, 0, 2);
+    }
+
+    // then
+    List<UUID> accounts = new ArrayList<>();
+    Snapshot.read(path).forEachAccount((accountId, type, owner, balance, limit, version) -> accounts.add(accountId));
+    assertThat(accounts).containsExactly(ACCOUNT_1);
+    assertThat(Files.list(folder.getRoot().toPath())).containsExactly(path);
+  }
+
+  private static void writeSnapshotWithRequest(Path path) throws Exception {
+    try (SnapshotWriter writer = new SnapshotWriter(path, 1, new JournalCheckpoint(1024, 42), 0.2)) {
+      writer.write(ACCOUNT_1, AccountType.CHECKING, "Peter Parker", 10_00, 0, 40);
+      writer.writeRequest(REQUEST_1, 1_000, 2, 77);
+      writer.commit();
+    }
+  }
+
+  private static class RequestRecorder implements JournalListener {
+
+    private final List<String> requests;
+
+    RequestRecorder(List<String> requests) {
+      this.requests = requests;
+    }
+
+    @Override
+    public void requestCompleted(long sequence, UUID requestId, long requestTime, int status, long fingerprint) {
+      requests.add(sequence + " " + requestId + " " + requestTime + " " + status + " " + fingerprint);
+    }
+
+  }
+
+}
@@ -0,0 +1,122 @@
+package ee.alex.bank.service;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ee.alex.bank.model.AccountIdGenerator;
+import ee.alex.bank.model.AccountType;
+import ee.alex.bank.persistence.DurabilityPolicy;
+import ee.alex.bank.persistence.FileJournal;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Aleksei Kulitškov
+ */
+public class AccountImporterTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void importCsv_OpensAccountsAndRejectsInvalidRecords_IfFileMixed() throws Exception {
+    // given
+    Path file = folder.getRoot().toPath().resolve("accounts.csv");
+    Files.write(file, ("owner,type,limit,balance\n"
+        + "Peter Parker,CHECKING,50000,-10000\n"
+        + "\"Grimes, Rick \"\"The Sheriff\"\"\",savings,0,250\r\n"
+        + "Tony Stark,CHECKING,100,-200\n"
+        + "Bruce Wayne,PLATINUM,0,0\n"
+        + "Clark Kent,SAVINGS,0,12x\n"
+        + "Diana Prince,SAVINGS,0,42").getBytes(StandardCharsets.UTF_8));
+    BankService bankService = new BankService();
+
+    // when
+    ImportReport report = new AccountImporter(bankService).importCsv(file);
+
+    // then
+    assertThat(report.getImported()).isEqualTo(3);
+    assertThat(report.getRejected()).isEqualTo(3);
+    assertThat(report.getErrors()).hasSize(3);
+    assertThat(report.getErrors().get(0)).contains("Limit reached");
+    assertThat(bankService.getCustomerBalance("Peter Parker")).isEqualTo(-100_00);
+    assertThat(bankService.getCustomerBalance("Grimes, Rick \"The Sheriff\"")).isEqualTo(250);
+    assertThat(bankService.getCustomerBalance("Diana Prince")).isEqualTo(42);
+    assertThat(bankService.getCustomerAccounts("Bruce Wayne")).isEmpty();
+  }
+
+  @Test
+  public void importBinary_ImportsEveryRecordAndReportsProgress_IfFileSpansManyChunks() throws Exception {
+    // given
+    Path file = folder.getRoot().toPath().resolve("accounts.bin");
+    int count = 100_000;
+    try (OutputStream out = Files.newOutputStream(file);
+        AccountImporter.BinaryWriter writer = new AccountImporter.BinaryWriter(out)) {
+      for (int i = 0; i < count; i++) {
+        writer.write(i % 2 == 0 ? AccountType.SAVINGS : AccountType.CHECKING, "Customer " + (i % 1000), 100, 1);
+      }
+    }
+    BankService bankService = new BankService();
+    List<ImportReport> reports = new ArrayList<>();
+
+    // when
+    ImportReport report = new AccountImporter(bankService, 3, reports::add, 0).importBinary(file);
+
+    // then
+    assertThat(report.getImported()).isEqualTo(count);
+    assertThat(report.getRejected()).isZero();
+    assertThat(report.getBytesRead()).isEqualTo(Files.size(file));
+    assertThat(report.getProgress()).isEqualTo(1.0);
+    assertThat(reports.size()).isGreaterThan(1);
+    assertThat(reports.get(reports.size() - 1).getImported()).isEqualTo(count);
+    assertThat(bankService.getCustomerBalance("Customer 7")).isEqualTo(100);
+  }
+
+  @Test
+  public void importCsv_NumbersAccountsWithGivenGenerator_IfOneGiven() throws Exception {
+    // given
+    Path file = folder.getRoot().toPath().resolve("accounts.csv");
+    Files.write(file, "Peter Parker,CHECKING,50000,0\nRick Grimes,SAVINGS,0,250\n".getBytes(StandardCharsets.UTF_8));
+    BankService bankService = new BankService();
+    AtomicLong next = new AtomicLong();
+    AccountIdGenerator accountIds = () -> new UUID(0, next.incrementAndGet());
+
+    // when
+    ImportReport report = new AccountImporter(bankService, 1, accountIds, AccountImporter.Progress.NONE, 0)
+        .importCsv(file);
+
+    // then
+    assertThat(report.getImported()).isEqualTo(2);
+    assertThat(bankService.getCustomerAccounts("Peter Parker")).containsExactly(new UUID(0, 1));
+    assertThat(bankService.getCustomerAccounts("Rick Grimes")).containsExactly(new UUID(0, 2));
+  }
+
+  @Test
+  public void recover_RestoresImportedBalances_IfJournalReplayed() throws Exception {
+    // given
+    Path csv = folder.getRoot().toPath().resolve("accounts.csv");
+    Files.write(csv, "Peter Parker,CHECKING,50000,-10000\nRick Grimes,SAVINGS,0,25000\n".getBytes(StandardCharsets.UTF_8));
+    Path path = folder.getRoot().toPath().resolve("bank.journal");
+    try (FileJournal journal = FileJournal.open(path, DurabilityPolicy.BATCHED)) {
+      new AccountImporter(new BankService(journal)).importCsv(csv);
+    }
+
+    // when
+    BankService result;
+    try (FileJournal journal = FileJournal.open(path, DurabilityPolicy.BATCHED)) {
+      result = BankService.recover(journal);
+    }
+
+    // then
+    assertThat(result.getCustomerBalance("Peter Parker")).isEqualTo(-10000);
+    assertThat(result.getCustomerBalance("Rick Grimes")).isEqualTo(25000);
+  }
+
+}
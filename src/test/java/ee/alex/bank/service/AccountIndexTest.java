@@ -0,0 +1,130 @@
+package ee.alex.bank.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import ee.alex.bank.model.Account;
+import ee.alex.bank.model.CheckingAccount;
+import ee.alex.bank.model.SavingsAccount;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Aleksei Kulitškov
+ */
+public class AccountIndexTest {
+
+  @Test
+  public void get_ReturnsAccount_IfAccountWasPut() {
+    // given
+    AccountIndex index = new AccountIndex();
+    Account account = new SavingsAccount("Peter Parker");
+
+    // when
+    index.put(account);
+
+    // then
+    assertThat(index.get(account.getAccountId())).isSameAs(account);
+  }
+
+  @Test
+  public void get_ReturnsAccount_IfLookedUpByEqualButNotSameUuid() {
+    // given
+    AccountIndex index = new AccountIndex();
+    Account account = new CheckingAccount("Peter Parker", 500_00);
+    index.put(account);
+
+    // when
+    Account result = index.get(UUID.fromString(account.getAccountId().toString()));
+
+    // then
+    assertThat(result).isSameAs(account);
+  }
+
+  @Test
+  public void get_ReturnsNull_IfAccountNotFound() {
+    // given
+    AccountIndex index = new AccountIndex();
+    index.put(new SavingsAccount("Peter Parker"));
+
+    // when
+    Account result = index.get(UUID.fromString("52769427-20e4-443a-b7f3-c0989db1b4ea"));
+
+    // then
+    assertThat(result).isNull();
+  }
+
+  @Test
+  public void put_ReturnsFalseAndKeepsFirstAccount_IfAccountNumberAlreadyIndexed() {
+    // given
+    AccountIndex index = new AccountIndex();
+    Account account = new SavingsAccount("Peter Parker");
+    index.put(account);
+
+    // when
+    boolean result = index.put(account);
+
+    // then
+    assertThat(result).isFalse();
+    assertThat(index.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void put_GrowsIndex_IfMoreAccountsThanExpectedSize() {
+    // given
+    AccountIndex index = new AccountIndex(1);
+    List<Account> accounts = new ArrayList<>();
+    for (int i = 0; i < 10_000; i++) {
+      accounts.add(new SavingsAccount("Owner " + i));
+    }
+
+    // when
+    accounts.forEach(index::put);
+
+    // then
+    assertThat(index.size()).isEqualTo(10_000);
+    accounts.forEach(it -> assertThat(index.get(it.getAccountId())).isSameAs(it));
+  }
+
+  @Test
+  public void get_FindsEveryAccount_IfAccountsArePutAndReadConcurrently() throws Exception {
+    // given
+    AccountIndex index = new AccountIndex(16);
+    int threads = 8;
+    int accountsPerThread = 5_000;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<Integer>> misses = new ArrayList<>();
+
+    // when
+    for (int t = 0; t < threads; t++) {
+      misses.add(executor.submit(() -> {
+        start.await();
+        int missed = 0;
+        for (int i = 0; i < accountsPerThread; i++) {
+          Account account = new SavingsAccount("Owner " + i);
+          index.put(account);
+          if (index.get(account.getAccountId()) != account) {
+            missed++;
+          }
+        }
+        return missed;
+      }));
+    }
+    start.countDown();
+    executor.shutdown();
+    assertThat(executor.awaitTermination(1, TimeUnit.MINUTES)).isTrue();
+
+    // then
+    for (Future<Integer> missed : misses) {
+      assertThat(missed.get()).isZero();
+    }
+    assertThat(index.size()).isEqualTo(threads * accountsPerThread);
+  }
+
+}
@@ -0,0 +1,55 @@
+package ee.alex.bank.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import org.junit.Test;
+import static ee.alex.bank.service.OperationStatus.OK;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Aleksei Kulitškov
+ */
+public class BankFrontEndTest {
+
+  @Test
+  public void submit_AppliesEveryOperation_IfManyRequestsInFlight() throws Exception {
+    // given
+    BankService bankService = new BankService();
+    UUID from = bankService.createCheckingAccount("Peter Parker", 0);
+    UUID to = bankService.createSavingsAccount("Rick Grimes");
+    bankService.depositMoney(from, 10_000_00);
+    List<CompletableFuture<OperationStatus>> results = new ArrayList<>();
+
+    // when
+    try (BankFrontEnd frontEnd = new BankFrontEnd(bankService)) {
+      for (int i = 0; i < 10_000; i++) {
+        results.add(frontEnd.submit(Operation.transfer(from, to, 1_00)));
+      }
+    }
+
+    // then
+    for (CompletableFuture<OperationStatus> result : results) {
+      assertThat(result.get()).isEqualTo(OK);
+    }
+    assertThat(bankService.findAccount(from).getBalance()).isZero();
+    assertThat(bankService.findAccount(to).getBalance()).isEqualTo(10_000_00);
+  }
+
+  @Test
+  public void submit_ReturnsResultOfRequest() throws Exception {
+    // given
+    BankService bankService = new BankService();
+
+    // when
+    UUID result;
+    try (BankFrontEnd frontEnd = new BankFrontEnd(bankService)) {
+      result = frontEnd.submit(bank -> bank.createSavingsAccount("Peter Parker")).get();
+    }
+
+    // then
+    assertThat(bankService.getCustomerAccounts("Peter Parker")).containsExactly(result);
+  }
+
+}
@@ -0,0 +1,170 @@
+package ee.alex.bank.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Aleksei Kulitškov
+ */
+public class BankServiceConcurrencyTest {
+
+  private static final int THREADS = 8;
+  private static final int OPERATIONS_PER_THREAD = 5_000;
+
+  @Test
+  public void depositMoney_KeepsEveryDeposit_IfManyThreadsDepositToSameAccounts() throws Exception {
+    // given
+    BankService bankService = new BankService();
+    List<UUID> accountIds = createAccounts(bankService, 4);
+
+    // when
+    runConcurrently(() -> {
+      ThreadLocalRandom random = ThreadLocalRandom.current();
+      for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+        bankService.depositMoney(accountIds.get(random.nextInt(accountIds.size())), 1_00);
+      }
+    });
+
+    // then
+    assertThat(totalBalance(bankService, accountIds)).isEqualTo(THREADS * OPERATIONS_PER_THREAD * 1_00L);
+  }
+
+  @Test
+  public void withdrawMoneyAndDepositMoney_ConserveTotalMoney_IfManyThreadsMoveMoneyConcurrently() throws Exception {
+    // given
+    BankService bankService = new BankService();
+    List<UUID> accountIds = createAccounts(bankService, 16);
+    for (UUID accountId : accountIds) {
+      bankService.depositMoney(accountId, 1000_00);
+    }
+
+    // when
+    runConcurrently(() -> {
+      ThreadLocalRandom random = ThreadLocalRandom.current();
+      for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+        UUID accountId = accountIds.get(random.nextInt(accountIds.size()));
+        bankService.withdrawMoney(accountId, 5_00);
+        bankService.depositMoney(accountIds.get(random.nextInt(accountIds.size())), 5_00);
+      }
+    });
+
+    // then
+    assertThat(totalBalance(bankService, accountIds)).isEqualTo(16 * 1000_00);
+  }
+
+  @Test
+  public void withdrawMoney_NeverPassesLimit_IfManyThreadsWithdrawFromSameAccount() throws Exception {
+    // given
+    BankService bankService = new BankService();
+    UUID accountId = bankService.createCheckingAccount("Owner", 1_000_00);
+    bankService.depositMoney(accountId, 1_000_00);
+    AtomicLong withdrawn = new AtomicLong();
+
+    // when
+    runConcurrently(() -> {
+      for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+        if (bankService.withdrawMoney(accountId, 3_00).isSuccess()) {
+          withdrawn.addAndGet(3_00);
+        }
+      }
+    });
+
+    // then
+    assertThat(bankService.findAccount(accountId).getBalance())
+        .isEqualTo(1_000_00 - withdrawn.get())
+        .isGreaterThan(-1_000_00 - 3_00);
+  }
+
+  @Test
+  public void withdrawMoney_NeverPassesLimit_IfManyThreadsDepositToAndWithdrawFromHotAccount() throws Exception {
+    // given
+    BankService bankService = new BankService();
+    UUID accountId = bankService.createCheckingAccount("Owner", 1_000_00);
+    assertThat(bankService.enableHotDeposits(accountId)).isEqualTo(OperationStatus.OK);
+    AtomicLong withdrawn = new AtomicLong();
+
+    // when
+    runConcurrently(() -> {
+      for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+        bankService.depositMoney(accountId, 1_00);
+        if (bankService.withdrawMoney(accountId, 3_00).isSuccess()) {
+          withdrawn.addAndGet(3_00);
+        }
+      }
+    });
+
+    // then
+    assertThat(bankService.findAccount(accountId).getBalance())
+        .isEqualTo(THREADS * OPERATIONS_PER_THREAD * 1_00L - withdrawn.get())
+        .isGreaterThanOrEqualTo(-1_000_00);
+  }
+
+  @Test
+  public void transferMoney_ConservesTotalMoney_IfAccountsOwnedByShards() throws Exception {
+    // given
+    try (BankService bankService = new BankService(new ObjectAccountStore(), 4)) {
+      List<UUID> accountIds = createAccounts(bankService, 16);
+      for (UUID accountId : accountIds) {
+        bankService.depositMoney(accountId, 1000_00);
+      }
+
+      // when
+      runConcurrently(() -> {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+          bankService.transferMoney(accountIds.get(random.nextInt(accountIds.size())),
+              accountIds.get(random.nextInt(accountIds.size())), 7_00);
+        }
+      });
+
+      // then
+      assertThat(totalBalance(bankService, accountIds)).isEqualTo(16 * 1000_00L);
+    }
+  }
+
+  private static List<UUID> createAccounts(BankService bankService, int count) {
+    List<UUID> accountIds = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      accountIds.add(bankService.createCheckingAccount("Owner " + i, 1_000_000_00));
+    }
+    return accountIds;
+  }
+
+  private static long totalBalance(BankService bankService, List<UUID> accountIds) throws Exception {
+    long total = 0;
+    for (UUID accountId : accountIds) {
+      total += bankService.findAccount(accountId).getBalance();
+    }
+    return total;
+  }
+
+  private static void runConcurrently(Runnable task) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int t = 0; t < THREADS; t++) {
+      futures.add(executor.submit(() -> {
+        start.await();
+        task.run();
+        return null;
+      }));
+    }
+    start.countDown();
+    executor.shutdown();
+    assertThat(executor.awaitTermination(2, TimeUnit.MINUTES)).isTrue();
+    for (Future<?> future : futures) {
+      future.get();
+    }
+  }
+
+}
@@ -0,0 +1,355 @@
+package ee.alex.bank.service;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ee.alex.bank.model.CheckingAccount;
+import ee.alex.bank.model.SavingsAccount;
+import ee.alex.bank.persistence.DurabilityPolicy;
+import ee.alex.bank.persistence.FileJournal;
+import static ee.alex.bank.model.AccountType.SAVINGS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+/**
+ * @author Aleksei Kulitškov
+ */
+public class BankServiceRecoveryTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void recover_RestoresNoAccount_IfAccountNumberWasTaken() throws Exception {
+    // given
+    Path path = folder.getRoot().toPath().resolve("bank.journal");
+    UUID accountId = new UUID(0, 1);
+    try (FileJournal journal = FileJournal.open(path, DurabilityPolicy.BATCHED)) {
+      BankService bankService = new BankService(journal);
+      bankService.setAccountIdGenerator(() -> accountId);
+      bankService.createCheckingAccount("Peter Parker", 500_00);
+      bankService.depositMoney(accountId, 100_00);
+      catchThrowable(() -> bankService.createSavingsAccount("Rick Grimes"));
+    }
+
+    // when
+    BankService result;
+    try (FileJournal journal = FileJournal.open(path, DurabilityPolicy.BATCHED)) {
+      result = BankService.recover(journal);
+    }
+
+    // then
+    assertThat(result.findAccount(accountId)).isInstanceOfSatisfying(CheckingAccount.class, it -> {
+      assertThat(it.getOwner()).isEqualTo("Peter Parker");
+      assertThat(it.getBalance()).isEqualTo(100_00);
+    });
+    assertThat(result.getCustomerAccounts("Rick Grimes")).isEmpty();
+  }
+
+  @Test
+  public void recover_RestoresAccountsAndBalances_IfJournalReplayed() throws Exception {
+    // given
+    Path path = folder.getRoot().toPath().resolve("bank.journal");
+    UUID checkingAccountId;
+    UUID savingsAccountId;
+    try (FileJournal journal = FileJournal.open(path, DurabilityPolicy.BATCHED)) {
+      BankService bankService = new BankService(journal);
+      checkingAccountId = bankService.createCheckingAccount("Peter Parker", 500_00);
+      savingsAccountId = bankService.createSavingsAccount("Rick Grimes");
+      bankService.depositMoney(checkingAccountId, 100_00);
+      bankService.withdrawMoney(checkingAccountId, 300_00);
+      bankService.withdrawMoney(checkingAccountId, 900_00);
+      bankService.transferMoney(checkingAccountId, savingsAccountId, 50_00);
+      bankService.changeCheckingAccountLimit(checkingAccountId, 700_00);
+      bankService.submitBatch(Arrays.asList(
+          Operation.deposit(savingsAccountId, 50_00),
+          Operation.transfer(checkingAccountId, savingsAccountId, 100_00)));
+      bankService.provideInterestToAllUsers();
+    }
+
+    // when
+    BankService result;
+    try (FileJournal journal = FileJournal.open(path, DurabilityPolicy.BATCHED)) {
+      result = BankService.recover(journal);
+    }
+
+    // then
+    assertThat(result.findAccount(checkingAccountId)).isInstanceOfSatisfying(CheckingAccount.class, it -> {
+      assertThat(it.getOwner()).isEqualTo("Peter Parker");
+      assertThat(it.getBalance()).isEqualTo(-350_00);
+      assertThat(it.getLimit()).isEqualTo(700_00);
+    });
+    assertThat(result.findAccount(savingsAccountId)).isInstanceOfSatisfying(SavingsAccount.class, it -> {
+      assertThat(it.getOwner()).isEqualTo("Rick Grimes");
+      assertThat(it.getBalance()).isEqualTo(240_00);
+    });
+  }
+
+  @Test
+  public void recover_RestoresSameState_IfSnapshotTakenBetweenChanges() throws Exception {
+    // given
+    Path journalPath = folder.getRoot().toPath().resolve("bank.journal");
+    Path snapshotPath = folder.getRoot().toPath().resolve("bank.snapshot");
+    UUID checkingAccountId;
+    UUID savingsAccountId;
+    UUID laterAccountId;
+    try (FileJournal journal = FileJournal.open(journalPath, DurabilityPolicy.BATCHED)) {
+      BankService bankService = new BankService(journal);
+      checkingAccountId = bankService.createCheckingAccount("Peter Parker", 500_00);
+      savingsAccountId = bankService.createSavingsAccount("Rick Grimes");
+      bankService.depositMoney(checkingAccountId, 100_00);
+      bankService.transferMoney(checkingAccountId, savingsAccountId, 50_00);
+      bankService.updateInterestRate(0.5);
+
+      bankService.takeSnapshot(snapshotPath);
+
+      laterAccountId = bankService.createSavingsAccount("Glenn Rhee");
+      bankService.withdrawMoney(checkingAccountId, 300_00);
+      bankService.changeCheckingAccountLimit(checkingAccountId, 700_00);
+      bankService.transferMoney(checkingAccountId, laterAccountId, 20_00);
+      bankService.provideInterestToAllUsers();
+    }
+
+    // when
+    BankService result;
+    try (FileJournal journal = FileJournal.open(journalPath, DurabilityPolicy.BATCHED)) {
+      result = BankService.recover(snapshotPath, journal);
+    }
+
+    // then
+    assertThat(result.getRateTable().getBaseRate(SAVINGS)).isEqualTo(0.5);
+    assertThat(result.findAccount(checkingAccountId)).isInstanceOfSatisfying(CheckingAccount.class, it -> {
+      assertThat(it.getOwner()).isEqualTo("Peter Parker");
+      assertThat(it.getBalance()).isEqualTo(-270_00);
+      assertThat(it.getLimit()).isEqualTo(700_00);
+    });
+    assertThat(result.findAccount(savingsAccountId).getBalance()).isEqualTo(75_00);
+    assertThat(result.findAccount(laterAccountId).getBalance()).isEqualTo(30_00);
+  }
+
+  @Test
+  public void recover_CreditsPendingInterestAtRateOfItsPeriod_IfPeriodsClosedAroundSnapshot() throws Exception {
+    // given
+    Path journalPath = folder.getRoot().toPath().resolve("bank.journal");
+    Path snapshotPath = folder.getRoot().toPath().resolve("bank.snapshot");
+    UUID savingsAccountId;
+    try (FileJournal journal = FileJournal.open(journalPath, DurabilityPolicy.BATCHED)) {
+      BankService bankService = new BankService(journal);
+      savingsAccountId = bankService.createSavingsAccount("Rick Grimes");
+      bankService.depositMoney(savingsAccountId, 100_00);
+      bankService.closeInterestPeriod();
+      bankService.updateInterestRate(0.5);
+
+      bankService.takeSnapshot(snapshotPath);
+
+      bankService.closeInterestPeriod();
+      bankService.updateInterestRate(0.1);
+    }
+
+    // when
+    BankService result;
+    try (FileJournal journal = FileJournal.open(journalPath, DurabilityPolicy.BATCHED)) {
+      result = BankService.recover(snapshotPath, journal);
+      assertThat(result.findAccount(savingsAccountId).getBalance()).isEqualTo(120_00);
+      result.depositMoney(savingsAccountId, 1_00);
+    }
+
+    // then
+    assertThat(result.getRateTable().getBaseRate(SAVINGS)).isEqualTo(0.1);
+    assertThat(result.findAccount(savingsAccountId).getBalance()).isEqualTo(181_00);
+  }
+
+  @Test
+  public void recover_KeepsChangesMadeAfterRecovery_IfCrashedBeforeJournalReachedDisk() throws Exception {
+    // given
+    Path journalPath = folder.getRoot().toPath().resolve("bank.journal");
+    Path snapshotPath = folder.getRoot().toPath().resolve("bank.snapshot");
+    // never closed and never flushed in the background, so what it did not force is lost as in a crash
+    FileJournal crashed = FileJournal.open(journalPath, DurabilityPolicy.ASYNC, TimeUnit.HOURS.toMillis(1));
+    BankService bankService = new BankService(crashed);
+    UUID accountId = bankService.createSavingsAccount("Rick Grimes");
+    bankService.depositMoney(accountId, 100_00);
+    bankService.takeSnapshot(snapshotPath);
+    bankService.depositMoney(accountId, 10_00);
+
+    // when
+    try (FileJournal journal = FileJournal.open(journalPath, DurabilityPolicy.ASYNC)) {
+      BankService.recover(snapshotPath, journal).depositMoney(accountId, 5_00);
+    }
+    BankService result;
+    try (FileJournal journal = FileJournal.open(journalPath, DurabilityPolicy.ASYNC)) {
+      result = BankService.recover(snapshotPath, journal);
+    }
+
+    // then
+    assertThat(result.findAccount(accountId).getBalance()).isEqualTo(105_00);
+  }
+
+  @Test
+  public void recover_ConservesTotalMoney_IfSnapshotTakenDuringTransfers() throws Exception {
+    // given
+    Path journalPath = folder.getRoot().toPath().resolve("bank.journal");
+    Path snapshotPath = folder.getRoot().toPath().resolve("bank.snapshot");
+    List<UUID> accountIds = new ArrayList<>();
+    List<Long> balances = new ArrayList<>();
+    try (FileJournal journal = FileJournal.open(journalPath, DurabilityPolicy.BATCHED)) {
+      BankService bankService = new BankService(journal);
+      for (int i = 0; i < 32; i++) {
+        accountIds.add(bankService.createCheckingAccount("Owner " + i, 1_000_000_00));
+      }
+      int threads = 4;
+      ExecutorService executor = Executors.newFixedThreadPool(threads);
+      CountDownLatch start = new CountDownLatch(1);
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        futures.add(executor.submit(() -> {
+          start.await();
+          ThreadLocalRandom random = ThreadLocalRandom.current();
+          for (int i = 0; i < 2_000; i++) {
+            bankService.transferMoney(accountIds.get(random.nextInt(accountIds.size())),
+                accountIds.get(random.nextInt(accountIds.size())), 1 + random.nextInt(100));
+          }
+          return null;
+        }));
+      }
+
+      // when
+      start.countDown();
+      bankService.takeSnapshot(snapshotPath);
+      executor.shutdown();
+      assertThat(executor.awaitTermination(1, TimeUnit.MINUTES)).isTrue();
+      for (Future<?> future : futures) {
+        future.get();
+      }
+      for (UUID accountId : accountIds) {
+        balances.add(bankService.findAccount(accountId).getBalance());
+      }
+    }
+    BankService result;
+    try (FileJournal journal = FileJournal.open(journalPath, DurabilityPolicy.BATCHED)) {
+      result = BankService.recover(snapshotPath, journal);
+    }
+
+    // then
+    long total = 0;
+    for (int i = 0; i < accountIds.size(); i++) {
+      long balance = result.findAccount(accountIds.get(i)).getBalance();
+      assertThat(balance).isEqualTo(balances.get(i));
+      total += balance;
+    }
+    assertThat(total).isZero();
+  }
+
+  @Test
+  public void recover_RemembersRequestsWithIdempotencyKeys_IfJournalReplayed() throws Exception {
+    // given
+    Path path = folder.getRoot().toPath().resolve("bank.journal");
+    UUID fromAccountId;
+    UUID toAccountId;
+    UUID transferId = UUID.randomUUID();
+    UUID limitChangeId = UUID.randomUUID();
+    try (FileJournal journal = FileJournal.open(path, DurabilityPolicy.BATCHED)) {
+      BankService bankService = new BankService(journal);
+      fromAccountId = bankService.createCheckingAccount("Peter Parker", 500_00);
+      toAccountId = bankService.createSavingsAccount("Rick Grimes");
+      bankService.transferMoney(transferId, fromAccountId, toAccountId, 100_00);
+      bankService.changeCheckingAccountLimit(limitChangeId, toAccountId, 700_00);
+    }
+
+    // when
+    OperationStatus transfer;
+    OperationStatus limitChange;
+    OperationStatus reusedTransfer;
+    OperationStatus reusedLimitChange;
+    BankService result;
+    try (FileJournal journal = FileJournal.open(path, DurabilityPolicy.BATCHED)) {
+      result = BankService.recover(journal);
+      transfer = result.transferMoney(transferId, fromAccountId, toAccountId, 100_00);
+      limitChange = result.changeCheckingAccountLimit(limitChangeId, toAccountId, 700_00);
+      reusedTransfer = result.transferMoney(transferId, fromAccountId, toAccountId, 200_00);
+      reusedLimitChange = result.changeCheckingAccountLimit(limitChangeId, fromAccountId, 700_00);
+    }
+
+    // then
+    assertThat(transfer).isEqualTo(OperationStatus.OK);
+    assertThat(limitChange).isEqualTo(OperationStatus.WRONG_ACCOUNT_TYPE);
+    assertThat(reusedTransfer).isEqualTo(OperationStatus.IDEMPOTENCY_KEY_REUSED);
+    assertThat(reusedLimitChange).isEqualTo(OperationStatus.IDEMPOTENCY_KEY_REUSED);
+    assertThat(result.findAccount(fromAccountId).getBalance()).isEqualTo(-100_00);
+    assertThat(result.findAccount(toAccountId).getBalance()).isEqualTo(100_00);
+    assertThat(((CheckingAccount) result.findAccount(fromAccountId)).getLimit()).isEqualTo(500_00);
+  }
+
+  @Test
+  public void recover_RemembersRequestsFromBeforeSnapshot_IfRecoveredFromSnapshot() throws Exception {
+    // given
+    Path journalPath = folder.getRoot().toPath().resolve("bank.journal");
+    Path snapshotPath = folder.getRoot().toPath().resolve("bank.snapshot");
+    UUID accountId;
+    UUID depositId = UUID.randomUUID();
+    UUID laterDepositId = UUID.randomUUID();
+    try (FileJournal journal = FileJournal.open(journalPath, DurabilityPolicy.BATCHED)) {
+      BankService bankService = new BankService(journal);
+      accountId = bankService.createCheckingAccount("Peter Parker", 0);
+      bankService.depositMoney(depositId, accountId, 100_00);
+      bankService.takeSnapshot(snapshotPath);
+      bankService.depositMoney(laterDepositId, accountId, 10_00);
+    }
+
+    // when
+    BankService result;
+    OperationStatus reusedDeposit;
+    try (FileJournal journal = FileJournal.open(journalPath, DurabilityPolicy.BATCHED)) {
+      result = BankService.recover(snapshotPath, journal);
+      result.depositMoney(depositId, accountId, 100_00);
+      result.depositMoney(laterDepositId, accountId, 10_00);
+      reusedDeposit = result.depositMoney(depositId, accountId, 50_00);
+    }
+
+    // then
+    assertThat(reusedDeposit).isEqualTo(OperationStatus.IDEMPOTENCY_KEY_REUSED);
+    assertThat(result.getIdempotencyCache().size()).isEqualTo(2);
+    assertThat(result.findAccount(accountId).getBalance()).isEqualTo(110_00);
+  }
+
+  @Test
+  public void recover_RestoresAccountsIntoColumnarStore_IfSnapshotAndJournalReplayed() throws Exception {
+    // given
+    Path journalPath = folder.getRoot().toPath().resolve("bank.journal");
+    Path snapshotPath = folder.getRoot().toPath().resolve("bank.snapshot");
+    UUID checkingAccountId;
+    UUID savingsAccountId;
+    try (FileJournal journal = FileJournal.open(journalPath, DurabilityPolicy.BATCHED)) {
+      BankService bankService = new BankService(journal, new ColumnarAccountStore());
+      checkingAccountId = bankService.createCheckingAccount("Peter Parker", 500_00);
+      savingsAccountId = bankService.createSavingsAccount("Rick Grimes");
+      bankService.transferMoney(checkingAccountId, savingsAccountId, 100_00);
+      bankService.takeSnapshot(snapshotPath);
+      bankService.changeCheckingAccountLimit(checkingAccountId, 700_00);
+      bankService.provideInterestToAllUsers();
+    }
+
+    // when
+    BankService result;
+    try (FileJournal journal = FileJournal.open(journalPath, DurabilityPolicy.BATCHED)) {
+      result = BankService.recover(snapshotPath, journal, ColumnarAccountStore::new);
+    }
+
+    // then
+    assertThat(result.getAccountDetails(checkingAccountId))
+        .isEqualTo("Account details:\nHolder: Peter Parker\nType: checking\nBalance: -100.00\nLimit: 700.00\n");
+    assertThat(result.findAccount(savingsAccountId).getBalance()).isEqualTo(120_00);
+  }
+
+}
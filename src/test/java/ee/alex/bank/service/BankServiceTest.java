@@ -1,29 +1,34 @@
 package ee.alex.bank.service;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
 import java.util.UUID;
 import org.junit.Test;
-import org.junit.runner.RunWith;
-import org.powermock.core.classloader.annotations.PrepareForTest;
-import org.powermock.modules.junit4.PowerMockRunner;
 import ee.alex.bank.exception.AccountErrorException;
 import ee.alex.bank.model.Account;
+import ee.alex.bank.model.AccountIdGenerator;
 import ee.alex.bank.model.CheckingAccount;
 import ee.alex.bank.model.SavingsAccount;
 import static ee.alex.bank.model.AccountType.CHECKING;
 import static ee.alex.bank.model.AccountType.SAVINGS;
+import static ee.alex.bank.service.OperationStatus.ACCOUNT_NOT_FOUND;
+import static ee.alex.bank.service.OperationStatus.INSUFFICIENT_FUNDS;
+import static ee.alex.bank.service.OperationStatus.INVALID_AMOUNT;
+import static ee.alex.bank.service.OperationStatus.LIMIT_REACHED;
+import static ee.alex.bank.service.OperationStatus.OK;
+import static ee.alex.bank.service.OperationStatus.WRONG_ACCOUNT_TYPE;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.catchThrowable;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
-import static org.powermock.api.mockito.PowerMockito.mockStatic;
-import static org.powermock.api.mockito.PowerMockito.verifyStatic;
 
 /**
  * @author Aleksei Kulitškov
  */
-@RunWith(PowerMockRunner.class)
-@PrepareForTest(SavingsAccount.class)
 public class BankServiceTest {
 
   @Test
@@ -45,13 +50,59 @@ public class BankServiceTest {
     });
   }
 
+  @Test
+  public void getAccountIdGenerator_ReturnsSecureRandom_IfNoneSet() {
+    // given
+    BankService bankService = new BankService();
+
+    // when
+    AccountIdGenerator result = bankService.getAccountIdGenerator();
+
+    // then
+    assertThat(result).isSameAs(AccountIdGenerator.SECURE_RANDOM);
+  }
+
+  @Test
+  public void createCheckingAccount_DrawsAnotherNumber_IfDrawnNumberTaken() throws Exception {
+    // given
+    BankService bankService = new BankService();
+    UUID taken = new UUID(0, 1);
+    UUID free = new UUID(0, 2);
+    Iterator<UUID> drawn = Arrays.asList(taken, taken, free).iterator();
+    bankService.setAccountIdGenerator(drawn::next);
+    bankService.createCheckingAccount("Peter Parker", 500_00);
+
+    // when
+    UUID result = bankService.createCheckingAccount("Rick Grimes", 500_00);
+
+    // then
+    assertThat(result).isEqualTo(free);
+    assertThat(bankService.findAccount(taken).getOwner()).isEqualTo("Peter Parker");
+    assertThat(bankService.getCustomerAccounts("Rick Grimes")).containsExactly(free);
+  }
+
+  @Test
+  public void createSavingsAccount_Throws_IfGeneratorDrawsOnlyTakenNumbers() {
+    // given
+    BankService bankService = new BankService();
+    bankService.setAccountIdGenerator(() -> new UUID(0, 1));
+    bankService.createSavingsAccount("Peter Parker");
+
+    // when
+    Throwable result = catchThrowable(() -> bankService.createSavingsAccount("Rick Grimes"));
+
+    // then
+    assertThat(result).isInstanceOf(IllegalStateException.class);
+    assertThat(bankService.getCustomerAccounts("Rick Grimes")).isEmpty();
+  }
+
   @Test
   public void createCheckingAccount_CreatesCheckingAccountAndReturnsItsAccountNumber() throws Exception {
     // given
     BankService bankService = new BankService();
 
     // when
-    UUID result = bankService.createCheckingAccount("Peter Parker", 500.0);
+    UUID result = bankService.createCheckingAccount("Peter Parker", 500_00);
 
     // then
     assertThat(result).isNotNull();
@@ -61,51 +112,120 @@ public class BankServiceTest {
       assertThat(it.getAccountId()).isEqualTo(result);
       assertThat(it.getOwner()).isEqualTo("Peter Parker");
       assertThat(it.getType()).isEqualTo(CHECKING);
-      assertThat(it.getLimit()).isEqualTo(500.0);
+      assertThat(it.getLimit()).isEqualTo(500_00);
     });
   }
 
+  @Test
+  public void getCustomerBalance_SumsBalancesOfCustomerAccountsOnly() throws Exception {
+    // given
+    BankService bankService = new BankService();
+    UUID checking = bankService.createCheckingAccount("Peter Parker", 500_00);
+    UUID savings = bankService.createSavingsAccount("Peter Parker");
+    UUID other = bankService.createSavingsAccount("Rick Grimes");
+    bankService.depositMoney(checking, 100_00);
+    bankService.depositMoney(savings, 50_00);
+    bankService.depositMoney(other, 70_00);
+
+    // when
+    long result = bankService.getCustomerBalance("Peter Parker");
+
+    // then
+    assertThat(result).isEqualTo(150_00);
+    assertThat(bankService.getCustomerAccounts("Peter Parker")).containsExactly(checking, savings);
+    assertThat(bankService.getCustomerAccounts("Bruce Wayne")).isEmpty();
+  }
+
+  @Test
+  public void getCustomerBalance_Throws_IfSumOutOfRange() throws Exception {
+    // given
+    BankService bankService = new BankService();
+    bankService.depositMoney(bankService.createCheckingAccount("Peter Parker", 500_00), Long.MAX_VALUE);
+    bankService.depositMoney(bankService.createCheckingAccount("Peter Parker", 500_00), 1);
+
+    // when
+    Throwable result = catchThrowable(() -> bankService.getCustomerBalance("Peter Parker"));
+
+    // then
+    assertThat(result).isInstanceOf(ArithmeticException.class);
+  }
+
   @Test
   public void withdrawMoney_WithdrawsMoneyFromRightAccount_IfNoErrors() throws Exception {
     // given
     BankService bankService = spy(new BankService());
-    Account account = spy(new CheckingAccount("Peter Parker", 500.0));
+    Account account = spy(new CheckingAccount("Peter Parker", 500_00));
     UUID accountId = account.getAccountId();
 
     doReturn(account).when(bankService).findAccount(accountId);
 
     // when
-    bankService.withdrawMoney(accountId, 200.0);
+    bankService.withdrawMoney(accountId, 200_00);
 
     // then
-    assertThat(account.getBalance()).isEqualTo(-200.0);
+    assertThat(account.getBalance()).isEqualTo(-200_00);
 
-    verify(account).withdraw(200.0);
+    verify(account).withdraw(200_00);
   }
 
   @Test
   public void depositMoney_DepositsMoneyToRightAccount_IfNoErrors() throws Exception {
     // given
     BankService bankService = spy(new BankService());
-    Account account = spy(new CheckingAccount("Peter Parker", 500.0));
+    Account account = spy(new CheckingAccount("Peter Parker", 500_00));
     UUID accountId = account.getAccountId();
 
     doReturn(account).when(bankService).findAccount(accountId);
 
     // when
-    bankService.depositMoney(accountId, 200.0);
+    bankService.depositMoney(accountId, 200_00);
 
     // then
-    assertThat(account.getBalance()).isEqualTo(200.0);
+    assertThat(account.getBalance()).isEqualTo(200_00);
+
+    verify(account).deposit(200_00);
+  }
+
+  @Test
+  public void withdrawMoney_ReturnsStatusOfRejection_IfWithdrawalRejected() throws Exception {
+    // given
+    BankService bankService = new BankService();
+    UUID accountId = bankService.createSavingsAccount("Peter Parker");
+    bankService.depositMoney(accountId, 100_00);
 
-    verify(account).deposit(200.0);
+    // when
+    OperationStatus insufficientFunds = bankService.withdrawMoney(accountId, 200_00);
+    OperationStatus invalidAmount = bankService.withdrawMoney(accountId, 0);
+    OperationStatus accountNotFound = bankService.withdrawMoney(UUID.fromString("52769427-20e4-443a-b7f3-c0989db1b4ea"), 10_00);
+    OperationStatus ok = bankService.withdrawMoney(accountId, 100_00);
+
+    // then
+    assertThat(insufficientFunds).isEqualTo(INSUFFICIENT_FUNDS);
+    assertThat(invalidAmount).isEqualTo(INVALID_AMOUNT);
+    assertThat(accountNotFound).isEqualTo(ACCOUNT_NOT_FOUND);
+    assertThat(ok).isEqualTo(OK);
+    assertThat(bankService.findAccount(accountId).getBalance()).isEqualTo(0);
+  }
+
+  @Test
+  public void transferMoney_ReturnsWrongAccountType_IfFromSavingsAccount() {
+    // given
+    BankService bankService = new BankService();
+    UUID savingsAccountId = bankService.createSavingsAccount("Peter Parker");
+    UUID checkingAccountId = bankService.createCheckingAccount("Rick Grimes", 500_00);
+
+    // when
+    OperationStatus result = bankService.transferMoney(savingsAccountId, checkingAccountId, 10_00);
+
+    // then
+    assertThat(result).isEqualTo(WRONG_ACCOUNT_TYPE);
   }
 
   @Test
   public void getAccountDetails_RetrievesAccountDetails_IfNoErrors() throws Exception {
     // given
     BankService bankService = spy(new BankService());
-    Account account = spy(new CheckingAccount("Peter Parker", 500.0));
+    Account account = spy(new CheckingAccount("Peter Parker", 500_00));
     UUID accountId = account.getAccountId();
 
     doReturn(account).when(bankService).findAccount(accountId);
@@ -118,8 +238,8 @@ public class BankServiceTest {
         "Account details:\n" +
             "Holder: Peter Parker\n" +
             "Type: checking\n" +
-            "Balance: 0.0\n" +
-            "Limit: 500.0\n"
+            "Balance: 0.00\n" +
+            "Limit: 500.00\n"
     );
 
     verify(account).getDetails();
@@ -142,23 +262,23 @@ public class BankServiceTest {
   public void changeCheckingAccountLimit_ChangesLimit_IfCheckingAccount() throws Exception {
     // given
     BankService bankService = spy(new BankService());
-    CheckingAccount account = spy(new CheckingAccount("Peter Parker", 500.0));
+    CheckingAccount account = spy(new CheckingAccount("Peter Parker", 500_00));
     UUID accountId = account.getAccountId();
 
     doReturn(account).when(bankService).findAccount(accountId);
 
     // when
-    bankService.changeCheckingAccountLimit(accountId, 200.0);
+    bankService.changeCheckingAccountLimit(accountId, 200_00);
 
     // then
-    verify(account).setLimit(200.0);
+    verify(account).setLimit(200_00);
   }
 
   @Test
   public void transferMoney_TransfersMoneyToAnotherAccount_IfCheckingAccount() throws Exception {
     // given
     BankService bankService = spy(new BankService());
-    CheckingAccount accountFrom = spy(new CheckingAccount("Peter Parker", 500.0));
+    CheckingAccount accountFrom = spy(new CheckingAccount("Peter Parker", 500_00));
     SavingsAccount accountTo = spy(new SavingsAccount("Rick Grimes"));
     UUID accountFromId = accountFrom.getAccountId();
     UUID accountToId = accountTo.getAccountId();
@@ -167,14 +287,14 @@ public class BankServiceTest {
     doReturn(accountTo).when(bankService).findAccount(accountToId);
 
     // when
-    bankService.transferMoney(accountFromId, accountToId, 200.0);
+    bankService.transferMoney(accountFromId, accountToId, 200_00);
 
     // then
-    assertThat(accountFrom.getBalance()).isEqualTo(-200.0);
-    assertThat(accountTo.getBalance()).isEqualTo(200.0);
+    assertThat(accountFrom.getBalance()).isEqualTo(-200_00);
+    assertThat(accountTo.getBalance()).isEqualTo(200_00);
 
-    verify(accountFrom).withdraw(200.0);
-    verify(accountTo).deposit(200.0);
+    verify(accountFrom).withdraw(200_00);
+    verify(accountTo).deposit(200_00);
   }
 
   @Test
@@ -183,13 +303,13 @@ public class BankServiceTest {
     BankService bankService = new BankService();
 
     UUID savingsAccount1Id = bankService.createSavingsAccount("Peter Parker");
-    bankService.depositMoney(savingsAccount1Id, 100.0);
+    bankService.depositMoney(savingsAccount1Id, 100_00);
     UUID savingsAccount2Id = bankService.createSavingsAccount("Rick Grimes");
-    bankService.depositMoney(savingsAccount2Id, 200.0);
+    bankService.depositMoney(savingsAccount2Id, 200_00);
     UUID savingsAccount3Id = bankService.createSavingsAccount("Nick Burns");
-    bankService.depositMoney(savingsAccount3Id, 300.0);
-    UUID checkingAccountId = bankService.createCheckingAccount("Mark Watson", 500.0);
-    bankService.depositMoney(checkingAccountId, 400.0);
+    bankService.depositMoney(savingsAccount3Id, 300_00);
+    UUID checkingAccountId = bankService.createCheckingAccount("Mark Watson", 500_00);
+    bankService.depositMoney(checkingAccountId, 400_00);
 
     Account savingsAccount1 = bankService.findAccount(savingsAccount1Id);
     Account savingsAccount2 = bankService.findAccount(savingsAccount2Id);
@@ -200,10 +320,34 @@ public class BankServiceTest {
     bankService.provideInterestToAllUsers();
 
     // then
-    assertThat(savingsAccount1.getBalance()).isEqualTo(120.0);
-    assertThat(savingsAccount2.getBalance()).isEqualTo(240);
-    assertThat(savingsAccount3.getBalance()).isEqualTo(360.0);
-    assertThat(checkingAccount.getBalance()).isEqualTo(400.0);
+    assertThat(savingsAccount1.getBalance()).isEqualTo(120_00);
+    assertThat(savingsAccount2.getBalance()).isEqualTo(240_00);
+    assertThat(savingsAccount3.getBalance()).isEqualTo(360_00);
+    assertThat(checkingAccount.getBalance()).isEqualTo(400_00);
+  }
+
+  @Test
+  public void provideInterestToAllUsers_CreditsEveryAccountOnce_IfAccountsOwnedByShards() throws Exception {
+    // given
+    try (BankService bankService = new BankService(new ObjectAccountStore(), 4)) {
+      List<UUID> savingsAccountIds = new ArrayList<>();
+      for (int i = 0; i < 100; i++) {
+        UUID accountId = bankService.createSavingsAccount("Owner " + i);
+        bankService.depositMoney(accountId, 100_00);
+        savingsAccountIds.add(accountId);
+      }
+      bankService.createCheckingAccount("Mark Watson", 500_00);
+
+      // when
+      InterestReport result = bankService.provideInterestToAllUsers();
+
+      // then
+      assertThat(result.getAccountsProcessed()).isEqualTo(100);
+      assertThat(result.getAccountsRejected()).isZero();
+      for (UUID accountId : savingsAccountIds) {
+        assertThat(bankService.findAccount(accountId).getBalance()).isEqualTo(120_00);
+      }
+    }
   }
 
   @Test
@@ -211,14 +355,102 @@ public class BankServiceTest {
     // given
     BankService bankService = new BankService();
 
-    mockStatic(SavingsAccount.class);
+    // when
+    OperationStatus result = bankService.updateInterestRate(0.3);
+
+    // then
+    assertThat(result).isEqualTo(OK);
+    assertThat(bankService.getRateTable().getBaseRate(SAVINGS)).isEqualTo(0.3);
+  }
+
+  @Test
+  public void updateInterestRate_LeavesRatesOfOtherBanks() throws Exception {
+    // given
+    BankService bankService = new BankService();
+    BankService otherBankService = new BankService();
+    UUID otherAccountId = otherBankService.createSavingsAccount("Rick Grimes");
+    otherBankService.depositMoney(otherAccountId, 100_00);
 
     // when
-    bankService.updateInterestRate(0.3);
+    bankService.updateInterestRate(0.5);
+    otherBankService.provideInterestToAllUsers();
 
     // then
-    verifyStatic(SavingsAccount.class);
-    SavingsAccount.setInterestRate(0.3);
+    assertThat(otherBankService.getRateTable().getBaseRate(SAVINGS)).isEqualTo(0.2);
+    assertThat(otherBankService.findAccount(otherAccountId).getBalance()).isEqualTo(120_00);
+  }
+
+  @Test
+  public void submitBatch_AppliesOperationsInOrderAndReportsStatusPerOperation() throws Exception {
+    // given
+    BankService bankService = new BankService();
+    UUID checkingAccountId = bankService.createCheckingAccount("Peter Parker", 100_00);
+    UUID savingsAccountId = bankService.createSavingsAccount("Rick Grimes");
+    UUID unknownAccountId = UUID.fromString("52769427-20e4-443a-b7f3-c0989db1b4ea");
+
+    // when
+    OperationStatus[] result = bankService.submitBatch(Arrays.asList(
+        Operation.withdraw(savingsAccountId, 50_00),
+        Operation.deposit(savingsAccountId, 50_00),
+        Operation.withdraw(savingsAccountId, 50_00),
+        Operation.deposit(checkingAccountId, 0),
+        Operation.transfer(checkingAccountId, savingsAccountId, 80_00),
+        Operation.withdraw(checkingAccountId, 30_00),
+        Operation.changeLimit(checkingAccountId, 200_00),
+        Operation.withdraw(checkingAccountId, 30_00),
+        Operation.changeLimit(savingsAccountId, 200_00),
+        Operation.transfer(savingsAccountId, checkingAccountId, 10_00),
+        Operation.deposit(unknownAccountId, 10_00)
+    ));
+
+    // then
+    assertThat(result).containsExactly(
+        INSUFFICIENT_FUNDS, OK, OK, INVALID_AMOUNT, OK, LIMIT_REACHED, OK, OK, WRONG_ACCOUNT_TYPE, WRONG_ACCOUNT_TYPE,
+        ACCOUNT_NOT_FOUND);
+    assertThat(bankService.findAccount(checkingAccountId).getBalance()).isEqualTo(-110_00);
+    assertThat(bankService.findAccount(savingsAccountId).getBalance()).isEqualTo(80_00);
+  }
+
+  @Test
+  public void submitBatch_LeavesSameBalancesAsSingleCalls_IfSameOperationsSubmitted() throws Exception {
+    // given
+    BankService batchService = new BankService();
+    BankService singleCallService = new BankService();
+    UUID[] batchIds = new UUID[4];
+    UUID[] singleCallIds = new UUID[4];
+    for (int i = 0; i < 4; i++) {
+      batchIds[i] = batchService.createCheckingAccount("Owner " + i, 50_00);
+      singleCallIds[i] = singleCallService.createCheckingAccount("Owner " + i, 50_00);
+    }
+    Random random = new Random(42);
+    List<Operation> operations = new ArrayList<>();
+
+    // when
+    for (int n = 0; n < 1_000; n++) {
+      int account = random.nextInt(4);
+      int target = random.nextInt(4);
+      long amount = 1 + random.nextInt(40_00);
+      switch (random.nextInt(3)) {
+        case 0:
+          operations.add(Operation.deposit(batchIds[account], amount));
+          singleCallService.depositMoney(singleCallIds[account], amount);
+          break;
+        case 1:
+          operations.add(Operation.withdraw(batchIds[account], amount));
+          singleCallService.withdrawMoney(singleCallIds[account], amount);
+          break;
+        default:
+          operations.add(Operation.transfer(batchIds[account], batchIds[target], amount));
+          singleCallService.transferMoney(singleCallIds[account], singleCallIds[target], amount);
+      }
+    }
+    batchService.submitBatch(operations);
+
+    // then
+    for (int i = 0; i < 4; i++) {
+      assertThat(batchService.findAccount(batchIds[i]).getBalance())
+          .isEqualTo(singleCallService.findAccount(singleCallIds[i]).getBalance());
+    }
   }
 
   @Test
@@ -228,7 +460,7 @@ public class BankServiceTest {
     bankService.createSavingsAccount("Peter Parker");
     bankService.createSavingsAccount("Rick Grimes");
     UUID savingsAccountId = bankService.createSavingsAccount("Nick Burns");
-    bankService.createCheckingAccount("Mark Watson", 500.0);
+    bankService.createCheckingAccount("Mark Watson", 500_00);
 
     // when
     Account result = bankService.findAccount(savingsAccountId);
@@ -237,7 +469,7 @@ public class BankServiceTest {
     assertThat(result).isInstanceOfSatisfying(SavingsAccount.class, it -> {
       assertThat(it.getAccountId()).isEqualTo(savingsAccountId);
       assertThat(it.getOwner()).isEqualTo("Nick Burns");
-      assertThat(it.getBalance()).isEqualTo(0.0);
+      assertThat(it.getBalance()).isEqualTo(0);
       assertThat(it.getType()).isEqualTo(SAVINGS);
     });
   }
@@ -249,7 +481,7 @@ public class BankServiceTest {
     bankService.createSavingsAccount("Peter Parker");
     bankService.createSavingsAccount("Rick Grimes");
     bankService.createSavingsAccount("Nick Burns");
-    bankService.createCheckingAccount("Mark Watson", 500.0);
+    bankService.createCheckingAccount("Mark Watson", 500_00);
 
     // when
     Throwable result = catchThrowable(() -> bankService.findAccount(UUID.fromString("52769427-20e4-443a-b7f3-c0989db1b4ea")));
@@ -258,4 +490,51 @@ public class BankServiceTest {
     assertThat(result).isInstanceOf(AccountErrorException.class).hasMessage("Invalid account number");
   }
 
+  @Test
+  public void setMetrics_CountsOperationsByStatusAndTimesThem() {
+    // given
+    BankService bankService = new BankService();
+    BankMetrics metrics = new BankMetrics(1);
+    bankService.setMetrics(metrics);
+    UUID accountId = bankService.createCheckingAccount("Peter Parker", 0);
+
+    // when
+    bankService.depositMoney(accountId, 100_00);
+    bankService.withdrawMoney(accountId, 50_00);
+    bankService.withdrawMoney(accountId, 80_00);
+    bankService.withdrawMoney(accountId, -1);
+    MetricsSnapshot result = metrics.snapshot();
+
+    // then
+    assertThat(result.get(MeasuredOperation.DEPOSIT).getSuccesses()).isEqualTo(1);
+    assertThat(result.get(MeasuredOperation.WITHDRAW).getCount()).isEqualTo(3);
+    assertThat(result.get(MeasuredOperation.WITHDRAW).getSuccesses()).isEqualTo(1);
+    assertThat(result.get(MeasuredOperation.WITHDRAW).getRejectionsByStatus())
+        .containsOnlyKeys(LIMIT_REACHED, INVALID_AMOUNT);
+    assertThat(result.get(MeasuredOperation.WITHDRAW).getLatency().getCount()).isEqualTo(3);
+    assertThat(result.get(MeasuredOperation.FIND_ACCOUNT).getCount()).isEqualTo(4);
+    assertThat(result.getThroughput(MeasuredOperation.WITHDRAW)).isPositive();
+  }
+
+  @Test
+  public void depositMoney_ReturnsFirstResultWithoutApplyingAgain_IfRequestRetried() throws Exception {
+    // given
+    BankService bankService = new BankService();
+    UUID accountId = bankService.createCheckingAccount("Peter Parker", 0);
+    UUID depositId = UUID.randomUUID();
+    UUID withdrawalId = UUID.randomUUID();
+    bankService.depositMoney(depositId, accountId, 100_00);
+    bankService.withdrawMoney(withdrawalId, accountId, 150_00);
+    bankService.depositMoney(accountId, 100_00);
+
+    // when
+    OperationStatus deposit = bankService.depositMoney(depositId, accountId, 100_00);
+    OperationStatus withdrawal = bankService.withdrawMoney(withdrawalId, accountId, 150_00);
+
+    // then
+    assertThat(deposit).isEqualTo(OK);
+    assertThat(withdrawal).isEqualTo(LIMIT_REACHED);
+    assertThat(bankService.findAccount(accountId).getBalance()).isEqualTo(200_00);
+  }
+
 }
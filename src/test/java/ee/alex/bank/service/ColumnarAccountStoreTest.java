@@ -0,0 +1,147 @@
+package ee.alex.bank.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Test;
+import ee.alex.bank.exception.LimitReachedException;
+import ee.alex.bank.model.Account;
+import ee.alex.bank.model.InterestBearingAccount;
+import ee.alex.bank.model.LimitedAccount;
+import static ee.alex.bank.model.AccountType.CHECKING;
+import static ee.alex.bank.model.AccountType.SAVINGS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+/**
+ * @author Aleksei Kulitškov
+ */
+public class ColumnarAccountStoreTest {
+
+  private static final UUID ACCOUNT_1 = UUID.fromString("a2d10319-a240-4b29-bcd9-b2a546472747");
+  private static final UUID ACCOUNT_2 = UUID.fromString("52769427-20e4-443a-b7f3-c0989db1b4ea");
+
+  @Test
+  public void get_ReturnsViewOfAddedAccount() {
+    // given
+    ColumnarAccountStore store = new ColumnarAccountStore();
+    store.add(ACCOUNT_1, CHECKING, "Jürgen Tõnisson", -100_00, 500_00);
+
+    // when
+    Account result = store.get(UUID.fromString(ACCOUNT_1.toString()));
+
+    // then
+    assertThat(result).isInstanceOfSatisfying(LimitedAccount.class, it -> {
+      assertThat(it.getAccountId()).isEqualTo(ACCOUNT_1);
+      assertThat(it.getType()).isEqualTo(CHECKING);
+      assertThat(it.getOwner()).isEqualTo("Jürgen Tõnisson");
+      assertThat(it.getBalance()).isEqualTo(-100_00);
+      assertThat(it.getLimit()).isEqualTo(500_00);
+    });
+    assertThat(result).isEqualTo(store.get(ACCOUNT_1));
+    assertThat(store.get(ACCOUNT_2)).isNull();
+  }
+
+  @Test
+  public void add_ReturnsNullAndKeepsFirstAccount_IfAccountNumberAlreadyTaken() {
+    // given
+    ColumnarAccountStore store = new ColumnarAccountStore();
+    store.add(ACCOUNT_1, SAVINGS, "Peter Parker", 10_00, 0);
+
+    // when
+    Account result = store.add(ACCOUNT_1, CHECKING, "Rick Grimes", 0, 500_00);
+
+    // then
+    assertThat(result).isNull();
+    assertThat(store.size()).isEqualTo(1);
+    assertThat(store.get(ACCOUNT_1).getOwner()).isEqualTo("Peter Parker");
+  }
+
+  @Test
+  public void withdraw_WritesBalanceColumn_IfAccountIsAView() throws Exception {
+    // given
+    ColumnarAccountStore store = new ColumnarAccountStore();
+    store.add(ACCOUNT_1, CHECKING, "Peter Parker", 0, 500_00);
+
+    // when
+    store.get(ACCOUNT_1).withdraw(400_00);
+    Throwable result = catchThrowable(() -> store.get(ACCOUNT_1).withdraw(200_00));
+
+    // then
+    assertThat(result).isInstanceOf(LimitReachedException.class);
+    assertThat(store.get(ACCOUNT_1).getBalance()).isEqualTo(-400_00);
+  }
+
+  @Test
+  public void add_KeepsEveryAccount_IfMoreAccountsThanOneChunk() throws Exception {
+    // given
+    ColumnarAccountStore store = new ColumnarAccountStore(1);
+    List<UUID> accountIds = new ArrayList<>();
+
+    // when
+    for (int i = 0; i < 150_000; i++) {
+      UUID accountId = UUID.randomUUID();
+      accountIds.add(accountId);
+      store.add(accountId, i % 2 == 0 ? SAVINGS : CHECKING, "Owner " + i, i, 1_00);
+    }
+
+    // then
+    assertThat(store.size()).isEqualTo(150_000);
+    assertThat(store.interestBearingCount()).isEqualTo(75_000);
+    for (int i = 0; i < accountIds.size(); i++) {
+      Account account = store.get(accountIds.get(i));
+      assertThat(account.getOwner()).isEqualTo("Owner " + i);
+      assertThat(account.getBalance()).isEqualTo(i);
+    }
+    InterestBearingAccount last = store.getInterestBearing(74_999);
+    assertThat(last.getAccountId()).isEqualTo(accountIds.get(149_998));
+  }
+
+  @Test
+  public void get_FindsAccountOrNothing_IfReadWhileAddStartsNewChunk() throws Exception {
+    // given
+    int chunkSize = 1 << 16;
+    int chunks = 4;
+    ColumnarAccountStore store = new ColumnarAccountStore(1);
+    List<UUID> accountIds = new ArrayList<>();
+    for (int i = 0; i < chunks * chunkSize + 1; i++) {
+      accountIds.add(UUID.randomUUID());
+    }
+    AtomicBoolean adding = new AtomicBoolean(true);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    List<Future<?>> readers = new ArrayList<>();
+    for (int t = 0; t < 2; t++) {
+      readers.add(executor.submit(() -> {
+        // the first account of every chunk is published together with its chunk
+        while (adding.get()) {
+          for (int chunk = 1; chunk <= chunks; chunk++) {
+            UUID accountId = accountIds.get(chunk * chunkSize);
+            Account account = store.get(accountId);
+            assertThat(account == null || account.getAccountId().equals(accountId)).isTrue();
+          }
+        }
+        return null;
+      }));
+    }
+
+    // when
+    for (UUID accountId : accountIds) {
+      store.add(accountId, CHECKING, "Owner", 0, 1_00);
+    }
+    adding.set(false);
+
+    // then
+    executor.shutdown();
+    assertThat(executor.awaitTermination(1, TimeUnit.MINUTES)).isTrue();
+    for (Future<?> reader : readers) {
+      reader.get();
+    }
+    assertThat(store.size()).isEqualTo(accountIds.size());
+  }
+
+}
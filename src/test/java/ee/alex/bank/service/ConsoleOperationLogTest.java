@@ -0,0 +1,38 @@
+package ee.alex.bank.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import org.junit.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Aleksei Kulitškov
+ */
+public class ConsoleOperationLogTest {
+
+  @Test
+  public void operation_PrintsOneLinePerOperation_IfSetAsOperationLog() throws Exception {
+    // given
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    BankService bankService = new BankService();
+    bankService.setOperationLog(new ConsoleOperationLog(new PrintStream(output, true, "UTF-8")));
+    UUID checkingAccountId = bankService.createCheckingAccount("Peter Parker", 500_00);
+    UUID savingsAccountId = bankService.createSavingsAccount("Rick Grimes");
+
+    // when
+    bankService.depositMoney(checkingAccountId, 100_00);
+    bankService.withdrawMoney(savingsAccountId, 100_00);
+    bankService.transferMoney(checkingAccountId, savingsAccountId, 50_00);
+    bankService.changeCheckingAccountLimit(savingsAccountId, 100_00);
+
+    // then
+    assertThat(new String(output.toByteArray(), StandardCharsets.UTF_8).split(System.lineSeparator())).containsExactly(
+        "Deposited 100.00€ to bank account " + checkingAccountId.toString().toUpperCase(),
+        "Insufficient funds",
+        "Transferred 50.00€ from account " + checkingAccountId + " to account " + savingsAccountId,
+        "Wrong account type");
+  }
+
+}
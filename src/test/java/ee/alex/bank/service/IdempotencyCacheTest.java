@@ -0,0 +1,216 @@
+package ee.alex.bank.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+import static ee.alex.bank.service.OperationStatus.IDEMPOTENCY_KEY_REUSED;
+import static ee.alex.bank.service.OperationStatus.INSUFFICIENT_FUNDS;
+import static ee.alex.bank.service.OperationStatus.OK;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @author Aleksei Kulitškov
+ */
+public class IdempotencyCacheTest {
+
+  private static final long FINGERPRINT =
+      IdempotencyCache.fingerprint(OperationType.DEPOSIT, UUID.fromString("a2d10319-a240-4b29-bcd9-b2a546472747"),
+          null, 100_00);
+
+  @Test
+  public void execute_ReturnsFirstStatusWithoutRunningAgain_IfRequestRetried() {
+    // given
+    IdempotencyCache cache = new IdempotencyCache(16, 1_000, () -> 0);
+    UUID requestId = UUID.randomUUID();
+    AtomicInteger runs = new AtomicInteger();
+    cache.execute(requestId, FINGERPRINT, request -> {
+      runs.incrementAndGet();
+      return INSUFFICIENT_FUNDS;
+    });
+
+    // when
+    OperationStatus result = cache.execute(requestId, FINGERPRINT, request -> {
+      runs.incrementAndGet();
+      return OK;
+    });
+
+    // then
+    assertThat(result).isEqualTo(INSUFFICIENT_FUNDS);
+    assertThat(runs).hasValue(1);
+  }
+
+  @Test
+  public void execute_ReturnsKeyReused_IfKeySentWithAnotherOperation() {
+    // given
+    IdempotencyCache cache = new IdempotencyCache(16, 1_000, () -> 0);
+    UUID requestId = UUID.randomUUID();
+    UUID accountId = UUID.randomUUID();
+    AtomicInteger runs = new AtomicInteger();
+    cache.execute(requestId, IdempotencyCache.fingerprint(OperationType.DEPOSIT, accountId, null, 100_00), request -> {
+      runs.incrementAndGet();
+      return OK;
+    });
+
+    // when
+    OperationStatus result = cache.execute(requestId,
+        IdempotencyCache.fingerprint(OperationType.DEPOSIT, accountId, null, 200_00), request -> {
+          runs.incrementAndGet();
+          return OK;
+        });
+
+    // then
+    assertThat(result).isEqualTo(IDEMPOTENCY_KEY_REUSED);
+    assertThat(runs).hasValue(1);
+  }
+
+  @Test
+  public void execute_ReturnsFirstStatus_IfRestoredRequestHasNoFingerprint() {
+    // given
+    IdempotencyCache cache = new IdempotencyCache(16, 1_000, () -> 0);
+    UUID requestId = UUID.randomUUID();
+    cache.restore(requestId, 0, INSUFFICIENT_FUNDS, 0);
+
+    // when
+    OperationStatus result = cache.execute(requestId, FINGERPRINT, request -> OK);
+
+    // then
+    assertThat(result).isEqualTo(INSUFFICIENT_FUNDS);
+  }
+
+  @Test
+  public void execute_WaitsInsteadOfEvicting_IfBucketHoldsOnlyRunningRequests() throws Exception {
+    // given
+    IdempotencyCache cache = new IdempotencyCache(8, 1_000, () -> 0);
+    ExecutorService executor = Executors.newFixedThreadPool(9);
+    CountDownLatch started = new CountDownLatch(8);
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger runs = new AtomicInteger();
+    UUID requestId = UUID.randomUUID();
+    try {
+      for (int i = 0; i < 8; i++) {
+        executor.submit(() -> cache.execute(UUID.randomUUID(), FINGERPRINT, request -> {
+          runs.incrementAndGet();
+          started.countDown();
+          awaitUninterruptibly(release);
+          return OK;
+        }));
+      }
+      started.await();
+
+      // when
+      Future<OperationStatus> result = executor.submit(() -> cache.execute(requestId, FINGERPRINT,
+          request -> INSUFFICIENT_FUNDS));
+
+      // then
+      assertThatThrownBy(() -> result.get(100, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+      release.countDown();
+      assertThat(result.get()).isEqualTo(INSUFFICIENT_FUNDS);
+      assertThat(cache.execute(requestId, FINGERPRINT, request -> {
+        runs.incrementAndGet();
+        return OK;
+      })).isEqualTo(INSUFFICIENT_FUNDS);
+      assertThat(runs).hasValue(8);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void execute_RunsAgain_IfRequestOlderThanWindow() {
+    // given
+    AtomicLong now = new AtomicLong();
+    IdempotencyCache cache = new IdempotencyCache(16, 1_000, now::get);
+    UUID requestId = UUID.randomUUID();
+    cache.execute(requestId, FINGERPRINT, request -> INSUFFICIENT_FUNDS);
+    now.set(1_000);
+
+    // when
+    OperationStatus result = cache.execute(requestId, FINGERPRINT, request -> OK);
+
+    // then
+    assertThat(result).isEqualTo(OK);
+  }
+
+  @Test
+  public void execute_EvictsOldestRequests_IfMoreRequestsThanCapacity() {
+    // given
+    AtomicLong now = new AtomicLong();
+    IdempotencyCache cache = new IdempotencyCache(8, 1_000, now::incrementAndGet);
+    List<UUID> requestIds = new ArrayList<>();
+    for (int i = 0; i < 9; i++) {
+      requestIds.add(UUID.randomUUID());
+      cache.execute(requestIds.get(i), FINGERPRINT, request -> OK);
+    }
+
+    // when
+    OperationStatus result = cache.execute(requestIds.get(0), FINGERPRINT, request -> INSUFFICIENT_FUNDS);
+
+    // then
+    assertThat(result).isEqualTo(INSUFFICIENT_FUNDS);
+    assertThat(cache.execute(requestIds.get(8), FINGERPRINT, request -> INSUFFICIENT_FUNDS)).isEqualTo(OK);
+    assertThat(cache.size()).isEqualTo(8);
+  }
+
+  @Test
+  public void execute_RunsOnce_IfSameRequestSentByManyThreadsAtOnce() throws Exception {
+    // given
+    IdempotencyCache cache = new IdempotencyCache();
+    UUID requestId = UUID.randomUUID();
+    AtomicInteger runs = new AtomicInteger();
+    int threads = 8;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<OperationStatus>> results = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      results.add(executor.submit(() -> {
+        start.await();
+        return cache.execute(requestId, FINGERPRINT, request -> {
+          runs.incrementAndGet();
+          return OK;
+        });
+      }));
+    }
+
+    // when
+    start.countDown();
+    executor.shutdown();
+
+    // then
+    for (Future<OperationStatus> result : results) {
+      assertThat(result.get()).isEqualTo(OK);
+    }
+    assertThat(runs).hasValue(1);
+  }
+
+  @Test
+  public void restore_IgnoresRequest_IfOlderThanWindow() {
+    // given
+    IdempotencyCache cache = new IdempotencyCache(16, 1_000, () -> 5_000);
+
+    // when
+    cache.restore(UUID.randomUUID(), 3_000, OK, FINGERPRINT);
+    cache.restore(UUID.randomUUID(), 4_500, OK, FINGERPRINT);
+
+    // then
+    assertThat(cache.answered()).hasSize(1);
+  }
+
+  private static void awaitUninterruptibly(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+}
@@ -0,0 +1,163 @@
+package ee.alex.bank.service;
+
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+import ee.alex.bank.model.SavingsAccount;
+import static ee.alex.bank.model.AccountType.SAVINGS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Aleksei Kulitškov
+ */
+public class InterestAccrualTest {
+
+  private final ForkJoinPool pool = new ForkJoinPool(4);
+
+  @After
+  public void shutdownPool() throws Exception {
+    pool.shutdown();
+    pool.awaitTermination(1, TimeUnit.MINUTES);
+  }
+
+  @Test
+  public void run_ProvidesInterestToEveryAccountOfPartition() throws Exception {
+    // given
+    AccountPartition<SavingsAccount> partition = new AccountPartition<>(1);
+    for (int i = 0; i < 10_000; i++) {
+      SavingsAccount account = new SavingsAccount("Owner " + i);
+      account.deposit(100_00 + i);
+      partition.add(account);
+    }
+    InterestAccrual accrual = new InterestAccrual(pool, new AccountLocks());
+
+    // when
+    InterestReport result = accrual.run(partition);
+
+    // then
+    assertThat(result.getAccountsProcessed()).isEqualTo(10_000);
+    assertThat(result.getAccountsRejected()).isZero();
+    assertThat(result.getAccountsPerSecond()).isPositive();
+    for (int i = 0; i < partition.size(); i++) {
+      long opening = 100_00 + i;
+      assertThat(partition.get(i).getBalance()).isEqualTo(opening + Math.round(opening * 0.2));
+    }
+  }
+
+  @Test
+  public void run_LosesNoDeposit_IfAccountsAreDepositedToDuringRun() throws Exception {
+    // given
+    AccountLocks locks = new AccountLocks();
+    AccountPartition<SavingsAccount> partition = new AccountPartition<>();
+    for (int i = 0; i < 20_000; i++) {
+      SavingsAccount account = new SavingsAccount("Owner " + i);
+      account.deposit(100_00);
+      partition.add(account);
+    }
+    InterestAccrual accrual = new InterestAccrual(pool, locks);
+    Thread depositor = new Thread(() -> {
+      for (int i = partition.size() - 1; i >= 0; i--) {
+        SavingsAccount account = partition.get(i);
+        locks.lockFor(account.getAccountId()).lock();
+        try {
+          account.deposit(10_00);
+        } catch (Exception e) {
+          throw new IllegalStateException(e);
+        } finally {
+          locks.lockFor(account.getAccountId()).unlock();
+        }
+      }
+    });
+
+    // when
+    depositor.start();
+    accrual.run(partition);
+    depositor.join();
+
+    // then
+    for (int i = 0; i < partition.size(); i++) {
+      // deposit either before interest (110.00 * 1.2) or after it (100.00 * 1.2 + 10.00)
+      assertThat(partition.get(i).getBalance()).isIn(132_00L, 130_00L);
+    }
+  }
+
+  @Test
+  public void catchUp_CreditsEveryClosedPeriodAtItsOwnRate_IfRateChangedBetweenPeriods() throws Exception {
+    // given
+    SavingsAccount account = new SavingsAccount("Peter Parker");
+    account.deposit(100_00);
+    InterestAccrual accrual = new InterestAccrual(pool, new AccountLocks());
+    accrual.closePeriod();
+    accrual.updateRate(0.5);
+    accrual.closePeriod();
+    accrual.updateRate(0.1);
+    assertThat(account.getBalance()).isEqualTo(100_00);
+
+    // when
+    accrual.catchUp(account);
+
+    // then
+    assertThat(account.getBalance()).isEqualTo(180_00);
+    assertThat(account.getAccruedPeriod()).isEqualTo(2);
+    assertThat(accrual.isBehind(account)).isFalse();
+  }
+
+  @Test
+  public void catchUp_CreditsRateOfTierBalanceFallsInto_IfTiersSet() throws Exception {
+    // given
+    SavingsAccount small = new SavingsAccount("Peter Parker");
+    small.deposit(100_00);
+    SavingsAccount large = new SavingsAccount("Rick Grimes");
+    large.deposit(2000_00);
+    InterestAccrual accrual = new InterestAccrual(pool, new AccountLocks());
+    accrual.updateTiers(new long[] {0, 1000_00}, new double[] {0.1, 0.3});
+    accrual.closePeriod();
+
+    // when
+    accrual.catchUp(small);
+    accrual.catchUp(large);
+
+    // then
+    assertThat(small.getBalance()).isEqualTo(110_00);
+    assertThat(large.getBalance()).isEqualTo(2600_00);
+  }
+
+  @Test
+  public void sweeper_CreditsEveryAccountBehind_IfRunInShortSlices() throws Exception {
+    // given
+    ObjectAccountStore store = new ObjectAccountStore();
+    for (int i = 0; i < 1_000; i++) {
+      store.add(UUID.randomUUID(), SAVINGS, "Owner " + i, 100_00, 0);
+    }
+    InterestAccrual accrual = new InterestAccrual(pool, new AccountLocks());
+    accrual.closePeriod();
+    Runnable sweeper = accrual.sweeper(store, 0);
+
+    // when
+    sweeper.run();
+    long creditedAfterFirstRun = countCredited(store);
+    for (int i = 0; i < 100; i++) {
+      sweeper.run();
+    }
+
+    // then
+    assertThat(creditedAfterFirstRun).isPositive().isLessThan(1_000);
+    assertThat(countCredited(store)).isEqualTo(1_000);
+    for (int i = 0; i < store.interestBearingCount(); i++) {
+      assertThat(store.getInterestBearing(i).getBalance()).isEqualTo(120_00);
+    }
+  }
+
+  private static long countCredited(AccountStore store) {
+    long credited = 0;
+    for (int i = 0; i < store.interestBearingCount(); i++) {
+      if (store.getInterestBearing(i).getAccruedPeriod() == 1) {
+        credited++;
+      }
+    }
+    return credited;
+  }
+
+}
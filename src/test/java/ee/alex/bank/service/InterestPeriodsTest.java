@@ -0,0 +1,47 @@
+package ee.alex.bank.service;
+
+import org.junit.Test;
+import ee.alex.bank.model.InterestRateTable;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+/**
+ * @author Aleksei Kulitškov
+ */
+public class InterestPeriodsTest {
+
+  @Test
+  public void close_KeepsRatesOfEveryPeriod_IfHistoryOutgrowsItsArray() {
+    // given
+    InterestPeriods periods = new InterestPeriods(5);
+    InterestRateTable[] rateTables = new InterestRateTable[100];
+    for (int i = 0; i < rateTables.length; i++) {
+      rateTables[i] = InterestRateTable.flat((i + 1) / 1000.0);
+    }
+
+    // when
+    for (InterestRateTable rateTable : rateTables) {
+      periods.close(rateTable);
+    }
+
+    // then
+    assertThat(periods.current()).isEqualTo(105);
+    for (int i = 0; i < rateTables.length; i++) {
+      assertThat(periods.rates(5 + i)).isSameAs(rateTables[i]);
+    }
+  }
+
+  @Test
+  public void rates_Throws_IfPeriodIsStillOpen() {
+    // given
+    InterestPeriods periods = new InterestPeriods();
+    periods.close(InterestRateTable.flat(0.1));
+
+    // when
+    Throwable result = catchThrowable(() -> periods.rates(1));
+
+    // then
+    assertThat(result).isInstanceOf(IndexOutOfBoundsException.class);
+  }
+
+}
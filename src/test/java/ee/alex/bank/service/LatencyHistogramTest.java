@@ -0,0 +1,41 @@
+package ee.alex.bank.service;
+
+import org.junit.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * @author Aleksei Kulitškov
+ */
+public class LatencyHistogramTest {
+
+  @Test
+  public void snapshot_ReturnsPercentilesWithinThreePercent() {
+    // given
+    LatencyHistogram histogram = new LatencyHistogram();
+
+    // when
+    for (long value = 1; value <= 100_000; value++) {
+      histogram.record(value * 1_000);
+    }
+    LatencyHistogram.Snapshot result = histogram.snapshot();
+
+    // then
+    assertThat(result.getCount()).isEqualTo(100_000);
+    assertThat(result.getMean()).isCloseTo(50_000_500.0, within(0.5));
+    assertThat(result.getValueAtPercentile(50)).isBetween(50_000_000L, 51_500_000L);
+    assertThat(result.getValueAtPercentile(99)).isBetween(99_000_000L, 102_000_000L);
+    assertThat(result.getMax()).isBetween(100_000_000L, 103_000_000L);
+  }
+
+  @Test
+  public void bucketOf_KeepsEveryValueWithinItsBucket() {
+    for (long value : new long[] {0, 1, 63, 64, 65, 127, 128, 1_000_003, Long.MAX_VALUE}) {
+      int bucket = LatencyHistogram.bucketOf(value);
+
+      assertThat(LatencyHistogram.highestValueOf(bucket)).isGreaterThanOrEqualTo(value);
+      assertThat(bucket == 0 || LatencyHistogram.highestValueOf(bucket - 1) < value).isTrue();
+    }
+  }
+
+}
@@ -0,0 +1,43 @@
+package ee.alex.bank.service;
+
+import java.util.UUID;
+import org.junit.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Aleksei Kulitškov
+ */
+public class OwnerIndexTest {
+
+  @Test
+  public void get_ReturnsAccountsOfOwnerInOrderAdded() {
+    // given
+    OwnerIndex index = new OwnerIndex();
+    UUID first = UUID.randomUUID();
+    UUID second = UUID.randomUUID();
+    index.add("Peter Parker", first);
+    index.add("Rick Grimes", UUID.randomUUID());
+    index.add("Peter Parker", second);
+
+    // when
+    UUID[] result = index.get("Peter Parker");
+
+    // then
+    assertThat(result).containsExactly(first, second);
+    assertThat(index.ownerCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void get_ReturnsNoAccounts_IfOwnerUnknown() {
+    // given
+    OwnerIndex index = new OwnerIndex();
+    index.add("Peter Parker", UUID.randomUUID());
+
+    // when
+    UUID[] result = index.get("Rick Grimes");
+
+    // then
+    assertThat(result).isEmpty();
+  }
+
+}
@@ -0,0 +1,98 @@
+package ee.alex.bank.service;
+
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.After;
+import org.junit.Test;
+import ee.alex.bank.model.CheckingAccount;
+import ee.alex.bank.model.SavingsAccount;
+import static ee.alex.bank.service.OperationStatus.OK;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Aleksei Kulitškov
+ */
+public class ShardedEngineTest {
+
+  private final ShardedEngine engine = new ShardedEngine(2, new InterestAccrual(ForkJoinPool.commonPool(),
+      new AccountLocks()));
+
+  @After
+  public void stopShards() {
+    engine.close();
+  }
+
+  @Test
+  public void transfer_MovesMoney_IfAccountsOnDifferentShards() throws Exception {
+    // given
+    CheckingAccount from = accountOnShard(0);
+    CheckingAccount to = accountOnShard(1);
+    from.deposit(100_00);
+
+    // when
+    OperationStatus result = engine.transfer(from, to, 40_00).join();
+
+    // then
+    assertThat(result).isEqualTo(OK);
+    assertThat(from.getBalance()).isEqualTo(60_00);
+    assertThat(to.getBalance()).isEqualTo(40_00);
+  }
+
+  @Test
+  public void transfer_RevertsDebit_IfCreditOnOtherShardFails() throws Exception {
+    // given
+    CheckingAccount from = accountOnShard(0);
+    CheckingAccount to = accountOnShard(1);
+    from.deposit(100_00);
+    to.deposit(Long.MAX_VALUE - 10_00);
+
+    // when
+    OperationStatus result = engine.transfer(from, to, 40_00).join();
+
+    // then
+    assertThat(result).isEqualTo(OperationStatus.AMOUNT_OVERFLOW);
+    assertThat(from.getBalance()).isEqualTo(100_00);
+    assertThat(to.getBalance()).isEqualTo(Long.MAX_VALUE - 10_00);
+  }
+
+  @Test
+  public void submit_RunsTasksOfOneAccountInSubmissionOrder() throws Exception {
+    // given
+    CheckingAccount account = accountOnShard(0);
+    StringBuilder order = new StringBuilder();
+
+    // when
+    for (int i = 0; i < 10; i++) {
+      int task = i;
+      engine.submit(account.getAccountId(), () -> order.append(task));
+    }
+    engine.submit(account.getAccountId(), () -> null).join();
+
+    // then
+    assertThat(order.toString()).isEqualTo("0123456789");
+  }
+
+  @Test
+  public void addInterestBearing_KeepsAccountOnShardThatOwnsIt() {
+    // given
+    SavingsAccount account = new SavingsAccount("Owner");
+    int shard = engine.shardOf(account.getAccountId());
+
+    // when
+    engine.addInterestBearing(account);
+
+    // then
+    assertThat(engine.interestBearing(shard).size()).isEqualTo(1);
+    assertThat(engine.interestBearing(shard).get(0)).isSameAs(account);
+    assertThat(engine.interestBearing(1 - shard).size()).isZero();
+  }
+
+  private CheckingAccount accountOnShard(int shard) {
+    UUID accountId;
+    do {
+      accountId = UUID.randomUUID();
+    } while (engine.shardOf(accountId) != shard);
+    return new CheckingAccount(accountId, "Owner", 0);
+  }
+
+}
@@ -0,0 +1,117 @@
+package ee.alex.bank.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import ee.alex.bank.exception.InsufficientFundsException;
+import ee.alex.bank.exception.InvalidAmountException;
+import ee.alex.bank.model.Account;
+import ee.alex.bank.model.CheckingAccount;
+import ee.alex.bank.model.SavingsAccount;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+/**
+ * @author Aleksei Kulitškov
+ */
+public class TransferEngineTest {
+
+  @Test
+  public void transfer_MovesMoneyBetweenAccounts_IfNoErrors() throws Exception {
+    // given
+    TransferEngine engine = new TransferEngine(new AccountLocks());
+    Account from = new CheckingAccount("Peter Parker", 500_00);
+    Account to = new SavingsAccount("Rick Grimes");
+
+    // when
+    engine.transfer(from, to, 200_00);
+
+    // then
+    assertThat(from.getBalance()).isEqualTo(-200_00);
+    assertThat(to.getBalance()).isEqualTo(200_00);
+  }
+
+  @Test
+  public void transfer_ThrowsInvalidAmountException_IfAmountIsNotPositive() {
+    // given
+    TransferEngine engine = new TransferEngine(new AccountLocks());
+    Account from = new CheckingAccount("Peter Parker", 500_00);
+    Account to = new SavingsAccount("Rick Grimes");
+
+    // when
+    Throwable result = catchThrowable(() -> engine.transfer(from, to, 0));
+
+    // then
+    assertThat(result).isInstanceOf(InvalidAmountException.class);
+    assertThat(from.getBalance()).isEqualTo(0);
+    assertThat(to.getBalance()).isEqualTo(0);
+  }
+
+  @Test
+  public void transfer_LeavesBothBalancesUntouched_IfDebitIsRejected() {
+    // given
+    TransferEngine engine = new TransferEngine(new AccountLocks());
+    Account from = new SavingsAccount("Peter Parker");
+    Account to = new SavingsAccount("Rick Grimes");
+
+    // when
+    Throwable result = catchThrowable(() -> engine.transfer(from, to, 100_00));
+
+    // then
+    assertThat(result).isInstanceOf(InsufficientFundsException.class);
+    assertThat(from.getBalance()).isEqualTo(0);
+    assertThat(to.getBalance()).isEqualTo(0);
+  }
+
+  @Test
+  public void transfer_ConservesTotalMoneyWithoutDeadlock_IfManyThreadsTransferInBothDirections() throws Exception {
+    // given
+    // few stripes, so transfers also hit the shared-stripe and reversed-stripe-order paths
+    TransferEngine engine = new TransferEngine(new AccountLocks(4));
+    List<Account> accounts = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      Account account = new CheckingAccount("Owner " + i, 1_000_000_000_00L);
+      account.deposit(10_000_00);
+      accounts.add(account);
+    }
+    int threads = 8;
+    int transfersPerThread = 50_000;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<?>> futures = new ArrayList<>();
+
+    // when
+    for (int t = 0; t < threads; t++) {
+      futures.add(executor.submit(() -> {
+        start.await();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < transfersPerThread; i++) {
+          Account from = accounts.get(random.nextInt(accounts.size()));
+          Account to = accounts.get(random.nextInt(accounts.size()));
+          engine.transfer(from, to, 1 + random.nextInt(100));
+        }
+        return null;
+      }));
+    }
+    start.countDown();
+    executor.shutdown();
+
+    // then
+    assertThat(executor.awaitTermination(2, TimeUnit.MINUTES)).as("transfers finished without deadlock").isTrue();
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    long total = 0;
+    for (Account account : accounts) {
+      total += account.getBalance();
+    }
+    assertThat(total).isEqualTo(8 * 10_000_00);
+  }
+
+}
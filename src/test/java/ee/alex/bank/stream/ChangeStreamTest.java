@@ -0,0 +1,246 @@
+package ee.alex.bank.stream;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ee.alex.bank.persistence.DurabilityPolicy;
+import ee.alex.bank.persistence.FileJournal;
+import ee.alex.bank.persistence.JournalListener;
+import ee.alex.bank.service.BankService;
+import ee.alex.bank.service.ObjectAccountStore;
+import ee.alex.bank.service.Operation;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Aleksei Kulitškov
+ */
+public class ChangeStreamTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void poll_ReturnsEveryChangeOfBankInOrder_IfBankPublishesToStream() {
+    // given
+    ChangeStream stream = new ChangeStream(16);
+    ChangeStream.Subscription subscription = stream.subscribe();
+    BankService bankService = new BankService();
+    bankService.setChangeStream(stream);
+    UUID checkingAccountId = bankService.createCheckingAccount("Peter Parker", 500_00);
+    UUID savingsAccountId = bankService.createSavingsAccount("Rick Grimes");
+    bankService.depositMoney(checkingAccountId, 100_00);
+    bankService.withdrawMoney(checkingAccountId, 900_00);
+    bankService.transferMoney(checkingAccountId, savingsAccountId, 50_00);
+    bankService.changeCheckingAccountLimit(checkingAccountId, 700_00);
+    List<String> events = new ArrayList<>();
+
+    // when
+    int count = subscription.poll((event, endOfBatch) -> events.add(event.getType() + " " + event.getAmount()
+        + (event.getTargetAccountId() == null ? "" : " " + event.getTargetAccountId()) + (endOfBatch ? " end" : "")), 100);
+
+    // then
+    assertThat(count).isEqualTo(5);
+    assertThat(events).containsExactly(
+        "ACCOUNT_CREATED 50000",
+        "ACCOUNT_CREATED 0",
+        "DEPOSITED 10000",
+        "TRANSFERRED 5000 " + savingsAccountId,
+        "LIMIT_CHANGED 70000 end");
+  }
+
+  @Test
+  public void poll_ReturnsChangesOnlyOnceOnDisk_IfBankHasJournal() throws Exception {
+    // given
+    ChangeStream stream = new ChangeStream(16);
+    ChangeStream.Subscription subscription = stream.subscribe();
+    Path path = folder.getRoot().toPath().resolve("bank.journal");
+    List<String> events = new ArrayList<>();
+    try (FileJournal journal = FileJournal.open(path, DurabilityPolicy.ASYNC, 3_600_000)) {
+      BankService bankService = new BankService(journal);
+      bankService.setChangeStream(stream);
+      UUID accountId = bankService.createCheckingAccount("Peter Parker", 500_00);
+      bankService.depositMoney(accountId, 100_00);
+      int beforeSync = subscription.poll((event, endOfBatch) -> events.add(event.getType().name()), 100);
+
+      // when
+      journal.sync();
+      int afterSync = subscription.poll((event, endOfBatch) -> events.add(event.getType() + " "
+          + event.getJournalSequence()), 100);
+
+      // then
+      assertThat(beforeSync).isZero();
+      assertThat(afterSync).isEqualTo(2);
+      assertThat(events).containsExactly("ACCOUNT_CREATED 1", "DEPOSITED 2");
+    }
+  }
+
+  @Test
+  public void poll_ReturnsChangesOfShardsAndInterest_IfBankHasShards() {
+    // given
+    ChangeStream stream = new ChangeStream(16);
+    ChangeStream.Subscription subscription = stream.subscribe();
+    List<String> events = new ArrayList<>();
+    UUID savingsAccountId;
+    UUID checkingAccountId;
+    try (BankService bankService = new BankService(new ObjectAccountStore(), 2)) {
+      bankService.setChangeStream(stream);
+      savingsAccountId = bankService.createSavingsAccount("Rick Grimes");
+      checkingAccountId = bankService.createCheckingAccount("Peter Parker", 500_00);
+      bankService.transferMoney(checkingAccountId, savingsAccountId, 100_00);
+      bankService.updateInterestRate(0.5);
+
+      // when
+      bankService.provideInterestToAllUsers();
+    }
+    subscription.poll((event, endOfBatch) -> events.add(event.getType() + " " + event.getAmount() + " "
+        + event.getAccruedPeriod()), 100);
+
+    // then
+    assertThat(events).containsExactly(
+        "ACCOUNT_CREATED 0 0",
+        "ACCOUNT_CREATED 50000 0",
+        "TRANSFERRED 10000 0",
+        "RATE_TABLE_CHANGED 0 0",
+        "INTEREST_PERIOD_CLOSED 0 0",
+        "INTEREST_ACCRUED 5000 1");
+  }
+
+  @Test
+  public void poll_ReturnsTransferBeforeWithdrawalItFunded_IfBankHasShards() {
+    // given
+    ChangeStream stream = new ChangeStream(16);
+    ChangeStream.Subscription subscription = stream.subscribe();
+    List<String> events = new ArrayList<>();
+    try (BankService bankService = new BankService(new ObjectAccountStore(), 1)) {
+      bankService.setChangeStream(stream);
+      UUID savingsAccountId = bankService.createSavingsAccount("Rick Grimes");
+      UUID checkingAccountId = bankService.createCheckingAccount("Peter Parker", 500_00);
+
+      // when
+      bankService.submitBatch(Arrays.asList(
+          Operation.transfer(checkingAccountId, savingsAccountId, 100_00),
+          Operation.withdraw(savingsAccountId, 60_00)));
+      bankService.withdrawMoney(savingsAccountId, 40_00);
+    }
+    subscription.poll((event, endOfBatch) -> events.add(event.getType() + " " + event.getAmount()), 100);
+
+    // then
+    assertThat(events).containsExactly(
+        "ACCOUNT_CREATED 0",
+        "ACCOUNT_CREATED 50000",
+        "TRANSFERRED 10000",
+        "WITHDRAWN 6000",
+        "WITHDRAWN 4000");
+  }
+
+  @Test
+  public void poll_EndsBatchAtLimit_IfMoreEventsPublished() {
+    // given
+    ChangeStream stream = new ChangeStream(16);
+    ChangeStream.Subscription subscription = stream.subscribe();
+    JournalListener publisher = stream.publisher();
+    UUID accountId = UUID.randomUUID();
+    for (int i = 1; i <= 5; i++) {
+      publisher.deposited(0, accountId, i);
+    }
+    List<String> events = new ArrayList<>();
+
+    // when
+    int first = subscription.poll((event, endOfBatch) -> events.add(event.getAmount() + " " + endOfBatch), 3);
+    int second = subscription.poll((event, endOfBatch) -> events.add(event.getAmount() + " " + endOfBatch), 3);
+
+    // then
+    assertThat(first).isEqualTo(3);
+    assertThat(second).isEqualTo(2);
+    assertThat(events).containsExactly("1 false", "2 false", "3 true", "4 false", "5 true");
+  }
+
+  @Test
+  public void poll_ReportsLostEventsAndResumes_IfSubscriberFellRingBehind() {
+    // given
+    ChangeStream stream = new ChangeStream(8);
+    ChangeStream.Subscription subscription = stream.subscribe();
+    JournalListener publisher = stream.publisher();
+    UUID accountId = UUID.randomUUID();
+    for (int i = 0; i < 20; i++) {
+      publisher.deposited(0, accountId, i);
+    }
+    AtomicLong lost = new AtomicLong();
+    List<Long> amounts = new ArrayList<>();
+
+    // when
+    subscription.poll(new ChangeHandler() {
+      @Override
+      public void onChange(ChangeEvent event, boolean endOfBatch) {
+        amounts.add(event.getAmount());
+      }
+
+      @Override
+      public void onLoss(long count) {
+        lost.addAndGet(count);
+      }
+    }, 100);
+
+    // then
+    assertThat(lost).hasValue(12);
+    assertThat(subscription.getLost()).isEqualTo(12);
+    assertThat(amounts).containsExactly(12L, 13L, 14L, 15L, 16L, 17L, 18L, 19L);
+    assertThat(subscription.getPosition()).isEqualTo(20);
+  }
+
+  @Test
+  public void subscribe_HandsEveryEventToHandler_IfStreamingFromManyPublishers() throws Exception {
+    // given
+    ChangeStream stream = new ChangeStream(1 << 16);
+    int publishers = 4;
+    int perPublisher = 10_000;
+    CountDownLatch received = new CountDownLatch(publishers * perPublisher);
+    long[] lastAmounts = new long[publishers];
+    AtomicLong outOfOrder = new AtomicLong();
+    UUID[] accountIds = new UUID[publishers];
+    for (int p = 0; p < publishers; p++) {
+      accountIds[p] = new UUID(0, p);
+    }
+    ChangeStream.Subscription subscription = stream.subscribe((event, endOfBatch) -> {
+      int publisher = (int) event.getAccountId().getLeastSignificantBits();
+      if (event.getAmount() != lastAmounts[publisher] + 1) {
+        outOfOrder.incrementAndGet();
+      }
+      lastAmounts[publisher] = event.getAmount();
+      received.countDown();
+    });
+    JournalListener publisher = stream.publisher();
+
+    // when
+    List<Thread> threads = new ArrayList<>();
+    for (int p = 0; p < publishers; p++) {
+      UUID accountId = accountIds[p];
+      Thread thread = new Thread(() -> {
+        for (int i = 1; i <= perPublisher; i++) {
+          publisher.deposited(0, accountId, i);
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    // then
+    assertThat(received.await(10, TimeUnit.SECONDS)).isTrue();
+    subscription.close();
+    assertThat(outOfOrder).hasValue(0);
+    assertThat(subscription.getLost()).isEqualTo(0);
+    assertThat(stream.getPublished()).isEqualTo(publishers * perPublisher);
+  }
+
+}